@@ -50,6 +50,11 @@ package net.sf.jazzlib;
  * used to get the CRC32 over a stream if used with checked input/output
  * streams.
  *
+ * The checksum is computed by <code>java.util.zip.CRC32</code>, which the JVM
+ * backs with a native or intrinsic implementation. With the system property
+ * <code>net.sf.jazzlib.crc32=jazzlib</code> it is computed in pure Java
+ * instead, eight bytes at a time ("slicing-by-8").
+ *
  * @see InflaterInputStream
  * @see DeflaterOutputStream
  *
@@ -57,15 +62,34 @@ package net.sf.jazzlib;
  * @date April 1, 1999.
  */
 public class CRC32 implements Checksum {
-	/** The crc data checksum so far. */
+	/** Whether new instances compute in pure Java. */
+	private static final boolean pureJava = "jazzlib".equals(System
+			.getProperty("net.sf.jazzlib.crc32"));
+
+	/**
+	 * The fast CRC tables. Computed once when the CRC32 class is loaded.
+	 * crc_table[0] is the byte-at-a-time table, crc_table[k] gives the crc of
+	 * a byte followed by k zero bytes.
+	 */
+	private static final int[][] crc_table = make_crc_table();
+
+	/** The JDK checksum that does the work, null when computing in Java. */
+	private final java.util.zip.CRC32 jdk;
+
+	/** The crc data checksum so far, when computing in Java. */
 	private int crc = 0;
 
-	/** The fast CRC table. Computed once when the CRC32 class is loaded. */
-	private static int[] crc_table = make_crc_table();
+	public CRC32() {
+		this(pureJava);
+	}
+
+	CRC32(final boolean pureJava) {
+		jdk = pureJava ? null : new java.util.zip.CRC32();
+	}
 
-	/** Make the table for a fast CRC. */
-	private static int[] make_crc_table() {
-		final int[] crc_table = new int[256];
+	/** Make the tables for a fast CRC. */
+	private static int[][] make_crc_table() {
+		final int[][] crc_table = new int[8][256];
 		for (int n = 0; n < 256; n++) {
 			int c = n;
 			for (int k = 8; --k >= 0;) {
@@ -75,7 +99,14 @@ public class CRC32 implements Checksum {
 					c = c >>> 1;
 				}
 			}
-			crc_table[n] = c;
+			crc_table[0][n] = c;
+		}
+		for (int n = 0; n < 256; n++) {
+			int c = crc_table[0][n];
+			for (int k = 1; k < 8; k++) {
+				c = crc_table[0][c & 0xff] ^ (c >>> 8);
+				crc_table[k][n] = c;
+			}
 		}
 		return crc_table;
 	}
@@ -85,6 +116,9 @@ public class CRC32 implements Checksum {
 	 */
 	@Override
 	public long getValue() {
+		if (jdk != null) {
+			return jdk.getValue();
+		}
 		return crc & 0xffffffffL;
 	}
 
@@ -93,6 +127,9 @@ public class CRC32 implements Checksum {
 	 */
 	@Override
 	public void reset() {
+		if (jdk != null) {
+			jdk.reset();
+		}
 		crc = 0;
 	}
 
@@ -105,8 +142,12 @@ public class CRC32 implements Checksum {
 
 	@Override
 	public void update(final int bval) {
+		if (jdk != null) {
+			jdk.update(bval);
+			return;
+		}
 		int c = ~crc;
-		c = crc_table[(c ^ bval) & 0xff] ^ (c >>> 8);
+		c = crc_table[0][(c ^ bval) & 0xff] ^ (c >>> 8);
 		crc = ~c;
 	}
 
@@ -122,9 +163,25 @@ public class CRC32 implements Checksum {
 	 */
 	@Override
 	public void update(final byte[] buf, int off, int len) {
+		if (jdk != null) {
+			jdk.update(buf, off, len);
+			return;
+		}
+		final int[] t0 = crc_table[0], t1 = crc_table[1], t2 = crc_table[2], t3 = crc_table[3];
+		final int[] t4 = crc_table[4], t5 = crc_table[5], t6 = crc_table[6], t7 = crc_table[7];
 		int c = ~crc;
+		while (len >= 8) {
+			c ^= (buf[off] & 0xff) | ((buf[off + 1] & 0xff) << 8)
+					| ((buf[off + 2] & 0xff) << 16) | (buf[off + 3] << 24);
+			c = t7[c & 0xff] ^ t6[(c >>> 8) & 0xff] ^ t5[(c >>> 16) & 0xff]
+					^ t4[c >>> 24] ^ t3[buf[off + 4] & 0xff]
+					^ t2[buf[off + 5] & 0xff] ^ t1[buf[off + 6] & 0xff]
+					^ t0[buf[off + 7] & 0xff];
+			off += 8;
+			len -= 8;
+		}
 		while (--len >= 0) {
-			c = crc_table[(c ^ buf[off++]) & 0xff] ^ (c >>> 8);
+			c = t0[(c ^ buf[off++]) & 0xff] ^ (c >>> 8);
 		}
 		crc = ~c;
 	}
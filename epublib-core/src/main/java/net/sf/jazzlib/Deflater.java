@@ -42,6 +42,19 @@ package net.sf.jazzlib;
  * deflate algorithm described in RFC 1951. It has several compression levels
  * and three different strategies described below.
  *
+ * The compression itself is done by a {@link DeflaterBackend}. By default this
+ * is <code>java.util.zip.Deflater</code>; setting the system property
+ * <code>net.sf.jazzlib.deflater</code> to <code>jazzlib</code>, or calling
+ * {@link #setBackendFactory(DeflaterBackend.Factory)}, selects the pure Java
+ * implementation instead. Before Java 7, where
+ * <code>java.util.zip.Deflater</code> can not flush, the pure Java
+ * implementation stays the default.
+ *
+ * Jazzlib used to always deflate in pure Java. The native zlib is faster and
+ * its output inflates to the same data, but it is not byte for byte the same
+ * as the output of the pure Java implementation. Use the pure Java backend
+ * where the exact compressed bytes matter.
+ *
  * This class is <i>not</i> thread safe. This is inherent in the API, due to the
  * split of deflate and setInput.
  *
@@ -90,55 +103,13 @@ public class Deflater {
 	 */
 	public static final int DEFLATED = 8;
 
-	/*
-	 * The Deflater can do the following state transitions:
-	 *
-	 * (1) -> INIT_STATE ----> INIT_FINISHING_STATE ---. / | (2) (5) | / v (5) |
-	 * (3)| SETDICT_STATE ---> SETDICT_FINISHING_STATE |(3) \ | (3) | ,-------'
-	 * | | | (3) / v v (5) v v (1) -> BUSY_STATE ----> FINISHING_STATE | (6) v
-	 * FINISHED_STATE \_____________________________________/ | (7) v
-	 * CLOSED_STATE
-	 *
-	 * (1) If we should produce a header we start in INIT_STATE, otherwise we
-	 * start in BUSY_STATE. (2) A dictionary may be set only when we are in
-	 * INIT_STATE, then we change the state as indicated. (3) Whether a
-	 * dictionary is set or not, on the first call of deflate we change to
-	 * BUSY_STATE. (4) -- intentionally left blank -- :) (5) FINISHING_STATE is
-	 * entered, when flush() is called to indicate that there is no more INPUT.
-	 * There are also states indicating, that the header wasn't written yet. (6)
-	 * FINISHED_STATE is entered, when everything has been flushed to the
-	 * internal pending output buffer. (7) At any time (7)
-	 */
-
-	private static final int IS_SETDICT = 0x01;
-	private static final int IS_FLUSHING = 0x04;
-	private static final int IS_FINISHING = 0x08;
-
-	private static final int INIT_STATE = 0x00;
-	private static final int SETDICT_STATE = 0x01;
-	private static final int BUSY_STATE = 0x10;
-	private static final int FLUSHING_STATE = 0x14;
-	private static final int FINISHING_STATE = 0x1c;
-	private static final int FINISHED_STATE = 0x1e;
-	private static final int CLOSED_STATE = 0x7f;
+	private static volatile DeflaterBackend.Factory backendFactory = "jazzlib"
+			.equals(System.getProperty("net.sf.jazzlib.deflater"))
+			|| !JdkDeflater.canFlush() ? DeflaterBackend.JAZZLIB
+			: DeflaterBackend.JDK;
 
-	/** Compression level. */
-	private int level;
-
-	/** should we include a header. */
-	private final boolean noHeader;
-
-	/** The current state. */
-	private int state;
-
-	/** The total bytes of output written. */
-	private int totalOut;
-
-	/** The pending output. */
-	private DeflaterPending pending;
-
-	/** The deflater engine. */
-	private DeflaterEngine engine;
+	/** The backend that does the compression. */
+	private final DeflaterBackend backend;
 
 	/**
 	 * Creates a new deflater with default compression level.
@@ -173,19 +144,48 @@ public class Deflater {
 	 * @exception IllegalArgumentException
 	 *                if lvl is out of range.
 	 */
-	public Deflater(int lvl, final boolean nowrap) {
-		if (lvl == DEFAULT_COMPRESSION) {
-			lvl = 6;
-		} else if ((lvl < NO_COMPRESSION) || (lvl > BEST_COMPRESSION)) {
-			throw new IllegalArgumentException();
-		}
+	public Deflater(final int lvl, final boolean nowrap) {
+		this(lvl, nowrap, backendFactory);
+	}
+
+	/**
+	 * Creates a new deflater with given compression level and backend.
+	 *
+	 * @param lvl
+	 *            the compression level, a value between NO_COMPRESSION and
+	 *            BEST_COMPRESSION.
+	 * @param nowrap
+	 *            true, iff we should suppress the deflate header at the
+	 *            beginning and the adler checksum at the end of the output.
+	 * @param factory
+	 *            creates the backend that does the compression.
+	 * @exception IllegalArgumentException
+	 *                if lvl is out of range.
+	 */
+	public Deflater(final int lvl, final boolean nowrap,
+			final DeflaterBackend.Factory factory) {
+		backend = factory.create(lvl, nowrap);
+	}
 
-		pending = new DeflaterPending();
-		engine = new DeflaterEngine(pending);
-		this.noHeader = nowrap;
-		setStrategy(DEFAULT_STRATEGY);
-		setLevel(lvl);
-		reset();
+	/**
+	 * Returns the factory of the backends of new deflaters.
+	 */
+	public static DeflaterBackend.Factory getBackendFactory() {
+		return backendFactory;
+	}
+
+	/**
+	 * Sets the factory of the backends of deflaters that are created from now
+	 * on, like DeflaterBackend.JDK or DeflaterBackend.JAZZLIB.
+	 *
+	 * @param factory
+	 *            the factory.
+	 */
+	public static void setBackendFactory(final DeflaterBackend.Factory factory) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		backendFactory = factory;
 	}
 
 	/**
@@ -193,65 +193,55 @@ public class Deflater {
 	 * created with the same compression level and strategy as it had before.
 	 */
 	public void reset() {
-		state = (noHeader ? BUSY_STATE : INIT_STATE);
-		totalOut = 0;
-		pending.reset();
-		engine.reset();
+		backend.reset();
 	}
 
 	/**
-	 * Frees all objects allocated by the compressor. There's no reason to call
-	 * this, since you can just rely on garbage collection. Exists only for
-	 * compatibility against Sun's JDK, where the compressor allocates native
-	 * memory. If you call any method (even reset) afterwards the behaviour is
-	 * <i>undefined</i>.
-	 *
-	 * @deprecated Just clear all references to deflater instead.
+	 * Frees all resources allocated by the compressor, which for the JDK
+	 * backend includes native memory. If you call any method (even reset)
+	 * afterwards the behaviour is <i>undefined</i>.
 	 */
-	@Deprecated
 	public void end() {
-		engine = null;
-		pending = null;
-		state = CLOSED_STATE;
+		backend.end();
 	}
 
 	/**
 	 * Gets the current adler checksum of the data that was processed so far.
 	 */
 	public int getAdler() {
-		return engine.getAdler();
+		return backend.getAdler();
 	}
 
 	/**
 	 * Gets the number of input bytes processed so far.
 	 */
 	public int getTotalIn() {
-		return engine.getTotalIn();
+		return backend.getTotalIn();
 	}
 
 	/**
 	 * Gets the number of output bytes so far.
 	 */
 	public int getTotalOut() {
-		return totalOut;
+		return backend.getTotalOut();
 	}
 
 	/**
-	 * Finalizes this object.
+	 * Gets the number of output bytes so far. Unlike getTotalOut() this does
+	 * not overflow when more than 2GB were written.
 	 */
-	@Override
-	protected void finalize() {
-		/* Exists solely for compatibility. We don't have any native state. */
+	public long getBytesWritten() {
+		return backend.getBytesWritten();
 	}
 
 	/**
 	 * Flushes the current input block. Further calls to deflate() will produce
-	 * enough output to inflate everything in the current input block. This is
-	 * not part of Sun's JDK so I have made it package private. It is used by
-	 * DeflaterOutputStream to implement flush().
+	 * enough output to inflate everything in the current input block, if the
+	 * backend supports this. This is not part of Sun's JDK so I have made it
+	 * package private. It is used by DeflaterOutputStream to implement flush().
 	 */
 	void flush() {
-		state |= IS_FLUSHING;
+		backend.flush();
 	}
 
 	/**
@@ -260,7 +250,7 @@ public class Deflater {
 	 * to force all bytes to be flushed.
 	 */
 	public void finish() {
-		state |= IS_FLUSHING | IS_FINISHING;
+		backend.finish();
 	}
 
 	/**
@@ -268,27 +258,20 @@ public class Deflater {
 	 * available.
 	 */
 	public boolean finished() {
-		return (state == FINISHED_STATE) && pending.isFlushed();
+		return backend.finished();
 	}
 
 	/**
 	 * Returns true, if the input buffer is empty. You should then call
-	 * setInput(). <br>
-	 *
-	 * <em>NOTE</em>: This method can also return true when the stream was
-	 * finished.
+	 * setInput().
 	 */
 	public boolean needsInput() {
-		return engine.needsInput();
+		return backend.needsInput();
 	}
 
 	/**
-	 * Sets the data which should be compressed next. This should be only called
-	 * when needsInput indicates that more input is needed. If you call setInput
-	 * when needsInput() returns false, the previous input that is still pending
-	 * will be thrown away. The given byte array should not be changed, before
-	 * needsInput() returns true again. This call is equivalent to
-	 * <code>setInput(input, 0, input.length)</code>.
+	 * Sets the data which should be compressed next. This call is equivalent
+	 * to <code>setInput(input, 0, input.length)</code>.
 	 *
 	 * @param input
 	 *            the buffer containing the input data.
@@ -315,10 +298,7 @@ public class Deflater {
 	 *                input is still pending.
 	 */
 	public void setInput(final byte[] input, final int off, final int len) {
-		if ((state & IS_FINISHING) != 0) {
-			throw new IllegalStateException("finish()/end() already called");
-		}
-		engine.setInput(input, off, len);
+		backend.setInput(input, off, len);
 	}
 
 	/**
@@ -330,17 +310,8 @@ public class Deflater {
 	 * @param lvl
 	 *            the new compression level.
 	 */
-	public void setLevel(int lvl) {
-		if (lvl == DEFAULT_COMPRESSION) {
-			lvl = 6;
-		} else if ((lvl < NO_COMPRESSION) || (lvl > BEST_COMPRESSION)) {
-			throw new IllegalArgumentException();
-		}
-
-		if (level != lvl) {
-			level = lvl;
-			engine.setLevel(lvl);
-		}
+	public void setLevel(final int lvl) {
+		backend.setLevel(lvl);
 	}
 
 	/**
@@ -352,11 +323,7 @@ public class Deflater {
 	 *            the new compression strategy.
 	 */
 	public void setStrategy(final int stgy) {
-		if ((stgy != DEFAULT_STRATEGY) && (stgy != FILTERED)
-				&& (stgy != HUFFMAN_ONLY)) {
-			throw new IllegalArgumentException();
-		}
-		engine.setStrategy(stgy);
+		backend.setStrategy(stgy);
 	}
 
 	/**
@@ -387,84 +354,8 @@ public class Deflater {
 	 * @exception IndexOutOfBoundsException
 	 *                if offset and/or length don't match the array length.
 	 */
-	public int deflate(final byte[] output, int offset, int length) {
-		final int origLength = length;
-
-		if (state == CLOSED_STATE) {
-			throw new IllegalStateException("Deflater closed");
-		}
-
-		if (state < BUSY_STATE) {
-			/* output header */
-			int header = (DEFLATED + ((DeflaterConstants.MAX_WBITS - 8) << 4)) << 8;
-			int level_flags = (level - 1) >> 1;
-			if ((level_flags < 0) || (level_flags > 3)) {
-				level_flags = 3;
-			}
-			header |= level_flags << 6;
-			if ((state & IS_SETDICT) != 0) {
-				/* Dictionary was set */
-				header |= DeflaterConstants.PRESET_DICT;
-			}
-			header += 31 - (header % 31);
-
-			pending.writeShortMSB(header);
-			if ((state & IS_SETDICT) != 0) {
-				final int chksum = engine.getAdler();
-				engine.resetAdler();
-				pending.writeShortMSB(chksum >> 16);
-				pending.writeShortMSB(chksum & 0xffff);
-			}
-
-			state = BUSY_STATE | (state & (IS_FLUSHING | IS_FINISHING));
-		}
-
-		for (;;) {
-			final int count = pending.flush(output, offset, length);
-			offset += count;
-			totalOut += count;
-			length -= count;
-			if ((length == 0) || (state == FINISHED_STATE)) {
-				break;
-			}
-
-			if (!engine.deflate((state & IS_FLUSHING) != 0,
-					(state & IS_FINISHING) != 0)) {
-				if (state == BUSY_STATE) {
-					/* We need more input now */
-					return origLength - length;
-				} else if (state == FLUSHING_STATE) {
-					if (level != NO_COMPRESSION) {
-						/*
-						 * We have to supply some lookahead. 8 bit lookahead are
-						 * needed by the zlib inflater, and we must fill the
-						 * next byte, so that all bits are flushed.
-						 */
-						int neededbits = 8 + ((-pending.getBitCount()) & 7);
-						while (neededbits > 0) {
-							/*
-							 * write a static tree block consisting solely of an
-							 * EOF:
-							 */
-							pending.writeBits(2, 10);
-							neededbits -= 10;
-						}
-					}
-					state = BUSY_STATE;
-				} else if (state == FINISHING_STATE) {
-					pending.alignToByte();
-					/* We have completed the stream */
-					if (!noHeader) {
-						final int adler = engine.getAdler();
-						pending.writeShortMSB(adler >> 16);
-						pending.writeShortMSB(adler & 0xffff);
-					}
-					state = FINISHED_STATE;
-				}
-			}
-		}
-
-		return origLength - length;
+	public int deflate(final byte[] output, final int offset, final int length) {
+		return backend.deflate(output, offset, length);
 	}
 
 	/**
@@ -501,11 +392,6 @@ public class Deflater {
 	 */
 	public void setDictionary(final byte[] dict, final int offset,
 			final int length) {
-		if (state != INIT_STATE) {
-			throw new IllegalStateException();
-		}
-
-		state = SETDICT_STATE;
-		engine.setDictionary(dict, offset, length);
+		backend.setDictionary(dict, offset, length);
 	}
 }
@@ -0,0 +1,99 @@
+package net.sf.jazzlib;
+
+/**
+ * The implementation that a <code>Deflater</code> hands its work to.
+ *
+ * Two backends come with jazzlib: {@link #JDK}, which uses the native zlib of
+ * <code>java.util.zip.Deflater</code>, and {@link #JAZZLIB}, the pure Java
+ * implementation, for environments where java.util.zip is missing or broken.
+ * The methods have the meaning of the <code>Deflater</code> methods of the
+ * same name.
+ *
+ * @see Deflater#setBackendFactory(DeflaterBackend.Factory)
+ */
+public interface DeflaterBackend {
+
+	/**
+	 * Creates the backend of a new <code>Deflater</code>.
+	 */
+	interface Factory {
+
+		/**
+		 * @param level
+		 *            the compression level, between NO_COMPRESSION and
+		 *            BEST_COMPRESSION, or DEFAULT_COMPRESSION.
+		 * @param nowrap
+		 *            true, iff the zlib header and adler checksum should be
+		 *            left out.
+		 * @exception IllegalArgumentException
+		 *                if level is out of range.
+		 */
+		DeflaterBackend create(int level, boolean nowrap);
+	}
+
+	/**
+	 * Creates backends that deflate with <code>java.util.zip.Deflater</code>.
+	 */
+	Factory JDK = new Factory() {
+
+		public DeflaterBackend create(final int level, final boolean nowrap) {
+			return new JdkDeflater(level, nowrap);
+		}
+
+		@Override
+		public String toString() {
+			return "jdk";
+		}
+	};
+
+	/**
+	 * Creates backends that deflate with the pure Java implementation of
+	 * jazzlib.
+	 */
+	Factory JAZZLIB = new Factory() {
+
+		public DeflaterBackend create(final int level, final boolean nowrap) {
+			return new JazzlibDeflater(level, nowrap);
+		}
+
+		@Override
+		public String toString() {
+			return "jazzlib";
+		}
+	};
+
+	void reset();
+
+	void end();
+
+	int getAdler();
+
+	int getTotalIn();
+
+	int getTotalOut();
+
+	long getBytesWritten();
+
+	/**
+	 * Makes the following calls to deflate() produce enough output to inflate
+	 * all input given so far. Backends that can not do this may ignore it,
+	 * the output is then complete after finish().
+	 */
+	void flush();
+
+	void finish();
+
+	boolean finished();
+
+	boolean needsInput();
+
+	void setInput(byte[] input, int off, int len);
+
+	void setLevel(int level);
+
+	void setStrategy(int strategy);
+
+	int deflate(byte[] output, int offset, int length);
+
+	void setDictionary(byte[] dict, int offset, int length);
+}
@@ -69,6 +69,14 @@ public class DeflaterOutputStream extends FilterOutputStream {
 	 */
 	protected Deflater def;
 
+	/**
+	 * True if the deflater was created by this stream, which then ends it
+	 * when closed.
+	 */
+	boolean usesDefaultDeflater = false;
+
+	private boolean closed = false;
+
 	/**
 	 * Deflates everything in the def's input buffers. This will call
 	 * <code>def.deflate()</code> until all bytes from the input buffers are
@@ -100,6 +108,7 @@ public class DeflaterOutputStream extends FilterOutputStream {
 	 */
 	public DeflaterOutputStream(final OutputStream out) {
 		this(out, new Deflater(), 512);
+		usesDefaultDeflater = true;
 	}
 
 	/**
@@ -147,6 +156,13 @@ public class DeflaterOutputStream extends FilterOutputStream {
 	public void flush() throws IOException {
 		def.flush();
 		deflate();
+		/* all input is taken, get the rest of the flushed output */
+		for (int len = buf.length; len == buf.length;) {
+			len = def.deflate(buf, 0, buf.length);
+			if (len > 0) {
+				out.write(buf, 0, len);
+			}
+		}
 		out.flush();
 	}
 
@@ -170,12 +186,23 @@ public class DeflaterOutputStream extends FilterOutputStream {
 	}
 
 	/**
-	 * Calls finish () and closes the stream.
+	 * Calls finish () and closes the stream. A deflater that was created by
+	 * this stream is ended, which frees the native memory of the JDK backend.
 	 */
 	@Override
 	public void close() throws IOException {
-		finish();
-		out.close();
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			finish();
+			out.close();
+		} finally {
+			if (usesDefaultDeflater) {
+				def.end();
+			}
+		}
 	}
 
 	/**
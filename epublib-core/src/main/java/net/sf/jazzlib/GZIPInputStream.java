@@ -124,6 +124,7 @@ public class GZIPInputStream extends InflaterInputStream {
 	public GZIPInputStream(final InputStream in, final int size)
 			throws IOException {
 		super(in, new Inflater(true), size);
+		usesDefaultInflater = true;
 		crc = new CRC32();
 	}
 
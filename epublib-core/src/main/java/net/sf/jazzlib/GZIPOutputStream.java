@@ -81,6 +81,7 @@ public class GZIPOutputStream extends DeflaterOutputStream {
 	public GZIPOutputStream(final OutputStream out, final int size)
 			throws IOException {
 		super(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true), size);
+		usesDefaultDeflater = true;
 
 		crc = new CRC32();
 		final int mod_time = (int) (System.currentTimeMillis() / 1000L);
@@ -123,8 +124,7 @@ public class GZIPOutputStream extends DeflaterOutputStream {
 	 */
 	@Override
 	public void close() throws IOException {
-		finish();
-		out.close();
+		super.close();
 	}
 
 	@Override
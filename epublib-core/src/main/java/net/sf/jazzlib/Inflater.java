@@ -37,11 +37,6 @@ exception statement from your version. */
 
 package net.sf.jazzlib;
 
-/* Written using on-line Java Platform 1.2 API Specification
- * and JCL book.
- * Believed complete and correct.
- */
-
 /**
  * Inflater is used to decompress data that has been compressed according to the
  * "deflate" standard described in rfc1950.
@@ -60,90 +55,25 @@ package net.sf.jazzlib;
  * Once the first output byte is produced, a dictionary will not be needed at a
  * later stage.
  *
+ * The decompression itself is done by an {@link InflaterBackend}. By default
+ * this is <code>java.util.zip.Inflater</code>; setting the system property
+ * <code>net.sf.jazzlib.inflater</code> to <code>jazzlib</code>, or calling
+ * {@link #setBackendFactory(InflaterBackend.Factory)}, selects the pure Java
+ * implementation instead.
+ *
  * @author John Leuner, Jochen Hoenicke
  * @author Tom Tromey
  * @date May 17, 1999
  * @since JDK 1.1
  */
 public class Inflater {
-	/* Copy lengths for literal codes 257..285 */
-	private static final int CPLENS[] = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15,
-		17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195,
-		227, 258 };
-
-	/* Extra bits for literal codes 257..285 */
-	private static final int CPLEXT[] = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1,
-		2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
-
-	/* Copy offsets for distance codes 0..29 */
-	private static final int CPDIST[] = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33,
-		49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
-		4097, 6145, 8193, 12289, 16385, 24577 };
-
-	/* Extra bits for distance codes */
-	private static final int CPDEXT[] = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4,
-		5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
 
-	/* This are the state in which the inflater can be. */
-	private static final int DECODE_HEADER = 0;
-	private static final int DECODE_DICT = 1;
-	private static final int DECODE_BLOCKS = 2;
-	private static final int DECODE_STORED_LEN1 = 3;
-	private static final int DECODE_STORED_LEN2 = 4;
-	private static final int DECODE_STORED = 5;
-	private static final int DECODE_DYN_HEADER = 6;
-	private static final int DECODE_HUFFMAN = 7;
-	private static final int DECODE_HUFFMAN_LENBITS = 8;
-	private static final int DECODE_HUFFMAN_DIST = 9;
-	private static final int DECODE_HUFFMAN_DISTBITS = 10;
-	private static final int DECODE_CHKSUM = 11;
-	private static final int FINISHED = 12;
+	private static volatile InflaterBackend.Factory backendFactory = "jazzlib"
+			.equals(System.getProperty("net.sf.jazzlib.inflater")) ? InflaterBackend.JAZZLIB
+			: InflaterBackend.JDK;
 
-	/** This variable contains the current state. */
-	private int mode;
-
-	/**
-	 * The adler checksum of the dictionary or of the decompressed stream, as it
-	 * is written in the header resp. footer of the compressed stream. <br>
-	 *
-	 * Only valid if mode is DECODE_DICT or DECODE_CHKSUM.
-	 */
-	private int readAdler;
-	/**
-	 * The number of bits needed to complete the current state. This is valid,
-	 * if mode is DECODE_DICT, DECODE_CHKSUM, DECODE_HUFFMAN_LENBITS or
-	 * DECODE_HUFFMAN_DISTBITS.
-	 */
-	private int neededBits;
-	private int repLength, repDist;
-	private int uncomprLen;
-	/**
-	 * True, if the last block flag was set in the last block of the inflated
-	 * stream. This means that the stream ends after the current block.
-	 */
-	private boolean isLastBlock;
-
-	/**
-	 * The total number of inflated bytes.
-	 */
-	private int totalOut;
-	/**
-	 * The total number of bytes set with setInput(). This is not the value
-	 * returned by getTotalIn(), since this also includes the unprocessed input.
-	 */
-	private int totalIn;
-	/**
-	 * This variable stores the nowrap flag that was given to the constructor.
-	 * True means, that the inflated stream doesn't contain a header nor the
-	 * checksum in the footer.
-	 */
-	private final boolean nowrap;
-
-	private StreamManipulator input;
-	private OutputWindow outputWindow;
-	private InflaterDynHeader dynHeader;
-	private InflaterHuffmanTree litlenTree, distTree;
-	private Adler32 adler;
+	/** The backend that does the decompression. */
+	private final InflaterBackend backend;
 
 	/**
 	 * Creates a new inflater.
@@ -162,38 +92,49 @@ public class Inflater {
 	 *            case.
 	 */
 	public Inflater(final boolean nowrap) {
-		this.nowrap = nowrap;
-		this.adler = new Adler32();
-		input = new StreamManipulator();
-		outputWindow = new OutputWindow();
-		mode = nowrap ? DECODE_BLOCKS : DECODE_HEADER;
+		this(nowrap, backendFactory);
+	}
+
+	/**
+	 * Creates a new inflater with the given backend.
+	 *
+	 * @param nowrap
+	 *            true if no header and checksum field appears in the stream.
+	 * @param factory
+	 *            creates the backend that does the decompression.
+	 */
+	public Inflater(final boolean nowrap, final InflaterBackend.Factory factory) {
+		backend = factory.create(nowrap);
 	}
 
 	/**
-	 * Finalizes this object.
+	 * Returns the factory of the backends of new inflaters.
 	 */
-	@Override
-	protected void finalize() {
-		/* Exists only for compatibility */
+	public static InflaterBackend.Factory getBackendFactory() {
+		return backendFactory;
 	}
 
 	/**
-	 * Frees all objects allocated by the inflater. There's no reason to call
-	 * this, since you can just rely on garbage collection (even for the Sun
-	 * implementation). Exists only for compatibility with Sun's JDK, where the
-	 * compressor allocates native memory. If you call any method (even reset)
-	 * afterwards the behaviour is <i>undefined</i>.
+	 * Sets the factory of the backends of inflaters that are created from now
+	 * on, like InflaterBackend.JDK or InflaterBackend.JAZZLIB.
 	 *
-	 * @deprecated Just clear all references to inflater instead.
+	 * @param factory
+	 *            the factory.
+	 */
+	public static void setBackendFactory(final InflaterBackend.Factory factory) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		backendFactory = factory;
+	}
+
+	/**
+	 * Frees all resources allocated by the inflater, which for the JDK backend
+	 * includes native memory. If you call any method (even reset) afterwards
+	 * the behaviour is <i>undefined</i>.
 	 */
-	@Deprecated
 	public void end() {
-		outputWindow = null;
-		input = null;
-		dynHeader = null;
-		litlenTree = null;
-		distTree = null;
-		adler = null;
+		backend.end();
 	}
 
 	/**
@@ -201,7 +142,7 @@ public class Inflater {
 	 * needed and no output can be produced.
 	 */
 	public boolean finished() {
-		return (mode == FINISHED) && (outputWindow.getAvailable() == 0);
+		return backend.finished();
 	}
 
 	/**
@@ -213,7 +154,7 @@ public class Inflater {
 	 * @returns the adler checksum.
 	 */
 	public int getAdler() {
-		return needsDictionary() ? readAdler : (int) adler.getValue();
+		return backend.getAdler();
 	}
 
 	/**
@@ -224,7 +165,7 @@ public class Inflater {
 	 * @return the number of bytes of the input which were not processed.
 	 */
 	public int getRemaining() {
-		return input.getAvailableBytes();
+		return backend.getRemaining();
 	}
 
 	/**
@@ -233,7 +174,7 @@ public class Inflater {
 	 * @return the total number of bytes of processed input bytes.
 	 */
 	public int getTotalIn() {
-		return totalIn - getRemaining();
+		return backend.getTotalIn();
 	}
 
 	/**
@@ -242,7 +183,7 @@ public class Inflater {
 	 * @return the total number of output bytes.
 	 */
 	public int getTotalOut() {
-		return totalOut;
+		return backend.getTotalOut();
 	}
 
 	/**
@@ -281,47 +222,16 @@ public class Inflater {
 	 * @exception IndexOutOfBoundsException
 	 *                if the off and/or len are wrong.
 	 */
-	public int inflate(final byte[] buf, int off, int len)
+	public int inflate(final byte[] buf, final int off, final int len)
 			throws DataFormatException {
-		/* Special case: len may be zero */
-		if (len == 0) {
-			return 0;
-		}
-		/* Check for correct buff, off, len triple */
-		if ((0 > off) || (off > (off + len)) || ((off + len) > buf.length)) {
-			throw new ArrayIndexOutOfBoundsException();
-		}
-		int count = 0;
-		int more;
-		do {
-			if (mode != DECODE_CHKSUM) {
-				/*
-				 * Don't give away any output, if we are waiting for the
-				 * checksum in the input stream.
-				 *
-				 * With this trick we have always: needsInput() and not
-				 * finished() implies more output can be produced.
-				 */
-				more = outputWindow.copyOutput(buf, off, len);
-				adler.update(buf, off, more);
-				off += more;
-				count += more;
-				totalOut += more;
-				len -= more;
-				if (len == 0) {
-					return count;
-				}
-			}
-		} while (decode()
-				|| ((outputWindow.getAvailable() > 0) && (mode != DECODE_CHKSUM)));
-		return count;
+		return backend.inflate(buf, off, len);
 	}
 
 	/**
 	 * Returns true, if a preset dictionary is needed to inflate the input.
 	 */
 	public boolean needsDictionary() {
-		return (mode == DECODE_DICT) && (neededBits == 0);
+		return backend.needsDictionary();
 	}
 
 	/**
@@ -331,7 +241,7 @@ public class Inflater {
 	 * <em>NOTE</em>: This method also returns true when the stream is finished.
 	 */
 	public boolean needsInput() {
-		return input.needsInput();
+		return backend.needsInput();
 	}
 
 	/**
@@ -339,15 +249,7 @@ public class Inflater {
 	 * input and output will be discarded.
 	 */
 	public void reset() {
-		mode = nowrap ? DECODE_BLOCKS : DECODE_HEADER;
-		totalIn = totalOut = 0;
-		input.reset();
-		outputWindow.reset();
-		dynHeader = null;
-		litlenTree = null;
-		distTree = null;
-		isLastBlock = false;
-		adler.reset();
+		backend.reset();
 	}
 
 	/**
@@ -387,17 +289,7 @@ public class Inflater {
 	 *                if the off and/or len are wrong.
 	 */
 	public void setDictionary(final byte[] buffer, final int off, final int len) {
-		if (!needsDictionary()) {
-			throw new IllegalStateException();
-		}
-
-		adler.update(buffer, off, len);
-		if ((int) adler.getValue() != readAdler) {
-			throw new IllegalArgumentException("Wrong adler checksum");
-		}
-		adler.reset();
-		outputWindow.copyDict(buffer, off, len);
-		mode = DECODE_BLOCKS;
+		backend.setDictionary(buffer, off, len);
 	}
 
 	/**
@@ -427,284 +319,6 @@ public class Inflater {
 	 *                if the off and/or len are wrong.
 	 */
 	public void setInput(final byte[] buf, final int off, final int len) {
-		input.setInput(buf, off, len);
-		totalIn += len;
-	}
-
-	/**
-	 * Decodes the deflate header.
-	 *
-	 * @return false if more input is needed.
-	 * @exception DataFormatException
-	 *                if header is invalid.
-	 */
-	private boolean decodeHeader() throws DataFormatException {
-		int header = input.peekBits(16);
-		if (header < 0) {
-			return false;
-		}
-		input.dropBits(16);
-
-		/* The header is written in "wrong" byte order */
-		header = ((header << 8) | (header >> 8)) & 0xffff;
-		if ((header % 31) != 0) {
-			throw new DataFormatException("Header checksum illegal");
-		}
-
-		if ((header & 0x0f00) != (Deflater.DEFLATED << 8)) {
-			throw new DataFormatException("Compression Method unknown");
-		}
-
-		/*
-		 * Maximum size of the backwards window in bits. We currently ignore
-		 * this, but we could use it to make the inflater window more space
-		 * efficient. On the other hand the full window (15 bits) is needed most
-		 * times, anyway. int max_wbits = ((header & 0x7000) >> 12) + 8;
-		 */
-
-		if ((header & 0x0020) == 0) // Dictionary flag?
-		{
-			mode = DECODE_BLOCKS;
-		} else {
-			mode = DECODE_DICT;
-			neededBits = 32;
-		}
-		return true;
-	}
-
-	/**
-	 * Decodes the dictionary checksum after the deflate header.
-	 *
-	 * @return false if more input is needed.
-	 */
-	private boolean decodeDict() {
-		while (neededBits > 0) {
-			final int dictByte = input.peekBits(8);
-			if (dictByte < 0) {
-				return false;
-			}
-			input.dropBits(8);
-			readAdler = (readAdler << 8) | dictByte;
-			neededBits -= 8;
-		}
-		return false;
-	}
-
-	/**
-	 * Decodes the huffman encoded symbols in the input stream.
-	 *
-	 * @return false if more input is needed, true if output window is full or
-	 *         the current block ends.
-	 * @exception DataFormatException
-	 *                if deflated stream is invalid.
-	 */
-	private boolean decodeHuffman() throws DataFormatException {
-		int free = outputWindow.getFreeSpace();
-		while (free >= 258) {
-			int symbol;
-			switch (mode) {
-			case DECODE_HUFFMAN:
-				/* This is the inner loop so it is optimized a bit */
-				while (((symbol = litlenTree.getSymbol(input)) & ~0xff) == 0) {
-					outputWindow.write(symbol);
-					if (--free < 258) {
-						return true;
-					}
-				}
-				if (symbol < 257) {
-					if (symbol < 0) {
-						return false;
-					} else {
-						/* symbol == 256: end of block */
-						distTree = null;
-						litlenTree = null;
-						mode = DECODE_BLOCKS;
-						return true;
-					}
-				}
-
-				try {
-					repLength = CPLENS[symbol - 257];
-					neededBits = CPLEXT[symbol - 257];
-				} catch (final ArrayIndexOutOfBoundsException ex) {
-					throw new DataFormatException("Illegal rep length code");
-				}
-				/* fall through */
-			case DECODE_HUFFMAN_LENBITS:
-				if (neededBits > 0) {
-					mode = DECODE_HUFFMAN_LENBITS;
-					final int i = input.peekBits(neededBits);
-					if (i < 0) {
-						return false;
-					}
-					input.dropBits(neededBits);
-					repLength += i;
-				}
-				mode = DECODE_HUFFMAN_DIST;
-				/* fall through */
-			case DECODE_HUFFMAN_DIST:
-				symbol = distTree.getSymbol(input);
-				if (symbol < 0) {
-					return false;
-				}
-				try {
-					repDist = CPDIST[symbol];
-					neededBits = CPDEXT[symbol];
-				} catch (final ArrayIndexOutOfBoundsException ex) {
-					throw new DataFormatException("Illegal rep dist code");
-				}
-				/* fall through */
-			case DECODE_HUFFMAN_DISTBITS:
-				if (neededBits > 0) {
-					mode = DECODE_HUFFMAN_DISTBITS;
-					final int i = input.peekBits(neededBits);
-					if (i < 0) {
-						return false;
-					}
-					input.dropBits(neededBits);
-					repDist += i;
-				}
-				outputWindow.repeat(repLength, repDist);
-				free -= repLength;
-				mode = DECODE_HUFFMAN;
-				break;
-			default:
-				throw new IllegalStateException();
-			}
-		}
-		return true;
-	}
-
-	/**
-	 * Decodes the adler checksum after the deflate stream.
-	 *
-	 * @return false if more input is needed.
-	 * @exception DataFormatException
-	 *                if checksum doesn't match.
-	 */
-	private boolean decodeChksum() throws DataFormatException {
-		while (neededBits > 0) {
-			final int chkByte = input.peekBits(8);
-			if (chkByte < 0) {
-				return false;
-			}
-			input.dropBits(8);
-			readAdler = (readAdler << 8) | chkByte;
-			neededBits -= 8;
-		}
-		if ((int) adler.getValue() != readAdler) {
-			throw new DataFormatException("Adler chksum doesn't match: "
-					+ Integer.toHexString((int) adler.getValue()) + " vs. "
-					+ Integer.toHexString(readAdler));
-		}
-		mode = FINISHED;
-		return false;
-	}
-
-	/**
-	 * Decodes the deflated stream.
-	 *
-	 * @return false if more input is needed, or if finished.
-	 * @exception DataFormatException
-	 *                if deflated stream is invalid.
-	 */
-	private boolean decode() throws DataFormatException {
-		switch (mode) {
-		case DECODE_HEADER:
-			return decodeHeader();
-		case DECODE_DICT:
-			return decodeDict();
-		case DECODE_CHKSUM:
-			return decodeChksum();
-
-		case DECODE_BLOCKS:
-			if (isLastBlock) {
-				if (nowrap) {
-					mode = FINISHED;
-					return false;
-				} else {
-					input.skipToByteBoundary();
-					neededBits = 32;
-					mode = DECODE_CHKSUM;
-					return true;
-				}
-			}
-
-			final int type = input.peekBits(3);
-			if (type < 0) {
-				return false;
-			}
-			input.dropBits(3);
-
-			if ((type & 1) != 0) {
-				isLastBlock = true;
-			}
-			switch (type >> 1) {
-			case DeflaterConstants.STORED_BLOCK:
-				input.skipToByteBoundary();
-				mode = DECODE_STORED_LEN1;
-				break;
-			case DeflaterConstants.STATIC_TREES:
-				litlenTree = InflaterHuffmanTree.defLitLenTree;
-				distTree = InflaterHuffmanTree.defDistTree;
-				mode = DECODE_HUFFMAN;
-				break;
-			case DeflaterConstants.DYN_TREES:
-				dynHeader = new InflaterDynHeader();
-				mode = DECODE_DYN_HEADER;
-				break;
-			default:
-				throw new DataFormatException("Unknown block type " + type);
-			}
-			return true;
-
-		case DECODE_STORED_LEN1: {
-			if ((uncomprLen = input.peekBits(16)) < 0) {
-				return false;
-			}
-			input.dropBits(16);
-			mode = DECODE_STORED_LEN2;
-		}
-		/* fall through */
-		case DECODE_STORED_LEN2: {
-			final int nlen = input.peekBits(16);
-			if (nlen < 0) {
-				return false;
-			}
-			input.dropBits(16);
-			if (nlen != (uncomprLen ^ 0xffff)) {
-				throw new DataFormatException("broken uncompressed block");
-			}
-			mode = DECODE_STORED;
-		}
-		/* fall through */
-		case DECODE_STORED: {
-			final int more = outputWindow.copyStored(input, uncomprLen);
-			uncomprLen -= more;
-			if (uncomprLen == 0) {
-				mode = DECODE_BLOCKS;
-				return true;
-			}
-			return !input.needsInput();
-		}
-
-		case DECODE_DYN_HEADER:
-			if (!dynHeader.decode(input)) {
-				return false;
-			}
-			litlenTree = dynHeader.buildLitLenTree();
-			distTree = dynHeader.buildDistTree();
-			mode = DECODE_HUFFMAN;
-			/* fall through */
-		case DECODE_HUFFMAN:
-		case DECODE_HUFFMAN_LENBITS:
-		case DECODE_HUFFMAN_DIST:
-		case DECODE_HUFFMAN_DISTBITS:
-			return decodeHuffman();
-		case FINISHED:
-			return false;
-		default:
-			throw new IllegalStateException();
-		}
+		backend.setInput(buf, off, len);
 	}
 }
@@ -0,0 +1,83 @@
+package net.sf.jazzlib;
+
+/**
+ * The implementation that an <code>Inflater</code> hands its work to.
+ *
+ * Two backends come with jazzlib: {@link #JDK}, which uses the native zlib of
+ * <code>java.util.zip.Inflater</code>, and {@link #JAZZLIB}, the pure Java
+ * implementation, for environments where java.util.zip is missing or broken.
+ * The methods have the meaning of the <code>Inflater</code> methods of the
+ * same name.
+ *
+ * @see Inflater#setBackendFactory(InflaterBackend.Factory)
+ */
+public interface InflaterBackend {
+
+	/**
+	 * Creates the backend of a new <code>Inflater</code>.
+	 */
+	interface Factory {
+
+		/**
+		 * @param nowrap
+		 *            true if no header and checksum field appears in the
+		 *            stream.
+		 */
+		InflaterBackend create(boolean nowrap);
+	}
+
+	/**
+	 * Creates backends that inflate with <code>java.util.zip.Inflater</code>.
+	 */
+	Factory JDK = new Factory() {
+
+		public InflaterBackend create(final boolean nowrap) {
+			return new JdkInflater(nowrap);
+		}
+
+		@Override
+		public String toString() {
+			return "jdk";
+		}
+	};
+
+	/**
+	 * Creates backends that inflate with the pure Java implementation of
+	 * jazzlib.
+	 */
+	Factory JAZZLIB = new Factory() {
+
+		public InflaterBackend create(final boolean nowrap) {
+			return new JazzlibInflater(nowrap);
+		}
+
+		@Override
+		public String toString() {
+			return "jazzlib";
+		}
+	};
+
+	void end();
+
+	boolean finished();
+
+	int getAdler();
+
+	int getRemaining();
+
+	int getTotalIn();
+
+	int getTotalOut();
+
+	int inflate(byte[] buf, int off, int len) throws DataFormatException;
+
+	boolean needsDictionary();
+
+	boolean needsInput();
+
+	void reset();
+
+	void setDictionary(byte[] buffer, int off, int len);
+
+	void setInput(byte[] buf, int off, int len);
+}
@@ -59,6 +59,12 @@ public class InflaterInputStream extends FilterInputStream {
 	 */
 	protected Inflater inf;
 
+	/**
+	 * True if the inflater was created by this stream, which then ends it
+	 * when closed.
+	 */
+	boolean usesDefaultInflater = false;
+
 	/**
 	 * Byte array used as a buffer
 	 */
@@ -84,6 +90,7 @@ public class InflaterInputStream extends FilterInputStream {
 	 */
 	public InflaterInputStream(final InputStream in) {
 		this(in, new Inflater(), 4096);
+		usesDefaultInflater = true;
 	}
 
 	/**
@@ -141,12 +148,19 @@ public class InflaterInputStream extends FilterInputStream {
 	}
 
 	/**
-	 * Closes the input stream
+	 * Closes the input stream, and ends the inflater if it was created by this
+	 * stream.
 	 */
 	@Override
 	public synchronized void close() throws IOException {
 		if (in != null) {
-			in.close();
+			try {
+				in.close();
+			} finally {
+				if (usesDefaultInflater) {
+					inf.end();
+				}
+			}
 		}
 		in = null;
 	}
@@ -218,9 +232,9 @@ public class InflaterInputStream extends FilterInputStream {
 				return -1;
 			} else if (inf.needsInput()) {
 				fill();
-			} else {
-				throw new InternalError("Don't know what to do");
 			}
+			// otherwise the inflater consumed input without producing output
+			// yet, which the JDK backend may do
 		}
 	}
 
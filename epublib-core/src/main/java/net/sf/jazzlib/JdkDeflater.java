@@ -0,0 +1,159 @@
+package net.sf.jazzlib;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Deflates with <code>java.util.zip.Deflater</code>, which uses the native
+ * zlib of the JVM.
+ *
+ * flush() needs the sync flush of <code>java.util.zip.Deflater</code>, which
+ * was added in Java 7. It is looked up by reflection, so that this class
+ * still loads on older JVMs, where flush() has no effect.
+ *
+ * @see DeflaterBackend#JDK
+ */
+final class JdkDeflater implements DeflaterBackend {
+
+	/* java.util.zip.Deflater.SYNC_FLUSH */
+	private static final int SYNC_FLUSH = 2;
+
+	/* java.util.zip.Deflater.deflate(byte[], int, int, int), null before Java 7 */
+	private static final Method DEFLATE_WITH_FLUSH = findDeflateWithFlush();
+
+	private final java.util.zip.Deflater deflater;
+
+	// whether the output should be sync flushed by the next calls to deflate
+	private boolean flushing = false;
+
+	// whether the level or strategy changed since the last call to deflate
+	private boolean paramsChanged = false;
+
+	JdkDeflater(final int level, final boolean nowrap) {
+		if ((level != Deflater.DEFAULT_COMPRESSION)
+				&& ((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))) {
+			throw new IllegalArgumentException();
+		}
+		deflater = new java.util.zip.Deflater(level, nowrap);
+	}
+
+	public void reset() {
+		flushing = false;
+		deflater.reset();
+	}
+
+	public void end() {
+		deflater.end();
+	}
+
+	public int getAdler() {
+		return deflater.getAdler();
+	}
+
+	public int getTotalIn() {
+		return deflater.getTotalIn();
+	}
+
+	public int getTotalOut() {
+		return deflater.getTotalOut();
+	}
+
+	public long getBytesWritten() {
+		return deflater.getBytesWritten();
+	}
+
+	/**
+	 * Whether flush() works, which it does from Java 7 on.
+	 */
+	static boolean canFlush() {
+		return DEFLATE_WITH_FLUSH != null;
+	}
+
+	private static Method findDeflateWithFlush() {
+		try {
+			return java.util.zip.Deflater.class.getMethod("deflate",
+					byte[].class, int.class, int.class, int.class);
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Makes the following calls to deflate() sync flush, until all output is
+	 * given. Does nothing before Java 7.
+	 */
+	public void flush() {
+		flushing = canFlush();
+	}
+
+	public void finish() {
+		flushing = false;
+		deflater.finish();
+	}
+
+	public boolean finished() {
+		return deflater.finished();
+	}
+
+	public boolean needsInput() {
+		return deflater.needsInput();
+	}
+
+	public void setInput(final byte[] input, final int off, final int len) {
+		deflater.setInput(input, off, len);
+	}
+
+	public void setLevel(final int level) {
+		deflater.setLevel(level);
+		paramsChanged = true;
+	}
+
+	public void setStrategy(final int strategy) {
+		deflater.setStrategy(strategy);
+		paramsChanged = true;
+	}
+
+	/**
+	 * The first call after the level or strategy changed may only apply the
+	 * change, without taking input or giving output; deflate is called again
+	 * then, as callers take a result of 0 to mean that more input is needed.
+	 */
+	public int deflate(final byte[] output, final int offset, final int length) {
+		int result = deflate(output, offset, length, flushing);
+		if (paramsChanged) {
+			paramsChanged = false;
+			if (result == 0) {
+				result = deflate(output, offset, length, flushing);
+			}
+		}
+		if (flushing && (result < length)) {
+			// all output of the flush has been given
+			flushing = false;
+		}
+		return result;
+	}
+
+	private int deflate(final byte[] output, final int offset,
+			final int length, final boolean flush) {
+		if (!flush) {
+			return deflater.deflate(output, offset, length);
+		}
+		try {
+			return ((Integer) DEFLATE_WITH_FLUSH.invoke(deflater, output,
+					offset, length, SYNC_FLUSH)).intValue();
+		} catch (final IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (final InvocationTargetException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	public void setDictionary(final byte[] dict, final int offset,
+			final int length) {
+		deflater.setDictionary(dict, offset, length);
+	}
+}
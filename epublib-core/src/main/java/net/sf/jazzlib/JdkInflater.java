@@ -0,0 +1,69 @@
+package net.sf.jazzlib;
+
+/**
+ * Inflates with <code>java.util.zip.Inflater</code>, which uses the native
+ * zlib of the JVM.
+ *
+ * @see InflaterBackend#JDK
+ */
+final class JdkInflater implements InflaterBackend {
+
+	private final java.util.zip.Inflater inflater;
+
+	JdkInflater(final boolean nowrap) {
+		inflater = new java.util.zip.Inflater(nowrap);
+	}
+
+	public void end() {
+		inflater.end();
+	}
+
+	public boolean finished() {
+		return inflater.finished();
+	}
+
+	public int getAdler() {
+		return inflater.getAdler();
+	}
+
+	public int getRemaining() {
+		return inflater.getRemaining();
+	}
+
+	public int getTotalIn() {
+		return inflater.getTotalIn();
+	}
+
+	public int getTotalOut() {
+		return inflater.getTotalOut();
+	}
+
+	public int inflate(final byte[] buf, final int off, final int len)
+			throws DataFormatException {
+		try {
+			return inflater.inflate(buf, off, len);
+		} catch (final java.util.zip.DataFormatException e) {
+			throw new DataFormatException(e.getMessage());
+		}
+	}
+
+	public boolean needsDictionary() {
+		return inflater.needsDictionary();
+	}
+
+	public boolean needsInput() {
+		return inflater.needsInput();
+	}
+
+	public void reset() {
+		inflater.reset();
+	}
+
+	public void setDictionary(final byte[] buffer, final int off, final int len) {
+		inflater.setDictionary(buffer, off, len);
+	}
+
+	public void setInput(final byte[] buf, final int off, final int len) {
+		inflater.setInput(buf, off, len);
+	}
+}
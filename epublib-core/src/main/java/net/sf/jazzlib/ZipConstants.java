@@ -92,4 +92,21 @@ interface ZipConstants {
 	int ENDSIZ = 12;
 	int ENDOFF = 16;
 	int ENDCOM = 20;
+
+	/* The ZIP64 end of central directory locator */
+	int ZIP64_LOCSIG = 'P' | ('K' << 8) | (6 << 16) | (7 << 24);
+	int ZIP64_LOCHDR = 20;
+
+	int ZIP64_LOCOFF = 8;
+
+	/* The ZIP64 end of central directory record */
+	int ZIP64_ENDSIG = 'P' | ('K' << 8) | (6 << 16) | (6 << 24);
+	int ZIP64_ENDHDR = 56;
+
+	int ZIP64_ENDTOT = 32;
+	int ZIP64_ENDSIZ = 40;
+	int ZIP64_ENDOFF = 48;
+
+	/* The ZIP64 extended information extra field */
+	int ZIP64_EXTID = 0x0001;
 }
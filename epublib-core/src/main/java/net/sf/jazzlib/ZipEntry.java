@@ -37,6 +37,9 @@ exception statement from your version. */
 
 package net.sf.jazzlib;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -57,8 +60,8 @@ public class ZipEntry implements ZipConstants, Cloneable {
 	private static Calendar cal;
 
 	private final String name;
-	private int size;
-	private int compressedSize;
+	private long size;
+	private long compressedSize;
 	private int crc;
 	private int dostime;
 	private short known = 0;
@@ -67,7 +70,14 @@ public class ZipEntry implements ZipConstants, Cloneable {
 	private String comment = null;
 
 	int flags; /* used by ZipOutputStream */
-	int offset; /* used by ZipFile and ZipOutputStream */
+	long offset; /* used by ZipFile and ZipOutputStream */
+
+	/*
+	 * The name as stored in the zip file, if it is not the UTF-8 encoding of
+	 * the name. Set by ZipFile, so that ZipOutputStream writes such names
+	 * unchanged.
+	 */
+	byte[] rawName;
 
 	/**
 	 * Compression method. This method doesn't compress at all.
@@ -113,6 +123,32 @@ public class ZipEntry implements ZipConstants, Cloneable {
 		method = e.method;
 		extra = e.extra;
 		comment = e.comment;
+		rawName = e.rawName;
+	}
+
+	/**
+	 * Decodes a name or comment as stored in a zip file. It is decoded as
+	 * UTF-8 if the language encoding flag is set or if it is valid UTF-8, and
+	 * as ISO-8859-1 otherwise.
+	 */
+	static String decode(final byte[] buffer, final int off, final int len,
+			final int flags) {
+		if ((flags & ZipOutputStream.UTF8_FLAG) != 0) {
+			return new String(buffer, off, len, ZipOutputStream.UTF8);
+		}
+		try {
+			return ZipOutputStream.UTF8.newDecoder()
+					.decode(ByteBuffer.wrap(buffer, off, len)).toString();
+		} catch (final CharacterCodingException e) {
+			return new String(buffer, off, len, Charset.forName("ISO-8859-1"));
+		}
+	}
+
+	/**
+	 * Returns the name as it is written to a zip file.
+	 */
+	final byte[] getNameBytes() {
+		return rawName != null ? rawName : name.getBytes(ZipOutputStream.UTF8);
 	}
 
 	final void setDOSTime(final int dostime) {
@@ -215,16 +251,17 @@ public class ZipEntry implements ZipConstants, Cloneable {
 	}
 
 	/**
-	 * Sets the size of the uncompressed data.
+	 * Sets the size of the uncompressed data. Sizes of 4GB and more are
+	 * written as ZIP64 by ZipOutputStream.
 	 *
 	 * @exception IllegalArgumentException
-	 *                if size is not in 0..0xffffffffL
+	 *                if size is negative
 	 */
 	public void setSize(final long size) {
-		if ((size & 0xffffffff00000000L) != 0) {
+		if (size < 0) {
 			throw new IllegalArgumentException();
 		}
-		this.size = (int) size;
+		this.size = size;
 		this.known |= KNOWN_SIZE;
 	}
 
@@ -234,20 +271,21 @@ public class ZipEntry implements ZipConstants, Cloneable {
 	 * @return the size or -1 if unknown.
 	 */
 	public long getSize() {
-		return (known & KNOWN_SIZE) != 0 ? size & 0xffffffffL : -1L;
+		return (known & KNOWN_SIZE) != 0 ? size : -1L;
 	}
 
 	/**
-	 * Sets the size of the compressed data.
+	 * Sets the size of the compressed data. Sizes of 4GB and more are written
+	 * as ZIP64 by ZipOutputStream.
 	 *
 	 * @exception IllegalArgumentException
-	 *                if size is not in 0..0xffffffffL
+	 *                if size is negative
 	 */
 	public void setCompressedSize(final long csize) {
-		if ((csize & 0xffffffff00000000L) != 0) {
+		if (csize < 0) {
 			throw new IllegalArgumentException();
 		}
-		this.compressedSize = (int) csize;
+		this.compressedSize = csize;
 		this.known |= KNOWN_CSIZE;
 	}
 
@@ -257,7 +295,7 @@ public class ZipEntry implements ZipConstants, Cloneable {
 	 * @return the size or -1 if unknown.
 	 */
 	public long getCompressedSize() {
-		return (known & KNOWN_CSIZE) != 0 ? compressedSize & 0xffffffffL : -1L;
+		return (known & KNOWN_CSIZE) != 0 ? compressedSize : -1L;
 	}
 
 	/**
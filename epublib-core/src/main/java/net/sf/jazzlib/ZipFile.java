@@ -38,15 +38,15 @@ exception statement from your version. */
 package net.sf.jazzlib;
 
 import java.io.BufferedInputStream;
-import java.io.DataInput;
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -56,7 +56,10 @@ import java.util.NoSuchElementException;
  * decompressed.
  *
  * This class is thread safe: You can open input streams for arbitrary entries
- * in different threads.
+ * in different threads. With the default access mode the reads of those
+ * streams are serialized on the underlying file; open the ZipFile with
+ * {@link AccessMode#FILE_CHANNEL} or {@link AccessMode#MEMORY_MAPPED} to let
+ * them read concurrently.
  *
  * @author Jochen Hoenicke
  * @author Artur Biesiadowski
@@ -73,17 +76,53 @@ public class ZipFile implements ZipConstants {
 	 */
 	public static final int OPEN_DELETE = 0x4;
 
+	/**
+	 * The ways in which a ZipFile can read the zip file.
+	 */
+	public enum AccessMode {
+		/**
+		 * Seek and read on a single RandomAccessFile. Reads of different
+		 * threads are serialized. This is the default.
+		 */
+		RANDOM_ACCESS_FILE,
+
+		/**
+		 * Positional reads on a FileChannel, without a shared file pointer,
+		 * so that many threads can read (and inflate) different entries at
+		 * the same time. A thread that is interrupted while reading gets a
+		 * ClosedByInterruptException, the reads of the other threads are not
+		 * affected.
+		 */
+		FILE_CHANNEL,
+
+		/**
+		 * Reads from a read-only memory mapping of the zip file. Reads are
+		 * concurrent like with FILE_CHANNEL and avoid a system call per read.
+		 * Files larger than 2GB are read as with FILE_CHANNEL.
+		 */
+		MEMORY_MAPPED
+	}
+
 	// Name of this zip file.
 	private final String name;
 
+	// The way zip entries are read.
+	private final AccessMode accessMode;
+
 	// File from which zip entries are read.
-	private final RandomAccessFile raf;
+	private final ZipFileSource source;
 
 	// The entries of this zip file when initialized and not yet closed.
 	private Map<String, ZipEntry> entries;
 
 	private boolean closed = false;
 
+	// Nanoseconds spent reading the central directory, -1 if not yet read.
+	private long readEntriesTime = -1;
+
+	// Offset of the central directory, valid once the entries are read.
+	private long centralDirectoryOffset;
+
 	/**
 	 * Opens a Zip file with the given name for reading.
 	 *
@@ -93,8 +132,23 @@ public class ZipFile implements ZipConstants {
 	 *                if the file doesn't contain a valid zip archive.
 	 */
 	public ZipFile(final String name) throws ZipException, IOException {
-		this.raf = new RandomAccessFile(name, "r");
+		this(name, AccessMode.RANDOM_ACCESS_FILE);
+	}
+
+	/**
+	 * Opens a Zip file with the given name for reading, using the given access
+	 * mode.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception ZipException
+	 *                if the file doesn't contain a valid zip archive.
+	 */
+	public ZipFile(final String name, final AccessMode accessMode)
+			throws ZipException, IOException {
+		this.source = ZipFileSource.open(new File(name), accessMode);
 		this.name = name;
+		this.accessMode = accessMode;
 	}
 
 	/**
@@ -106,8 +160,22 @@ public class ZipFile implements ZipConstants {
 	 *                if the file doesn't contain a valid zip archive.
 	 */
 	public ZipFile(final File file) throws ZipException, IOException {
-		this.raf = new RandomAccessFile(file, "r");
+		this(file, AccessMode.RANDOM_ACCESS_FILE);
+	}
+
+	/**
+	 * Opens a Zip file reading the given File, using the given access mode.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception ZipException
+	 *                if the file doesn't contain a valid zip archive.
+	 */
+	public ZipFile(final File file, final AccessMode accessMode)
+			throws ZipException, IOException {
+		this.source = ZipFileSource.open(file, accessMode);
 		this.name = file.getPath();
+		this.accessMode = accessMode;
 	}
 
 	/**
@@ -136,51 +204,9 @@ public class ZipFile implements ZipConstants {
 			throw new IllegalArgumentException(
 					"OPEN_DELETE mode not supported yet in net.sf.jazzlib.ZipFile");
 		}
-		this.raf = new RandomAccessFile(file, "r");
+		this.source = ZipFileSource.open(file, AccessMode.RANDOM_ACCESS_FILE);
 		this.name = file.getPath();
-	}
-
-	/**
-	 * Read an unsigned short in little endian byte order from the given
-	 * DataInput stream using the given byte buffer.
-	 *
-	 * @param di
-	 *            DataInput stream to read from.
-	 * @param b
-	 *            the byte buffer to read in (must be at least 2 bytes long).
-	 * @return The value read.
-	 *
-	 * @exception IOException
-	 *                if a i/o error occured.
-	 * @exception EOFException
-	 *                if the file ends prematurely
-	 */
-	private final int readLeShort(final DataInput di, final byte[] b)
-			throws IOException {
-		di.readFully(b, 0, 2);
-		return (b[0] & 0xff) | ((b[1] & 0xff) << 8);
-	}
-
-	/**
-	 * Read an int in little endian byte order from the given DataInput stream
-	 * using the given byte buffer.
-	 *
-	 * @param di
-	 *            DataInput stream to read from.
-	 * @param b
-	 *            the byte buffer to read in (must be at least 4 bytes long).
-	 * @return The value read.
-	 *
-	 * @exception IOException
-	 *                if a i/o error occured.
-	 * @exception EOFException
-	 *                if the file ends prematurely
-	 */
-	private final int readLeInt(final DataInput di, final byte[] b)
-			throws IOException {
-		di.readFully(b, 0, 4);
-		return ((b[0] & 0xff) | ((b[1] & 0xff) << 8))
-				| (((b[2] & 0xff) | ((b[3] & 0xff) << 8)) << 16);
+		this.accessMode = AccessMode.RANDOM_ACCESS_FILE;
 	}
 
 	/**
@@ -213,90 +239,256 @@ public class ZipFile implements ZipConstants {
 	}
 
 	/**
-	 * Read the central directory of a zip file and fill the entries array. This
-	 * is called exactly once when first needed. It is called while holding the
-	 * lock on <code>raf</code>.
+	 * Read a long in little endian byte order from the given byte buffer at
+	 * the given offset.
+	 *
+	 * @param b
+	 *            the byte array to read from.
+	 * @param off
+	 *            the offset to read from.
+	 * @return The value read.
+	 */
+	private final long readLeLong(final byte[] b, final int off) {
+		return (readLeInt(b, off) & 0xffffffffL)
+				| ((long) readLeInt(b, off + 4) << 32);
+	}
+
+	/**
+	 * Locates the End Of Central Directory record and reads from it (or from
+	 * the ZIP64 End Of Central Directory record it refers to) the number of
+	 * entries and the position and size of the central directory.
+	 *
+	 * The record is searched for in a single read of the last 64KB + 22
+	 * bytes of the file, the most that a zip file comment can push it away
+	 * from the end. Bytes after the comment are tolerated.
 	 *
+	 * @return { number of entries, central directory offset, central
+	 *         directory size }
 	 * @exception IOException
 	 *                if a i/o error occured.
 	 * @exception ZipException
-	 *                if the central directory is malformed
+	 *                if no End Of Central Directory record was found
 	 */
-	private void readEntries() throws ZipException, IOException {
+	private long[] readEndOfCentralDirectory() throws ZipException,
+			IOException {
+		final long length = source.length();
+		final int tailLength = (int) Math.min(length, ZIP64_LOCHDR + ENDHDR
+				+ 0xffff);
+		final long tailStart = length - tailLength;
+		final byte[] tail = new byte[tailLength];
+		source.readFully(tailStart, tail, 0, tailLength);
+
 		/*
-		 * Search for the End Of Central Directory. When a zip comment is
-		 * present the directory may start earlier. FIXME: This searches the
-		 * whole file in a very slow manner if the file isn't a zip file.
+		 * The comment may itself contain something that looks like the
+		 * record, so a record whose comment ends exactly at the end of the
+		 * file is preferred over one that is followed by other bytes.
 		 */
-		long pos = raf.length() - ENDHDR;
-		final byte[] ebs = new byte[CENHDR];
+		int endPos = -1;
+		for (int pos = tailLength - ENDHDR; pos >= 0; pos--) {
+			if (readLeInt(tail, pos) != ENDSIG) {
+				continue;
+			}
+			final int end = pos + ENDHDR + readLeShort(tail, pos + ENDCOM);
+			if (end == tailLength) {
+				endPos = pos;
+				break;
+			}
+			if ((end < tailLength) && (endPos < 0)) {
+				endPos = pos;
+			}
+		}
+		if (endPos < 0) {
+			throw new ZipException(
+					"central directory not found, probably not a zip file: "
+							+ name);
+		}
+
+		final long[] result = new long[] { readLeShort(tail, endPos + ENDTOT),
+				readLeInt(tail, endPos + ENDOFF) & 0xffffffffL,
+				readLeInt(tail, endPos + ENDSIZ) & 0xffffffffL };
+
+		/* A ZIP64 locator, if present, directly precedes the record. */
+		final int locatorPos = endPos - ZIP64_LOCHDR;
+		if ((locatorPos < 0) || (readLeInt(tail, locatorPos) != ZIP64_LOCSIG)) {
+			return result;
+		}
+		final long zip64EndOffset = readLeLong(tail, locatorPos
+				+ ZIP64_LOCOFF);
+		final byte[] zip64End = new byte[ZIP64_ENDHDR];
+		source.readFully(zip64EndOffset, zip64End, 0, ZIP64_ENDHDR);
+		if (readLeInt(zip64End, 0) != ZIP64_ENDSIG) {
+			throw new ZipException("Wrong ZIP64 End Of Central Directory signature: "
+					+ name);
+		}
+		result[0] = readLeLong(zip64End, ZIP64_ENDTOT);
+		result[1] = readLeLong(zip64End, ZIP64_ENDOFF);
+		result[2] = readLeLong(zip64End, ZIP64_ENDSIZ);
+		return result;
+	}
 
-		do {
-			if (pos < 0) {
-				throw new ZipException(
-						"central directory not found, probably not a zip file: "
+	/**
+	 * Applies the ZIP64 extended information extra field of a central
+	 * directory entry to the size, compressed size and offset values that
+	 * were too large for the entry's header.
+	 *
+	 * @param values
+	 *            { size, compressed size, offset } as read from the header,
+	 *            updated in place.
+	 * @exception ZipException
+	 *                if the extra field is malformed
+	 */
+	private void readZip64Extra(final byte[] extra, final long[] values)
+			throws ZipException {
+		int pos = 0;
+		while ((pos + 4) <= extra.length) {
+			final int tag = readLeShort(extra, pos);
+			final int len = readLeShort(extra, pos + 2);
+			pos += 4;
+			if (tag == ZIP64_EXTID) {
+				final int end = pos + len;
+				for (int i = 0; i < values.length; i++) {
+					if (values[i] != 0xffffffffL) {
+						continue;
+					}
+					if ((pos + 8) > end) {
+						throw new ZipException("Malformed ZIP64 extra field: "
 								+ name);
+					}
+					values[i] = readLeLong(extra, pos);
+					pos += 8;
+				}
+				return;
 			}
-			raf.seek(pos--);
-		} while (readLeInt(raf, ebs) != ENDSIG);
+			pos += len;
+		}
+	}
 
-		if (raf.skipBytes(ENDTOT - ENDNRD) != (ENDTOT - ENDNRD)) {
-			throw new EOFException(name);
+	private static boolean isAscii(final byte[] buffer, final int off,
+			final int len) {
+		for (int i = off; i < (off + len); i++) {
+			if (buffer[i] < 0) {
+				return false;
+			}
 		}
-		final int count = readLeShort(raf, ebs);
-		if (raf.skipBytes(ENDOFF - ENDSIZ) != (ENDOFF - ENDSIZ)) {
-			throw new EOFException(name);
+		return true;
+	}
+
+	/**
+	 * Read the central directory of a zip file and fill the entries array. This
+	 * is called exactly once when first needed. It is called while holding the
+	 * lock on <code>source</code>.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception ZipException
+	 *                if the central directory is malformed
+	 */
+	private void readEntries() throws ZipException, IOException {
+		final long startTime = System.nanoTime();
+		final long[] endOfCentralDirectory = readEndOfCentralDirectory();
+		final long count = endOfCentralDirectory[0];
+		final long centralOffset = endOfCentralDirectory[1];
+		final long centralSize = endOfCentralDirectory[2];
+
+		if ((count > Integer.MAX_VALUE) || (centralSize > Integer.MAX_VALUE)
+				|| ((count * CENHDR) > centralSize)) {
+			throw new ZipException("Central directory is malformed: " + name);
 		}
-		final int centralOffset = readLeInt(raf, ebs);
 
-		entries = new HashMap<String, ZipEntry>(count + (count / 2));
-		raf.seek(centralOffset);
+		/* Read the whole central directory at once and parse it in memory. */
+		final byte[] central = new byte[(int) centralSize];
+		source.readFully(centralOffset, central, 0, central.length);
 
-		byte[] buffer = new byte[16];
+		entries = new LinkedHashMap<String, ZipEntry>((int) (count + (count / 2)));
+		final long[] values = new long[3];
+		int pos = 0;
 		for (int i = 0; i < count; i++) {
-			raf.readFully(ebs);
-			if (readLeInt(ebs, 0) != CENSIG) {
+			if (((pos + CENHDR) > central.length)
+					|| (readLeInt(central, pos) != CENSIG)) {
 				throw new ZipException("Wrong Central Directory signature: "
 						+ name);
 			}
 
-			final int method = readLeShort(ebs, CENHOW);
-			final int dostime = readLeInt(ebs, CENTIM);
-			final int crc = readLeInt(ebs, CENCRC);
-			final int csize = readLeInt(ebs, CENSIZ);
-			final int size = readLeInt(ebs, CENLEN);
-			final int nameLen = readLeShort(ebs, CENNAM);
-			final int extraLen = readLeShort(ebs, CENEXT);
-			final int commentLen = readLeShort(ebs, CENCOM);
-
-			final int offset = readLeInt(ebs, CENOFF);
-
-			final int needBuffer = Math.max(nameLen, commentLen);
-			if (buffer.length < needBuffer) {
-				buffer = new byte[needBuffer];
+			final int flags = readLeShort(central, pos + CENFLG);
+			final int method = readLeShort(central, pos + CENHOW);
+			final int dostime = readLeInt(central, pos + CENTIM);
+			final int crc = readLeInt(central, pos + CENCRC);
+			values[0] = readLeInt(central, pos + CENLEN) & 0xffffffffL;
+			values[1] = readLeInt(central, pos + CENSIZ) & 0xffffffffL;
+			values[2] = readLeInt(central, pos + CENOFF) & 0xffffffffL;
+			final int nameLen = readLeShort(central, pos + CENNAM);
+			final int extraLen = readLeShort(central, pos + CENEXT);
+			final int commentLen = readLeShort(central, pos + CENCOM);
+			pos += CENHDR;
+
+			if ((pos + nameLen + extraLen + commentLen) > central.length) {
+				throw new ZipException("Central directory is malformed: "
+						+ name);
 			}
 
-			raf.readFully(buffer, 0, nameLen);
-			final String name = new String(buffer, 0, 0, nameLen);
-
+			final String name = ZipEntry.decode(central, pos, nameLen, flags);
 			final ZipEntry entry = new ZipEntry(name);
+			if (!isAscii(central, pos, nameLen)) {
+				/* keep names that do not round trip through UTF-8 as they are */
+				final byte[] nameBytes = Arrays.copyOfRange(central, pos, pos
+						+ nameLen);
+				if (!Arrays.equals(nameBytes, entry.getNameBytes())) {
+					entry.rawName = nameBytes;
+				}
+			}
+			pos += nameLen;
+
+			entry.flags = flags;
 			entry.setMethod(method);
 			entry.setCrc(crc & 0xffffffffL);
-			entry.setSize(size & 0xffffffffL);
-			entry.setCompressedSize(csize & 0xffffffffL);
 			entry.setDOSTime(dostime);
 			if (extraLen > 0) {
 				final byte[] extra = new byte[extraLen];
-				raf.readFully(extra);
+				System.arraycopy(central, pos, extra, 0, extraLen);
+				pos += extraLen;
 				entry.setExtra(extra);
+				readZip64Extra(extra, values);
 			}
 			if (commentLen > 0) {
-				raf.readFully(buffer, 0, commentLen);
-				entry.setComment(new String(buffer, 0, commentLen));
+				entry.setComment(ZipEntry.decode(central, pos, commentLen, flags));
+				pos += commentLen;
 			}
-			entry.offset = offset;
+			if ((values[0] < 0) || (values[1] < 0)) {
+				throw new ZipException("Central directory is malformed: "
+						+ name);
+			}
+			entry.setSize(values[0]);
+			entry.setCompressedSize(values[1]);
+			entry.offset = values[2];
 			entries.put(name, entry);
 		}
+		centralDirectoryOffset = centralOffset;
+		readEntriesTime = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Returns the offset in the zip file at which the central directory
+	 * starts, which is where the data of the last entry ends.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception IllegalStateException
+	 *                when the ZipFile has already been closed
+	 */
+	public long getCentralDirectoryOffset() throws IOException {
+		getEntries();
+		return centralDirectoryOffset;
+	}
+
+	/**
+	 * Returns the time in nanoseconds it took to locate and read the central
+	 * directory of this zip file, or -1 if it has not been read yet.
+	 *
+	 * The central directory is read on first use of the entries, which makes
+	 * this the bulk of the cost of opening a zip file.
+	 */
+	public long getReadEntriesTime() {
+		return readEntriesTime;
 	}
 
 	/**
@@ -307,10 +499,10 @@ public class ZipFile implements ZipConstants {
 	 *                if a i/o error occured.
 	 */
 	public void close() throws IOException {
-		synchronized (raf) {
+		synchronized (source) {
 			closed = true;
 			entries = null;
-			raf.close();
+			source.close();
 		}
 	}
 
@@ -320,15 +512,16 @@ public class ZipFile implements ZipConstants {
 	 */
 	@Override
 	protected void finalize() throws IOException {
-		if (!closed && (raf != null)) {
+		if (!closed && (source != null)) {
 			close();
 		}
 	}
 
 	/**
-	 * Returns an enumeration of all Zip entries in this Zip file.
+	 * Returns an enumeration of all Zip entries in this Zip file, in the
+	 * order of the central directory.
 	 */
-	public Enumeration entries() {
+	public Enumeration<? extends ZipEntry> entries() {
 		try {
 			return new ZipEntryEnumeration(getEntries().values().iterator());
 		} catch (final IOException ioe) {
@@ -345,7 +538,7 @@ public class ZipFile implements ZipConstants {
 	 *                when the entries could not be read.
 	 */
 	private Map<String, ZipEntry> getEntries() throws IOException {
-		synchronized (raf) {
+		synchronized (source) {
 			if (closed) {
 				throw new IllegalStateException("ZipFile has closed: " + name);
 			}
@@ -376,9 +569,6 @@ public class ZipFile implements ZipConstants {
 		}
 	}
 
-	// access should be protected by synchronized(raf)
-	private final byte[] locBuf = new byte[LOCHDR];
-
 	/**
 	 * Checks, if the local header of the entry at index i matches the central
 	 * directory, and returns the offset to the data.
@@ -394,26 +584,24 @@ public class ZipFile implements ZipConstants {
 	 *                header
 	 */
 	private long checkLocalHeader(final ZipEntry entry) throws IOException {
-		synchronized (raf) {
-			raf.seek(entry.offset);
-			raf.readFully(locBuf);
+		final byte[] locBuf = new byte[LOCHDR];
+		source.readFully(entry.offset, locBuf, 0, LOCHDR);
 
-			if (readLeInt(locBuf, 0) != LOCSIG) {
-				throw new ZipException("Wrong Local header signature: " + name);
-			}
-
-			if (entry.getMethod() != readLeShort(locBuf, LOCHOW)) {
-				throw new ZipException("Compression method mismatch: " + name);
-			}
+		if (readLeInt(locBuf, 0) != LOCSIG) {
+			throw new ZipException("Wrong Local header signature: " + name);
+		}
 
-			if (entry.getName().length() != readLeShort(locBuf, LOCNAM)) {
-				throw new ZipException("file name length mismatch: " + name);
-			}
+		if (entry.getMethod() != readLeShort(locBuf, LOCHOW)) {
+			throw new ZipException("Compression method mismatch: " + name);
+		}
 
-			final int extraLen = entry.getName().length()
-					+ readLeShort(locBuf, LOCEXT);
-			return entry.offset + LOCHDR + extraLen;
+		final int nameLen = entry.getNameBytes().length;
+		if (nameLen != readLeShort(locBuf, LOCNAM)) {
+			throw new ZipException("file name length mismatch: " + name);
 		}
+
+		final int extraLen = nameLen + readLeShort(locBuf, LOCEXT);
+		return entry.offset + LOCHDR + extraLen;
 	}
 
 	/**
@@ -441,17 +629,85 @@ public class ZipFile implements ZipConstants {
 		final long start = checkLocalHeader(zipEntry);
 		final int method = zipEntry.getMethod();
 		final InputStream is = new BufferedInputStream(new PartialInputStream(
-				raf, start, zipEntry.getCompressedSize()));
+				source, start, zipEntry.getCompressedSize()));
 		switch (method) {
 		case ZipOutputStream.STORED:
 			return is;
 		case ZipOutputStream.DEFLATED:
-			return new InflaterInputStream(is, new Inflater(true));
+			final InflaterInputStream inflaterInputStream = new InflaterInputStream(
+					is, new Inflater(true));
+			inflaterInputStream.usesDefaultInflater = true;
+			return inflaterInputStream;
 		default:
 			throw new ZipException("Unknown compression method " + method);
 		}
 	}
 
+	/**
+	 * Creates an input stream reading the data of the given zip entry as it is
+	 * stored in the zip file, without inflating it. The stream returns exactly
+	 * the compressed size of the entry in bytes. Together with the method, crc,
+	 * size and compressed size of the entry this allows the entry to be copied
+	 * to a <code>ZipOutputStream</code> unchanged.
+	 *
+	 * @param entry
+	 *            the entry to create an InputStream for.
+	 * @return the input stream.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception ZipException
+	 *                if the Zip archive is malformed.
+	 * @see ZipOutputStream#putNextRawEntry(ZipEntry)
+	 */
+	public InputStream getRawInputStream(final ZipEntry entry)
+			throws IOException {
+		final Map<String, ZipEntry> entries = getEntries();
+		final String name = entry.getName();
+		final ZipEntry zipEntry = entries.get(name);
+		if (zipEntry == null) {
+			throw new NoSuchElementException(name);
+		}
+
+		final long start = checkLocalHeader(zipEntry);
+		return new PartialInputStream(source, start,
+				zipEntry.getCompressedSize());
+	}
+
+	/**
+	 * Writes the data of the given zip entry as it is stored in the zip file,
+	 * without inflating it, to the given channel. This is what
+	 * getRawInputStream returns, but the bytes are transferred by the
+	 * FileChannel of the zip file, or directly from its mapping, instead of
+	 * being read into a buffer first.
+	 *
+	 * @param entry
+	 *            the entry to transfer.
+	 * @param target
+	 *            the channel to write the data to.
+	 * @return the number of bytes written, the compressed size of the entry.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 * @exception ZipException
+	 *                if the Zip archive is malformed.
+	 * @see #getRawInputStream(ZipEntry)
+	 * @see ZipOutputStream#transferRawData(ZipFile, ZipEntry)
+	 */
+	public long transferRawTo(final ZipEntry entry,
+			final WritableByteChannel target) throws IOException {
+		final Map<String, ZipEntry> entries = getEntries();
+		final String name = entry.getName();
+		final ZipEntry zipEntry = entries.get(name);
+		if (zipEntry == null) {
+			throw new NoSuchElementException(name);
+		}
+
+		final long start = checkLocalHeader(zipEntry);
+		source.transferTo(start, zipEntry.getCompressedSize(), target);
+		return zipEntry.getCompressedSize();
+	}
+
 	/**
 	 * Returns the (path) name of this zip file.
 	 */
@@ -459,6 +715,13 @@ public class ZipFile implements ZipConstants {
 		return name;
 	}
 
+	/**
+	 * Returns the way this zip file is read.
+	 */
+	public AccessMode getAccessMode() {
+		return accessMode;
+	}
+
 	/**
 	 * Returns the number of entries in this zip file.
 	 */
@@ -470,10 +733,10 @@ public class ZipFile implements ZipConstants {
 		}
 	}
 
-	private static class ZipEntryEnumeration implements Enumeration {
-		private final Iterator elements;
+	private static class ZipEntryEnumeration implements Enumeration<ZipEntry> {
+		private final Iterator<ZipEntry> elements;
 
-		public ZipEntryEnumeration(final Iterator elements) {
+		public ZipEntryEnumeration(final Iterator<ZipEntry> elements) {
 			this.elements = elements;
 		}
 
@@ -483,22 +746,23 @@ public class ZipFile implements ZipConstants {
 		}
 
 		@Override
-		public Object nextElement() {
+		public ZipEntry nextElement() {
 			/*
 			 * We return a clone, just to be safe that the user doesn't change
 			 * the entry.
 			 */
-			return ((ZipEntry) elements.next()).clone();
+			return (ZipEntry) elements.next().clone();
 		}
 	}
 
 	private static class PartialInputStream extends InputStream {
-		private final RandomAccessFile raf;
+		private final ZipFileSource source;
+		private final byte[] onebytebuffer = new byte[1];
 		long filepos, end;
 
-		public PartialInputStream(final RandomAccessFile raf, final long start,
+		public PartialInputStream(final ZipFileSource source, final long start,
 				final long len) {
-			this.raf = raf;
+			this.source = source;
 			filepos = start;
 			end = start + len;
 		}
@@ -517,10 +781,11 @@ public class ZipFile implements ZipConstants {
 			if (filepos == end) {
 				return -1;
 			}
-			synchronized (raf) {
-				raf.seek(filepos++);
-				return raf.read();
+			if (source.read(filepos, onebytebuffer, 0, 1) <= 0) {
+				return -1;
 			}
+			filepos++;
+			return onebytebuffer[0] & 0xff;
 		}
 
 		@Override
@@ -532,14 +797,11 @@ public class ZipFile implements ZipConstants {
 					return -1;
 				}
 			}
-			synchronized (raf) {
-				raf.seek(filepos);
-				final int count = raf.read(b, off, len);
-				if (count > 0) {
-					filepos += len;
-				}
-				return count;
+			final int count = source.read(filepos, b, off, len);
+			if (count > 0) {
+				filepos += count;
 			}
+			return count;
 		}
 
 		@Override
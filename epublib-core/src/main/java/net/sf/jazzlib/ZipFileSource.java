@@ -0,0 +1,342 @@
+package net.sf.jazzlib;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Positional read access to the bytes of a zip file, as used by
+ * <code>ZipFile</code>.
+ *
+ * Implementations decide whether reads of different threads are serialized
+ * (the <code>RandomAccessFile</code> based one, which has a single file
+ * pointer) or may run concurrently (the <code>FileChannel</code> and memory
+ * mapped ones).
+ *
+ * @see ZipFile.AccessMode
+ */
+abstract class ZipFileSource {
+
+	/**
+	 * Opens the given file for reading with the given access mode.
+	 *
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 */
+	static ZipFileSource open(final File file, final ZipFile.AccessMode mode)
+			throws IOException {
+		switch (mode) {
+		case FILE_CHANNEL:
+			return new FileChannelSource(file, new RandomAccessFile(file, "r"));
+		case MEMORY_MAPPED:
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				if (raf.length() > Integer.MAX_VALUE) {
+					// a single MappedByteBuffer can not address this
+					return new FileChannelSource(file, raf);
+				}
+				return new MappedSource(raf);
+			} catch (final IOException e) {
+				closeAfterFailure(raf);
+				throw e;
+			} catch (final RuntimeException e) {
+				closeAfterFailure(raf);
+				throw e;
+			}
+		default:
+			return new RandomAccessFileSource(new RandomAccessFile(file, "r"));
+		}
+	}
+
+	/**
+	 * Returns the length of the zip file.
+	 */
+	abstract long length() throws IOException;
+
+	/**
+	 * Reads up to <code>len</code> bytes starting at file position
+	 * <code>pos</code>. Does not move any shared file pointer.
+	 *
+	 * @return the number of bytes read, or -1 if <code>pos</code> is at or
+	 *         beyond the end of the file.
+	 * @exception IOException
+	 *                if a i/o error occured.
+	 */
+	abstract int read(long pos, byte[] b, int off, int len) throws IOException;
+
+	/**
+	 * Writes exactly <code>count</code> bytes starting at file position
+	 * <code>pos</code> to the given channel. Does not move any shared file
+	 * pointer.
+	 *
+	 * The file based sources let the FileChannel transfer the bytes, which
+	 * the operating system can do without copying them through the Java heap
+	 * when the target is a file or socket.
+	 *
+	 * @exception EOFException
+	 *                if the file ends prematurely
+	 */
+	abstract void transferTo(long pos, long count, WritableByteChannel target)
+			throws IOException;
+
+	/**
+	 * Closes the zip file.
+	 */
+	abstract void close() throws IOException;
+
+	/**
+	 * Closes a file that could not be opened as a source. A failure to close
+	 * it is ignored, the reason it could not be opened is the exception to
+	 * report.
+	 */
+	private static void closeAfterFailure(final RandomAccessFile raf) {
+		try {
+			raf.close();
+		} catch (final IOException e) {
+			// ignored in favour of the original failure
+		}
+	}
+
+	/**
+	 * Transfers with FileChannel.transferTo, which may transfer less than
+	 * asked for.
+	 */
+	static void transferTo(final FileChannel channel, long pos, long count,
+			final WritableByteChannel target) throws IOException {
+		while (count > 0) {
+			if (pos >= channel.size()) {
+				throw new EOFException();
+			}
+			final long transferred = channel.transferTo(pos, count, target);
+			pos += transferred;
+			count -= transferred;
+		}
+	}
+
+	/**
+	 * Reads exactly <code>len</code> bytes starting at file position
+	 * <code>pos</code>.
+	 *
+	 * @exception EOFException
+	 *                if the file ends prematurely
+	 */
+	final void readFully(long pos, final byte[] b, int off, int len)
+			throws IOException {
+		while (len > 0) {
+			final int count = read(pos, b, off, len);
+			if (count < 0) {
+				throw new EOFException();
+			}
+			pos += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * The original jazzlib way of reading: seek and read on a single
+	 * RandomAccessFile while holding its lock.
+	 */
+	private static class RandomAccessFileSource extends ZipFileSource {
+		private final RandomAccessFile raf;
+
+		RandomAccessFileSource(final RandomAccessFile raf) {
+			this.raf = raf;
+		}
+
+		@Override
+		long length() throws IOException {
+			return raf.length();
+		}
+
+		@Override
+		int read(final long pos, final byte[] b, final int off, final int len)
+				throws IOException {
+			synchronized (raf) {
+				raf.seek(pos);
+				return raf.read(b, off, len);
+			}
+		}
+
+		@Override
+		void transferTo(final long pos, final long count,
+				final WritableByteChannel target) throws IOException {
+			// positional transfers do not move the file pointer of raf
+			transferTo(raf.getChannel(), pos, count, target);
+		}
+
+		@Override
+		void close() throws IOException {
+			synchronized (raf) {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Positional reads on a FileChannel, which are safe to issue from many
+	 * threads at once.
+	 *
+	 * A FileChannel is closed when a thread that reads from it is
+	 * interrupted. The interrupted read fails, but the file is opened again
+	 * so that the reads of the other threads sharing this source go on.
+	 */
+	private static class FileChannelSource extends ZipFileSource {
+		private final File file;
+		private RandomAccessFile raf;
+		private volatile FileChannel channel;
+		private boolean closed;
+
+		FileChannelSource(final File file, final RandomAccessFile raf) {
+			this.file = file;
+			this.raf = raf;
+			this.channel = raf.getChannel();
+		}
+
+		@Override
+		synchronized long length() throws IOException {
+			return raf.length();
+		}
+
+		@Override
+		int read(final long pos, final byte[] b, final int off, final int len)
+				throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			int count = 0;
+			while (count == 0) {
+				final FileChannel current = channel;
+				try {
+					count = current.read(buffer, pos);
+				} catch (final ClosedByInterruptException e) {
+					reopen(current);
+					throw e;
+				} catch (final ClosedChannelException e) {
+					// closed by the interrupt of another thread, or by close()
+					reopen(current);
+				}
+			}
+			return count;
+		}
+
+		@Override
+		void transferTo(long pos, long count, final WritableByteChannel target)
+				throws IOException {
+			while (count > 0) {
+				final FileChannel current = channel;
+				try {
+					if (pos >= current.size()) {
+						throw new EOFException();
+					}
+					final long transferred = current.transferTo(pos, count,
+							target);
+					pos += transferred;
+					count -= transferred;
+				} catch (final ClosedByInterruptException e) {
+					reopen(current);
+					throw e;
+				} catch (final ClosedChannelException e) {
+					if (current.isOpen() || !target.isOpen()) {
+						throw e;
+					}
+					// closed by the interrupt of another thread, or by close()
+					reopen(current);
+				}
+			}
+		}
+
+		/**
+		 * Replaces the given channel, which has been closed by an interrupt,
+		 * unless that has been done already or the source is closed.
+		 */
+		private synchronized void reopen(final FileChannel broken)
+				throws IOException {
+			if (closed) {
+				throw new ClosedChannelException();
+			}
+			if (channel != broken) {
+				return;
+			}
+			raf.close();
+			raf = new RandomAccessFile(file, "r");
+			channel = raf.getChannel();
+		}
+
+		@Override
+		synchronized void close() throws IOException {
+			closed = true;
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads from a read-only mapping of the whole file. Every read works on
+	 * its own view of the mapping, so reads never contend.
+	 *
+	 * The mapping itself is released by the garbage collector once the
+	 * ZipFile and all its streams are gone.
+	 */
+	private static class MappedSource extends ZipFileSource {
+		private final RandomAccessFile raf;
+		private final MappedByteBuffer mapping;
+
+		/**
+		 * Maps the whole file. The caller closes raf if mapping it fails, for
+		 * instance when there is not enough address space left.
+		 */
+		MappedSource(final RandomAccessFile raf) throws IOException {
+			this.raf = raf;
+			final FileChannel channel = raf.getChannel();
+			this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+
+		@Override
+		long length() {
+			return mapping.capacity();
+		}
+
+		@Override
+		int read(final long pos, final byte[] b, final int off, int len) {
+			final int capacity = mapping.capacity();
+			if (pos >= capacity) {
+				return -1;
+			}
+			if (len > (capacity - pos)) {
+				len = (int) (capacity - pos);
+			}
+			final ByteBuffer view = mapping.duplicate();
+			view.position((int) pos);
+			view.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		void transferTo(final long pos, final long count,
+				final WritableByteChannel target) throws IOException {
+			if ((pos + count) > mapping.capacity()) {
+				throw new EOFException();
+			}
+			final ByteBuffer view = mapping.duplicate();
+			view.position((int) pos);
+			view.limit((int) (pos + count));
+			while (view.hasRemaining()) {
+				target.write(view);
+			}
+		}
+
+		@Override
+		void close() throws IOException {
+			raf.close();
+		}
+	}
+}
@@ -61,12 +61,33 @@ public class ZipInputStream extends InflaterInputStream implements ZipConstants
 	private int flags;
 	private int avail;
 	private boolean entryAtEOF;
+	private boolean verifyCrc = true;
+	private boolean entryVerifyCrc;
 
 	/**
 	 * Creates a new Zip input stream, reading a zip archive.
 	 */
 	public ZipInputStream(final InputStream in) {
 		super(in, new Inflater(true));
+		usesDefaultInflater = true;
+	}
+
+	/**
+	 * Returns whether the data of each entry is checked against the crc of
+	 * the entry.
+	 */
+	public boolean isVerifyCrc() {
+		return verifyCrc;
+	}
+
+	/**
+	 * Sets whether the data of each entry is checked against the crc of the
+	 * entry, which is the default. Turning this off saves computing the
+	 * checksum of archives that are known to be intact; the sizes of the
+	 * entries are still checked. Takes effect from the next entry on.
+	 */
+	public void setVerifyCrc(final boolean verifyCrc) {
+		this.verifyCrc = verifyCrc;
 	}
 
 	private void fillBuf() throws IOException {
@@ -165,10 +186,11 @@ public class ZipInputStream extends InflaterInputStream implements ZipConstants
 
 		final byte[] buffer = new byte[nameLen];
 		readFully(buffer);
-		final String name = new String(buffer);
+		final String name = ZipEntry.decode(buffer, 0, nameLen, flags);
 
 		entry = createZipEntry(name);
 		entryAtEOF = false;
+		entryVerifyCrc = verifyCrc;
 		entry.setMethod(method);
 		if ((flags & 8) == 0) {
 			entry.setCrc(crc & 0xffffffffL);
@@ -337,13 +359,14 @@ public class ZipInputStream extends InflaterInputStream implements ZipConstants
 			break;
 		}
 
-		if (len > 0) {
+		if (entryVerifyCrc && (len > 0)) {
 			crc.update(b, off, len);
 		}
 
 		if (finished) {
 			final long entryCrc = entry.getCrc();
-			if ((entryCrc >= 0) && ((crc.getValue() & 0xffffffffL) != entryCrc)) {
+			if (entryVerifyCrc && (entryCrc >= 0)
+					&& ((crc.getValue() & 0xffffffffL) != entryCrc)) {
 				throw new ZipException("CRC mismatch");
 			}
 			crc.reset();
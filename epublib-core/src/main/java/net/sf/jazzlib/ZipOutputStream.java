@@ -37,8 +37,11 @@ exception statement from your version. */
 
 package net.sf.jazzlib;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -48,7 +51,14 @@ import java.util.Vector;
  * entries contains information about the file name size, compressed size, CRC,
  * etc.
  *
- * It includes support for STORED and DEFLATED entries.
+ * It includes support for STORED and DEFLATED entries, and for entries whose
+ * data has already been compressed elsewhere (see
+ * {@link #putNextRawEntry(ZipEntry)}).
+ *
+ * Entry names and comments are written in UTF-8, with the language encoding
+ * flag set for names that are not plain ASCII. Entries and archives of 4GB
+ * and more, and archives of more than 65535 entries, are written in the
+ * ZIP64 format.
  *
  * This class is not thread safe.
  *
@@ -56,22 +66,37 @@ import java.util.Vector;
  */
 public class ZipOutputStream extends DeflaterOutputStream implements
 ZipConstants {
-	private Vector entries = new Vector();
+	private Vector<ZipEntry> entries = new Vector<ZipEntry>();
 	private final CRC32 crc = new CRC32();
 	private ZipEntry curEntry = null;
 
 	private int curMethod;
-	private int size;
-	private int offset = 0;
+	private boolean curRaw;
+	private long size;
+	private long offset = 0;
 
 	private byte[] zipComment = new byte[0];
 	private int defaultMethod = DEFLATED;
+	private WritableByteChannel channel;
 
 	/**
 	 * Our Zip version is hard coded to 1.0 resp. 2.0
 	 */
 	private final static int ZIP_STORED_VERSION = 10;
 	private final static int ZIP_DEFLATED_VERSION = 20;
+	private final static int ZIP64_VERSION = 45;
+
+	/**
+	 * The general purpose flag telling that name and comment are in UTF-8.
+	 */
+	final static int UTF8_FLAG = 0x800;
+
+	/**
+	 * Sizes and offsets from this value on are stored in a ZIP64 extra field.
+	 */
+	private final static long ZIP64_MAGICVAL = 0xffffffffL;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
 
 	/**
 	 * Compression method. This method doesn't compress at all.
@@ -90,6 +115,48 @@ ZipConstants {
 	 */
 	public ZipOutputStream(final OutputStream out) {
 		super(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+		usesDefaultDeflater = true;
+	}
+
+	/**
+	 * Creates a new Zip output stream that continues an existing zip archive.
+	 * The given stream must be positioned at the given offset of the archive,
+	 * where the data of its last entry ends. Entries that are already in the
+	 * archive are kept in it by passing them to putExistingEntry.
+	 *
+	 * @param out
+	 *            the output stream to which the zip archive is written.
+	 * @param offset
+	 *            the offset in the archive at which out is positioned.
+	 * @see #putExistingEntry(ZipEntry)
+	 */
+	public ZipOutputStream(final OutputStream out, final long offset) {
+		this(out);
+		this.offset = offset;
+	}
+
+	/**
+	 * Sets the channel that the underlying output stream writes to, such as
+	 * the channel of a <code>FileOutputStream</code>. The data of raw entries
+	 * that is written with {@link #transferRawData(ZipFile, ZipEntry)} is
+	 * then transferred straight from the zip file it is copied from to this
+	 * channel.
+	 *
+	 * @param channel
+	 *            the channel of the underlying output stream, or null.
+	 */
+	public void setChannel(final WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns the channel that the underlying output stream writes to, or
+	 * null if it is not known.
+	 *
+	 * @see #setChannel(WritableByteChannel)
+	 */
+	public WritableByteChannel getChannel() {
+		return channel;
 	}
 
 	/**
@@ -102,7 +169,7 @@ ZipConstants {
 	 */
 	public void setComment(final String comment) {
 		byte[] commentBytes;
-		commentBytes = comment.getBytes();
+		commentBytes = comment.getBytes(UTF8);
 		if (commentBytes.length > 0xffff) {
 			throw new IllegalArgumentException("Comment too long.");
 		}
@@ -155,6 +222,22 @@ ZipConstants {
 		writeLeShort(value >> 16);
 	}
 
+	/**
+	 * Write a long in little endian byte order.
+	 */
+	private final void writeLeLong(final long value) throws IOException {
+		writeLeInt((int) value);
+		writeLeInt((int) (value >> 32));
+	}
+
+	/**
+	 * Write a size or offset as an int in little endian byte order, or the
+	 * ZIP64 marker if it does not fit.
+	 */
+	private final void writeLeIntOrMagic(final long value) throws IOException {
+		writeLeInt((int) Math.min(value, ZIP64_MAGICVAL));
+	}
+
 	/**
 	 * Starts a new Zip entry. It automatically closes the previous entry if
 	 * present. If the compression method is stored, the entry must have a valid
@@ -209,53 +292,192 @@ ZipConstants {
 			closeEntry();
 		}
 
+		writeLocalHeader(entry, method, flags);
+
+		/* Activate the entry. */
+
+		curEntry = entry;
+		curRaw = false;
+		crc.reset();
+		if (method == DEFLATED) {
+			def.reset();
+		}
+		size = 0;
+	}
+
+	/**
+	 * Starts a new Zip entry whose data is written as is, without being
+	 * compressed by this stream. This allows entries to be compressed
+	 * beforehand, for instance on other threads, or to be copied unchanged
+	 * from another zip file. It automatically closes the previous entry if
+	 * present.
+	 *
+	 * The entry must have its method, size, compressed size and crc set, and
+	 * exactly compressed size bytes of data must be written before the entry
+	 * is closed.
+	 *
+	 * @param entry
+	 *            the entry.
+	 * @exception IOException
+	 *                if an I/O error occured.
+	 * @exception ZipException
+	 *                if stream was finished or the entry is incomplete.
+	 */
+	public void putNextRawEntry(final ZipEntry entry) throws IOException {
+		if (entries == null) {
+			throw new ZipException("ZipOutputStream was finished");
+		}
+		final int method = entry.getMethod();
+		if ((method != STORED) && (method != DEFLATED)) {
+			throw new ZipException("Method not supported: " + method);
+		}
+		if ((entry.getSize() < 0) || (entry.getCompressedSize() < 0)
+				|| (entry.getCrc() < 0)) {
+			throw new ZipException(
+					"Raw entry needs size, compressed size and crc");
+		}
+		if ((method == STORED)
+				&& (entry.getSize() != entry.getCompressedSize())) {
+			throw new ZipException("Method STORED, but compressed size != size");
+		}
+
+		if (curEntry != null) {
+			closeEntry();
+		}
+
+		writeLocalHeader(entry, method, 0);
+
+		curEntry = entry;
+		curRaw = true;
+		size = 0;
+	}
+
+	/**
+	 * Adds an entry that is already stored in the zip archive before the
+	 * offset at which this stream started to the central directory, without
+	 * writing anything. The entry must come from a ZipFile of the archive, so
+	 * that its offset, method, sizes and crc match the stored entry.
+	 *
+	 * @param entry
+	 *            the entry.
+	 * @exception ZipException
+	 *                if stream was finished or the entry is not stored
+	 *                before the start of this stream.
+	 * @see #ZipOutputStream(OutputStream, long)
+	 * @see ZipFile#getCentralDirectoryOffset()
+	 */
+	public void putExistingEntry(final ZipEntry entry) throws ZipException {
+		if (entries == null) {
+			throw new ZipException("ZipOutputStream was finished");
+		}
+		if ((entry.offset < 0) || (entry.offset >= offset)
+				|| (entry.getSize() < 0) || (entry.getCompressedSize() < 0)
+				|| (entry.getCrc() < 0)) {
+			throw new ZipException("Not an existing entry: " + entry.getName());
+		}
+		entries.addElement(entry);
+	}
+
+	/**
+	 * Writes the local file header of the given entry and records its offset.
+	 */
+	private void writeLocalHeader(final ZipEntry entry, final int method,
+			final int flags) throws IOException {
 		if (entry.getTime() < 0) {
 			entry.setTime(System.currentTimeMillis());
 		}
 
-		entry.flags = flags;
+		final byte[] name = entry.getNameBytes();
+		if (name.length > 0xffff) {
+			throw new ZipException("Name too long.");
+		}
+		final boolean zip64 = ((flags & 8) == 0)
+				&& ((entry.getSize() >= ZIP64_MAGICVAL) || (entry
+						.getCompressedSize() >= ZIP64_MAGICVAL));
+		final ByteArrayOutputStream extraOut = new ByteArrayOutputStream();
+		if (zip64) {
+			writeLeShort(extraOut, ZIP64_EXTID);
+			writeLeShort(extraOut, 16);
+			writeLeLong(extraOut, entry.getSize());
+			writeLeLong(extraOut, entry.getCompressedSize());
+		}
+		writeExtraWithoutZip64(extraOut, entry.getExtra());
+		final byte[] extra = extraOut.toByteArray();
+		if (extra.length > 0xffff) {
+			throw new ZipException("Extra data too long.");
+		}
+
+		entry.flags = (entry.rawName != null) || isAscii(name) ? flags
+				: (flags | UTF8_FLAG);
 		entry.offset = offset;
 		entry.setMethod(method);
 		curMethod = method;
 		/* Write the local file header */
 		writeLeInt(LOCSIG);
-		writeLeShort(method == STORED ? ZIP_STORED_VERSION
-				: ZIP_DEFLATED_VERSION);
-		writeLeShort(flags);
+		writeLeShort(zip64 ? ZIP64_VERSION
+				: method == STORED ? ZIP_STORED_VERSION : ZIP_DEFLATED_VERSION);
+		writeLeShort(entry.flags);
 		writeLeShort(method);
 		writeLeInt(entry.getDOSTime());
 		if ((flags & 8) == 0) {
 			writeLeInt((int) entry.getCrc());
-			writeLeInt((int) entry.getCompressedSize());
-			writeLeInt((int) entry.getSize());
+			writeLeIntOrMagic(zip64 ? ZIP64_MAGICVAL : entry.getCompressedSize());
+			writeLeIntOrMagic(zip64 ? ZIP64_MAGICVAL : entry.getSize());
 		} else {
 			writeLeInt(0);
 			writeLeInt(0);
 			writeLeInt(0);
 		}
-		final byte[] name = entry.getName().getBytes();
-		if (name.length > 0xffff) {
-			throw new ZipException("Name too long.");
-		}
-		byte[] extra = entry.getExtra();
-		if (extra == null) {
-			extra = new byte[0];
-		}
 		writeLeShort(name.length);
 		writeLeShort(extra.length);
 		out.write(name);
 		out.write(extra);
 
 		offset += LOCHDR + name.length + extra.length;
+	}
 
-		/* Activate the entry. */
+	private static boolean isAscii(final byte[] bytes) {
+		for (final byte b : bytes) {
+			if (b < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		curEntry = entry;
-		crc.reset();
-		if (method == DEFLATED) {
-			def.reset();
+	/**
+	 * Writes the given extra data, leaving out any ZIP64 extra field, as this
+	 * stream writes its own where it is needed.
+	 */
+	private static void writeExtraWithoutZip64(final ByteArrayOutputStream out,
+			final byte[] extra) {
+		if (extra == null) {
+			return;
+		}
+		int pos = 0;
+		while ((pos + 4) <= extra.length) {
+			final int tag = (extra[pos] & 0xff) | ((extra[pos + 1] & 0xff) << 8);
+			final int len = (extra[pos + 2] & 0xff)
+					| ((extra[pos + 3] & 0xff) << 8);
+			final int end = Math.min(pos + 4 + len, extra.length);
+			if (tag != ZIP64_EXTID) {
+				out.write(extra, pos, end - pos);
+			}
+			pos = end;
+		}
+	}
+
+	private static void writeLeShort(final ByteArrayOutputStream out,
+			final int value) {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+	}
+
+	private static void writeLeLong(final ByteArrayOutputStream out,
+			final long value) {
+		for (int i = 0; i < 8; i++) {
+			out.write((int) (value >> (8 * i)) & 0xff);
 		}
-		size = 0;
 	}
 
 	/**
@@ -271,12 +493,23 @@ ZipConstants {
 			throw new ZipException("No open entry");
 		}
 
+		if (curRaw) {
+			if (curEntry.getCompressedSize() != size) {
+				throw new ZipException("compressed size was " + size
+						+ ", but I expected " + curEntry.getCompressedSize());
+			}
+			offset += size;
+			entries.addElement(curEntry);
+			curEntry = null;
+			return;
+		}
+
 		/* First finish the deflater, if appropriate */
 		if (curMethod == DEFLATED) {
 			super.finish();
 		}
 
-		final int csize = curMethod == DEFLATED ? def.getTotalOut() : size;
+		final long csize = curMethod == DEFLATED ? def.getBytesWritten() : size;
 
 		if (curEntry.getSize() < 0) {
 			curEntry.setSize(size);
@@ -306,9 +539,16 @@ ZipConstants {
 		if ((curMethod == DEFLATED) && ((curEntry.flags & 8) != 0)) {
 			writeLeInt(EXTSIG);
 			writeLeInt((int) curEntry.getCrc());
-			writeLeInt((int) curEntry.getCompressedSize());
-			writeLeInt((int) curEntry.getSize());
-			offset += EXTHDR;
+			if ((csize >= ZIP64_MAGICVAL) || (size >= ZIP64_MAGICVAL)) {
+				/* ZIP64 data descriptor, with 8 byte sizes */
+				writeLeLong(csize);
+				writeLeLong(size);
+				offset += EXTHDR + 8;
+			} else {
+				writeLeInt((int) csize);
+				writeLeInt((int) size);
+				offset += EXTHDR;
+			}
 		}
 
 		entries.addElement(curEntry);
@@ -330,6 +570,12 @@ ZipConstants {
 			throw new ZipException("No open entry.");
 		}
 
+		if (curRaw) {
+			out.write(b, off, len);
+			size += len;
+			return;
+		}
+
 		switch (curMethod) {
 		case DEFLATED:
 			super.write(b, off, len);
@@ -344,6 +590,53 @@ ZipConstants {
 		size += len;
 	}
 
+	/**
+	 * Writes the data of the given entry of the given zip file, as it is
+	 * stored there, as the data of the current raw entry. The written stream
+	 * is flushed and the data is transferred by the zip file to the channel
+	 * of this stream, which the operating system can do without copying it
+	 * through the Java heap.
+	 *
+	 * @param zipFile
+	 *            the zip file to copy the data from.
+	 * @param entry
+	 *            the entry of the zip file to copy the data of.
+	 * @exception IOException
+	 *                if an I/O error occured.
+	 * @exception ZipException
+	 *                if no raw entry is active.
+	 * @exception IllegalStateException
+	 *                if no channel is set.
+	 * @see ZipFile#transferRawTo(ZipEntry, WritableByteChannel)
+	 */
+	public void transferRawData(final ZipFile zipFile, final ZipEntry entry)
+			throws IOException {
+		if ((curEntry == null) || !curRaw) {
+			throw new ZipException("No open raw entry.");
+		}
+		if (channel == null) {
+			throw new IllegalStateException("No channel set");
+		}
+		out.flush();
+		size += zipFile.transferRawTo(entry, channel);
+	}
+
+	/**
+	 * Flushes the stream. The data of a deflated entry is sync flushed, so
+	 * that all of it that was written so far can be inflated.
+	 *
+	 * @exception IOException
+	 *                if an I/O error occured.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if ((curEntry != null) && !curRaw && (curMethod == DEFLATED)) {
+			super.flush();
+		} else {
+			out.flush();
+		}
+	}
+
 	/**
 	 * Finishes the stream. This will write the central directory at the end of
 	 * the zip file and flush the stream.
@@ -360,48 +653,73 @@ ZipConstants {
 			closeEntry();
 		}
 
-		int numEntries = 0;
-		int sizeEntries = 0;
+		long numEntries = 0;
+		long sizeEntries = 0;
 
-		final Enumeration elements = entries.elements();
+		final Enumeration<ZipEntry> elements = entries.elements();
 		while (elements.hasMoreElements()) {
-			final ZipEntry entry = (ZipEntry) elements.nextElement();
+			final ZipEntry entry = elements.nextElement();
 
 			final int method = entry.getMethod();
-			writeLeInt(CENSIG);
-			writeLeShort(method == STORED ? ZIP_STORED_VERSION
-					: ZIP_DEFLATED_VERSION);
-			writeLeShort(method == STORED ? ZIP_STORED_VERSION
-					: ZIP_DEFLATED_VERSION);
-			writeLeShort(entry.flags);
-			writeLeShort(method);
-			writeLeInt(entry.getDOSTime());
-			writeLeInt((int) entry.getCrc());
-			writeLeInt((int) entry.getCompressedSize());
-			writeLeInt((int) entry.getSize());
-
-			final byte[] name = entry.getName().getBytes();
+			final byte[] name = entry.getNameBytes();
 			if (name.length > 0xffff) {
 				throw new ZipException("Name too long.");
 			}
-			byte[] extra = entry.getExtra();
-			if (extra == null) {
-				extra = new byte[0];
+			final ByteArrayOutputStream extraOut = new ByteArrayOutputStream();
+			int zip64Length = 0;
+			if (entry.getSize() >= ZIP64_MAGICVAL) {
+				zip64Length += 8;
+			}
+			if (entry.getCompressedSize() >= ZIP64_MAGICVAL) {
+				zip64Length += 8;
+			}
+			if (entry.offset >= ZIP64_MAGICVAL) {
+				zip64Length += 8;
+			}
+			if (zip64Length > 0) {
+				writeLeShort(extraOut, ZIP64_EXTID);
+				writeLeShort(extraOut, zip64Length);
+				if (entry.getSize() >= ZIP64_MAGICVAL) {
+					writeLeLong(extraOut, entry.getSize());
+				}
+				if (entry.getCompressedSize() >= ZIP64_MAGICVAL) {
+					writeLeLong(extraOut, entry.getCompressedSize());
+				}
+				if (entry.offset >= ZIP64_MAGICVAL) {
+					writeLeLong(extraOut, entry.offset);
+				}
+			}
+			writeExtraWithoutZip64(extraOut, entry.getExtra());
+			final byte[] extra = extraOut.toByteArray();
+			if (extra.length > 0xffff) {
+				throw new ZipException("Extra data too long.");
 			}
 			final String strComment = entry.getComment();
-			final byte[] comment = strComment != null ? strComment.getBytes()
-					: new byte[0];
+			final byte[] comment = strComment != null ? strComment
+					.getBytes(UTF8) : new byte[0];
 			if (comment.length > 0xffff) {
 				throw new ZipException("Comment too long.");
 			}
+			final int version = zip64Length > 0 ? ZIP64_VERSION
+					: method == STORED ? ZIP_STORED_VERSION
+							: ZIP_DEFLATED_VERSION;
 
+			writeLeInt(CENSIG);
+			writeLeShort(version);
+			writeLeShort(version);
+			writeLeShort(entry.flags);
+			writeLeShort(method);
+			writeLeInt(entry.getDOSTime());
+			writeLeInt((int) entry.getCrc());
+			writeLeIntOrMagic(entry.getCompressedSize());
+			writeLeIntOrMagic(entry.getSize());
 			writeLeShort(name.length);
 			writeLeShort(extra.length);
 			writeLeShort(comment.length);
 			writeLeShort(0); /* disk number */
 			writeLeShort(0); /* internal file attr */
 			writeLeInt(0); /* external file attr */
-			writeLeInt(entry.offset);
+			writeLeIntOrMagic(entry.offset);
 
 			out.write(name);
 			out.write(extra);
@@ -410,13 +728,33 @@ ZipConstants {
 			sizeEntries += CENHDR + name.length + extra.length + comment.length;
 		}
 
+		if ((numEntries >= 0xffff) || (sizeEntries >= ZIP64_MAGICVAL)
+				|| (offset >= ZIP64_MAGICVAL)) {
+			final long zip64EndOffset = offset + sizeEntries;
+			writeLeInt(ZIP64_ENDSIG);
+			writeLeLong(ZIP64_ENDHDR - 12); /* size of the rest of the record */
+			writeLeShort(ZIP64_VERSION);
+			writeLeShort(ZIP64_VERSION);
+			writeLeInt(0); /* disk number */
+			writeLeInt(0); /* disk with start of central dir */
+			writeLeLong(numEntries);
+			writeLeLong(numEntries);
+			writeLeLong(sizeEntries);
+			writeLeLong(offset);
+
+			writeLeInt(ZIP64_LOCSIG);
+			writeLeInt(0); /* disk with the ZIP64 end of central dir */
+			writeLeLong(zip64EndOffset);
+			writeLeInt(1); /* number of disks */
+		}
+
 		writeLeInt(ENDSIG);
 		writeLeShort(0); /* disk number */
 		writeLeShort(0); /* disk with start of central dir */
-		writeLeShort(numEntries);
-		writeLeShort(numEntries);
-		writeLeInt(sizeEntries);
-		writeLeInt(offset);
+		writeLeShort((int) Math.min(numEntries, 0xffff));
+		writeLeShort((int) Math.min(numEntries, 0xffff));
+		writeLeIntOrMagic(sizeEntries);
+		writeLeIntOrMagic(offset);
 		writeLeShort(zipComment.length);
 		out.write(zipComment);
 		out.flush();
@@ -0,0 +1,389 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.Reader;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.commons.io.XmlStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Resource that keeps its data in a direct ByteBuffer, outside of the java heap.
+ *
+ * {@link #getByteBuffer()} and {@link #getInputStream()} give access to the data without copying it,
+ * getData() copies the data into a new byte[] on every call.
+ *
+ * The memory of the buffer is released by {@link #close()}, after which the resource is empty and streams returned by
+ * getInputStream() throw an IOException. Once getByteBuffer() has handed out a view of the buffer, close() leaves
+ * the memory to the garbage collector instead, as the view can not tell that the resource is closed.
+ * {@link #setData(byte[])} does not release the old buffer, which may still be in use, but leaves it to the garbage collector.
+ *
+ * ByteBufferResources that are garbage collected without having been closed are logged as leaks.
+ */
+public class ByteBufferResource extends Resource {
+
+	private static final long serialVersionUID = 3893414516407367497L;
+
+	private static final Logger log = LoggerFactory.getLogger(ByteBufferResource.class);
+
+	private static final ReferenceQueue<ByteBufferResource> leakQueue = new ReferenceQueue<ByteBufferResource>();
+	private static final Set<LeakReference> openResources = Collections.synchronizedSet(new HashSet<LeakReference>());
+
+	private static final Object unsafe;
+	private static final Method invokeCleaner;
+
+	static {
+		Object theUnsafe = null;
+		Method method = null;
+		try {
+			// java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			theUnsafe = field.get(null);
+		} catch (Exception e) {
+			method = null;
+		}
+		unsafe = theUnsafe;
+		invokeCleaner = method;
+	}
+
+	private transient ByteBuffer buffer;
+	private transient Allocation allocation;
+	private transient LeakReference leakReference;
+
+	/**
+	 * Creates a resource with the data from the given InputStream at the specified href.
+	 * The MediaType will be determined based on the href extension.
+	 *
+	 * @param in The Resource's contents
+	 * @param size The number of bytes in the stream, -1 if unknown
+	 * @param href The location of the resource within the epub. Example: "cover.jpg".
+	 * @throws IOException
+	 */
+	public ByteBufferResource(InputStream in, long size, String href) throws IOException {
+		this(null, readBuffer(in, size), href, MediatypeService.determineMediaType(href));
+	}
+
+	/**
+	 * Creates a resource with the data between the position and the limit of the given buffer.
+	 *
+	 * The resource takes over the buffer: its contents, position and limit must not be changed afterwards, and
+	 * it is released when the resource is closed.
+	 *
+	 * @param id The id of the Resource. Internal use only. Will be auto-generated if it has a null-value.
+	 * @param buffer The Resource's contents
+	 * @param href The location of the resource within the epub. Example: "chapter1.html".
+	 * @param mediaType The resources MediaType
+	 */
+	public ByteBufferResource(String id, ByteBuffer buffer, String href, MediaType mediaType) {
+		super(id, null, href, mediaType, Constants.CHARACTER_ENCODING);
+		setBuffer(buffer);
+	}
+
+	/**
+	 * A read-only view of the data of this resource.
+	 *
+	 * The view stays readable after the resource is closed, its memory is released by the garbage collector.
+	 *
+	 * @return A read-only view of the data of this resource.
+	 * @throws IllegalStateException if the resource is closed
+	 */
+	public synchronized ByteBuffer getByteBuffer() {
+		ByteBuffer result = getOpenBuffer().asReadOnlyBuffer();
+		allocation.shared = true;
+		return result;
+	}
+
+	/**
+	 * Gets the contents of the Resource as an InputStream that reads straight from the buffer.
+	 *
+	 * The stream can not be read anymore once the resource is closed.
+	 */
+	public synchronized InputStream getInputStream() throws IOException {
+		return new ByteBufferInputStream(getOpenBuffer().duplicate(), allocation);
+	}
+
+	/**
+	 * A copy of the contents of the resource.
+	 */
+	public synchronized byte[] getData() throws IOException {
+		ByteBuffer view = getOpenBuffer().duplicate();
+		byte[] result = new byte[view.remaining()];
+		view.get(result);
+		return result;
+	}
+
+	/**
+	 * Copies the data into a new direct buffer.
+	 *
+	 * The old buffer is not released right away, as streams and views of it may still be in use.
+	 */
+	public synchronized void setData(byte[] data) {
+		ByteBuffer newBuffer = ByteBuffer.allocateDirect(data.length);
+		newBuffer.put(data);
+		newBuffer.flip();
+		super.setData(null);
+		forgetBuffer();
+		setBuffer(newBuffer);
+	}
+
+	public Reader getReader() throws IOException {
+		return new XmlStreamReader(getInputStream(), getInputEncoding());
+	}
+
+	public long getSize() {
+		ByteBuffer currentBuffer = buffer;
+		return currentBuffer == null ? 0 : currentBuffer.remaining();
+	}
+
+	/**
+	 * Releases the memory of the buffer, unless getByteBuffer() handed out a view of it. The resource is empty afterwards.
+	 */
+	public void close() {
+		release();
+	}
+
+	/**
+	 * Whether the memory of the buffer has been released.
+	 *
+	 * @return Whether the memory of the buffer has been released.
+	 */
+	public boolean isClosed() {
+		return buffer == null;
+	}
+
+	/**
+	 * The number of ByteBufferResources that have not been closed, including leaked ones that are not detected yet.
+	 *
+	 * @return The number of ByteBufferResources that have not been closed.
+	 */
+	public static int getOpenCount() {
+		return openResources.size();
+	}
+
+	/**
+	 * Logs the ByteBufferResources that have been garbage collected without having been closed since the last call.
+	 *
+	 * This is done on the creation of every ByteBufferResource.
+	 *
+	 * @return the number of leaked resources found
+	 */
+	public static int detectLeaks() {
+		int result = 0;
+		for (Reference<? extends ByteBufferResource> reference = leakQueue.poll(); reference != null; reference = leakQueue.poll()) {
+			LeakReference leakReference = (LeakReference) reference;
+			if (openResources.remove(leakReference)) {
+				log.warn("ByteBufferResource " + leakReference.href + " of " + leakReference.size + " bytes was not closed");
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private void setBuffer(ByteBuffer buffer) {
+		detectLeaks();
+		this.buffer = buffer;
+		this.allocation = new Allocation();
+		this.leakReference = new LeakReference(this, getHref(), buffer.remaining());
+		openResources.add(leakReference);
+	}
+
+	/**
+	 * Drops the buffer without releasing its memory, the garbage collector will do that once it is not used anymore.
+	 */
+	private ByteBuffer forgetBuffer() {
+		ByteBuffer oldBuffer = buffer;
+		if (oldBuffer == null) {
+			return null;
+		}
+		buffer = null;
+		allocation = null;
+		openResources.remove(leakReference);
+		leakReference.clear();
+		leakReference = null;
+		return oldBuffer;
+	}
+
+	private synchronized void release() {
+		Allocation oldAllocation = allocation;
+		ByteBuffer oldBuffer = forgetBuffer();
+		if (oldBuffer == null) {
+			return;
+		}
+		oldAllocation.freed = true;
+		if (! oldAllocation.shared) {
+			free(oldBuffer);
+		}
+	}
+
+	private ByteBuffer getOpenBuffer() {
+		ByteBuffer currentBuffer = buffer;
+		if (currentBuffer == null) {
+			throw new IllegalStateException("ByteBufferResource " + getHref() + " is closed");
+		}
+		return currentBuffer;
+	}
+
+	/**
+	 * Reads the stream into a new direct buffer.
+	 */
+	private static ByteBuffer readBuffer(InputStream in, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Resource too large for a ByteBuffer: " + size + " bytes");
+		}
+		ReadableByteChannel channel = Channels.newChannel(in);
+		ByteBuffer result = ByteBuffer.allocateDirect(size >= 0 ? (int) size : 8 * 1024);
+		while (true) {
+			while (result.hasRemaining() && channel.read(result) >= 0) {
+			}
+			if (result.hasRemaining()) {
+				break;
+			}
+			int next = in.read();
+			if (next < 0) {
+				break;
+			}
+			// the stream is larger than expected
+			ByteBuffer larger = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, result.capacity() * 2L + 1));
+			result.flip();
+			larger.put(result);
+			free(result);
+			result = larger;
+			result.put((byte) next);
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Releases the memory of a direct buffer right away, instead of when the buffer is garbage collected.
+	 */
+	private static void free(ByteBuffer buffer) {
+		if (! buffer.isDirect()) {
+			return;
+		}
+		try {
+			if (invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			log.debug("Could not release direct buffer, leaving it to the garbage collector: " + e);
+		}
+	}
+
+	/**
+	 * Serializes a ByteBufferResource as a plain Resource that holds its data.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return toPlainResource();
+	}
+
+	/**
+	 * Notices ByteBufferResources that are garbage collected without having been closed.
+	 */
+	private static class LeakReference extends PhantomReference<ByteBufferResource> {
+
+		private final String href;
+		private final int size;
+
+		public LeakReference(ByteBufferResource resource, String href, int size) {
+			super(resource, leakQueue);
+			this.href = href;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Whether a buffer has been released, and whether getByteBuffer() handed out views of it.
+	 */
+	private static class Allocation {
+		boolean freed;
+		boolean shared;
+	}
+
+	/**
+	 * Reads from a view of a buffer of the resource, as long as the memory of that buffer is not released.
+	 *
+	 * Reads lock the resource, so that the buffer can not be released halfway through a read.
+	 */
+	private class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer view;
+		private final Allocation allocation;
+
+		public ByteBufferInputStream(ByteBuffer view, Allocation allocation) {
+			this.view = view;
+			this.allocation = allocation;
+		}
+
+		@Override
+		public int read() throws IOException {
+			synchronized (ByteBufferResource.this) {
+				checkOpen();
+				return view.hasRemaining() ? (view.get() & 0xff) : -1;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			synchronized (ByteBufferResource.this) {
+				checkOpen();
+				if (! view.hasRemaining()) {
+					return -1;
+				}
+				len = Math.min(len, view.remaining());
+				view.get(b, off, len);
+				return len;
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			synchronized (ByteBufferResource.this) {
+				checkOpen();
+				int skipped = (int) Math.max(0, Math.min(n, view.remaining()));
+				view.position(view.position() + skipped);
+				return skipped;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			synchronized (ByteBufferResource.this) {
+				checkOpen();
+				return view.remaining();
+			}
+		}
+
+		private void checkOpen() throws IOException {
+			if (allocation.freed) {
+				throw new IOException("ByteBufferResource " + getHref() + " is closed");
+			}
+		}
+	}
+}
@@ -9,6 +9,7 @@ import java.util.zip.ZipFile;
 
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.IOUtil;
+import nl.siegmann.epublib.util.ZipFileRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,29 +107,48 @@ public class LazyResource extends Resource {
 			LOG.debug("Initializing lazy resource " + filename + "#" + this.getHref() );
 			
 			InputStream in = getResourceStream();
-			byte[] readData = IOUtil.toByteArray(in, (int) this.cachedSize);
-			if ( readData == null ) {
-			    throw new IOException("Could not load the contents of entry " + this.getHref() + " from epub file " + filename);
-			} else {
-			    this.data = readData;
+			try {
+				byte[] readData = IOUtil.toByteArray(in, (int) this.cachedSize);
+				if ( readData == null ) {
+				    throw new IOException("Could not load the contents of entry " + this.getHref() + " from epub file " + filename);
+				} else {
+				    this.data = readData;
+				}
+			} finally {
+				in.close();
 			}
-			
-			in.close();
 		}
 
 		return data;
 	}
 
 	
+	/**
+	 * Opens a stream on this resource's entry in the epub file.
+	 * 
+	 * The ZipFile is shared with the other LazyResources of the same epub through the ZipFileRegistry,
+	 * so the central directory of the epub is not read again for every resource that is open at the same time,
+	 * or for every load within the idle timeout of the registry.
+	 * 
+	 * @return a stream on this resource's entry in the epub file.
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
 	private InputStream getResourceStream() throws FileNotFoundException,
 			IOException {
-		ZipFile zipFile = new ZipFile(filename);
+		ZipFileRegistry zipFileRegistry = ZipFileRegistry.getInstance();
+		ZipFile zipFile = zipFileRegistry.acquire(filename);
 		ZipEntry zipEntry = zipFile.getEntry(originalHref);
 		if (zipEntry == null) {
-			zipFile.close();
+			zipFileRegistry.release(zipFile);
 			throw new IllegalStateException("Cannot find entry " + originalHref + " in epub file " + filename);
 		}
-		return new ResourceInputStream(zipFile.getInputStream(zipEntry), zipFile);
+		try {
+			return new ResourceInputStream(zipFile.getInputStream(zipEntry), zipFile, zipFileRegistry);
+		} catch (IOException e) {
+			zipFileRegistry.release(zipFile);
+			throw e;
+		}
 	}
 	
 	/**
@@ -3,8 +3,17 @@ package nl.siegmann.epublib.domain;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipFile;
 
 import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.service.MediatypeService;
@@ -32,6 +41,12 @@ public class Resource implements Serializable {
 	private MediaType mediaType;
 	private String inputEncoding = Constants.CHARACTER_ENCODING;
 	protected byte[] data;
+	// the Resources this Resource has been added to, which index it by its id and MediaType
+	private transient List<WeakReference<Resources>> owners;
+	// the zip entry this Resource was read from, and whether its data has been changed since
+	private transient ZipFile sourceZipFile;
+	private transient ZipEntry sourceZipEntry;
+	private transient boolean dirty = false;
 	
 	/**
 	 * Creates an empty Resource with the given href.
@@ -174,6 +189,52 @@ public class Resource implements Serializable {
 	 */
 	public void setData(byte[] data) {
 		this.data = data;
+		this.dirty = true;
+	}
+
+	/**
+	 * Records the zip entry this Resource was read from.
+	 * 
+	 * As long as the data of the Resource is not changed through {@link #setData(byte[])} the epub writers copy the
+	 * compressed data of this entry as is, instead of compressing the data of the Resource again.
+	 * Changing the href of the Resource does not matter, as that does not change its data.
+	 * 
+	 * @param zipFile the epub the Resource was read from
+	 * @param zipEntry the entry of the Resource in the epub
+	 */
+	public void setSource(ZipFile zipFile, ZipEntry zipEntry) {
+		this.sourceZipFile = zipFile;
+		this.sourceZipEntry = zipEntry;
+		this.dirty = false;
+	}
+
+	/**
+	 * The epub this Resource was read from, null if unknown.
+	 * 
+	 * @return The epub this Resource was read from.
+	 */
+	public ZipFile getSourceZipFile() {
+		return sourceZipFile;
+	}
+
+	/**
+	 * The entry in the epub this Resource was read from, null if unknown.
+	 * 
+	 * @return The entry in the epub this Resource was read from.
+	 */
+	public ZipEntry getSourceZipEntry() {
+		return sourceZipEntry;
+	}
+
+	/**
+	 * Whether the data of this Resource has been set since it was read from its source zip entry.
+	 * 
+	 * Changes made directly to the byte[] returned by {@link #getData()} are not detected.
+	 * 
+	 * @return Whether the data of this Resource has been set since it was read from its source zip entry.
+	 */
+	public boolean isDirty() {
+		return dirty;
 	}
 	
 	/**
@@ -182,7 +243,7 @@ public class Resource implements Serializable {
 	 * @return the size.
 	 */
 	public long getSize() {
-		return data.length;
+		return data == null ? 0 : data.length;
 	}
 	
 	/**
@@ -200,7 +261,50 @@ public class Resource implements Serializable {
 	 * @param id
 	 */
 	public void setId(String id) {
+		String oldId = this.id;
 		this.id = id;
+		if (owners != null) {
+			for (Resources owner: getOwners()) {
+				owner.resourceIdChanged(this, oldId);
+			}
+		}
+	}
+
+	void addOwner(Resources owner) {
+		if (owners == null) {
+			owners = new ArrayList<WeakReference<Resources>>(1);
+		} else if (getOwners().contains(owner)) {
+			return;
+		}
+		owners.add(new WeakReference<Resources>(owner));
+	}
+
+	void removeOwner(Resources owner) {
+		if (owners == null) {
+			return;
+		}
+		for (Iterator<WeakReference<Resources>> iter = owners.iterator(); iter.hasNext();) {
+			Resources ownerResources = iter.next().get();
+			if (ownerResources == null || ownerResources == owner) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * The Resources this Resource is part of, removing the ones that have been garbage collected.
+	 */
+	private List<Resources> getOwners() {
+		List<Resources> result = new ArrayList<Resources>(owners.size());
+		for (Iterator<WeakReference<Resources>> iter = owners.iterator(); iter.hasNext();) {
+			Resources owner = iter.next().get();
+			if (owner == null) {
+				iter.remove();
+			} else {
+				result.add(owner);
+			}
+		}
+		return result;
 	}
 	
 	/**
@@ -296,19 +400,43 @@ public class Resource implements Serializable {
 	}
 	
 	public void setMediaType(MediaType mediaType) {
+		MediaType oldMediaType = this.mediaType;
 		this.mediaType = mediaType;
+		if (owners != null) {
+			for (Resources owner: getOwners()) {
+				owner.resourceMediaTypeChanged(this, oldMediaType);
+			}
+		}
 	}
 
 	public void setTitle(String title) {
 		this.title = title;
 	}
 
+	/**
+	 * Creates a plain Resource with the data, id, href, media type, input encoding and title of this resource.
+	 * Subclasses that keep their data outside of the Resource are serialized as this copy by their writeReplace.
+	 *
+	 * @return a plain Resource with the data of this resource.
+	 * @throws ObjectStreamException if the data could not be read.
+	 */
+	protected Resource toPlainResource() throws ObjectStreamException {
+		Resource result;
+		try {
+			result = new Resource(getId(), getData(), getHref(), getMediaType(), getInputEncoding());
+		} catch (IOException e) {
+			throw new InvalidObjectException("Could not read data of " + getHref() + ": " + e.getMessage());
+		}
+		result.setTitle(getTitle());
+		return result;
+	}
+
 	public String toString() {
 		return StringUtil.toString("id", id,
 				"title", title,
 				"encoding", inputEncoding,
 				"mediaType", mediaType,
 				"href", href,
-				"size", (data == null ? 0 : data.length));
+				"size", getSize());
 	}
 }
@@ -0,0 +1,68 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the data of StoredResources.
+ *
+ * A store decides per resource where its data is kept, for instance on the heap for small resources and in a
+ * temporary file for large ones.
+ *
+ * @see StoredResource
+ * @see SpillingResourceDataStore
+ */
+public interface ResourceDataStore {
+
+	/**
+	 * The data of one resource, as kept by the store.
+	 */
+	interface Data {
+
+		/**
+		 * @return the size of the data in bytes.
+		 */
+		long getSize();
+
+		/**
+		 * Returns the data as a byte[].
+		 *
+		 * Data that is not kept on the heap is read into a new array on every call.
+		 *
+		 * @return the data as a byte[]
+		 * @throws IOException
+		 */
+		byte[] getBytes() throws IOException;
+
+		/**
+		 * @return a new stream on the data.
+		 * @throws IOException
+		 */
+		InputStream getInputStream() throws IOException;
+
+		/**
+		 * Tells the store that the data is no longer used.
+		 */
+		void release();
+	}
+
+	/**
+	 * Stores the given data.
+	 *
+	 * The store may keep a reference to the array, so it must not be changed afterwards.
+	 *
+	 * @param data
+	 * @return the stored data
+	 * @throws IOException
+	 */
+	Data store(byte[] data) throws IOException;
+
+	/**
+	 * Stores the contents of the stream. The stream is read to its end but not closed.
+	 *
+	 * @param in
+	 * @return the stored data
+	 * @throws IOException
+	 */
+	Data store(InputStream in) throws IOException;
+}
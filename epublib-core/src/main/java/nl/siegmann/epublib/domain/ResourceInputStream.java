@@ -4,10 +4,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipFile;
 
+import nl.siegmann.epublib.util.ZipFileRegistry;
+
 
 /**
  * A wrapper class for closing a ZipFile object when the InputStream derived
- * from it is closed.
+ * from it is closed, or for releasing it to the ZipFileRegistry it was acquired from.
  * 
  * @author ttopalov
  * 
@@ -15,6 +17,8 @@ import java.util.zip.ZipFile;
 public class ResourceInputStream extends FilterInputStream {
 
 	private final ZipFile zipFile;
+	private final ZipFileRegistry zipFileRegistry;
+	private boolean closed = false;
 	
 	/**
 	 * Constructor.
@@ -25,13 +29,40 @@ public class ResourceInputStream extends FilterInputStream {
 	 *            The ZipFile object.
 	 */
 	public ResourceInputStream(InputStream in, ZipFile zipFile) {
+		this(in, zipFile, null);
+	}
+	
+	/**
+	 * Constructor for a stream on a ZipFile that is shared through a ZipFileRegistry.
+	 * Closing the stream releases the ZipFile to the registry instead of closing it.
+	 * 
+	 * @param in
+	 *            The InputStream object.
+	 * @param zipFile
+	 *            The ZipFile object.
+	 * @param zipFileRegistry
+	 *            The registry the zipFile was acquired from.
+	 */
+	public ResourceInputStream(InputStream in, ZipFile zipFile, ZipFileRegistry zipFileRegistry) {
 		super(in);
 		this.zipFile = zipFile;
+		this.zipFileRegistry = zipFileRegistry;
 	}
 	
 	@Override
 	public void close() throws IOException {
-		super.close();
-		zipFile.close();
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			super.close();
+		} finally {
+			if (zipFileRegistry == null) {
+				zipFile.close();
+			} else {
+				zipFileRegistry.release(zipFile);
+			}
+		}
 	}
 }
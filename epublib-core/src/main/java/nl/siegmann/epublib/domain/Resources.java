@@ -1,12 +1,21 @@
 package nl.siegmann.epublib.domain;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.service.MediatypeService;
@@ -31,6 +40,39 @@ public class Resources implements Serializable {
 	
 	private Map<String, Resource> resources = new HashMap<String, Resource>();
 	
+	// index of the resources by id, kept up to date by the resources through resourceIdChanged
+	private transient Map<String, Resource> resourcesById = new HashMap<String, Resource>();
+	
+	// whether resources with the same id have been added, in which case the index only holds one of them
+	private transient boolean duplicateIds = false;
+	
+	// the resources by MediaType, in the order in which they were added
+	private transient Map<MediaType, Map<ResourceKey, Resource>> resourcesByMediaType = new IdentityHashMap<MediaType, Map<ResourceKey, Resource>>();
+	
+	// the resources map as returned by getResourceMap, created when first needed
+	private transient Map<String, Resource> resourceMapView;
+	
+	/**
+	 * Identifies a Resource by identity, as the hashCode and equals of Resource depend on its href, which may change.
+	 */
+	private static final class ResourceKey {
+		private final Resource resource;
+		
+		ResourceKey(Resource resource) {
+			this.resource = resource;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(resource);
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof ResourceKey) && ((ResourceKey) other).resource == resource;
+		}
+	}
+	
 	/**
 	 * Adds a resource to the resources.
 	 * 
@@ -42,10 +84,125 @@ public class Resources implements Serializable {
 	public Resource add(Resource resource) {
 		fixResourceHref(resource);
 		fixResourceId(resource);
-		this.resources.put(resource.getHref(), resource);
+		put(resource);
 		return resource;
 	}
 
+	private void put(Resource resource) {
+		put(resource.getHref(), resource);
+	}
+
+	private Resource put(String href, Resource resource) {
+		Resource previous = this.resources.put(href, resource);
+		if (previous != resource) {
+			detach(previous);
+			attach(resource);
+		}
+		return previous;
+	}
+
+	private void attach(Resource resource) {
+		if (resource == null) {
+			return;
+		}
+		resource.addOwner(this);
+		index(resource);
+		indexMediaType(resource);
+	}
+
+	private void detach(Resource resource) {
+		if (resource == null) {
+			return;
+		}
+		resource.removeOwner(this);
+		unindex(resource, resource.getId());
+		unindexMediaType(resource, resource.getMediaType());
+	}
+
+	private void index(Resource resource) {
+		String id = resource.getId();
+		if (StringUtil.isBlank(id)) {
+			return;
+		}
+		Resource existing = resourcesById.get(id);
+		if (existing == null) {
+			resourcesById.put(id, resource);
+		} else if (existing != resource) {
+			duplicateIds = true;
+		}
+	}
+
+	private void unindex(Resource resource, String id) {
+		if (StringUtil.isBlank(id) || resourcesById.get(id) != resource) {
+			return;
+		}
+		resourcesById.remove(id);
+		if (duplicateIds) {
+			for (Resource other: resources.values()) {
+				if (other != resource && id.equals(other.getId())) {
+					resourcesById.put(id, other);
+					break;
+				}
+			}
+		}
+	}
+
+	private void indexMediaType(Resource resource) {
+		Map<ResourceKey, Resource> bucket = resourcesByMediaType.get(resource.getMediaType());
+		if (bucket == null) {
+			bucket = new LinkedHashMap<ResourceKey, Resource>();
+			resourcesByMediaType.put(resource.getMediaType(), bucket);
+		}
+		bucket.put(new ResourceKey(resource), resource);
+	}
+
+	private void unindexMediaType(Resource resource, MediaType mediaType) {
+		Map<ResourceKey, Resource> bucket = resourcesByMediaType.get(mediaType);
+		if (bucket == null) {
+			return;
+		}
+		bucket.remove(new ResourceKey(resource));
+		if (bucket.isEmpty()) {
+			resourcesByMediaType.remove(mediaType);
+		}
+	}
+
+	/**
+	 * Called by a Resource of this Resources when its MediaType has changed.
+	 * 
+	 * @param resource
+	 * @param oldMediaType
+	 */
+	void resourceMediaTypeChanged(Resource resource, MediaType oldMediaType) {
+		unindexMediaType(resource, oldMediaType);
+		indexMediaType(resource);
+	}
+
+	/**
+	 * Called by a Resource of this Resources when its id has changed.
+	 * 
+	 * @param resource
+	 * @param oldId
+	 */
+	void resourceIdChanged(Resource resource, String oldId) {
+		unindex(resource, oldId);
+		index(resource);
+	}
+
+	private void rebuildIndex() {
+		resourcesById = new HashMap<String, Resource>();
+		duplicateIds = false;
+		resourcesByMediaType = new IdentityHashMap<MediaType, Map<ResourceKey, Resource>>();
+		for (Resource resource: resources.values()) {
+			attach(resource);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		rebuildIndex();
+	}
+
 	/**
 	 * Checks the id of the given resource and changes to a unique identifier if it isn't one already.
 	 * 
@@ -126,12 +283,7 @@ public class Resources implements Serializable {
 		if (StringUtil.isBlank(id)) {
 			return false;
 		}
-		for (Resource resource: resources.values()) {
-			if (id.equals(resource.getId())) {
-				return true;
-			}
-		}
-		return false;
+		return resourcesById.containsKey(id);
 	}
 	
 	/**
@@ -144,12 +296,7 @@ public class Resources implements Serializable {
 		if (StringUtil.isBlank(id)) {
 			return null;
 		}
-		for (Resource resource: resources.values()) {
-			if (id.equals(resource.getId())) {
-				return resource;
-			}
-		}
-		return null;
+		return resourcesById.get(id);
 	}
 	
 	/**
@@ -159,7 +306,11 @@ public class Resources implements Serializable {
 	 * @return the removed resource, null if not found
 	 */
 	public Resource remove(String href) {
-		return resources.remove(href);
+		Resource result = resources.remove(href);
+		if (result != null) {
+			detach(result);
+		}
+		return result;
 	}
 	
 	private void fixResourceHref(Resource resource) {
@@ -205,14 +356,19 @@ public class Resources implements Serializable {
 	 * The resources that make up this book.
 	 * Resources can be xhtml pages, images, xml documents, etc.
 	 * 
+	 * The returned Map is backed by this Resources, changes to it are reflected in the lookups by id and MediaType.
+	 * 
 	 * @return The resources that make up this book.
 	 */
 	public Map<String, Resource> getResourceMap() {
-		return resources;
+		if (resourceMapView == null) {
+			resourceMapView = new ResourceMapView();
+		}
+		return resourceMapView;
 	}
 	
 	public Collection<Resource> getAll() {
-		return resources.values();
+		return getResourceMap().values();
 	}
 	
 	
@@ -234,7 +390,13 @@ public class Resources implements Serializable {
 	 * @param resources
 	 */
 	public void set(Collection<Resource> resources) {
+		for (Resource resource: this.resources.values()) {
+			resource.removeOwner(this);
+		}
 		this.resources.clear();
+		resourcesById.clear();
+		duplicateIds = false;
+		resourcesByMediaType.clear();
 		addAll(resources);
 	}
 	
@@ -246,7 +408,7 @@ public class Resources implements Serializable {
 	public void addAll(Collection<Resource> resources) {
 		for(Resource resource: resources) {
 			fixResourceHref(resource);
-			this.resources.put(resource.getHref(), resource);
+			put(resource);
 		}
 	}
 
@@ -256,7 +418,11 @@ public class Resources implements Serializable {
 	 * @param resources A map with as keys the resources href and as values the Resources
 	 */
 	public void set(Map<String, Resource> resources) {
+		for (Resource resource: this.resources.values()) {
+			resource.removeOwner(this);
+		}
 		this.resources = new HashMap<String, Resource>(resources);
+		rebuildIndex();
 	}
 	
 	
@@ -293,15 +459,19 @@ public class Resources implements Serializable {
 	}
 	
 	/**
-	 * Gets the first resource (random order) with the give mediatype.
+	 * Gets the first added resource with the give mediatype.
 	 * 
 	 * Useful for looking up the table of contents as it's supposed to be the only resource with NCX mediatype.
 	 * 
 	 * @param mediaType
-	 * @return the first resource (random order) with the give mediatype.
+	 * @return the first added resource with the give mediatype.
 	 */
 	public Resource findFirstResourceByMediaType(MediaType mediaType) {
-		return findFirstResourceByMediaType(resources.values(), mediaType);
+		Map<ResourceKey, Resource> bucket = resourcesByMediaType.get(mediaType);
+		if (bucket == null) {
+			return null;
+		}
+		return bucket.values().iterator().next();
 	}
 	
 	/**
@@ -328,16 +498,14 @@ public class Resources implements Serializable {
 	 * @return All resources that have the given MediaType.
 	 */
 	public List<Resource> getResourcesByMediaType(MediaType mediaType) {
-		List<Resource> result = new ArrayList<Resource>();
 		if (mediaType == null) {
-			return result;
+			return new ArrayList<Resource>();
 		}
-		for (Resource resource: getAll()) {
-			if (resource.getMediaType() == mediaType) {
-				result.add(resource);
-			}
+		Map<ResourceKey, Resource> bucket = resourcesByMediaType.get(mediaType);
+		if (bucket == null) {
+			return new ArrayList<Resource>();
 		}
-		return result;
+		return new ArrayList<Resource>(bucket.values());
 	}
 
 	/**
@@ -352,12 +520,11 @@ public class Resources implements Serializable {
 			return result;
 		}
 		
-		// this is the fastest way of doing this according to 
-		// http://stackoverflow.com/questions/1128723/in-java-how-can-i-test-if-an-array-contains-a-certain-value
+		// there are only a few distinct MediaTypes, so we check those instead of every resource
 		List<MediaType> mediaTypesList = Arrays.asList(mediaTypes);
-		for (Resource resource: getAll()) {
-			if (mediaTypesList.contains(resource.getMediaType())) {
-				result.add(resource);
+		for (Map.Entry<MediaType, Map<ResourceKey, Resource>> bucket: resourcesByMediaType.entrySet()) {
+			if (mediaTypesList.contains(bucket.getKey())) {
+				result.addAll(bucket.getValue().values());
 			}
 		}
 		return result;
@@ -370,6 +537,139 @@ public class Resources implements Serializable {
 	 * @return all resource hrefs
 	 */
 	public Collection<String> getAllHrefs() {
-		return resources.keySet();
+		return getResourceMap().keySet();
+	}
+
+	/**
+	 * The resources map, as a view that updates the index by id and by MediaType when resources are put in or
+	 * removed through it, its keys, values or entries.
+	 */
+	private class ResourceMapView extends AbstractMap<String, Resource> {
+
+		@Override
+		public int size() {
+			return resources.size();
+		}
+
+		@Override
+		public boolean containsKey(Object href) {
+			return resources.containsKey(href);
+		}
+
+		@Override
+		public Resource get(Object href) {
+			return resources.get(href);
+		}
+
+		@Override
+		public Resource put(String href, Resource resource) {
+			return Resources.this.put(href, resource);
+		}
+
+		@Override
+		public Resource remove(Object href) {
+			if (! resources.containsKey(href)) {
+				return null;
+			}
+			Resource result = resources.remove(href);
+			detach(result);
+			return result;
+		}
+
+		@Override
+		public Collection<Resource> values() {
+			return new AbstractCollection<Resource>() {
+
+				@Override
+				public int size() {
+					return resources.size();
+				}
+
+				@Override
+				public Iterator<Resource> iterator() {
+					final Iterator<Resource> values = resources.values().iterator();
+					return new Iterator<Resource>() {
+
+						private Resource current;
+
+						@Override
+						public boolean hasNext() {
+							return values.hasNext();
+						}
+
+						@Override
+						public Resource next() {
+							current = values.next();
+							return current;
+						}
+
+						@Override
+						public void remove() {
+							values.remove();
+							detach(current);
+						}
+					};
+				}
+			};
+		}
+
+		@Override
+		public Set<Map.Entry<String, Resource>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Resource>>() {
+
+				@Override
+				public int size() {
+					return resources.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, Resource>> iterator() {
+					final Iterator<Map.Entry<String, Resource>> entries = resources.entrySet().iterator();
+					return new Iterator<Map.Entry<String, Resource>>() {
+
+						private Map.Entry<String, Resource> current;
+
+						@Override
+						public boolean hasNext() {
+							return entries.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, Resource> next() {
+							current = entries.next();
+							return new ResourceEntry(current);
+						}
+
+						@Override
+						public void remove() {
+							entries.remove();
+							detach(current.getValue());
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private class ResourceEntry extends AbstractMap.SimpleEntry<String, Resource> {
+
+		private static final long serialVersionUID = 1L;
+		private final Map.Entry<String, Resource> entry;
+
+		ResourceEntry(Map.Entry<String, Resource> entry) {
+			super(entry);
+			this.entry = entry;
+		}
+
+		@Override
+		public Resource setValue(Resource resource) {
+			super.setValue(resource);
+			Resource previous = entry.setValue(resource);
+			if (previous != resource) {
+				detach(previous);
+				attach(resource);
+			}
+			return previous;
+		}
 	}
 }
@@ -0,0 +1,290 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ResourceDataStore that keeps small resources on the heap and spills the others to a temporary file.
+ *
+ * Resources of at least the spill threshold go to the file, as do all resources once the heap budget
+ * is used up. Use one store per book to give every book its own heap budget.
+ *
+ * The temporary file only grows: the space of released data is given back when the store is closed,
+ * which also deletes the file.
+ */
+public class SpillingResourceDataStore implements ResourceDataStore, Closeable {
+
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+	public static final long DEFAULT_HEAP_BUDGET = 32 * 1024 * 1024;
+
+	private static final Logger log = LoggerFactory.getLogger(SpillingResourceDataStore.class);
+
+	private final int spillThreshold;
+	private final long heapBudget;
+	private final File directory;
+	private long heapUsed = 0;
+	private File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private long fileSize = 0;
+	private boolean closed = false;
+
+	public SpillingResourceDataStore() {
+		this(DEFAULT_SPILL_THRESHOLD, DEFAULT_HEAP_BUDGET);
+	}
+
+	public SpillingResourceDataStore(int spillThreshold, long heapBudget) {
+		this(spillThreshold, heapBudget, null);
+	}
+
+	/**
+	 * @param spillThreshold the size from which resources are spilled to the file
+	 * @param heapBudget the number of bytes of resource data that may be kept on the heap
+	 * @param directory the directory of the temporary file, null for the default temporary directory
+	 */
+	public SpillingResourceDataStore(int spillThreshold, long heapBudget, File directory) {
+		this.spillThreshold = spillThreshold;
+		this.heapBudget = heapBudget;
+		this.directory = directory;
+	}
+
+	public Data store(byte[] data) throws IOException {
+		if (data.length < spillThreshold && reserveHeap(data.length)) {
+			return new HeapData(data);
+		}
+		return spill(new ByteArrayInputStream(data));
+	}
+
+	public Data store(InputStream in) throws IOException {
+		// read up to the threshold, what is left over goes to the file
+		byte[] head = new byte[spillThreshold > 0 ? Math.min(spillThreshold, IOUtil.getCopyBufferSize()) : 0];
+		int headSize = 0;
+		while (headSize < spillThreshold) {
+			if (headSize == head.length) {
+				byte[] newHead = new byte[(int) Math.min(spillThreshold, head.length * 2L)];
+				System.arraycopy(head, 0, newHead, 0, headSize);
+				head = newHead;
+			}
+			int readSize = in.read(head, headSize, head.length - headSize);
+			if (readSize < 0) {
+				byte[] data = new byte[headSize];
+				System.arraycopy(head, 0, data, 0, headSize);
+				if (reserveHeap(headSize)) {
+					return new HeapData(data);
+				}
+				return spill(new ByteArrayInputStream(data));
+			}
+			headSize += readSize;
+		}
+		return spill(new SequenceInputStream(new ByteArrayInputStream(head, 0, headSize), in));
+	}
+
+	/**
+	 * @return the number of bytes of resource data kept on the heap
+	 */
+	public synchronized long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/**
+	 * @return the size of the temporary file
+	 */
+	public synchronized long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Deletes the temporary file. The spilled data can no longer be read afterwards.
+	 */
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (randomAccessFile == null) {
+			return;
+		}
+		try {
+			randomAccessFile.close();
+		} finally {
+			if (! file.delete()) {
+				log.warn("Could not delete temporary file " + file);
+			}
+			randomAccessFile = null;
+			channel = null;
+			fileSize = 0;
+		}
+	}
+
+	private synchronized boolean reserveHeap(int size) {
+		if (heapUsed + size > heapBudget) {
+			return false;
+		}
+		heapUsed += size;
+		return true;
+	}
+
+	private synchronized void releaseHeap(int size) {
+		heapUsed -= size;
+	}
+
+	/**
+	 * Appends the contents of the stream to the temporary file.
+	 */
+	private synchronized Data spill(InputStream in) throws IOException {
+		FileChannel fileChannel = getChannel();
+		long offset = fileSize;
+		long position = offset;
+		byte[] buffer = IOUtil.takeCopyBuffer();
+		try {
+			for (int readSize = in.read(buffer); readSize >= 0; readSize = in.read(buffer)) {
+				ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, readSize);
+				while (byteBuffer.hasRemaining()) {
+					position += fileChannel.write(byteBuffer, position);
+				}
+			}
+		} finally {
+			IOUtil.releaseCopyBuffer(buffer);
+		}
+		fileSize = position;
+		return new FileData(fileChannel, offset, position - offset);
+	}
+
+	private FileChannel getChannel() throws IOException {
+		if (closed) {
+			throw new IOException("ResourceDataStore is closed");
+		}
+		if (channel == null) {
+			file = File.createTempFile("epublib", ".data", directory);
+			file.deleteOnExit();
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			channel = randomAccessFile.getChannel();
+			log.debug("Spilling resource data to " + file);
+		}
+		return channel;
+	}
+
+	private class HeapData implements Data {
+
+		private byte[] data;
+
+		public HeapData(byte[] data) {
+			this.data = data;
+		}
+
+		public long getSize() {
+			return data.length;
+		}
+
+		public byte[] getBytes() {
+			return data;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(data);
+		}
+
+		public void release() {
+			if (data != null) {
+				releaseHeap(data.length);
+				data = null;
+			}
+		}
+	}
+
+	private static class FileData implements Data {
+
+		private final FileChannel channel;
+		private final long offset;
+		private final long size;
+
+		public FileData(FileChannel channel, long offset, long size) {
+			this.channel = channel;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public byte[] getBytes() throws IOException {
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Resource too large to read into memory: " + size + " bytes");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) {
+					throw new IOException("Temporary file ends early");
+				}
+			}
+			return buffer.array();
+		}
+
+		public InputStream getInputStream() {
+			return new FileDataInputStream(channel, offset, size);
+		}
+
+		public void release() {
+		}
+	}
+
+	/**
+	 * Reads a part of the temporary file with positional reads, so several can read at the same time.
+	 */
+	private static class FileDataInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		public FileDataInputStream(FileChannel channel, long offset, long size) {
+			this.channel = channel;
+			this.position = offset;
+			this.end = offset + size;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int readSize = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (readSize < 0) {
+				throw new IOException("Temporary file ends early");
+			}
+			position += readSize;
+			return readSize;
+		}
+
+		@Override
+		public long skip(long n) {
+			long skipped = Math.max(0, Math.min(n, end - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - position);
+		}
+	}
+}
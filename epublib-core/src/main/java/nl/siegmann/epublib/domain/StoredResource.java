@@ -0,0 +1,132 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Resource that keeps its data in a ResourceDataStore instead of on the heap.
+ *
+ * The epub writers read resources through {@link #getInputStream()}, so the data of a spilled resource
+ * does not have to fit in memory to be written.
+ * getData() reads data that is not on the heap into a new byte[] on every call.
+ *
+ * @see ResourceDataStore
+ */
+public class StoredResource extends Resource {
+
+	private static final long serialVersionUID = -3409865498129474410L;
+
+	private static final Logger log = LoggerFactory.getLogger(StoredResource.class);
+
+	private transient final ResourceDataStore store;
+	private transient ResourceDataStore.Data storedData;
+
+	/**
+	 * Creates a resource with the data from the given InputStream at the specified href.
+	 * The MediaType will be determined based on the href extension.
+	 *
+	 * @param store The store to keep the data in
+	 * @param in The Resource's contents
+	 * @param href The location of the resource within the epub. Example: "cover.jpg".
+	 * @throws IOException
+	 */
+	public StoredResource(ResourceDataStore store, InputStream in, String href) throws IOException {
+		this(store, null, in, href, MediatypeService.determineMediaType(href));
+	}
+
+	/**
+	 * Creates a resource with the data from the given InputStream.
+	 *
+	 * @param store The store to keep the data in
+	 * @param id The id of the Resource. Internal use only. Will be auto-generated if it has a null-value.
+	 * @param in The Resource's contents
+	 * @param href The location of the resource within the epub. Example: "chapter1.html".
+	 * @param mediaType The resources MediaType
+	 * @throws IOException
+	 */
+	public StoredResource(ResourceDataStore store, String id, InputStream in, String href, MediaType mediaType) throws IOException {
+		super(id, null, href, mediaType, Constants.CHARACTER_ENCODING);
+		this.store = store;
+		this.storedData = store.store(in);
+	}
+
+	/**
+	 * Creates a resource with the given data.
+	 *
+	 * @param store The store to keep the data in
+	 * @param id The id of the Resource. Internal use only. Will be auto-generated if it has a null-value.
+	 * @param data The Resource's contents
+	 * @param href The location of the resource within the epub. Example: "chapter1.html".
+	 * @param mediaType The resources MediaType
+	 * @throws IOException
+	 */
+	public StoredResource(ResourceDataStore store, String id, byte[] data, String href, MediaType mediaType) throws IOException {
+		super(id, null, href, mediaType, Constants.CHARACTER_ENCODING);
+		this.store = store;
+		this.storedData = store.store(data);
+	}
+
+	public InputStream getInputStream() throws IOException {
+		if (storedData == null) {
+			return super.getInputStream();
+		}
+		return storedData.getInputStream();
+	}
+
+	public byte[] getData() throws IOException {
+		if (storedData == null) {
+			return super.getData();
+		}
+		return storedData.getBytes();
+	}
+
+	/**
+	 * Stores the new data in the store.
+	 *
+	 * If the store fails to take the data, it is kept on the heap.
+	 */
+	public void setData(byte[] data) {
+		ResourceDataStore.Data oldData = storedData;
+		ResourceDataStore.Data newData = null;
+		try {
+			newData = store.store(data);
+		} catch (IOException e) {
+			log.warn("Keeping data of " + getHref() + " on the heap: " + e.getMessage());
+		}
+		super.setData(newData == null ? data : null);
+		storedData = newData;
+		if (oldData != null) {
+			oldData.release();
+		}
+	}
+
+	public long getSize() {
+		if (storedData == null) {
+			return super.getSize();
+		}
+		return storedData.getSize();
+	}
+
+	/**
+	 * The store that keeps the data of this resource.
+	 *
+	 * @return The store that keeps the data of this resource.
+	 */
+	public ResourceDataStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Serializes a StoredResource as a plain Resource that holds its data.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return toPlainResource();
+	}
+}
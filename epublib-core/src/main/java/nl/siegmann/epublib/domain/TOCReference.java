@@ -8,6 +8,8 @@ import java.util.List;
 /**
  * An item in the Table of Contents.
  * 
+ * The children are only accessed through getChildren(), so that subclasses can load them on first use.
+ * 
  * @see nl.siegmann.epublib.domain.TableOfContents
  * 
  * @author paul
@@ -54,7 +56,7 @@ public class TOCReference extends TitledResourceReference implements Serializabl
 	}
 
 	public TOCReference addChildSection(TOCReference childSection) {
-		this.children.add(childSection);
+		getChildren().add(childSection);
 		return childSection;
 	}
 	
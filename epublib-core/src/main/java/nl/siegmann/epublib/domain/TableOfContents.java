@@ -16,6 +16,8 @@ import java.util.Set;
  * 
  * See the spine for the complete list of sections in the order in which they should be read.
  * 
+ * The TOCReferences are only accessed through getTocReferences(), so that subclasses can load them on first use.
+ * 
  * @see nl.siegmann.epublib.domain.Spine
  * 
  * @author paul
@@ -106,7 +108,7 @@ public class TableOfContents implements Serializable {
 			return null;
 		}
 		TOCReference result = null;
-		List<TOCReference> currentTocReferences = this.tocReferences;
+		List<TOCReference> currentTocReferences = getTocReferences();
 		for (int i = 0; i < pathElements.length; i++) {
 			String currentTitle = pathElements[i];
 			result = findTocReferenceByTitle(currentTitle, currentTocReferences);
@@ -141,7 +143,7 @@ public class TableOfContents implements Serializable {
 			return null;
 		}
 		TOCReference result = null;
-		List<TOCReference> currentTocReferences = this.tocReferences;
+		List<TOCReference> currentTocReferences = getTocReferences();
 		for (int i = 0; i < pathElements.length; i++) {
 			int currentIndex = pathElements[i];
 			if (currentIndex > 0 && currentIndex < (currentTocReferences.size() - 1)) {
@@ -185,10 +187,10 @@ public class TableOfContents implements Serializable {
 	}
 
 	public TOCReference addTOCReference(TOCReference tocReference) {
-		if (tocReferences == null) {
-			tocReferences = new ArrayList<TOCReference>();
+		if (getTocReferences() == null) {
+			setTocReferences(new ArrayList<TOCReference>());
 		}
-		tocReferences.add(tocReference);
+		getTocReferences().add(tocReference);
 		return tocReference;
 	}
 	
@@ -200,7 +202,7 @@ public class TableOfContents implements Serializable {
 	public List<Resource> getAllUniqueResources() {
 		Set<String> uniqueHrefs = new HashSet<String>();
 		List<Resource> result = new ArrayList<Resource>();
-		getAllUniqueResources(uniqueHrefs, result, tocReferences);
+		getAllUniqueResources(uniqueHrefs, result, getTocReferences());
 		return result;
 	}
 	
@@ -222,7 +224,7 @@ public class TableOfContents implements Serializable {
 	 * @return The total number of references in this table of contents.
 	 */
 	public int size() {
-		return getTotalSize(tocReferences);
+		return getTotalSize(getTocReferences());
 	}
 	
 	private static int getTotalSize(Collection<TOCReference> tocReferences) {
@@ -238,7 +240,7 @@ public class TableOfContents implements Serializable {
 	 * @return The maximum depth of the reference tree
 	 */
 	public int calculateDepth() {
-		return calculateDepth(tocReferences, 0);
+		return calculateDepth(getTocReferences(), 0);
 	}
 
 	private int calculateDepth(List<TOCReference> tocReferences, int currentDepth) {
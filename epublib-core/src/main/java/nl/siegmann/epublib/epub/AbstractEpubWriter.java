@@ -1,20 +1,40 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipOutputStream;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.CompressionPolicy.Compression;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.IOUtil;
+import nl.siegmann.epublib.util.NoFlushOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xmlpull.v1.XmlSerializer;
 
 /**
+ * The methods that write zip entries take a net.sf.jazzlib.ZipOutputStream rather than a java.util.zip one, as it can
+ * write entries that were compressed beforehand or are copied unchanged from another zip file.
  *
  * @author Pieter Heyvaert <pheyvaer.heyvaert@ugent.be>
  */
@@ -24,6 +44,10 @@ public abstract class AbstractEpubWriter implements EpubWriter {
     protected static final String EMPTY_NAMESPACE_PREFIX = "";
 
     protected BookProcessor bookProcessor = BookProcessor.IDENTITY_BOOKPROCESSOR;
+    private int parallelism = 1;
+    private Executor executor;
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+    private long maxParallelCompressionSize = 1024 * 1024;
 
     public AbstractEpubWriter() {
         this(BookProcessor.IDENTITY_BOOKPROCESSOR);
@@ -33,6 +57,24 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         this.bookProcessor = bookProcessor;
     }
 
+    /**
+     * Creates the ZipOutputStream that an epub is written to.
+     *
+     * When out is a FileOutputStream the ZipOutputStream is given its channel, so the entries that are copied
+     * unchanged from another zip file are transferred to the file without passing through a buffer.
+     *
+     * @param out
+     * @param offset the offset in out that the ZipOutputStream starts writing at, 0 unless it appends to a zip file
+     * @return the ZipOutputStream
+     */
+    protected static ZipOutputStream createZipOutputStream(OutputStream out, long offset) {
+        ZipOutputStream resultStream = new ZipOutputStream(new BufferedOutputStream(out), offset);
+        if (out instanceof FileOutputStream) {
+            resultStream.setChannel(((FileOutputStream) out).getChannel());
+        }
+        return resultStream;
+    }
+
     /**
      * Writes the META-INF/container.xml file.
      *
@@ -40,8 +82,8 @@ public abstract class AbstractEpubWriter implements EpubWriter {
      * @throws IOException
      */
     protected void writeContainer(ZipOutputStream resultStream) throws IOException {
-        resultStream.putNextEntry(new ZipEntry("META-INF/container.xml"));
-        Writer out = new OutputStreamWriter(resultStream);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(data);
         out.write("<?xml version=\"1.0\"?>\n");
         out.write("<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n");
         out.write("\t<rootfiles>\n");
@@ -49,8 +91,90 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         out.write("\t</rootfiles>\n");
         out.write("</container>");
         out.flush();
+        writeEntry("META-INF/container.xml", data.toByteArray(), resultStream);
+    }
+
+    /**
+     * Compresses the given data and writes it as an entry with the given name to the resultStream.
+     *
+     * @param name
+     * @param data
+     * @param resultStream
+     * @throws IOException
+     */
+    protected void writeEntry(String name, byte[] data, ZipOutputStream resultStream) throws IOException {
+        CompressedEntry.compress(name, new ByteArrayInputStream(data)).writeTo(resultStream);
     }
 
+    /**
+     * Creates the table of contents resource of the book.
+     *
+     * @param book
+     * @return the table of contents resource of the book.
+     * @throws IOException
+     */
+    protected abstract Resource createTOCResource(Book book) throws IOException;
+
+    /**
+     * The href of the table of contents, relative to the package document.
+     *
+     * @return the href of the table of contents.
+     */
+    protected abstract String getTOCHref();
+
+    /**
+     * Whether the resource is replaced by the table of contents written by writeTOCResource.
+     *
+     * This is the table of contents resource of the spine, and any other resource at the href of the table of contents,
+     * which would otherwise be written as a second entry with the same name.
+     *
+     * @param book
+     * @param resource
+     * @return whether the resource is replaced by the table of contents.
+     */
+    protected boolean isTOCResource(Book book, Resource resource) {
+        return resource == book.getSpine().getTocResource() || getTOCHref().equals(resource.getHref());
+    }
+
+    /**
+     * Serializes the table of contents of the book to the given serializer.
+     *
+     * @param xmlSerializer
+     * @param book
+     * @throws IOException
+     */
+    protected abstract void writeTOC(XmlSerializer xmlSerializer, Book book) throws IOException;
+
+    /**
+     * Writes the table of contents of the book to the resultStream.
+     *
+     * The table of contents is serialized straight into its zip entry while walking the TableOfContents of the book,
+     * it is not buffered in a Resource first and the resources of the book are left as they are.
+     *
+     * @param book
+     * @param resultStream
+     * @throws IOException
+     */
+    protected void writeTOCResource(Book book, ZipOutputStream resultStream) throws IOException {
+        ZipEntry zipEntry = new ZipEntry("OEBPS/" + getTOCHref());
+        zipEntry.setMethod(ZipEntry.DEFLATED);
+        resultStream.setLevel(compressionPolicy == null ? Deflater.DEFAULT_COMPRESSION : compressionPolicy.getLevel());
+        resultStream.putNextEntry(zipEntry);
+        XmlSerializer xmlSerializer = EpubProcessorSupport.createXmlSerializer(new NoFlushOutputStream(resultStream));
+        writeTOC(xmlSerializer, book);
+        xmlSerializer.flush();
+        resultStream.closeEntry();
+    }
+
+    /**
+     * Serializes the package document of the book.
+     *
+     * @param book
+     * @return the package document of the book.
+     * @throws IOException
+     */
+    protected abstract byte[] createPackageDocument(Book book) throws IOException;
+
     protected Book processBook(Book book) {
         if (bookProcessor != null) {
             book = bookProcessor.processBook(book);
@@ -58,15 +182,99 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         return book;
     }
 
+    /**
+     * Writes all resources of the book to the resultStream.
+     * The table of contents resource of the spine, and any other resource at its href, is skipped. It is replaced by
+     * the one written by writeTOCResource.
+     *
+     * By default each resource is streamed into its entry on the writing thread. If the parallelism is more than 1 or
+     * an executor is set the resources are compressed concurrently into memory instead, at most twice the parallelism
+     * ahead of the resource being written. Resources larger than the max parallel compression size are still streamed
+     * on the writing thread, so they are never held in memory as a whole. The entries are written in the same order
+     * either way.
+     *
+     * @param book
+     * @param resultStream
+     * @throws IOException
+     */
     protected void writeResources(Book book, ZipOutputStream resultStream) throws IOException {
-        for (Resource resource : book.getResources().getAll()) {
-            writeResource(resource, resultStream);
+        if (executor != null) {
+            writeResources(book, resultStream, executor);
+        } else if (parallelism > 1) {
+            ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+            try {
+                writeResources(book, resultStream, executorService);
+            } finally {
+                executorService.shutdown();
+            }
+        } else {
+            for (Resource resource : book.getResources().getAll()) {
+                if (!isTOCResource(book, resource)) {
+                    writeResource(resource, resultStream);
+                }
+            }
+        }
+    }
+
+    private void writeResources(Book book, ZipOutputStream resultStream, Executor executor) throws IOException {
+        int window = Math.max(parallelism, 1) * 2;
+        LinkedList<FutureTask<CompressedEntry>> pending = new LinkedList<FutureTask<CompressedEntry>>();
+        try {
+            for (final Resource resource : book.getResources().getAll()) {
+                if (resource == null || isTOCResource(book, resource)) {
+                    continue;
+                }
+                if (resource.getSize() > maxParallelCompressionSize) {
+                    while (!pending.isEmpty()) {
+                        writeCompressedEntry(pending.removeFirst(), resultStream);
+                    }
+                    writeResource(resource, resultStream);
+                    continue;
+                }
+                FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>(new Callable<CompressedEntry>() {
+
+                    @Override
+                    public CompressedEntry call() {
+                        return compressResource(resource);
+                    }
+                });
+                executor.execute(task);
+                pending.add(task);
+                if (pending.size() >= window) {
+                    writeCompressedEntry(pending.removeFirst(), resultStream);
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeCompressedEntry(pending.removeFirst(), resultStream);
+            }
+        } finally {
+            for (FutureTask<CompressedEntry> task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private void writeCompressedEntry(FutureTask<CompressedEntry> task, ZipOutputStream resultStream) throws IOException {
+        CompressedEntry compressedEntry;
+        try {
+            compressedEntry = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            log.error(e.getMessage(), e);
+            return;
+        }
+        if (compressedEntry != null) {
+            compressedEntry.writeTo(resultStream);
         }
     }
 
     /**
      * Writes the resource to the resultStream.
      *
+     * The resource is streamed into its zip entry as it is compressed, it is not held in memory as a whole.
+     *
      * @param resource
      * @param resultStream
      * @throws IOException
@@ -75,14 +283,126 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         if (resource == null) {
             return;
         }
+        String name = "OEBPS/" + resource.getHref();
+        CompressedEntry copiedEntry = copyResource(name, resource);
+        if (copiedEntry != null) {
+            copiedEntry.writeTo(resultStream);
+            return;
+        }
+        Compression compression;
+        ZipEntry zipEntry;
+        InputStream inputStream;
+        try {
+            compression = getCompression(resource);
+            zipEntry = createZipEntry(name, resource, compression.getMethod());
+            inputStream = resource.getInputStream();
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return;
+        }
+        // once the entry is started a failure can not be skipped, it would leave the entry half written
+        try {
+            if (compression.getMethod() == ZipEntry.DEFLATED) {
+                resultStream.setLevel(compression.getLevel());
+            }
+            resultStream.putNextEntry(zipEntry);
+            IOUtil.copyWithoutFlush(inputStream, resultStream);
+            resultStream.closeEntry();
+        } finally {
+            inputStream.close();
+        }
+    }
 
+    /**
+     * Creates the zip entry for streaming the resource into.
+     *
+     * Stored entries need their size and crc before their data, so the resource is read an extra time for them.
+     *
+     * @param name
+     * @param resource
+     * @param method
+     * @return the zip entry for streaming the resource into.
+     * @throws IOException
+     */
+    private ZipEntry createZipEntry(String name, Resource resource, int method) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            InputStream inputStream = resource.getInputStream();
+            byte[] buffer = IOUtil.takeCopyBuffer();
+            try {
+                for (int n = inputStream.read(buffer); n >= 0; n = inputStream.read(buffer)) {
+                    crc.update(buffer, 0, n);
+                    size += n;
+                }
+            } finally {
+                IOUtil.releaseCopyBuffer(buffer);
+                inputStream.close();
+            }
+            zipEntry.setSize(size);
+            zipEntry.setCrc(crc.getValue());
+        }
+        return zipEntry;
+    }
+
+    private CompressedEntry compressResource(Resource resource) {
+        return compressResource("OEBPS/" + resource.getHref(), resource);
+    }
+
+    /**
+     * Creates an entry that copies the compressed data of the zip entry the resource was read from, if the resource
+     * has not been changed since.
+     *
+     * @param name
+     * @param resource
+     * @return the copied entry, null if the resource has to be compressed.
+     */
+    private CompressedEntry copyResource(String name, Resource resource) {
+        if (!resource.isDirty() && resource.getSourceZipEntry() != null) {
+            try {
+                return CompressedEntry.copy(name, resource.getSourceZipFile(), resource.getSourceZipEntry());
+            } catch (Exception e) {
+                log.debug("Could not copy entry " + resource.getSourceZipEntry().getName() + ", compressing it again: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private Compression getCompression(Resource resource) throws IOException {
+        return compressionPolicy == null
+                ? Compression.deflated(Deflater.DEFAULT_COMPRESSION)
+                : compressionPolicy.getCompression(resource);
+    }
+
+    /**
+     * Compresses the given resource in memory into an entry with the given name, as decided by the compression policy.
+     *
+     * Resources that were read from a zip entry and have not been changed since are not compressed again, the
+     * compressed data of their entry is copied instead.
+     *
+     * @param name
+     * @param resource
+     * @return the compressed entry, null if the resource could not be read.
+     */
+    CompressedEntry compressResource(String name, Resource resource) {
+        CompressedEntry copiedEntry = copyResource(name, resource);
+        if (copiedEntry != null) {
+            return copiedEntry;
+        }
         try {
-            resultStream.putNextEntry(new ZipEntry("OEBPS/" + resource.getHref()));
+            Compression compression = getCompression(resource);
             InputStream inputStream = resource.getInputStream();
-            IOUtil.copy(inputStream, resultStream);
-            inputStream.close();
+            try {
+                return CompressedEntry.compress(name, inputStream,
+                        compression.getMethod(), compression.getLevel());
+            } finally {
+                inputStream.close();
+            }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
+            return null;
         }
     }
 
@@ -100,6 +420,7 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         mimetypeZipEntry.setCrc(calculateCrc(mimetypeBytes));
         resultStream.putNextEntry(mimetypeZipEntry);
         resultStream.write(mimetypeBytes);
+        resultStream.closeEntry();
     }
 
     private long calculateCrc(byte[] data) {
@@ -108,6 +429,68 @@ public abstract class AbstractEpubWriter implements EpubWriter {
         return crc.getValue();
     }
 
+    /**
+     * The number of threads used to compress the resources of the book.
+     *
+     * @return The number of threads used to compress the resources of the book.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to compress the resources of the book.
+     * With 1 or less the resources are compressed on the writing thread.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Sets the policy that decides how each resource is compressed.
+     * With null every resource is deflated with the default level.
+     *
+     * @param compressionPolicy
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public long getMaxParallelCompressionSize() {
+        return maxParallelCompressionSize;
+    }
+
+    /**
+     * Sets the size above which resources are not compressed into memory on other threads, but streamed into their
+     * entry on the writing thread. This bounds the memory used by parallel compression to about twice the parallelism
+     * times this size. The default is 1MB.
+     *
+     * @param maxParallelCompressionSize
+     */
+    public void setMaxParallelCompressionSize(long maxParallelCompressionSize) {
+        this.maxParallelCompressionSize = maxParallelCompressionSize;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor on which the resources of the book are compressed, instead of a thread pool that lives for the
+     * duration of a single write.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     @Override
     public BookProcessor getBookProcessor() {
         return bookProcessor;
@@ -0,0 +1,161 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipFile;
+import net.sf.jazzlib.ZipOutputStream;
+import nl.siegmann.epublib.util.IOUtil;
+
+/**
+ * A zip entry whose data has been compressed in memory, ready to be written to a ZipOutputStream as a raw entry.
+ *
+ * Compressing is independent of the ZipOutputStream, so entries can be compressed on several threads at once and then
+ * be written to the ZipOutputStream in order.
+ *
+ * Entries that are copied from another zip file are not read into memory, their data is copied from the zip file
+ * when the entry is written. If the ZipOutputStream writes to a file the data is transferred by the FileChannel.
+ *
+ * @see ZipOutputStream#putNextRawEntry(ZipEntry)
+ */
+class CompressedEntry {
+
+    private final ZipEntry zipEntry;
+    private final byte[] data;
+    private final ZipFile sourceZipFile;
+    private final ZipEntry sourceZipEntry;
+
+    private CompressedEntry(ZipEntry zipEntry, byte[] data) {
+        this(zipEntry, data, null, null);
+    }
+
+    private CompressedEntry(ZipEntry zipEntry, byte[] data, ZipFile sourceZipFile, ZipEntry sourceZipEntry) {
+        this.zipEntry = zipEntry;
+        this.data = data;
+        this.sourceZipFile = sourceZipFile;
+        this.sourceZipEntry = sourceZipEntry;
+    }
+
+    /**
+     * Reads the given inputStream and compresses its contents.
+     *
+     * @param name the name of the zip entry
+     * @param in the contents of the zip entry, is not closed
+     * @param method ZipEntry.STORED or ZipEntry.DEFLATED
+     * @param level the deflate level, ignored for STORED entries
+     * @return the compressed entry
+     * @throws IOException
+     */
+    static CompressedEntry compress(String name, InputStream in, int method, int level) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buffer = IOUtil.takeCopyBuffer();
+        try {
+            if (method == ZipEntry.STORED) {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    crc.update(buffer, 0, n);
+                    size += n;
+                    result.write(buffer, 0, n);
+                }
+            } else {
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    DeflaterOutputStream deflaterOut = new DeflaterOutputStream(result, deflater, buffer.length);
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                        crc.update(buffer, 0, n);
+                        size += n;
+                        deflaterOut.write(buffer, 0, n);
+                    }
+                    deflaterOut.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+        } finally {
+            IOUtil.releaseCopyBuffer(buffer);
+        }
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(method);
+        zipEntry.setSize(size);
+        zipEntry.setCompressedSize(result.size());
+        zipEntry.setCrc(crc.getValue());
+        return new CompressedEntry(zipEntry, result.toByteArray());
+    }
+
+    /**
+     * Creates an entry with the compressed data of the given entry of the given zipFile, without inflating it.
+     *
+     * The zipFile must stay open until the entry has been written.
+     *
+     * @param name the name of the new zip entry
+     * @param zipFile
+     * @param sourceZipEntry
+     * @return the entry with the compressed data of the given entry
+     * @throws IOException if the zipFile has no such entry or its local header is invalid
+     */
+    static CompressedEntry copy(String name, ZipFile zipFile, ZipEntry sourceZipEntry) throws IOException {
+        // fail here rather than halfway writing the entry
+        zipFile.getRawInputStream(sourceZipEntry).close();
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(sourceZipEntry.getMethod());
+        zipEntry.setSize(sourceZipEntry.getSize());
+        zipEntry.setCompressedSize(sourceZipEntry.getCompressedSize());
+        zipEntry.setCrc(sourceZipEntry.getCrc());
+        return new CompressedEntry(zipEntry, null, zipFile, sourceZipEntry);
+    }
+
+    static CompressedEntry compress(String name, InputStream in) throws IOException {
+        return compress(name, in, ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Writes this entry as the next entry of the given ZipOutputStream.
+     *
+     * @param resultStream
+     * @throws IOException
+     */
+    void writeTo(ZipOutputStream resultStream) throws IOException {
+        resultStream.putNextRawEntry(zipEntry);
+        if (data != null) {
+            resultStream.write(data, 0, data.length);
+        } else {
+            copyRawData(sourceZipFile, sourceZipEntry, resultStream);
+        }
+        resultStream.closeEntry();
+    }
+
+    /**
+     * Copies the data of the given zip entry, without inflating it, to the current raw entry of the given
+     * ZipOutputStream.
+     *
+     * When the channel of the ZipOutputStream is known the data is transferred from the zip file straight to it,
+     * otherwise it is copied through a buffer.
+     *
+     * @param zipFile
+     * @param sourceZipEntry
+     * @param resultStream
+     * @throws IOException
+     */
+    static void copyRawData(ZipFile zipFile, ZipEntry sourceZipEntry, ZipOutputStream resultStream) throws IOException {
+        if (resultStream.getChannel() != null) {
+            resultStream.transferRawData(zipFile, sourceZipEntry);
+            return;
+        }
+        InputStream in = zipFile.getRawInputStream(sourceZipEntry);
+        try {
+            IOUtil.copyWithoutFlush(in, resultStream);
+        } finally {
+            in.close();
+        }
+    }
+
+    ZipEntry getZipEntry() {
+        return zipEntry;
+    }
+}
@@ -0,0 +1,211 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import net.sf.jazzlib.ZipEntry;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+
+/**
+ * Decides per resource whether the epub writers store or deflate it, and with which deflate level.
+ *
+ * Resources with a MediaType that is already compressed, like JPEG, PNG or MP3, are stored, as deflating them costs
+ * time without making them smaller. Resources with a text MediaType are deflated.
+ * Resources of any other MediaType are probed: a sample from their start is deflated and if that does not make it
+ * noticeably smaller the resource is stored.
+ *
+ * @see AbstractEpubWriter#setCompressionPolicy(CompressionPolicy)
+ */
+public class CompressionPolicy {
+
+    /**
+     * How to compress a single zip entry.
+     */
+    public static final class Compression {
+
+        public static final Compression STORED = new Compression(ZipEntry.STORED, Deflater.NO_COMPRESSION);
+
+        private final int method;
+        private final int level;
+
+        private Compression(int method, int level) {
+            this.method = method;
+            this.level = level;
+        }
+
+        public static Compression deflated(int level) {
+            return new Compression(ZipEntry.DEFLATED, level);
+        }
+
+        /**
+         * ZipEntry.STORED or ZipEntry.DEFLATED
+         *
+         * @return ZipEntry.STORED or ZipEntry.DEFLATED
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * The deflate level, meaningless for STORED entries.
+         *
+         * @return The deflate level.
+         */
+        public int getLevel() {
+            return level;
+        }
+    }
+
+    private final Set<MediaType> storedMediaTypes = new HashSet<MediaType>(Arrays.asList(
+            MediatypeService.JPG, MediatypeService.PNG, MediatypeService.GIF, MediatypeService.WEBP, MediatypeService.AVIF,
+            MediatypeService.WOFF, MediatypeService.WOFF2, MediatypeService.MP3, MediatypeService.MP4,
+            MediatypeService.MP4_VIDEO, MediatypeService.OGG, MediatypeService.EPUB));
+    private final Set<MediaType> deflatedMediaTypes = new HashSet<MediaType>(Arrays.asList(
+            MediatypeService.XHTML, MediatypeService.CSS, MediatypeService.NCX, MediatypeService.SVG,
+            MediatypeService.JAVASCRIPT, MediatypeService.SMIL, MediatypeService.XPGT, MediatypeService.PLS,
+            MediatypeService.JSON, MediatypeService.TTF, MediatypeService.OPENTYPE));
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private long minDeflateSize = 0;
+    private int sampleSize = 8 * 1024;
+    private double maxSampleRatio = 0.9;
+
+    /**
+     * Decides how the given resource should be compressed.
+     *
+     * @param resource
+     * @return how the given resource should be compressed.
+     * @throws IOException if the resource had to be probed and could not be read
+     */
+    public Compression getCompression(Resource resource) throws IOException {
+        if (resource.getSize() < minDeflateSize) {
+            return Compression.STORED;
+        }
+        MediaType mediaType = resource.getMediaType();
+        if (storedMediaTypes.contains(mediaType)) {
+            return Compression.STORED;
+        }
+        if (deflatedMediaTypes.contains(mediaType) || sampleSize <= 0) {
+            return Compression.deflated(level);
+        }
+        return isCompressible(resource) ? Compression.deflated(level) : Compression.STORED;
+    }
+
+    /**
+     * Deflates a sample from the start of the resource and checks whether it gets small enough.
+     */
+    private boolean isCompressible(Resource resource) throws IOException {
+        byte[] sample = new byte[sampleSize];
+        int sampleLength = 0;
+        InputStream in = resource.getInputStream();
+        try {
+            for (int n = 0; n >= 0 && sampleLength < sample.length; n = in.read(sample, sampleLength, sample.length - sampleLength)) {
+                sampleLength += n;
+            }
+        } finally {
+            in.close();
+        }
+        if (sampleLength == 0) {
+            return true;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+            byte[] buffer = new byte[sampleLength];
+            while (!deflater.finished() && deflater.getTotalOut() < sampleLength) {
+                deflater.deflate(buffer);
+            }
+            return deflater.finished() && deflater.getTotalOut() < sampleLength * maxSampleRatio;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The MediaTypes that are always stored.
+     *
+     * @return The MediaTypes that are always stored.
+     */
+    public Set<MediaType> getStoredMediaTypes() {
+        return storedMediaTypes;
+    }
+
+    public void setStoredMediaTypes(Collection<MediaType> storedMediaTypes) {
+        this.storedMediaTypes.clear();
+        this.storedMediaTypes.addAll(storedMediaTypes);
+    }
+
+    /**
+     * The MediaTypes that are always deflated.
+     *
+     * @return The MediaTypes that are always deflated.
+     */
+    public Set<MediaType> getDeflatedMediaTypes() {
+        return deflatedMediaTypes;
+    }
+
+    public void setDeflatedMediaTypes(Collection<MediaType> deflatedMediaTypes) {
+        this.deflatedMediaTypes.clear();
+        this.deflatedMediaTypes.addAll(deflatedMediaTypes);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the deflate level, from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION.
+     *
+     * @param level
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public long getMinDeflateSize() {
+        return minDeflateSize;
+    }
+
+    /**
+     * Sets the size in bytes below which resources are stored, whatever their MediaType.
+     *
+     * @param minDeflateSize
+     */
+    public void setMinDeflateSize(long minDeflateSize) {
+        this.minDeflateSize = minDeflateSize;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Sets the number of bytes that are sampled from resources of other MediaTypes.
+     * With 0 these resources are deflated without being probed.
+     *
+     * @param sampleSize
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public double getMaxSampleRatio() {
+        return maxSampleRatio;
+    }
+
+    /**
+     * Sets the compressed to uncompressed size ratio a sample must get below for the resource to be deflated.
+     *
+     * @param maxSampleRatio
+     */
+    public void setMaxSampleRatio(double maxSampleRatio) {
+        this.maxSampleRatio = maxSampleRatio;
+    }
+}
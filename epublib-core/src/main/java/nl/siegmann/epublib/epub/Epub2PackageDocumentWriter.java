@@ -13,7 +13,6 @@ import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Guide;
 import nl.siegmann.epublib.domain.GuideReference;
 import nl.siegmann.epublib.domain.Resource;
-import nl.siegmann.epublib.domain.Spine;
 import nl.siegmann.epublib.domain.SpineReference;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.StringUtil;
@@ -71,7 +70,7 @@ public class Epub2PackageDocumentWriter extends PackageDocumentBase {
 	 */
 	private static void writeSpine(Book book, Epub2Writer epubWriter, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
 		serializer.startTag(NAMESPACE_OPF, OPFTags.spine);
-		serializer.attribute(Epub2Writer.EMPTY_NAMESPACE_PREFIX, OPFAttributes.toc, book.getSpine().getTocResource().getId());
+		serializer.attribute(Epub2Writer.EMPTY_NAMESPACE_PREFIX, OPFAttributes.toc, epubWriter.getNcxId());
 
 		if(book.getCoverPage() != null // there is a cover page
 			&&	book.getSpine().findFirstResourceById(book.getCoverPage().getId()) < 0) { // cover page is not already in the spine
@@ -81,7 +80,7 @@ public class Epub2PackageDocumentWriter extends PackageDocumentBase {
 			serializer.attribute(Epub2Writer.EMPTY_NAMESPACE_PREFIX, OPFAttributes.linear, "no");
 			serializer.endTag(NAMESPACE_OPF, OPFTags.itemref);
 		}
-		writeSpineItems(book.getSpine(), serializer);
+		writeSpineItems(book, epubWriter, serializer);
 		serializer.endTag(NAMESPACE_OPF, OPFTags.spine);
 	}
 
@@ -98,7 +97,7 @@ public class Epub2PackageDocumentWriter extends PackageDocumentBase {
 //		writeCoverResources(book, serializer);
 		
 		for(Resource resource: getAllResourcesSortById(book)) {
-			writeItem(book, resource, serializer);
+			writeItem(book, epubWriter, resource, serializer);
 		}
 		
 		serializer.endTag(NAMESPACE_OPF, OPFTags.manifest);
@@ -125,10 +124,10 @@ public class Epub2PackageDocumentWriter extends PackageDocumentBase {
 	 * @throws IllegalArgumentException 
 	 * @throws XMLStreamException
 	 */
-	private static void writeItem(Book book, Resource resource, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
+	private static void writeItem(Book book, Epub2Writer epubWriter, Resource resource, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
 		if(resource == null ||
-				(resource.getMediaType() == MediatypeService.NCX
-				&& book.getSpine().getTocResource() != null)) {
+				resource.getMediaType() == MediatypeService.NCX ||
+				epubWriter.isTOCResource(book, resource)) { // the table of contents is written by the epubWriter
 			return;
 		}
 		if(StringUtil.isBlank(resource.getId())) {
@@ -156,8 +155,11 @@ public class Epub2PackageDocumentWriter extends PackageDocumentBase {
 	 * @throws IllegalStateException 
 	 * @throws IllegalArgumentException 
 	 */
-	private static void writeSpineItems(Spine spine, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
-		for(SpineReference spineReference: spine.getSpineReferences()) {
+	private static void writeSpineItems(Book book, Epub2Writer epubWriter, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
+		for(SpineReference spineReference: book.getSpine().getSpineReferences()) {
+			if (spineReference.getResource() != null && epubWriter.isTOCResource(book, spineReference.getResource())) {
+				continue; // not in the manifest, replaced by the table of contents of the epubWriter
+			}
 			serializer.startTag(NAMESPACE_OPF, OPFTags.itemref);
 			serializer.attribute(Epub2Writer.EMPTY_NAMESPACE_PREFIX, OPFAttributes.idref, spineReference.getResourceId());
 			if (! spineReference.isLinear()) {
@@ -1,15 +1,13 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
+import net.sf.jazzlib.ZipOutputStream;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 /**
@@ -20,8 +18,6 @@ import org.xmlpull.v1.XmlSerializer;
  */
 public class Epub2Writer extends AbstractEpubWriter {
 
-    private final static Logger log = LoggerFactory.getLogger(Epub2Writer.class);
-
     public Epub2Writer() {
         super();
     }
@@ -33,31 +29,41 @@ public class Epub2Writer extends AbstractEpubWriter {
     @Override
     public void write(Book book, OutputStream out) throws IOException {
         book = processBook(book);
-        ZipOutputStream resultStream = new ZipOutputStream(out);
+        ZipOutputStream resultStream = createZipOutputStream(out, 0);
         writeMimeType(resultStream);
         writeContainer(resultStream);
-        initTOCResource(book);
         writeResources(book, resultStream);
+        writeTOCResource(book, resultStream);
         writePackageDocument(book, resultStream);
         resultStream.close();
     }
 
-    private void initTOCResource(Book book) {
-        Resource tocResource;
-        
-        try {
-            tocResource = NCXDocument.createNCXResource(book);
-            initTOCResource(book, tocResource);
-        } catch (Exception e) {
-            log.error("Error writing table of contents: " + e.getClass().getName() + ": " + e.getMessage());
-        }
+    @Override
+    protected Resource createTOCResource(Book book) throws IOException {
+        return NCXDocument.createNCXResource(book);
+    }
+
+    @Override
+    protected String getTOCHref() {
+        return getNcxHref();
+    }
+
+    @Override
+    protected void writeTOC(XmlSerializer xmlSerializer, Book book) throws IOException {
+        NCXDocument.write(xmlSerializer, book);
     }
 
     private void writePackageDocument(Book book, ZipOutputStream resultStream) throws IOException {
-        resultStream.putNextEntry(new ZipEntry("OEBPS/content.opf"));
-        XmlSerializer xmlSerializer = EpubProcessorSupport.createXmlSerializer(resultStream);
+        writeEntry("OEBPS/content.opf", createPackageDocument(book), resultStream);
+    }
+
+    @Override
+    protected byte[] createPackageDocument(Book book) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        XmlSerializer xmlSerializer = EpubProcessorSupport.createXmlSerializer(data);
         Epub2PackageDocumentWriter.write(this, xmlSerializer, book);
         xmlSerializer.flush();
+        return data.toByteArray();
     }
 
     public String getNcxId() {
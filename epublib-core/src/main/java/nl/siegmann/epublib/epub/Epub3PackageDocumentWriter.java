@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import javax.xml.stream.XMLStreamException;
@@ -13,7 +12,6 @@ import javax.xml.stream.XMLStreamException;
 import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
-import nl.siegmann.epublib.domain.Spine;
 import nl.siegmann.epublib.domain.SpineReference;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.StringUtil;
@@ -84,7 +82,7 @@ public class Epub3PackageDocumentWriter extends PackageDocumentBase {
             serializer.endTag(null, OPFTags.itemref);
         }
 
-        writeSpineItems(book.getSpine(), serializer);
+        writeSpineItems(book, epubWriter, serializer);
         serializer.endTag(null, OPFTags.spine);
     }
 
@@ -92,7 +90,7 @@ public class Epub3PackageDocumentWriter extends PackageDocumentBase {
         serializer.startTag(null, OPFTags.manifest);
 
         for (Resource resource : getAllResourcesSortById(book)) {
-            writeItem(book, resource, serializer);
+            writeItem(book, epubWriter, resource, serializer);
         }
 
         writeNavItem(book, serializer);
@@ -122,10 +120,10 @@ public class Epub3PackageDocumentWriter extends PackageDocumentBase {
      * @throws IllegalArgumentException
      * @throws XMLStreamException
      */
-    private static void writeItem(Book book, Resource resource, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException, ParserConfigurationException, SAXException {
+    private static void writeItem(Book book, Epub3Writer epubWriter, Resource resource, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException, ParserConfigurationException, SAXException {
         if (resource == null
-                || (resource.getMediaType() == MediatypeService.NCX
-                && book.getSpine().getTocResource() != null)) {
+                || resource.getMediaType() == MediatypeService.NCX
+                || epubWriter.isTOCResource(book, resource)) { // the nav document is written by the epubWriter
             return;
         }
 
@@ -148,7 +146,7 @@ public class Epub3PackageDocumentWriter extends PackageDocumentBase {
 
         if (resource.getMediaType() == MediatypeService.XHTML) {
             System.out.println(resource.getHref());
-            Document d = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(resource.getInputStream());
+            Document d = EpubProcessorSupport.getDocumentBuilder().parse(resource.getInputStream());
             NodeList l = d.getElementsByTagName("script");
             isScripted = (l.getLength() > 0);
         }
@@ -197,8 +195,11 @@ public class Epub3PackageDocumentWriter extends PackageDocumentBase {
      * @throws IllegalStateException
      * @throws IllegalArgumentException
      */
-    private static void writeSpineItems(Spine spine, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
-        for (SpineReference spineReference : spine.getSpineReferences()) {
+    private static void writeSpineItems(Book book, Epub3Writer epubWriter, XmlSerializer serializer) throws IllegalArgumentException, IllegalStateException, IOException {
+        for (SpineReference spineReference : book.getSpine().getSpineReferences()) {
+            if (spineReference.getResource() != null && epubWriter.isTOCResource(book, spineReference.getResource())) {
+                continue; // not in the manifest, replaced by the nav document of the epubWriter
+            }
             serializer.startTag(null, OPFTags.itemref);
             serializer.attribute(Epub3Writer.EMPTY_NAMESPACE_PREFIX, OPFAttributes.idref, spineReference.getResourceId());
             if (!spineReference.isLinear()) {
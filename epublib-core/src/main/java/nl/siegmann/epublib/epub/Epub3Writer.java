@@ -1,17 +1,15 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.logging.Level;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 import javax.xml.parsers.ParserConfigurationException;
 
+import net.sf.jazzlib.ZipOutputStream;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlSerializer;
 
@@ -23,8 +21,6 @@ import org.xmlpull.v1.XmlSerializer;
  */
 public class Epub3Writer extends AbstractEpubWriter {
 
-    private final static Logger log = LoggerFactory.getLogger(Epub3Writer.class);
-
     public Epub3Writer() {
         super();
     }
@@ -36,11 +32,11 @@ public class Epub3Writer extends AbstractEpubWriter {
     @Override
     public void write(Book book, OutputStream out) throws IOException {
         book = processBook(book);
-        ZipOutputStream resultStream = new ZipOutputStream(out);
+        ZipOutputStream resultStream = createZipOutputStream(out, 0);
         writeMimeType(resultStream);
         writeContainer(resultStream);
-        initTOCResource(book);
         writeResources(book, resultStream);
+        writeTOCResource(book, resultStream);
         try {
             writePackageDocument(book, resultStream);
         } catch (IllegalArgumentException ex) {
@@ -55,21 +51,41 @@ public class Epub3Writer extends AbstractEpubWriter {
         resultStream.close();
     }
 
-    private void initTOCResource(Book book) {
-        Resource tocResource;
+    @Override
+    protected Resource createTOCResource(Book book) throws IOException {
+        return NavDocument.createNavResource(book);
+    }
 
-        try {
-            tocResource = NavDocument.createNavResource(book);
-            initTOCResource(book, tocResource);
-        } catch (Exception e) {
-            log.error("Error writing table of contents: " + e.getClass().getName() + ": " + e.getMessage());
-        }
+    @Override
+    protected String getTOCHref() {
+        return NavDocument.DEFAULT_NAV_HREF;
+    }
+
+    @Override
+    protected void writeTOC(XmlSerializer xmlSerializer, Book book) throws IOException {
+        NavDocument.write(xmlSerializer, book);
     }
 
     private void writePackageDocument(Book book, ZipOutputStream resultStream) throws IOException, IllegalArgumentException, IllegalStateException, ParserConfigurationException, SAXException {
-        resultStream.putNextEntry(new ZipEntry("OEBPS/content.opf"));
-        XmlSerializer xmlSerializer = EpubProcessorSupport.createXmlSerializer(resultStream);
+        writeEntry("OEBPS/content.opf", serializePackageDocument(book), resultStream);
+    }
+
+    private byte[] serializePackageDocument(Book book) throws IOException, IllegalArgumentException, IllegalStateException, ParserConfigurationException, SAXException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        XmlSerializer xmlSerializer = EpubProcessorSupport.createXmlSerializer(data);
         Epub3PackageDocumentWriter.write(this, xmlSerializer, book);
         xmlSerializer.flush();
+        return data.toByteArray();
+    }
+
+    @Override
+    protected byte[] createPackageDocument(Book book) throws IOException {
+        try {
+            return serializePackageDocument(book);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (SAXException e) {
+            throw new IOException(e.getMessage(), e);
+        }
     }
 }
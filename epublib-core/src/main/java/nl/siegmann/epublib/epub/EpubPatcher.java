@@ -0,0 +1,199 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipException;
+import net.sf.jazzlib.ZipFile;
+import net.sf.jazzlib.ZipOutputStream;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+
+/**
+ * Writes the changes made to a Book back to the epub it was read from, without rewriting the whole epub.
+ *
+ * Only the package document and the resources that were changed or added since the book was read are written.
+ * The package document is written to where the META-INF/container.xml of the epub points to, the resources are
+ * written relative to it.
+ * Every other entry of the epub is left as it is, which makes a change to the metadata of a book cost about as much
+ * I/O as the size of its package document instead of the size of the whole book.
+ *
+ * A resource counts as unchanged when it was read from an entry of the epub with the same name and its data has not
+ * been set since.
+ * Entries of the epub are never removed, resources that were removed from the book stay in the epub but are no longer
+ * in its manifest.
+ *
+ * The epub can be patched in place, by appending the new entries and a new central directory to the epub, or be
+ * copied to a new epub with the new entries in place of the old ones.
+ *
+ * @see Resource#isDirty()
+ */
+public class EpubPatcher {
+
+	private final AbstractEpubWriter epubWriter;
+	private boolean writeTableOfContents = false;
+
+	public EpubPatcher() {
+		this(new Epub2Writer());
+	}
+
+	/**
+	 * @param epubWriter creates the package document and table of contents, and decides how resources are compressed
+	 */
+	public EpubPatcher(AbstractEpubWriter epubWriter) {
+		this.epubWriter = epubWriter;
+	}
+
+	/**
+	 * Writes the changes to the given book to the given epub file by appending them to the file.
+	 *
+	 * The replaced entries stay in the file but are no longer in its central directory.
+	 * If writing fails halfway the file is left damaged, use {@link #patch(Book, File, OutputStream)} where that is
+	 * not acceptable.
+	 *
+	 * @param book
+	 * @param epubFile the epub file the book was read from
+	 * @throws IOException
+	 */
+	public void patch(Book book, File epubFile) throws IOException {
+		List<ZipEntry> keptEntries = new ArrayList<ZipEntry>();
+		Map<String, CompressedEntry> newEntries;
+		long centralDirectoryOffset;
+		ZipFile zipFile = new ZipFile(epubFile);
+		try {
+			newEntries = createEntries(book, zipFile);
+			for (Enumeration<?> entries = zipFile.entries(); entries.hasMoreElements();) {
+				ZipEntry zipEntry = (ZipEntry) entries.nextElement();
+				if (!newEntries.containsKey(zipEntry.getName())) {
+					keptEntries.add(zipEntry);
+				}
+			}
+			centralDirectoryOffset = zipFile.getCentralDirectoryOffset();
+		} finally {
+			zipFile.close();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(epubFile, "rw");
+		try {
+			file.setLength(centralDirectoryOffset);
+		} finally {
+			file.close();
+		}
+		ZipOutputStream resultStream = AbstractEpubWriter.createZipOutputStream(new FileOutputStream(epubFile, true), centralDirectoryOffset);
+		try {
+			for (ZipEntry zipEntry: keptEntries) {
+				resultStream.putExistingEntry(zipEntry);
+			}
+			for (CompressedEntry compressedEntry: newEntries.values()) {
+				compressedEntry.writeTo(resultStream);
+			}
+		} finally {
+			resultStream.close();
+		}
+	}
+
+	/**
+	 * Writes a copy of the given epub file with the changes to the given book to the given outputStream.
+	 *
+	 * The unchanged entries are copied without being inflated, the changed entries take the place of the entries
+	 * they replace.
+	 *
+	 * @param book
+	 * @param epubFile the epub file the book was read from
+	 * @param out
+	 * @throws IOException
+	 */
+	public void patch(Book book, File epubFile, OutputStream out) throws IOException {
+		ZipFile zipFile = new ZipFile(epubFile);
+		try {
+			Map<String, CompressedEntry> newEntries = createEntries(book, zipFile);
+			ZipOutputStream resultStream = AbstractEpubWriter.createZipOutputStream(out, 0);
+			for (Enumeration<?> entries = zipFile.entries(); entries.hasMoreElements();) {
+				ZipEntry zipEntry = (ZipEntry) entries.nextElement();
+				CompressedEntry newEntry = newEntries.remove(zipEntry.getName());
+				if (newEntry != null) {
+					newEntry.writeTo(resultStream);
+				} else {
+					copyEntry(zipFile, zipEntry, resultStream);
+				}
+			}
+			for (CompressedEntry compressedEntry: newEntries.values()) {
+				compressedEntry.writeTo(resultStream);
+			}
+			resultStream.close();
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	/**
+	 * Creates the entries for the package document and the changed resources of the book, by entry name.
+	 */
+	private Map<String, CompressedEntry> createEntries(Book book, ZipFile zipFile) throws IOException {
+		String packageResourceHref = EpubReader.getPackageResourceHref(EpubReader.readEntry(zipFile, EpubReader.CONTAINER_HREF));
+		String hrefPrefix = packageResourceHref.substring(0, packageResourceHref.lastIndexOf('/') + 1);
+
+		book = epubWriter.processBook(book);
+		if (writeTableOfContents) {
+			epubWriter.initTOCResource(book, epubWriter.createTOCResource(book));
+		}
+
+		Map<String, CompressedEntry> result = new LinkedHashMap<String, CompressedEntry>();
+		for (Resource resource: book.getResources().getAll()) {
+			String name = hrefPrefix + resource.getHref();
+			if (isUnchanged(resource, name, zipFile)) {
+				continue;
+			}
+			CompressedEntry compressedEntry = epubWriter.compressResource(name, resource);
+			if (compressedEntry == null) {
+				throw new IOException("Unable to write resource " + resource.getHref());
+			}
+			result.put(name, compressedEntry);
+		}
+		byte[] packageDocument = epubWriter.createPackageDocument(book);
+		result.put(packageResourceHref, CompressedEntry.compress(packageResourceHref, new ByteArrayInputStream(packageDocument)));
+		return result;
+	}
+
+	private static boolean isUnchanged(Resource resource, String name, ZipFile zipFile) {
+		return !resource.isDirty()
+				&& resource.getSourceZipEntry() != null
+				&& name.equals(resource.getSourceZipEntry().getName())
+				&& zipFile.getEntry(name) != null;
+	}
+
+	private static void copyEntry(ZipFile zipFile, ZipEntry sourceZipEntry, ZipOutputStream resultStream) throws IOException {
+		if (sourceZipEntry.getMethod() != ZipEntry.STORED && sourceZipEntry.getMethod() != ZipEntry.DEFLATED) {
+			throw new ZipException("Unsupported compression method " + sourceZipEntry.getMethod() + " of entry " + sourceZipEntry.getName());
+		}
+		// the copy keeps the name exactly as it is stored in the source zip file
+		ZipEntry zipEntry = new ZipEntry(sourceZipEntry);
+		resultStream.putNextRawEntry(zipEntry);
+		CompressedEntry.copyRawData(zipFile, sourceZipEntry, resultStream);
+		resultStream.closeEntry();
+	}
+
+	public boolean isWriteTableOfContents() {
+		return writeTableOfContents;
+	}
+
+	/**
+	 * Sets whether the table of contents is created again from the book, as the epub writers do.
+	 * By default the table of contents resource of the book is only written when it was changed.
+	 *
+	 * @param writeTableOfContents
+	 */
+	public void setWriteTableOfContents(boolean writeTableOfContents) {
+		this.writeTableOfContents = writeTableOfContents;
+	}
+}
@@ -1,24 +1,40 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.util.IOUtil;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
@@ -33,32 +49,124 @@ public class EpubProcessorSupport {
 	private static final Logger log = LoggerFactory.getLogger(EpubProcessorSupport.class);
 	
 	protected static DocumentBuilderFactory documentBuilderFactory;
+	private static volatile XmlPullParserFactory xmlPullParserFactory;
+	
+	// every thread reuses its own DocumentBuilder and XmlPullParser, as they are not thread-safe
+	private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
+	private static final ThreadLocal<XmlPullParser> xmlPullParsers = new ThreadLocal<XmlPullParser>();
+	private static final AtomicLong poolHits = new AtomicLong();
+	private static final AtomicLong poolMisses = new AtomicLong();
 	
 	static {
 		init();
 	}
 
-    static class EntityResolverImpl implements EntityResolver {
-		private String previousLocation;
+	/**
+	 * Resolves the dtd's and entities of documents from the dtd directory on the epublib classpath.
+	 * 
+	 * The files of the dtd directory are read into memory once. The InputSources get the system id of the remote
+	 * file, so that the parser resolves the relative references in it to remote urls as well. References that are
+	 * not in the dtd directory at their own location are looked up by their file name.
+	 * Holds no state that changes, so a single instance is shared by all threads.
+	 */
+	static class EntityResolverImpl implements EntityResolver {
+		
+		private static final String DTD_DIRECTORY = "dtd";
+		private static final EntityResolverImpl INSTANCE = new EntityResolverImpl();
+		
+		// the contents of the files of the dtd directory by their path and by their file name
+		private final Map<String, byte[]> dtdsByPath;
+		private final Map<String, byte[]> dtdsByFileName;
+		
+		private EntityResolverImpl() {
+			Map<String, byte[]> dtds = new TreeMap<String, byte[]>();
+			try {
+				readDtds(dtds);
+			} catch (Exception e) {
+				log.error("Could not read the " + DTD_DIRECTORY + " directory from the classpath: " + e.getMessage());
+			}
+			Map<String, byte[]> byFileName = new HashMap<String, byte[]>();
+			for (Map.Entry<String, byte[]> dtd: dtds.entrySet()) {
+				String fileName = dtd.getKey().substring(dtd.getKey().lastIndexOf('/') + 1);
+				if (! byFileName.containsKey(fileName)) {
+					byFileName.put(fileName, dtd.getValue());
+				}
+			}
+			this.dtdsByPath = Collections.unmodifiableMap(dtds);
+			this.dtdsByFileName = Collections.unmodifiableMap(byFileName);
+		}
 		
 		@Override
 		public InputSource resolveEntity(String publicId, String systemId)
 				throws SAXException, IOException {
-			String resourcePath;
-			if (systemId.startsWith("http:")) {
+			byte[] data = null;
+			if (systemId.startsWith("http:") || systemId.startsWith("https:")) {
 				URL url = new URL(systemId);
-				resourcePath = "dtd/" + url.getHost() + url.getPath();
-				previousLocation = resourcePath.substring(0, resourcePath.lastIndexOf('/'));
-			} else {
-				resourcePath = previousLocation + systemId.substring(systemId.lastIndexOf('/'));
+				String resourcePath = DTD_DIRECTORY + "/" + url.getHost() + url.getPath();
+				data = dtdsByPath.get(resourcePath);
+				if (data == null && dtdsByPath.isEmpty()) {
+					data = readResource(resourcePath);
+				}
+			}
+			if (data == null) {
+				data = dtdsByFileName.get(systemId.substring(systemId.lastIndexOf('/') + 1));
 			}
-			
-			if (this.getClass().getClassLoader().getResource(resourcePath) == null) {
+			if (data == null) {
 				throw new RuntimeException("remote resource is not cached : [" + systemId + "] cannot continue");
 			}
+			InputSource result = new InputSource(new ByteArrayInputStream(data));
+			result.setPublicId(publicId);
+			result.setSystemId(systemId);
+			return result;
+		}
+
+		/**
+		 * Reads all files of the dtd directory, from the directory or jar file on the classpath it is in.
+		 */
+		private static void readDtds(Map<String, byte[]> result) throws IOException, URISyntaxException {
+			URL dtdDirectory = EpubProcessorSupport.class.getClassLoader().getResource(DTD_DIRECTORY);
+			if (dtdDirectory == null) {
+				throw new FileNotFoundException(DTD_DIRECTORY);
+			}
+			if ("file".equals(dtdDirectory.getProtocol())) {
+				readDtds(new File(dtdDirectory.toURI()), DTD_DIRECTORY, result);
+			} else if ("jar".equals(dtdDirectory.getProtocol())) {
+				JarFile jarFile = ((JarURLConnection) dtdDirectory.openConnection()).getJarFile();
+				for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+					JarEntry entry = entries.nextElement();
+					if (! entry.isDirectory() && entry.getName().startsWith(DTD_DIRECTORY + "/")) {
+						result.put(entry.getName(), readResource(entry.getName()));
+					}
+				}
+			} else {
+				throw new IOException("Can not list " + dtdDirectory);
+			}
+		}
+
+		private static void readDtds(File directory, String path, Map<String, byte[]> result) throws IOException {
+			File[] files = directory.listFiles();
+			if (files == null) {
+				return;
+			}
+			for (File file: files) {
+				if (file.isDirectory()) {
+					readDtds(file, path + "/" + file.getName(), result);
+				} else {
+					result.put(path + "/" + file.getName(), readResource(path + "/" + file.getName()));
+				}
+			}
+		}
 
+		private static byte[] readResource(String resourcePath) throws IOException {
 			InputStream in = EpubProcessorSupport.class.getClassLoader().getResourceAsStream(resourcePath);
-			return new InputSource(in);
+			if (in == null) {
+				return null;
+			}
+			try {
+				return IOUtil.toByteArray(in);
+			} finally {
+				in.close();
+			}
 		}
 	}
 	
@@ -76,9 +184,7 @@ public class EpubProcessorSupport {
 	public static XmlSerializer createXmlSerializer(Writer out) {
 		XmlSerializer result = null;
 		try {
-			XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-			factory.setValidating(true);
-			result = factory.newSerializer();
+			result = getXmlPullParserFactory().newSerializer();
 			result.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
 			result.setOutput(out);
 		} catch (Exception e) {
@@ -89,14 +195,13 @@ public class EpubProcessorSupport {
 
 	/**
 	 * Gets an EntityResolver that loads dtd's and such from the epublib classpath.
-	 * In order to enable the loading of relative urls the given EntityResolver contains the previousLocation.
-	 * Because of a new EntityResolver is created every time this method is called.
-	 * Fortunately the EntityResolver created uses up very little memory per instance.
+	 * The EntityResolver is thread-safe and keeps the dtd's it loaded in memory, so the same instance is returned
+	 * every time.
 	 * 
 	 * @return an EntityResolver that loads dtd's and such from the epublib classpath.
 	 */
 	public static EntityResolver getEntityResolver() {
-		return new EntityResolverImpl();
+		return EntityResolverImpl.INSTANCE;
 	}
 	
 	public DocumentBuilderFactory getDocumentBuilderFactory() {
@@ -118,4 +223,92 @@ public class EpubProcessorSupport {
 		}
 		return result;
 	}
+
+	/**
+	 * Creates a namespace aware XmlPullParser.
+	 * 
+	 * Unlike the DocumentBuilder it does not load dtd's, so only the predefined xml entities can be used.
+	 * 
+	 * @return a namespace aware XmlPullParser.
+	 * @throws XmlPullParserException
+	 */
+	public static XmlPullParser createXmlPullParser() throws XmlPullParserException {
+		return getXmlPullParserFactory().newPullParser();
+	}
+
+	/**
+	 * Gets the DocumentBuilder of the current thread, reset to its initial state.
+	 * 
+	 * The DocumentBuilder looks up dtd's and schema's from epublib's classpath like the ones from createDocumentBuilder().
+	 * It is handed out again on the next call from the same thread, so it should only be used for a single parse
+	 * and never be passed on to other threads.
+	 * 
+	 * @return the DocumentBuilder of the current thread.
+	 */
+	public static DocumentBuilder getDocumentBuilder() {
+		DocumentBuilder result = documentBuilders.get();
+		if (result == null) {
+			poolMisses.incrementAndGet();
+			result = createDocumentBuilder();
+			documentBuilders.set(result);
+		} else {
+			poolHits.incrementAndGet();
+			result.reset();
+			// reset() also removes the entity resolver
+			result.setEntityResolver(getEntityResolver());
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the namespace aware XmlPullParser of the current thread.
+	 * 
+	 * Its state is reset by setting its input. It is handed out again on the next call from the same thread, so it
+	 * should only be used for a single parse and never be passed on to other threads.
+	 * 
+	 * @return the XmlPullParser of the current thread.
+	 * @throws XmlPullParserException
+	 */
+	public static XmlPullParser getXmlPullParser() throws XmlPullParserException {
+		XmlPullParser result = xmlPullParsers.get();
+		if (result == null) {
+			poolMisses.incrementAndGet();
+			result = createXmlPullParser();
+			xmlPullParsers.set(result);
+		} else {
+			poolHits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * The number of times getDocumentBuilder() and getXmlPullParser() handed out the parser of the thread again.
+	 * 
+	 * @return The number of times a parser was reused.
+	 */
+	public static long getPoolHits() {
+		return poolHits.get();
+	}
+
+	/**
+	 * The number of times getDocumentBuilder() and getXmlPullParser() had to create a parser for the thread.
+	 * 
+	 * @return The number of times a parser was created.
+	 */
+	public static long getPoolMisses() {
+		return poolMisses.get();
+	}
+
+	/**
+	 * The XmlPullParserFactory is looked up only once, as the lookup goes through the classpath.
+	 */
+	private static XmlPullParserFactory getXmlPullParserFactory() throws XmlPullParserException {
+		XmlPullParserFactory result = xmlPullParserFactory;
+		if (result == null) {
+			result = XmlPullParserFactory.newInstance();
+			result.setNamespaceAware(true);
+			xmlPullParserFactory = result;
+		}
+		return result;
+	}
 }
@@ -1,10 +1,15 @@
 package nl.siegmann.epublib.epub;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import net.sf.jazzlib.ZipEntry;
 import net.sf.jazzlib.ZipFile;
 import net.sf.jazzlib.ZipInputStream;
 import nl.siegmann.epublib.Constants;
@@ -29,8 +34,24 @@ import org.w3c.dom.Element;
  */
 public class EpubReader {
 
+	/**
+	 * When the table of contents is read from the NCX resource.
+	 */
+	public enum TocLoading {
+		/** while reading the epub */
+		EAGER,
+		/** when the TOCReferences are first used */
+		LAZY,
+		/** never, the book gets an empty table of contents */
+		SKIP
+	}
+
 	private static final Logger log = LoggerFactory.getLogger(EpubReader.class);
+	static final String CONTAINER_HREF = "META-INF/container.xml";
 	private BookProcessor bookProcessor = BookProcessor.IDENTITY_BOOKPROCESSOR;
+	private List<MediaType> directBufferTypes = Collections.emptyList();
+	private boolean pullParsing = false;
+	private TocLoading tocLoading = TocLoading.EAGER;
 	
 	public Book readEpub(InputStream in) throws IOException {
 		return readEpub(in, Constants.CHARACTER_ENCODING);
@@ -72,11 +93,11 @@ public class EpubReader {
 	}
 	
 	public Book readEpub(ZipInputStream in, String encoding) throws IOException {
-        return readEpub(ResourcesLoader.loadResources(in, encoding));
+        return readEpub(ResourcesLoader.loadResources(in, encoding, directBufferTypes));
 	}
 
     public Book readEpub(ZipFile in, String encoding) throws IOException {
-        return readEpub(ResourcesLoader.loadResources(in, encoding));
+        return readEpub(ResourcesLoader.loadResources(in, encoding, Collections.<MediaType>emptyList(), directBufferTypes));
     }
 
     /**
@@ -89,10 +110,171 @@ public class EpubReader {
 	 * @throws IOException
 	 */
 	public Book readEpubLazy(ZipFile zipFile, String encoding, List<MediaType> lazyLoadedTypes ) throws IOException {
-		Resources resources = ResourcesLoader.loadResources(zipFile, encoding, lazyLoadedTypes);
+		Resources resources = ResourcesLoader.loadResources(zipFile, encoding, lazyLoadedTypes, directBufferTypes);
 		return readEpub(resources);
 	}
+
+	/**
+	 * The MediaTypes of the resources that are read into ByteBufferResources.
+	 * 
+	 * @return The MediaTypes of the resources that are read into ByteBufferResources.
+	 */
+	public List<MediaType> getDirectBufferTypes() {
+		return directBufferTypes;
+	}
+
+	/**
+	 * Sets the MediaTypes of the resources that are read into ByteBufferResources, which keep their data outside of
+	 * the java heap. None by default.
+	 * 
+	 * Lazily loaded resources stay LazyResources. The caller has to close the ByteBufferResources of a Book once it is
+	 * done with it.
+	 * 
+	 * @param directBufferTypes
+	 */
+	public void setDirectBufferTypes(List<MediaType> directBufferTypes) {
+		this.directBufferTypes = directBufferTypes == null ? Collections.<MediaType>emptyList() : directBufferTypes;
+	}
+	
+	/**
+	 * Whether the package document is read with the PackageDocumentPullReader.
+	 * 
+	 * @return Whether the package document is read with the PackageDocumentPullReader.
+	 */
+	public boolean isPullParsing() {
+		return pullParsing;
+	}
+
+	/**
+	 * Sets whether the package document is read with the {@link PackageDocumentPullReader} instead of the DOM based
+	 * {@link PackageDocumentReader}. Both produce the same Book, the PackageDocumentPullReader is faster and uses less
+	 * memory on package documents with large manifests. Off by default.
+	 * 
+	 * @param pullParsing
+	 */
+	public void setPullParsing(boolean pullParsing) {
+		this.pullParsing = pullParsing;
+	}
+	
+	/**
+	 * When the table of contents is read from the NCX resource.
+	 * 
+	 * @return When the table of contents is read from the NCX resource.
+	 */
+	public TocLoading getTocLoading() {
+		return tocLoading;
+	}
+
+	/**
+	 * Sets when the table of contents is read from the NCX resource. TocLoading.EAGER by default.
+	 * 
+	 * With TocLoading.LAZY the NCX resource is read when the TOCReferences of the book are first used, and the
+	 * children of every TOCReference when they are first used. With TocLoading.SKIP the table of contents of the book
+	 * stays empty, so writing the book writes an empty table of contents.
+	 * 
+	 * @param tocLoading
+	 */
+	public void setTocLoading(TocLoading tocLoading) {
+		this.tocLoading = tocLoading == null ? TocLoading.EAGER : tocLoading;
+	}
 	
+	/**
+	 * Reads only the metadata of the epub in the given file.
+	 * 
+	 * @param file the epub file
+	 * @param loadCoverImage whether to also load the cover image
+	 * @return a Book with only its metadata, its package document and optionally its cover image.
+	 * @throws IOException
+	 * @see #readMetadataOnly(ZipFile, boolean)
+	 */
+	public Book readMetadataOnly(File file, boolean loadCoverImage) throws IOException {
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			return readMetadataOnly(zipFile, loadCoverImage);
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	public Book readMetadataOnly(ZipFile zipFile) throws IOException {
+		return readMetadataOnly(zipFile, false);
+	}
+
+	/**
+	 * Reads only the metadata of the epub.
+	 * 
+	 * Only the META-INF/container.xml, the package document and, if requested, the cover image are read from the
+	 * ZipFile. The spine, guide, table of contents and all other resources are skipped and the BookProcessor is not
+	 * applied.
+	 * 
+	 * @param zipFile the epub
+	 * @param loadCoverImage whether to also load the cover image
+	 * @return a Book with only its metadata, its package document and optionally its cover image.
+	 * @throws IOException
+	 */
+	public Book readMetadataOnly(ZipFile zipFile, boolean loadCoverImage) throws IOException {
+		Book result = new Book();
+		String packageResourceHref = getPackageResourceHref(readEntry(zipFile, CONTAINER_HREF));
+		Resource packageResource = readEntry(zipFile, packageResourceHref);
+		if (packageResource == null) {
+			log.error("Package document " + packageResourceHref + " not found");
+			return result;
+		}
+		result.setOpfResource(packageResource);
+		Document packageDocument;
+		try {
+			packageDocument = ResourceUtil.getAsDocument(packageResource);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+			return result;
+		}
+		result.setMetadata(PackageDocumentMetadataReader.readMetadata(packageDocument));
+		if (loadCoverImage) {
+			readCoverImage(zipFile, packageDocument, packageResourceHref, result);
+		}
+		return result;
+	}
+
+	private void readCoverImage(ZipFile zipFile, Document packageDocument, String packageResourceHref, Book book) throws IOException {
+		String hrefPrefix = packageResourceHref.substring(0, packageResourceHref.lastIndexOf('/') + 1);
+		for (String coverHref: PackageDocumentReader.findCoverHrefs(packageDocument)) {
+			try {
+				coverHref = URLDecoder.decode(coverHref, Constants.CHARACTER_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				log.error(e.getMessage());
+			}
+			if (! MediatypeService.isBitmapImage(MediatypeService.determineMediaType(coverHref))) {
+				continue;
+			}
+			Resource coverImage = readEntry(zipFile, hrefPrefix + coverHref);
+			if (coverImage == null) {
+				log.error("Cover resource " + coverHref + " not found");
+				continue;
+			}
+			coverImage.setHref(coverHref);
+			book.setCoverImage(coverImage);
+			return;
+		}
+	}
+
+	/**
+	 * Reads the entry with the given name from the ZipFile into a Resource.
+	 * 
+	 * @return the Resource, or null if the ZipFile has no such entry.
+	 */
+	static Resource readEntry(ZipFile zipFile, String href) throws IOException {
+		ZipEntry zipEntry = zipFile.getEntry(href);
+		if (zipEntry == null) {
+			return null;
+		}
+		InputStream in = zipFile.getInputStream(zipEntry);
+		try {
+			return ResourceUtil.createResource(zipEntry, in);
+		} finally {
+			in.close();
+		}
+	}
+
     public Book readEpub(Resources resources) throws IOException{
         return readEpub(resources, new Book());
     }
@@ -120,13 +302,24 @@ public class EpubReader {
 	}
 
 	private Resource processNcxResource(Resource packageResource, Book book) {
-		return NCXDocument.read(book, this);
+		switch (tocLoading) {
+			case SKIP:
+				return book.getSpine().getTocResource();
+			case LAZY:
+				return NCXDocument.readLazily(book);
+			default:
+				return NCXDocument.read(book, this);
+		}
 	}
 
 	private Resource processPackageResource(String packageResourceHref, Book book, Resources resources) {
 		Resource packageResource = resources.remove(packageResourceHref);
 		try {
-			PackageDocumentReader.read(packageResource, this, book, resources);
+			if (pullParsing) {
+				PackageDocumentPullReader.read(packageResource, this, book, resources);
+			} else {
+				PackageDocumentReader.read(packageResource, this, book, resources);
+			}
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
@@ -134,10 +327,19 @@ public class EpubReader {
 	}
 
 	private String getPackageResourceHref(Resources resources) {
+		return getPackageResourceHref(resources.remove(CONTAINER_HREF));
+	}
+
+	/**
+	 * Reads the href of the package document from the given META-INF/container.xml resource.
+	 * 
+	 * @param containerResource the container resource, may be null
+	 * @return the href of the package document, or OEBPS/content.opf if it could not be determined.
+	 */
+	static String getPackageResourceHref(Resource containerResource) {
 		String defaultResult = "OEBPS/content.opf";
 		String result = defaultResult;
 
-		Resource containerResource = resources.remove("META-INF/container.xml");
 		if(containerResource == null) {
 			return result;
 		}
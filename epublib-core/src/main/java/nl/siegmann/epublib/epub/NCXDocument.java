@@ -2,6 +2,7 @@ package nl.siegmann.epublib.epub;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
@@ -89,15 +90,35 @@ public class NCXDocument {
 			}
 			Document ncxDocument = ResourceUtil.getAsDocument(ncxResource);
 			Element navMapElement = DOMUtil.getFirstElementByTagNameNS(ncxDocument.getDocumentElement(), NAMESPACE_NCX, NCXTags.navMap);
-			TableOfContents tableOfContents = new TableOfContents(readTOCReferences(navMapElement.getChildNodes(), book));
+			TableOfContents tableOfContents = new TableOfContents(readTOCReferences(navMapElement.getChildNodes(), book, false));
 			book.setTableOfContents(tableOfContents);
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
 		return ncxResource;
 	}
+
+	/**
+	 * Sets a table of contents on the book that reads the NCX resource only when its TOCReferences are first used.
+	 * The children of every TOCReference are read when they are first used as well.
+	 * 
+	 * The NCX document is kept in memory until all TOCReferences have been read. The resources are looked up in
+	 * the book at the time a TOCReference is read. Like the rest of the Book the table of contents is not thread-safe.
+	 * 
+	 * @param book
+	 * @return the NCX resource, null if the book does not have one
+	 */
+	public static Resource readLazily(Book book) {
+		Resource ncxResource = book.getSpine().getTocResource();
+		if (ncxResource == null) {
+			log.error("Book does not contain a table of contents file");
+			return ncxResource;
+		}
+		book.setTableOfContents(new LazyTableOfContents(ncxResource, book));
+		return ncxResource;
+	}
 	
-	private static List<TOCReference> readTOCReferences(NodeList navpoints, Book book) {
+	private static List<TOCReference> readTOCReferences(NodeList navpoints, Book book, boolean lazy) {
 		if(navpoints == null) {
 			return new ArrayList<TOCReference>();
 		}
@@ -110,13 +131,13 @@ public class NCXDocument {
 			if (! (node.getLocalName().equals(NCXTags.navPoint))) {
 				continue;
 			}
-			TOCReference tocReference = readTOCReference((Element) node, book);
+			TOCReference tocReference = readTOCReference((Element) node, book, lazy);
 			result.add(tocReference);
 		}
 		return result;
 	}
 
-	private static TOCReference readTOCReference(Element navpointElement, Book book) {
+	private static TOCReference readTOCReference(Element navpointElement, Book book, boolean lazy) {
 		String label = readNavLabel(navpointElement);
 		String tocResourceRoot = StringUtil.substringBeforeLast(book.getSpine().getTocResource().getHref(), '/');
 		if (tocResourceRoot.length() == book.getSpine().getTocResource().getHref().length()) {
@@ -131,11 +152,99 @@ public class NCXDocument {
 		if (resource == null) {
 			log.error("Resource with href " + href + " in NCX document not found");
 		}
+		if (lazy) {
+			return new LazyTOCReference(label, resource, fragmentId, navpointElement, book);
+		}
 		TOCReference result = new TOCReference(label, resource, fragmentId);
-		readTOCReferences(navpointElement.getChildNodes(), book);
-		result.setChildren(readTOCReferences(navpointElement.getChildNodes(), book));
+		result.setChildren(readTOCReferences(navpointElement.getChildNodes(), book, false));
 		return result;
 	}
+
+	/**
+	 * A table of contents that reads its TOCReferences from the NCX resource on first use.
+	 */
+	private static class LazyTableOfContents extends TableOfContents {
+
+		private static final long serialVersionUID = -2290735766853735316L;
+
+		private transient Resource ncxResource;
+		private transient Book book;
+
+		public LazyTableOfContents(Resource ncxResource, Book book) {
+			super(null);
+			this.ncxResource = ncxResource;
+			this.book = book;
+		}
+
+		@Override
+		public List<TOCReference> getTocReferences() {
+			if (book != null) {
+				Book loadingBook = book;
+				book = null;
+				List<TOCReference> tocReferences = new ArrayList<TOCReference>();
+				try {
+					Document ncxDocument = ResourceUtil.getAsDocument(ncxResource);
+					Element navMapElement = DOMUtil.getFirstElementByTagNameNS(ncxDocument.getDocumentElement(), NAMESPACE_NCX, NCXTags.navMap);
+					tocReferences = readTOCReferences(navMapElement.getChildNodes(), loadingBook, true);
+				} catch (Exception e) {
+					log.error(e.getMessage(), e);
+				}
+				ncxResource = null;
+				super.setTocReferences(tocReferences);
+			}
+			return super.getTocReferences();
+		}
+
+		@Override
+		public void setTocReferences(List<TOCReference> tocReferences) {
+			book = null;
+			ncxResource = null;
+			super.setTocReferences(tocReferences);
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			return new TableOfContents(getTocReferences());
+		}
+	}
+
+	/**
+	 * A TOCReference that reads its children from its navPoint element on first use.
+	 */
+	private static class LazyTOCReference extends TOCReference {
+
+		private static final long serialVersionUID = 7351178512640637327L;
+
+		private transient Element navpointElement;
+		private transient Book book;
+
+		public LazyTOCReference(String title, Resource resource, String fragmentId, Element navpointElement, Book book) {
+			super(title, resource, fragmentId, null);
+			this.navpointElement = navpointElement;
+			this.book = book;
+		}
+
+		@Override
+		public List<TOCReference> getChildren() {
+			if (navpointElement != null) {
+				Element loadingElement = navpointElement;
+				navpointElement = null;
+				super.setChildren(readTOCReferences(loadingElement.getChildNodes(), book, true));
+				book = null;
+			}
+			return super.getChildren();
+		}
+
+		@Override
+		public void setChildren(List<TOCReference> children) {
+			navpointElement = null;
+			book = null;
+			super.setChildren(children);
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			return new TOCReference(getTitle(), getResource(), getFragmentId(), getChildren());
+		}
+	}
 	
 	private static String readNavReference(Element navpointElement) {
 		Element contentElement = DOMUtil.getFirstElementByTagNameNS(navpointElement, NAMESPACE_NCX, NCXTags.content);
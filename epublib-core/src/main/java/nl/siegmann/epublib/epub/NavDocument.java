@@ -2,9 +2,6 @@ package nl.siegmann.epublib.epub;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -19,15 +16,9 @@ import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.TOCReference;
 import nl.siegmann.epublib.domain.TableOfContents;
 import nl.siegmann.epublib.service.MediatypeService;
-import nl.siegmann.epublib.util.ResourceUtil;
-import nl.siegmann.epublib.util.StringUtil;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xmlpull.v1.XmlSerializer;
 
 /**
@@ -78,81 +69,19 @@ public class NavDocument {
         String version = "version";
     }
     
+    /**
+     * Reads the table of contents from the NCX resource of the book, like {@link NCXDocument#read(Book, EpubReader)}.
+     */
     public static Resource read(Book book, EpubReader epubReader) {
-        Resource ncxResource = null;
-        if (book.getSpine().getTocResource() == null) {
-            log.error("Book does not contain a table of contents file");
-            return ncxResource;
-        }
-        try {
-            ncxResource = book.getSpine().getTocResource();
-            if (ncxResource == null) {
-                return ncxResource;
-            }
-            Document ncxDocument = ResourceUtil.getAsDocument(ncxResource);
-            Element navMapElement = DOMUtil.getFirstElementByTagNameNS(ncxDocument.getDocumentElement(), NAMESPACE_NCX, NCXTags.navMap);
-            TableOfContents tableOfContents = new TableOfContents(readTOCReferences(navMapElement.getChildNodes(), book));
-            book.setTableOfContents(tableOfContents);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
-        return ncxResource;
+        return NCXDocument.read(book, epubReader);
     }
 
-    private static List<TOCReference> readTOCReferences(NodeList navpoints, Book book) {
-        if (navpoints == null) {
-            return new ArrayList<TOCReference>();
-        }
-        List<TOCReference> result = new ArrayList<TOCReference>(navpoints.getLength());
-        for (int i = 0; i < navpoints.getLength(); i++) {
-            Node node = navpoints.item(i);
-            if (node.getNodeType() != Document.ELEMENT_NODE) {
-                continue;
-            }
-            if (!(node.getLocalName().equals(NCXTags.navPoint))) {
-                continue;
-            }
-            TOCReference tocReference = readTOCReference((Element) node, book);
-            result.add(tocReference);
-        }
-        return result;
-    }
-
-    private static TOCReference readTOCReference(Element navpointElement, Book book) {
-        String label = readNavLabel(navpointElement);
-        String tocResourceRoot = StringUtil.substringBeforeLast(book.getSpine().getTocResource().getHref(), '/');
-        if (tocResourceRoot.length() == book.getSpine().getTocResource().getHref().length()) {
-            tocResourceRoot = "";
-        } else {
-            tocResourceRoot = tocResourceRoot + "/";
-        }
-        String reference = StringUtil.collapsePathDots(tocResourceRoot + readNavReference(navpointElement));
-        String href = StringUtil.substringBefore(reference, Constants.FRAGMENT_SEPARATOR_CHAR);
-        String fragmentId = StringUtil.substringAfter(reference, Constants.FRAGMENT_SEPARATOR_CHAR);
-        Resource resource = book.getResources().getByHref(href);
-        if (resource == null) {
-            log.error("Resource with href " + href + " in NCX document not found");
-        }
-        TOCReference result = new TOCReference(label, resource, fragmentId);
-        readTOCReferences(navpointElement.getChildNodes(), book);
-        result.setChildren(readTOCReferences(navpointElement.getChildNodes(), book));
-        return result;
-    }
-
-    private static String readNavReference(Element navpointElement) {
-        Element contentElement = DOMUtil.getFirstElementByTagNameNS(navpointElement, NAMESPACE_NCX, NCXTags.content);
-        String result = DOMUtil.getAttribute(contentElement, NAMESPACE_NCX, NCXAttributes.src);
-        try {
-            result = URLDecoder.decode(result, Constants.CHARACTER_ENCODING);
-        } catch (UnsupportedEncodingException e) {
-            log.error(e.getMessage());
-        }
-        return result;
-    }
-
-    private static String readNavLabel(Element navpointElement) {
-        Element navLabel = DOMUtil.getFirstElementByTagNameNS(navpointElement, NAMESPACE_NCX, NCXTags.navLabel);
-        return DOMUtil.getTextChildrenContent(DOMUtil.getFirstElementByTagNameNS(navLabel, NAMESPACE_NCX, NCXTags.text));
+    /**
+     * Reads the table of contents from the NCX resource of the book on first use, like
+     * {@link NCXDocument#readLazily(Book)}.
+     */
+    public static Resource readLazily(Book book) {
+        return NCXDocument.readLazily(book);
     }
 
     public static void write(Epub2Writer epubWriter, Book book, ZipOutputStream resultStream) throws IOException {
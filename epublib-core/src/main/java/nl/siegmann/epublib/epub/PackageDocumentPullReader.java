@@ -0,0 +1,482 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.CreatorContributor;
+import nl.siegmann.epublib.domain.Date;
+import nl.siegmann.epublib.domain.Guide;
+import nl.siegmann.epublib.domain.GuideReference;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.domain.Spine;
+import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.StringUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Reads the opf package document as defined by namespace http://www.idpf.org/2007/opf with an XmlPullParser.
+ *
+ * Produces the same Book as the {@link PackageDocumentReader}, but reads the package document in a single pass
+ * without building a DOM of it first. This makes a difference for package documents with large manifests.
+ *
+ * The package document is parsed completely before the book is changed. Package documents that the XmlPullParser
+ * can not parse, for instance because they use entities from a dtd, are read by the PackageDocumentReader instead.
+ *
+ * @see EpubReader#setPullParsing(boolean)
+ */
+public class PackageDocumentPullReader extends PackageDocumentBase {
+
+	private static final Logger log = LoggerFactory.getLogger(PackageDocumentPullReader.class);
+
+	public static void read(Resource packageResource, EpubReader epubReader, Book book, Resources resources) throws UnsupportedEncodingException, SAXException, IOException, ParserConfigurationException {
+		PackageDocument packageDocument;
+		try {
+			packageDocument = parse(packageResource);
+		} catch (XmlPullParserException e) {
+			log.warn("Could not pull parse package document " + packageResource.getHref() + ", reading it as DOM: " + e.getMessage());
+			PackageDocumentReader.read(packageResource, epubReader, book, resources);
+			return;
+		}
+		String packageHref = packageResource.getHref();
+		resources = PackageDocumentReader.fixHrefs(packageHref, resources);
+		readGuide(packageDocument, book, resources);
+
+		// Books sometimes use non-identifier ids. We map these here to legal ones
+		Map<String, String> idMapping = new HashMap<String, String>();
+
+		resources = readManifest(packageDocument, resources, idMapping);
+		book.setResources(resources);
+		PackageDocumentReader.readCover(findCoverHrefs(packageDocument), book);
+		book.setMetadata(readMetadata(packageDocument));
+		book.setSpine(readSpine(packageDocument, book.getResources(), idMapping));
+
+		// if we did not find a cover page then we make the first page of the book the cover page
+		if (book.getCoverPage() == null && book.getSpine().size() > 0) {
+			book.setCoverPage(book.getSpine().getResource(0));
+		}
+	}
+
+	/**
+	 * Collects everything the book is made of from the package document in one pass.
+	 *
+	 * Follows the PackageDocumentReader in which elements it looks at: the manifest, guide and metadata are the
+	 * first of their kind below the document element, the itemrefs are taken from the whole document.
+	 *
+	 * @param packageResource
+	 * @return the contents of the package document
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	private static PackageDocument parse(Resource packageResource) throws XmlPullParserException, IOException {
+		PackageDocument result = new PackageDocument();
+		Reader reader = packageResource.getReader();
+		try {
+			XmlPullParser parser = EpubProcessorSupport.getXmlPullParser();
+			parser.setInput(reader);
+			List<TextElement> openTextElements = new ArrayList<TextElement>();
+			int metadataDepth = 0, manifestDepth = 0, guideDepth = 0;
+			for (int eventType = parser.getEventType(); eventType != XmlPullParser.END_DOCUMENT; eventType = parser.next()) {
+				int depth = parser.getDepth();
+				if (eventType == XmlPullParser.TEXT) {
+					for (int i = 0; i < openTextElements.size(); i++) {
+						TextElement textElement = openTextElements.get(i);
+						if (textElement.deep || textElement.depth == depth) {
+							textElement.text.append(parser.getText());
+						}
+					}
+				} else if (eventType == XmlPullParser.END_TAG) {
+					if (! openTextElements.isEmpty() && openTextElements.get(openTextElements.size() - 1).depth == depth) {
+						openTextElements.remove(openTextElements.size() - 1);
+					}
+					metadataDepth = (metadataDepth == depth) ? -1 : metadataDepth;
+					manifestDepth = (manifestDepth == depth) ? -1 : manifestDepth;
+					guideDepth = (guideDepth == depth) ? -1 : guideDepth;
+				} else if (eventType == XmlPullParser.START_TAG) {
+					String namespace = parser.getNamespace();
+					String name = parser.getName();
+					if (NAMESPACE_OPF.equals(namespace)) {
+						if (depth > 1 && metadataDepth == 0 && OPFTags.metadata.equals(name)) {
+							metadataDepth = depth;
+						} else if (depth > 1 && manifestDepth == 0 && OPFTags.manifest.equals(name)) {
+							manifestDepth = depth;
+						} else if (depth > 1 && guideDepth == 0 && OPFTags.guide.equals(name)) {
+							guideDepth = depth;
+						} else if (depth > 1 && ! result.hasSpine && OPFTags.spine.equals(name)) {
+							result.hasSpine = true;
+							result.tocResourceId = getAttribute(parser, OPFAttributes.toc);
+						} else if (depth > 1 && result.bookIdId == null && OPFTags.packageTag.equals(name)) {
+							// like the PackageDocumentReader, which looks for the package element below the document element
+							result.bookIdId = parser.getAttributeValue(NAMESPACE_OPF, OPFAttributes.uniqueIdentifier);
+							result.bookIdId = (result.bookIdId == null) ? "" : result.bookIdId;
+						} else if (OPFTags.item.equals(name)) {
+							readItem(parser, manifestDepth > 0, result);
+						} else if (OPFTags.itemref.equals(name)) {
+							result.itemrefs.add(new String[] {getAttribute(parser, OPFAttributes.idref), getAttribute(parser, OPFAttributes.linear)});
+						} else if (OPFTags.reference.equals(name)) {
+							readReference(parser, guideDepth > 0, result);
+						} else if (OPFTags.meta.equals(name)) {
+							readMeta(parser, metadataDepth > 0, result, openTextElements);
+						}
+					} else if (metadataDepth > 0 && NAMESPACE_DUBLIN_CORE.equals(namespace)) {
+						TextElement textElement = new TextElement(name, depth, false);
+						textElement.role = parser.getAttributeValue(NAMESPACE_OPF, OPFAttributes.role);
+						textElement.event = parser.getAttributeValue(NAMESPACE_OPF, OPFAttributes.event);
+						textElement.scheme = parser.getAttributeValue(NAMESPACE_OPF, DCAttributes.scheme);
+						textElement.id = parser.getAttributeValue("", DCAttributes.id);
+						result.textElements.add(textElement);
+						openTextElements.add(textElement);
+					}
+					if (metadataDepth > 0 && parser.getPrefix() == null && OPFTags.meta.equals(name)) {
+						result.metaAttributes.put(getPlainAttribute(parser, OPFAttributes.name), getPlainAttribute(parser, OPFAttributes.content));
+					}
+				}
+			}
+			result.hasMetadata = metadataDepth != 0;
+			result.hasManifest = manifestDepth != 0;
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	private static void readItem(XmlPullParser parser, boolean inManifest, PackageDocument packageDocument) {
+		String plainId = getPlainAttribute(parser, OPFAttributes.id);
+		String plainHref = getPlainAttribute(parser, OPFAttributes.href);
+		packageDocument.items.add(new String[] {plainId, plainHref});
+		if (inManifest) {
+			packageDocument.manifestItems.add(new String[] {
+					getAttribute(parser, OPFAttributes.id),
+					getAttribute(parser, OPFAttributes.href),
+					getAttribute(parser, OPFAttributes.media_type)});
+		}
+	}
+
+	private static void readReference(XmlPullParser parser, boolean inGuide, PackageDocument packageDocument) {
+		if (packageDocument.coverReferenceHref == null
+				&& OPFValues.reference_cover.equalsIgnoreCase(getPlainAttribute(parser, OPFAttributes.type))
+				&& StringUtil.isNotBlank(getPlainAttribute(parser, OPFAttributes.href))) {
+			packageDocument.coverReferenceHref = getPlainAttribute(parser, OPFAttributes.href);
+		}
+		if (inGuide) {
+			packageDocument.guideReferences.add(new String[] {
+					getAttribute(parser, OPFAttributes.href),
+					getAttribute(parser, OPFAttributes.type),
+					getAttribute(parser, OPFAttributes.title)});
+		}
+	}
+
+	private static void readMeta(XmlPullParser parser, boolean inMetadata, PackageDocument packageDocument, List<TextElement> openTextElements) {
+		if (packageDocument.coverResourceId == null
+				&& OPFValues.meta_cover.equalsIgnoreCase(getPlainAttribute(parser, OPFAttributes.name))
+				&& StringUtil.isNotBlank(getPlainAttribute(parser, OPFAttributes.content))) {
+			packageDocument.coverResourceId = getPlainAttribute(parser, OPFAttributes.content);
+		}
+		String property = parser.getAttributeValue("", OPFAttributes.property);
+		if (inMetadata && property != null) {
+			TextElement textElement = new TextElement(OPFTags.meta, parser.getDepth(), true);
+			textElement.property = property;
+			packageDocument.textElements.add(textElement);
+			openTextElements.add(textElement);
+		}
+	}
+
+	/**
+	 * Gets the value of the attribute in the opf namespace or, if that is empty, of the attribute without namespace.
+	 *
+	 * @see DOMUtil#getAttribute(org.w3c.dom.Element, String, String)
+	 */
+	private static String getAttribute(XmlPullParser parser, String name) {
+		String result = parser.getAttributeValue(NAMESPACE_OPF, name);
+		if (StringUtil.isEmpty(result)) {
+			result = getPlainAttribute(parser, name);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the value of the attribute without namespace, or "" if there is no such attribute.
+	 */
+	private static String getPlainAttribute(XmlPullParser parser, String name) {
+		String result = parser.getAttributeValue("", name);
+		return (result == null) ? "" : result;
+	}
+
+	private static Resources readManifest(PackageDocument packageDocument, Resources resources, Map<String, String> idMapping) {
+		Resources result = new Resources();
+		if (! packageDocument.hasManifest) {
+			log.error("Package document does not contain element " + OPFTags.manifest);
+			return result;
+		}
+		for (String[] item: packageDocument.manifestItems) {
+			String id = item[0];
+			String href = item[1];
+			try {
+				href = URLDecoder.decode(href, Constants.CHARACTER_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				log.error(e.getMessage());
+			}
+			Resource resource = resources.remove(href);
+			if (resource == null) {
+				log.error("resource with href '" + href + "' not found");
+				continue;
+			}
+			resource.setId(id);
+			MediaType mediaType = MediatypeService.getMediaTypeByName(item[2]);
+			if (mediaType != null) {
+				resource.setMediaType(mediaType);
+			}
+			result.add(resource);
+			idMapping.put(id, resource.getId());
+		}
+		return result;
+	}
+
+	private static void readGuide(PackageDocument packageDocument, Book book, Resources resources) {
+		Guide guide = book.getGuide();
+		for (String[] guideReference: packageDocument.guideReferences) {
+			String resourceHref = guideReference[0];
+			if (StringUtil.isBlank(resourceHref)) {
+				continue;
+			}
+			Resource resource = resources.getByHref(StringUtil.substringBefore(resourceHref, Constants.FRAGMENT_SEPARATOR_CHAR));
+			if (resource == null) {
+				log.error("Guide is referencing resource with href " + resourceHref + " which could not be found");
+				continue;
+			}
+			String type = guideReference[1];
+			if (StringUtil.isBlank(type)) {
+				log.error("Guide is referencing resource with href " + resourceHref + " which is missing the 'type' attribute");
+				continue;
+			}
+			if (GuideReference.COVER.equalsIgnoreCase(type)) {
+				continue; // cover is handled elsewhere
+			}
+			guide.addReference(new GuideReference(resource, type, guideReference[2], StringUtil.substringAfter(resourceHref, Constants.FRAGMENT_SEPARATOR_CHAR)));
+		}
+	}
+
+	private static Spine readSpine(PackageDocument packageDocument, Resources resources, Map<String, String> idMapping) {
+		if (! packageDocument.hasSpine) {
+			log.error("Element " + OPFTags.spine + " not found in package document, generating one automatically");
+			return PackageDocumentReader.generateSpineFromResources(resources);
+		}
+		Spine result = new Spine();
+		result.setTocResource(PackageDocumentReader.findTableOfContentsResource(packageDocument.tocResourceId, resources));
+		List<SpineReference> spineReferences = new ArrayList<SpineReference>(packageDocument.itemrefs.size());
+		for (String[] itemref: packageDocument.itemrefs) {
+			if (StringUtil.isBlank(itemref[0])) {
+				log.error("itemref with missing or empty idref"); // XXX
+				continue;
+			}
+			String id = idMapping.get(itemref[0]);
+			if (id == null) {
+				id = itemref[0];
+			}
+			Resource resource = resources.getByIdOrHref(id);
+			if (resource == null) {
+				log.error("resource with id \'" + id + "\' not found");
+				continue;
+			}
+			SpineReference spineReference = new SpineReference(resource);
+			if (OPFValues.no.equalsIgnoreCase(itemref[1])) {
+				spineReference.setLinear(false);
+			}
+			spineReferences.add(spineReference);
+		}
+		result.setSpineReferences(spineReferences);
+		return result;
+	}
+
+	/**
+	 * @see PackageDocumentReader#findCoverHrefs(org.w3c.dom.Document)
+	 */
+	private static Set<String> findCoverHrefs(PackageDocument packageDocument) {
+		Set<String> result = new HashSet<String>();
+		String coverResourceId = packageDocument.coverResourceId;
+		if (StringUtil.isNotBlank(coverResourceId)) {
+			String coverHref = null;
+			for (String[] item: packageDocument.items) {
+				if (coverResourceId.equalsIgnoreCase(item[0]) && StringUtil.isNotBlank(item[1])) {
+					coverHref = item[1];
+					break;
+				}
+			}
+			if (StringUtil.isNotBlank(coverHref)) {
+				result.add(coverHref);
+			} else {
+				result.add(coverResourceId); // maybe there was a cover href put in the cover id attribute
+			}
+		}
+		if (StringUtil.isNotBlank(packageDocument.coverReferenceHref)) {
+			result.add(packageDocument.coverReferenceHref);
+		}
+		return result;
+	}
+
+	/**
+	 * @see PackageDocumentMetadataReader#readMetadata(org.w3c.dom.Document)
+	 */
+	private static Metadata readMetadata(PackageDocument packageDocument) {
+		Metadata result = new Metadata();
+		if (! packageDocument.hasMetadata) {
+			log.error("Package does not contain element " + OPFTags.metadata);
+			return result;
+		}
+		result.setTitles(getTexts(packageDocument, DCTags.title));
+		result.setPublishers(getTexts(packageDocument, DCTags.publisher));
+		result.setDescriptions(getTexts(packageDocument, DCTags.description));
+		result.setRights(getTexts(packageDocument, DCTags.rights));
+		result.setTypes(getTexts(packageDocument, DCTags.type));
+		result.setSubjects(getTexts(packageDocument, DCTags.subject));
+
+		List<Identifier> identifiers = new ArrayList<Identifier>();
+		List<CreatorContributor> creators = new ArrayList<CreatorContributor>();
+		List<CreatorContributor> contributors = new ArrayList<CreatorContributor>();
+		List<Date> dates = new ArrayList<Date>();
+		Map<QName, String> otherProperties = new HashMap<QName, String>();
+		boolean hasIdentifiers = false;
+		String language = null;
+		for (TextElement textElement: packageDocument.textElements) {
+			if (textElement.deep) {
+				otherProperties.put(new QName(textElement.property), textElement.text.toString());
+				continue;
+			}
+			String text = textElement.text.toString().trim();
+			if (DCTags.identifier.equals(textElement.name)) {
+				hasIdentifiers = true;
+				if (StringUtil.isBlank(text)) {
+					continue;
+				}
+				Identifier identifier = new Identifier(emptyIfNull(textElement.scheme), text);
+				if (emptyIfNull(textElement.id).equals(packageDocument.bookIdId)) {
+					identifier.setBookId(true);
+				}
+				identifiers.add(identifier);
+			} else if (DCTags.creator.equals(textElement.name)) {
+				addAuthor(text, textElement.role, creators);
+			} else if (DCTags.contributor.equals(textElement.name)) {
+				addAuthor(text, textElement.role, contributors);
+			} else if (DCTags.date.equals(textElement.name)) {
+				try {
+					dates.add(new Date(text, emptyIfNull(textElement.event)));
+				} catch (IllegalArgumentException e) {
+					log.error(e.getMessage());
+				}
+			} else if (DCTags.language.equals(textElement.name) && language == null) {
+				language = text;
+			}
+		}
+		if (! hasIdentifiers) {
+			log.error("Package does not contain element " + DCTags.identifier);
+		}
+		result.setIdentifiers(identifiers);
+		result.setCreators(creators);
+		result.setContributors(contributors);
+		result.setDates(dates);
+		result.setOtherProperties(otherProperties);
+		result.setMetaAttributes(packageDocument.metaAttributes);
+		if (language != null) {
+			result.setLanguage(language);
+		}
+		return result;
+	}
+
+	private static List<String> getTexts(PackageDocument packageDocument, String name) {
+		List<String> result = new ArrayList<String>();
+		for (TextElement textElement: packageDocument.textElements) {
+			if (! textElement.deep && name.equals(textElement.name)) {
+				result.add(textElement.text.toString().trim());
+			}
+		}
+		return result;
+	}
+
+	private static void addAuthor(String authorString, String role, List<CreatorContributor> authors) {
+		if (StringUtil.isBlank(authorString)) {
+			return;
+		}
+		int spacePos = authorString.lastIndexOf(' ');
+		CreatorContributor author;
+		if (spacePos < 0) {
+			author = new CreatorContributor(authorString);
+		} else {
+			author = new CreatorContributor(authorString.substring(0, spacePos), authorString.substring(spacePos + 1));
+		}
+		author.addRoleByCode(emptyIfNull(role));
+		authors.add(author);
+	}
+
+	private static String emptyIfNull(String value) {
+		return (value == null) ? "" : value;
+	}
+
+	/**
+	 * What the book is made of, as collected from the package document.
+	 */
+	private static class PackageDocument {
+		boolean hasMetadata;
+		boolean hasManifest;
+		boolean hasSpine;
+		String bookIdId;
+		String tocResourceId;
+		String coverResourceId;
+		String coverReferenceHref;
+		/** id, href and media-type of the items of the manifest */
+		final List<String[]> manifestItems = new ArrayList<String[]>();
+		/** id and href of all items, for finding the cover */
+		final List<String[]> items = new ArrayList<String[]>();
+		/** href, type and title of the references of the guide */
+		final List<String[]> guideReferences = new ArrayList<String[]>();
+		/** idref and linear of all itemrefs */
+		final List<String[]> itemrefs = new ArrayList<String[]>();
+		/** the dublin core elements and the meta elements with a property of the metadata, in document order */
+		final List<TextElement> textElements = new ArrayList<TextElement>();
+		final Map<String, String> metaAttributes = new HashMap<String, String>();
+	}
+
+	/**
+	 * An element of the metadata of which the text is read.
+	 */
+	private static class TextElement {
+		final String name;
+		/** the depth of the element, which is also that of its text children */
+		final int depth;
+		/** whether the text of all descendants is read, instead of only that of the children */
+		final boolean deep;
+		final StringBuilder text = new StringBuilder();
+		String role;
+		String event;
+		String scheme;
+		String id;
+		String property;
+
+		TextElement(String name, int depth, boolean deep) {
+			this.name = name;
+			this.depth = depth;
+			this.deep = deep;
+		}
+	}
+}
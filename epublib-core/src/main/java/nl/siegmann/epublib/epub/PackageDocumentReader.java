@@ -57,7 +57,7 @@ public class PackageDocumentReader extends PackageDocumentBase {
 		
 		resources = readManifest(packageDocument, packageHref, epubReader, resources, idMapping);
 		book.setResources(resources);
-		readCover(packageDocument, book);
+		readCover(findCoverHrefs(packageDocument), book);
 		book.setMetadata(PackageDocumentMetadataReader.readMetadata(packageDocument));
 		book.setSpine(readSpine(packageDocument, epubReader, book.getResources(), idMapping));
 		
@@ -179,7 +179,8 @@ public class PackageDocumentReader extends PackageDocumentBase {
 	 * @param resourcesByHref
 	 * @return The stipped package href
 	 */
-	private static Resources fixHrefs(String packageHref,
+	// package
+	static Resources fixHrefs(String packageHref,
 			Resources resourcesByHref) {
 		int lastSlashPos = packageHref.lastIndexOf('/');
 		if(lastSlashPos < 0) {
@@ -213,7 +214,7 @@ public class PackageDocumentReader extends PackageDocumentBase {
 			return generateSpineFromResources(resources);
 		}
 		Spine result = new Spine();
-		result.setTocResource(findTableOfContentsResource(spineElement, resources));
+		result.setTocResource(findTableOfContentsResource(DOMUtil.getAttribute(spineElement, NAMESPACE_OPF, OPFAttributes.toc), resources));
 		NodeList spineNodes = packageDocument.getElementsByTagNameNS(NAMESPACE_OPF, OPFTags.itemref);
 		List<SpineReference> spineReferences = new ArrayList<SpineReference>(spineNodes.getLength());
 		for(int i = 0; i < spineNodes.getLength(); i++) {
@@ -250,7 +251,8 @@ public class PackageDocumentReader extends PackageDocumentBase {
 	 * @param resources
 	 * @return a spine created out of all resources in the resources.
 	 */
-	private static Spine generateSpineFromResources(Resources resources) {
+	// package
+	static Spine generateSpineFromResources(Resources resources) {
 		Spine result = new Spine();
 		List<String> resourceHrefs = new ArrayList<String>();
 		resourceHrefs.addAll(resources.getAllHrefs());
@@ -273,12 +275,12 @@ public class PackageDocumentReader extends PackageDocumentBase {
 	 * Here we try several ways of finding this table of contents resource.
 	 * We try the given attribute value, some often-used ones and finally look through all resources for the first resource with the table of contents mimetype.
 	 * 
-	 * @param spineElement
-	 * @param resourcesById
+	 * @param tocResourceId the value of the 'toc' attribute of the spine
+	 * @param resources
 	 * @return the Resource containing the table of contents
 	 */
-	private static Resource findTableOfContentsResource(Element spineElement, Resources resources) {
-		String tocResourceId = DOMUtil.getAttribute(spineElement, NAMESPACE_OPF, OPFAttributes.toc);
+	// package
+	static Resource findTableOfContentsResource(String tocResourceId, Resources resources) {
 		Resource tocResource = null;
 		if (StringUtil.isNotBlank(tocResourceId)) {
 			tocResource = resources.getByIdOrHref(tocResourceId);
@@ -347,15 +349,13 @@ public class PackageDocumentReader extends PackageDocumentBase {
 	}
 
 	/**
-	 * Finds the cover resource in the packageDocument and adds it to the book if found.
+	 * Finds the cover resources with the given hrefs and adds them to the book if found.
 	 * Keeps the cover resource in the resources map
-	 * @param packageDocument
+	 * @param coverHrefs
 	 * @param book
-	 * @param resources
 	 */
-	private static void readCover(Document packageDocument, Book book) {
-		
-		Collection<String> coverHrefs = findCoverHrefs(packageDocument);
+	// package
+	static void readCover(Collection<String> coverHrefs, Book book) {
 		for (String coverHref: coverHrefs) {
 			Resource resource = book.getResources().getByHref(coverHref);
 			if (resource == null) {
@@ -2,15 +2,24 @@ package nl.siegmann.epublib.epub;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 import net.sf.jazzlib.ZipEntry;
 import net.sf.jazzlib.ZipException;
 import net.sf.jazzlib.ZipFile;
 import net.sf.jazzlib.ZipInputStream;
+import nl.siegmann.epublib.domain.ByteBufferResource;
 import nl.siegmann.epublib.domain.LazyResource;
 import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Resource;
@@ -46,7 +55,25 @@ public class ResourcesLoader {
 	 */
 	public static Resources loadResources(ZipFile zipFile, String defaultHtmlEncoding,
 			List<MediaType> lazyLoadedTypes) throws IOException {		
-				
+		return loadResources(zipFile, defaultHtmlEncoding, lazyLoadedTypes, Collections.<MediaType>emptyList());
+	}
+
+	/**
+	 * Loads the entries of the zipFile as resources.
+	 * 
+	 * The MediaTypes that are in the lazyLoadedTypes are loaded as in {@link #loadResources(ZipFile, String, List)}.
+	 * The contents of the other resources with a MediaType in the directBufferTypes are loaded into
+	 * ByteBufferResources, outside of the java heap.
+	 * 
+	 * @param zipFile
+	 * @param defaultHtmlEncoding
+	 * @param lazyLoadedTypes
+	 * @param directBufferTypes
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(ZipFile zipFile, String defaultHtmlEncoding,
+			List<MediaType> lazyLoadedTypes, List<MediaType> directBufferTypes) throws IOException {
 		Resources result = new Resources();
         Enumeration<? extends ZipEntry> entries = zipFile.entries();
 
@@ -56,25 +83,182 @@ public class ResourcesLoader {
 			if(zipEntry == null || zipEntry.isDirectory()) {
 				continue;
 			}
-			
-			String href = zipEntry.getName();
-			
-			Resource resource;
-			
-			if (shouldLoadLazy(href, lazyLoadedTypes)) {
-				resource = new LazyResource(zipFile.getName(), zipEntry.getSize(), href);								
-			} else {		
-				resource = ResourceUtil.createResource(zipEntry, zipFile.getInputStream(zipEntry));
+			result.add(createResource(zipFile, zipEntry, defaultHtmlEncoding, lazyLoadedTypes, directBufferTypes));
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Loads the entries of the zipFile as resources, inflating the entries that are not lazily loaded on a pool of
+	 * the given number of threads.
+	 * 
+	 * The resulting Resources are the same as those of {@link #loadResources(ZipFile, String, List)}.
+	 * 
+	 * @param zipFile
+	 * @param defaultHtmlEncoding
+	 * @param lazyLoadedTypes
+	 * @param parallelism the number of threads to use. 1 or less loads the entries on the calling thread.
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(ZipFile zipFile, String defaultHtmlEncoding,
+			List<MediaType> lazyLoadedTypes, int parallelism) throws IOException {
+		return loadResources(zipFile, defaultHtmlEncoding, lazyLoadedTypes, Collections.<MediaType>emptyList(), parallelism);
+	}
+
+	/**
+	 * Loads the entries of the zipFile as resources, inflating the entries that are not lazily loaded on a pool of
+	 * the given number of threads.
+	 * 
+	 * The resulting Resources are the same as those of {@link #loadResources(ZipFile, String, List, List)}.
+	 * 
+	 * @param zipFile
+	 * @param defaultHtmlEncoding
+	 * @param lazyLoadedTypes
+	 * @param directBufferTypes
+	 * @param parallelism the number of threads to use. 1 or less loads the entries on the calling thread.
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(ZipFile zipFile, String defaultHtmlEncoding,
+			List<MediaType> lazyLoadedTypes, List<MediaType> directBufferTypes, int parallelism) throws IOException {
+		if (parallelism <= 1) {
+			return loadResources(zipFile, defaultHtmlEncoding, lazyLoadedTypes, directBufferTypes);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			return loadResources(zipFile, defaultHtmlEncoding, lazyLoadedTypes, directBufferTypes, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Loads the entries of the zipFile as resources, inflating the entries that are not lazily loaded on the given
+	 * executor.
+	 * 
+	 * The resources are added to the result in the order of the entries of the zipFile, so the resulting Resources,
+	 * including the ids of the resources, are the same as those of {@link #loadResources(ZipFile, String, List)}.
+	 * 
+	 * @param zipFile
+	 * @param defaultHtmlEncoding
+	 * @param lazyLoadedTypes
+	 * @param executor
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(ZipFile zipFile, String defaultHtmlEncoding,
+			List<MediaType> lazyLoadedTypes, Executor executor) throws IOException {
+		return loadResources(zipFile, defaultHtmlEncoding, lazyLoadedTypes, Collections.<MediaType>emptyList(), executor);
+	}
+
+	/**
+	 * Loads the entries of the zipFile as resources, inflating the entries that are not lazily loaded on the given
+	 * executor.
+	 * 
+	 * The resources are added to the result in the order of the entries of the zipFile, so the resulting Resources,
+	 * including the ids of the resources, are the same as those of {@link #loadResources(ZipFile, String, List, List)}.
+	 * If an entry can not be loaded the entries that have not been started are skipped, those that are being inflated
+	 * already are left to finish.
+	 * 
+	 * @param zipFile
+	 * @param defaultHtmlEncoding
+	 * @param lazyLoadedTypes
+	 * @param directBufferTypes
+	 * @param executor
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(final ZipFile zipFile, final String defaultHtmlEncoding,
+			final List<MediaType> lazyLoadedTypes, final List<MediaType> directBufferTypes, Executor executor) throws IOException {
+		List<FutureTask<Resource>> tasks = new ArrayList<FutureTask<Resource>>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+        while( entries.hasMoreElements() ) {
+            final ZipEntry zipEntry = entries.nextElement();
+
+			if(zipEntry == null || zipEntry.isDirectory()) {
+				continue;
 			}
-			
-			if(resource.getMediaType() == MediatypeService.XHTML) {
-				resource.setInputEncoding(defaultHtmlEncoding);
+			FutureTask<Resource> task = new FutureTask<Resource>(new Callable<Resource>() {
+
+				@Override
+				public Resource call() throws IOException {
+					return createResource(zipFile, zipEntry, defaultHtmlEncoding, lazyLoadedTypes, directBufferTypes);
+				}
+			});
+			if (shouldLoadLazy(zipEntry.getName(), lazyLoadedTypes)) {
+				task.run();
+			} else {
+				executor.execute(task);
+			}
+			tasks.add(task);
+		}
+
+		Resources result = new Resources();
+		try {
+			for (FutureTask<Resource> task: tasks) {
+				result.add(getResult(task));
+			}
+		} finally {
+			// tasks that are running are not interrupted: an interrupted read from a FileChannel closes the channel,
+			// and with it the zipFile for everyone that shares it
+			for (FutureTask<Resource> task: tasks) {
+				task.cancel(false);
 			}
-			result.add(resource);
 		}
-		
 		return result;
 	}
+
+	private static Resource getResult(FutureTask<Resource> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage());
+		}
+	}
+
+	private static Resource createResource(ZipFile zipFile, ZipEntry zipEntry, String defaultHtmlEncoding,
+			List<MediaType> lazyLoadedTypes, List<MediaType> directBufferTypes) throws IOException {
+		String href = zipEntry.getName();
+		
+		Resource resource;
+		
+		if (shouldLoadLazy(href, lazyLoadedTypes)) {
+			resource = new LazyResource(zipFile.getName(), zipEntry.getSize(), href);								
+		} else {		
+			InputStream in = zipFile.getInputStream(zipEntry);
+			try {
+				if (shouldLoadLazy(href, directBufferTypes)) {
+					resource = new ByteBufferResource(in, zipEntry.getSize(), href);
+				} else {
+					resource = ResourceUtil.createResource(zipEntry, in);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		
+		resource.setSource(zipFile, zipEntry);
+		if(resource.getMediaType() == MediatypeService.XHTML) {
+			resource.setInputEncoding(defaultHtmlEncoding);
+		}
+		return resource;
+	}
 	
 	/**
 	 * Whether the given href will load a mediaType that is in the collection of lazilyLoadedMediaTypes.
@@ -109,6 +293,23 @@ public class ResourcesLoader {
 	 * @throws IOException
 	 */
 	public static Resources loadResources(ZipInputStream zipInputStream, String defaultHtmlEncoding) throws IOException {
+		return loadResources(zipInputStream, defaultHtmlEncoding, Collections.<MediaType>emptyList());
+	}
+
+	/**
+	 * Loads all entries from the ZipInputStream as Resources.
+	 * 
+	 * The contents of the entries with a MediaType in the directBufferTypes are loaded into ByteBufferResources,
+	 * outside of the java heap, the others into memory.
+	 * 
+	 * @param zipInputStream
+	 * @param defaultHtmlEncoding
+	 * @param directBufferTypes
+	 * @return
+	 * @throws IOException
+	 */
+	public static Resources loadResources(ZipInputStream zipInputStream, String defaultHtmlEncoding,
+			List<MediaType> directBufferTypes) throws IOException {
 		Resources result = new Resources();
 		ZipEntry zipEntry;
 		do {
@@ -119,7 +320,12 @@ public class ResourcesLoader {
 			}
 			
 			// store resource
-			Resource resource = ResourceUtil.createResource(zipEntry, zipInputStream);
+			Resource resource;
+			if (shouldLoadLazy(zipEntry.getName(), directBufferTypes)) {
+				resource = new ByteBufferResource(zipInputStream, zipEntry.getSize(), zipEntry.getName());
+			} else {
+				resource = ResourceUtil.createResource(zipEntry, zipInputStream);
+			}
 			if(resource.getMediaType() == MediatypeService.XHTML) {
 				resource.setInputEncoding(defaultHtmlEncoding);
 			}
@@ -0,0 +1,227 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipException;
+import net.sf.jazzlib.ZipInputStream;
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+import nl.siegmann.epublib.util.NoCloseInputStream;
+import nl.siegmann.epublib.util.ResourceUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reads an epub as a stream of events, without building a Book.
+ *
+ * The entries of the epub are handed to a {@link Handler} as they are read from the stream.
+ * Only the META-INF/container.xml and the package document are read into memory, every other entry is passed on
+ * directly from the underlying ZipInputStream.
+ * This keeps memory use bounded by the size of the largest of these entries instead of by the size of the book.
+ *
+ * Because the entries are handed out in the order in which they are stored in the epub, resources that come before
+ * the package document in the epub are handed out before {@link Handler#onPackageDocument(Resource, Metadata)} is
+ * called, with a MediaType determined by their file extension.
+ * Resources that come after the package document get the MediaType that the manifest declares for them.
+ *
+ * The table of contents (NCX) is handed out like any other resource.
+ *
+ */
+public class StreamingEpubReader {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamingEpubReader.class);
+
+	/**
+	 * The number of broken entry headers in a row after which the epub is considered unreadable.
+	 * A truncated epub fails on every attempt, without ever getting to a next entry.
+	 */
+	private static final int MAX_ENTRY_ERRORS = 16;
+
+	/**
+	 * Receives the parts of an epub as they are read by the StreamingEpubReader.
+	 */
+	public interface Handler {
+
+		/**
+		 * Called when the META-INF/container.xml has been read.
+		 *
+		 * If the epub has no META-INF/container.xml this is called at the end with the default package document
+		 * href.
+		 *
+		 * @param packageResourceHref the href of the package document
+		 */
+		void onContainer(String packageResourceHref);
+
+		/**
+		 * Called when the package document has been read.
+		 *
+		 * @param packageResource the package document
+		 * @param metadata the metadata of the book
+		 */
+		void onPackageDocument(Resource packageResource, Metadata metadata);
+
+		/**
+		 * Called for every other entry of the epub.
+		 *
+		 * The inputStream is only valid for the duration of this call. Closing it is allowed but not needed.
+		 *
+		 * @param href the name of the entry in the epub
+		 * @param mediaType the MediaType of the entry, may be null
+		 * @param in the contents of the entry
+		 * @throws IOException
+		 */
+		void onResource(String href, MediaType mediaType, InputStream in) throws IOException;
+	}
+
+	/**
+	 * A Handler that does nothing, to be extended by Handlers that are only interested in some of the events.
+	 */
+	public static class HandlerAdapter implements Handler {
+
+		@Override
+		public void onContainer(String packageResourceHref) {
+		}
+
+		@Override
+		public void onPackageDocument(Resource packageResource, Metadata metadata) {
+		}
+
+		@Override
+		public void onResource(String href, MediaType mediaType, InputStream in) throws IOException {
+		}
+	}
+
+	public void read(InputStream in, Handler handler) throws IOException {
+		read(new ZipInputStream(in), handler);
+	}
+
+	/**
+	 * Reads all the entries of the epub and hands them to the handler.
+	 *
+	 * @param zipInputStream
+	 * @param handler
+	 * @throws IOException
+	 */
+	public void read(ZipInputStream zipInputStream, Handler handler) throws IOException {
+		String packageResourceHref = null;
+		Map<String, MediaType> manifestMediaTypes = Collections.emptyMap();
+		// package documents that were read before the container told us which one to use
+		List<Resource> packageResourceCandidates = new ArrayList<Resource>();
+
+		ZipEntry zipEntry;
+		while ((zipEntry = getNextZipEntry(zipInputStream)) != null) {
+			if (zipEntry.isDirectory()) {
+				continue;
+			}
+			String href = zipEntry.getName();
+			if ("mimetype".equals(href)) {
+				continue;
+			}
+			if (EpubReader.CONTAINER_HREF.equals(href) && packageResourceHref == null) {
+				packageResourceHref = EpubReader.getPackageResourceHref(new Resource(IOUtil.toByteArray(zipInputStream), href));
+				handler.onContainer(packageResourceHref);
+				for (Resource candidate: packageResourceCandidates) {
+					if (packageResourceHref.equals(candidate.getHref())) {
+						manifestMediaTypes = processPackageResource(candidate, handler);
+					} else {
+						handler.onResource(candidate.getHref(), null, candidate.getInputStream());
+					}
+				}
+				packageResourceCandidates.clear();
+			} else if (href.equals(packageResourceHref)) {
+				manifestMediaTypes = processPackageResource(new Resource(IOUtil.toByteArray(zipInputStream), href), handler);
+			} else if (packageResourceHref == null && href.endsWith(".opf")) {
+				packageResourceCandidates.add(new Resource(IOUtil.toByteArray(zipInputStream), href));
+			} else {
+				MediaType mediaType = manifestMediaTypes.get(href);
+				if (mediaType == null) {
+					mediaType = MediatypeService.determineMediaType(href);
+				}
+				handler.onResource(href, mediaType, new NoCloseInputStream(zipInputStream));
+			}
+		}
+
+		if (packageResourceHref == null) {
+			packageResourceHref = EpubReader.getPackageResourceHref((Resource) null);
+			handler.onContainer(packageResourceHref);
+			for (Resource candidate: packageResourceCandidates) {
+				if (packageResourceHref.equals(candidate.getHref())) {
+					processPackageResource(candidate, handler);
+				} else {
+					handler.onResource(candidate.getHref(), null, candidate.getInputStream());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the package document, hands it with its metadata to the handler and returns the MediaTypes that its
+	 * manifest declares, by href relative to the root of the epub.
+	 */
+	private static Map<String, MediaType> processPackageResource(Resource packageResource, Handler handler) {
+		Document packageDocument;
+		try {
+			packageDocument = ResourceUtil.getAsDocument(packageResource);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+			return Collections.emptyMap();
+		}
+		handler.onPackageDocument(packageResource, PackageDocumentMetadataReader.readMetadata(packageDocument));
+		return readManifestMediaTypes(packageDocument, packageResource.getHref());
+	}
+
+	private static Map<String, MediaType> readManifestMediaTypes(Document packageDocument, String packageHref) {
+		Map<String, MediaType> result = new HashMap<String, MediaType>();
+		Element manifestElement = DOMUtil.getFirstElementByTagNameNS(packageDocument.getDocumentElement(), PackageDocumentBase.NAMESPACE_OPF, PackageDocumentBase.OPFTags.manifest);
+		if (manifestElement == null) {
+			return result;
+		}
+		String hrefPrefix = packageHref.substring(0, packageHref.lastIndexOf('/') + 1);
+		NodeList itemElements = manifestElement.getElementsByTagNameNS(PackageDocumentBase.NAMESPACE_OPF, PackageDocumentBase.OPFTags.item);
+		for (int i = 0; i < itemElements.getLength(); i++) {
+			Element itemElement = (Element) itemElements.item(i);
+			String href = DOMUtil.getAttribute(itemElement, PackageDocumentBase.NAMESPACE_OPF, PackageDocumentBase.OPFAttributes.href);
+			try {
+				href = URLDecoder.decode(href, Constants.CHARACTER_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				log.error(e.getMessage());
+			}
+			MediaType mediaType = MediatypeService.getMediaTypeByName(DOMUtil.getAttribute(itemElement, PackageDocumentBase.NAMESPACE_OPF, PackageDocumentBase.OPFAttributes.media_type));
+			if (mediaType != null) {
+				result.put(hrefPrefix + href, mediaType);
+			}
+		}
+		return result;
+	}
+
+	private static ZipEntry getNextZipEntry(ZipInputStream zipInputStream) throws IOException {
+		for (int errorCount = 1; ; errorCount++) {
+			try {
+				return zipInputStream.getNextEntry();
+			} catch(ZipException e) {
+				if (errorCount >= MAX_ENTRY_ERRORS) {
+					throw e;
+				}
+				log.error(e.getMessage());
+				zipInputStream.closeEntry();
+			}
+		}
+	}
+}
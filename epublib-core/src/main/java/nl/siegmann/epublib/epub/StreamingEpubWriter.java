@@ -0,0 +1,274 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.Deflater;
+
+import net.sf.jazzlib.ZipEntry;
+import net.sf.jazzlib.ZipOutputStream;
+import nl.siegmann.epublib.Constants;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.epub.CompressionPolicy.Compression;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+/**
+ * Writes an epub from resources that are handed to it one by one, instead of from a complete Book.
+ *
+ * Every resource is written to the epub as soon as it is added, so memory use does not grow with the size of the
+ * data of the book. Only the metadata, spine and table of contents are kept until {@link #finish()} writes them as
+ * the package document and table of contents.
+ *
+ * <pre>
+ * StreamingEpubWriter writer = new StreamingEpubWriter(out);
+ * writer.begin(metadata);
+ * Resource chapter1 = writer.addResource("chapter1.html", MediatypeService.XHTML, in);
+ * writer.addSpineItem(chapter1);
+ * writer.addTocEntry("Chapter 1", chapter1);
+ * writer.finish();
+ * </pre>
+ *
+ * The compression policy of the epub writer judges each resource by its first bytes, as the stream can not be read
+ * twice. Resources that it would store are deflated without compression, because a stored entry needs its crc before
+ * its data.
+ *
+ * Not thread-safe, single use object. The BookProcessor of the epub writer is not applied, as the data of the
+ * resources is gone by the time the book is complete.
+ */
+public class StreamingEpubWriter {
+
+    private static final byte[] SCRIPT_TAG = "<script".getBytes();
+    private static final byte[] SCRIPTED_PLACEHOLDER = "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><script/></head></html>".getBytes();
+    private static final byte[] XHTML_PLACEHOLDER = "<html xmlns=\"http://www.w3.org/1999/xhtml\"/>".getBytes();
+
+    private final AbstractEpubWriter epubWriter;
+    private final ZipOutputStream resultStream;
+    private final Book book = new Book();
+    private boolean begun = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a writer of an epub 2 book.
+     *
+     * @param out
+     */
+    public StreamingEpubWriter(OutputStream out) {
+        this(out, new Epub2Writer());
+    }
+
+    /**
+     * Creates a writer that writes the package document and table of contents like the given epub writer does, and
+     * compresses the resources by its compression policy.
+     *
+     * @param out
+     * @param epubWriter
+     */
+    public StreamingEpubWriter(OutputStream out, AbstractEpubWriter epubWriter) {
+        this.epubWriter = epubWriter;
+        this.resultStream = AbstractEpubWriter.createZipOutputStream(out, 0);
+    }
+
+    /**
+     * Starts the epub by writing its mimetype and container.
+     *
+     * @param metadata the metadata of the book, may still be changed until finish() is called
+     * @throws IOException
+     */
+    public void begin(Metadata metadata) throws IOException {
+        if (begun) {
+            throw new IllegalStateException("Epub already begun");
+        }
+        begun = true;
+        if (metadata != null) {
+            book.setMetadata(metadata);
+        }
+        epubWriter.writeMimeType(resultStream);
+        epubWriter.writeContainer(resultStream);
+    }
+
+    /**
+     * The metadata of the book.
+     *
+     * @return The metadata of the book.
+     */
+    public Metadata getMetadata() {
+        return book.getMetadata();
+    }
+
+    /**
+     * Writes the contents of the stream as a resource of the book.
+     *
+     * The returned Resource stands for the written entry in the spine and table of contents, it does not keep the
+     * data of the resource.
+     *
+     * @param href The location of the resource within the epub. Example: "chapter1.html".
+     * @param mediaType The MediaType of the resource, null to determine it by the href extension.
+     * @param in The contents of the resource, is read to its end but not closed.
+     * @return the Resource that stands for the written entry.
+     * @throws IOException
+     */
+    public Resource addResource(String href, MediaType mediaType, InputStream in) throws IOException {
+        checkWriting();
+        if (mediaType == null) {
+            mediaType = MediatypeService.determineMediaType(href);
+        }
+        if (book.getResources().containsByHref(href)) {
+            throw new IllegalArgumentException("Resource with href " + href + " already written");
+        }
+        if (href.equals(epubWriter.getTOCHref())) {
+            throw new IllegalArgumentException("Resource href " + href + " is reserved for the table of contents");
+        }
+        CompressionPolicy compressionPolicy = epubWriter.getCompressionPolicy();
+        int sampleSize = compressionPolicy == null ? 0 : compressionPolicy.getSampleSize();
+        byte[] sample = readSample(in, sampleSize);
+        Compression compression = compressionPolicy == null
+                ? Compression.deflated(Deflater.DEFAULT_COMPRESSION)
+                : compressionPolicy.getCompression(new Resource(null, sample, href, mediaType));
+
+        resultStream.setMethod(ZipOutputStream.DEFLATED);
+        resultStream.setLevel(compression.getMethod() == ZipEntry.STORED ? Deflater.NO_COMPRESSION : compression.getLevel());
+        resultStream.putNextEntry(new ZipEntry("OEBPS/" + href));
+        InputStream data = new SequenceInputStream(new ByteArrayInputStream(sample), in);
+        long size = 0;
+        int scriptMatch = 0;
+        boolean scripted = false;
+        boolean scanForScript = mediaType == MediatypeService.XHTML;
+        byte[] buffer = IOUtil.takeCopyBuffer();
+        try {
+            for (int n = data.read(buffer); n >= 0; n = data.read(buffer)) {
+                resultStream.write(buffer, 0, n);
+                size += n;
+                for (int i = 0; scanForScript && !scripted && i < n; i++) {
+                    scriptMatch = ((buffer[i] | 0x20) == SCRIPT_TAG[scriptMatch]) ? scriptMatch + 1
+                            : (buffer[i] == '<' ? 1 : 0);
+                    scripted = scriptMatch == SCRIPT_TAG.length;
+                }
+            }
+        } finally {
+            IOUtil.releaseCopyBuffer(buffer);
+        }
+        resultStream.closeEntry();
+
+        Resource result = new WrittenResource(href, mediaType, size, scripted);
+        book.getResources().add(result);
+        return result;
+    }
+
+    /**
+     * Adds a written resource to the end of the spine.
+     *
+     * @param resource a Resource returned by addResource
+     * @return the spine reference
+     */
+    public SpineReference addSpineItem(Resource resource) {
+        checkWriting();
+        return book.getSpine().addResource(resource);
+    }
+
+    /**
+     * Adds a section to the end of the table of contents.
+     *
+     * @param title
+     * @param resource a Resource returned by addResource
+     * @return the new section, to add child sections to
+     */
+    public TOCReference addTocEntry(String title, Resource resource) {
+        return addTocEntry(null, title, resource, null);
+    }
+
+    /**
+     * Adds a section to the end of the table of contents, or to the end of the children of the given parent section.
+     *
+     * @param parent the parent section, null for a top level section
+     * @param title
+     * @param resource a Resource returned by addResource
+     * @param fragmentId the fragment of the resource the section starts at, may be null
+     * @return the new section, to add child sections to
+     */
+    public TOCReference addTocEntry(TOCReference parent, String title, Resource resource, String fragmentId) {
+        checkWriting();
+        TOCReference result = new TOCReference(title, resource, fragmentId);
+        if (parent == null) {
+            return book.getTableOfContents().addTOCReference(result);
+        }
+        return parent.addChildSection(result);
+    }
+
+    /**
+     * Sets the cover image of the book.
+     *
+     * @param coverImage a Resource returned by addResource
+     */
+    public void setCoverImage(Resource coverImage) {
+        checkWriting();
+        book.setCoverImage(coverImage);
+    }
+
+    /**
+     * Writes the table of contents and the package document and closes the epub.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        checkWriting();
+        finished = true;
+        epubWriter.writeTOCResource(book, resultStream);
+        epubWriter.writeEntry("OEBPS/content.opf", epubWriter.createPackageDocument(book), resultStream);
+        resultStream.close();
+    }
+
+    private void checkWriting() {
+        if (!begun) {
+            throw new IllegalStateException("Epub not begun");
+        }
+        if (finished) {
+            throw new IllegalStateException("Epub already finished");
+        }
+    }
+
+    private static byte[] readSample(InputStream in, int sampleSize) throws IOException {
+        byte[] sample = new byte[sampleSize];
+        int sampleLength = 0;
+        for (int n = 0; n >= 0 && sampleLength < sample.length; n = in.read(sample, sampleLength, sample.length - sampleLength)) {
+            sampleLength += n;
+        }
+        if (sampleLength == sample.length) {
+            return sample;
+        }
+        byte[] result = new byte[sampleLength];
+        System.arraycopy(sample, 0, result, 0, sampleLength);
+        return result;
+    }
+
+    /**
+     * Stands for a resource that has been written to the epub.
+     *
+     * XHTML resources get a minimal document as data that has a script element if theirs had one, which is all the
+     * package document writers look at.
+     */
+    private static class WrittenResource extends Resource {
+
+        private static final long serialVersionUID = -1818218637565539591L;
+
+        private final long size;
+
+        public WrittenResource(String href, MediaType mediaType, long size, boolean scripted) {
+            super(null, mediaType == MediatypeService.XHTML ? (scripted ? SCRIPTED_PLACEHOLDER : XHTML_PLACEHOLDER) : new byte[0],
+                    href, mediaType, Constants.CHARACTER_ENCODING);
+            this.size = size;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package nl.siegmann.epublib.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import nl.siegmann.epublib.domain.MediaType;
-import nl.siegmann.epublib.util.StringUtil;
 
 
 /**
@@ -26,6 +30,8 @@ public class MediatypeService {
 	public static final MediaType JPG = new MediaType("image/jpeg", ".jpg", new String[] {".jpg", ".jpeg"});
 	public static final MediaType PNG = new MediaType("image/png", ".png");
 	public static final MediaType GIF = new MediaType("image/gif", ".gif");
+	public static final MediaType WEBP = new MediaType("image/webp", ".webp");
+	public static final MediaType AVIF = new MediaType("image/avif", ".avif");
 	
 	public static final MediaType SVG = new MediaType("image/svg+xml", ".svg");
 
@@ -33,29 +39,84 @@ public class MediatypeService {
 	public static final MediaType TTF = new MediaType("application/x-truetype-font", ".ttf");
 	public static final MediaType OPENTYPE = new MediaType("application/vnd.ms-opentype", ".otf");
 	public static final MediaType WOFF = new MediaType("application/font-woff", ".woff");
+	public static final MediaType WOFF2 = new MediaType("font/woff2", ".woff2");
 	
 	// audio
 	public static final MediaType MP3 = new MediaType("audio/mpeg", ".mp3");
 	public static final MediaType MP4 = new MediaType("audio/mp4", ".mp4");
 	public static final MediaType OGG = new MediaType("audio/ogg", ".ogg");	
 
+	// video
+	// .mp4 files are classified as MP4 audio, so MP4 video uses .m4v, which is recognized as MP4 video again
+	public static final MediaType MP4_VIDEO = new MediaType("video/mp4", ".m4v");
+
 	public static final MediaType SMIL = new MediaType("application/smil+xml", ".smil");
 	public static final MediaType XPGT = new MediaType("application/adobe-page-template+xml", ".xpgt");
 	public static final MediaType PLS = new MediaType("application/pls+xml", ".pls");
+	public static final MediaType JSON = new MediaType("application/json", ".json");
 	
+	/**
+	 * All known MediaTypes.
+	 * 
+	 * Use {@link #registerMediaType(MediaType)} to add a MediaType, this array is replaced when that happens.
+	 */
 	public static MediaType[] mediatypes = new MediaType[] {
-		XHTML, EPUB, JPG, PNG, GIF, CSS, SVG, TTF, NCX, XPGT, OPENTYPE, WOFF, SMIL, PLS, JAVASCRIPT, MP3, MP4, OGG
+		XHTML, EPUB, JPG, PNG, GIF, WEBP, AVIF, CSS, SVG, TTF, NCX, XPGT, OPENTYPE, WOFF, WOFF2, SMIL, PLS, JAVASCRIPT, MP3, MP4, OGG, MP4_VIDEO, JSON
 	};
 	
 	public static Map<String, MediaType> mediaTypesByName = new HashMap<String, MediaType>();
+	
+	// the MediaTypes by their lower case extensions, replaced as a whole by registerMediaType
+	static volatile Map<String, MediaType> mediaTypesByExtension = new HashMap<String, MediaType>();
 	static {
 		for(int i = 0; i < mediatypes.length; i++) {
 			mediaTypesByName.put(mediatypes[i].getName(), mediatypes[i]);
+			addExtensions(mediatypes[i], mediaTypesByExtension, false);
 		}
 	}
 	
 	public static boolean isBitmapImage(MediaType mediaType) {
-		return mediaType == JPG || mediaType == PNG || mediaType == GIF;
+		return mediaType == JPG || mediaType == PNG || mediaType == GIF || mediaType == WEBP || mediaType == AVIF;
+	}
+	
+	/**
+	 * Adds a MediaType to the known MediaTypes.
+	 * 
+	 * A MediaType with the same name as an already known one replaces it.
+	 * The extensions of the given MediaType take precedence over the same extensions of the already known MediaTypes.
+	 * 
+	 * @param mediaType
+	 */
+	public static synchronized void registerMediaType(MediaType mediaType) {
+		List<MediaType> newMediatypes = new ArrayList<MediaType>(Arrays.asList(mediatypes));
+		MediaType existing = mediaTypesByName.get(mediaType.getName());
+		if (existing == null) {
+			newMediatypes.add(mediaType);
+		} else {
+			newMediatypes.set(newMediatypes.indexOf(existing), mediaType);
+		}
+
+		Map<String, MediaType> newMediaTypesByName = new HashMap<String, MediaType>(mediaTypesByName);
+		newMediaTypesByName.put(mediaType.getName(), mediaType);
+
+		Map<String, MediaType> newMediaTypesByExtension = new HashMap<String, MediaType>(mediaTypesByExtension);
+		if (existing != null) {
+			newMediaTypesByExtension.values().removeAll(Collections.singleton(existing));
+		}
+		addExtensions(mediaType, newMediaTypesByExtension, true);
+
+		mediatypes = newMediatypes.toArray(new MediaType[newMediatypes.size()]);
+		mediaTypesByName = newMediaTypesByName;
+		mediaTypesByExtension = newMediaTypesByExtension;
+	}
+
+	private static void addExtensions(MediaType mediaType, Map<String, MediaType> mediaTypesByExtension, boolean replace) {
+		for (String extension: mediaType.getExtensions()) {
+			extension = extension.toLowerCase(Locale.ENGLISH);
+			if (replace || ! mediaTypesByExtension.containsKey(extension)) {
+				mediaTypesByExtension.put(extension, mediaType);
+			}
+		}
 	}
 	
 	/**
@@ -66,15 +127,29 @@ public class MediatypeService {
 	 * @return the MediaType based on the file extension.
 	 */
 	public static MediaType determineMediaType(String filename) {
-		for(int i = 0; i < mediatypes.length; i++) {
-			MediaType mediatype = mediatypes[i];
-			for(String extension: mediatype.getExtensions()) {
-				if(StringUtil.endsWithIgnoreCase(filename, extension)) {
-					return mediatype;
-				}
+		if (filename == null) {
+			return null;
+		}
+		int dotPos = filename.lastIndexOf('.');
+		if (dotPos < 0) {
+			return null;
+		}
+		String extension = filename.substring(dotPos);
+		Map<String, MediaType> mediaTypesByExtension = MediatypeService.mediaTypesByExtension;
+		MediaType result = mediaTypesByExtension.get(extension);
+		if (result == null && hasUpperCase(extension)) {
+			result = mediaTypesByExtension.get(extension.toLowerCase(Locale.ENGLISH));
+		}
+		return result;
+	}
+
+	private static boolean hasUpperCase(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (Character.isUpperCase(text.charAt(i))) {
+				return true;
 			}
 		}
-		return null;
+		return false;
 	}
 
 	public static MediaType getMediaTypeByName(String mediaTypeName) {
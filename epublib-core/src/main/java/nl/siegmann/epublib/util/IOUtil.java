@@ -1,6 +1,9 @@
 package nl.siegmann.epublib.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * Most of the functions herein are re-implementations of the ones in apache io IOUtils.
@@ -10,6 +13,59 @@ public class IOUtil {
 
 	public static final int IO_COPY_BUFFER_SIZE = 1024 * 4;
 
+	private static volatile int copyBufferSize = 1024 * 16;
+
+	// One copy buffer per thread, taken out while in use so nested copies get their own.
+	private static final ThreadLocal<byte[]> copyBuffers = new ThreadLocal<byte[]>();
+
+	/**
+	 * The size of the buffers that the copy methods use.
+	 * 
+	 * @return the size of the buffers that the copy methods use.
+	 */
+	public static int getCopyBufferSize() {
+		return copyBufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffers that the copy methods use, 16KB by default.
+	 * 
+	 * Every thread that copies keeps a buffer of this size for its next copy.
+	 * 
+	 * @param copyBufferSize
+	 */
+	public static void setCopyBufferSize(int copyBufferSize) {
+		if (copyBufferSize <= 0) {
+			throw new IllegalArgumentException("Copy buffer size must be positive, not " + copyBufferSize);
+		}
+		IOUtil.copyBufferSize = copyBufferSize;
+	}
+
+	/**
+	 * Takes the copy buffer of the current thread, or creates a new one if it is in use or has the wrong size.
+	 * 
+	 * @return a buffer of getCopyBufferSize() bytes that must be handed back with releaseCopyBuffer.
+	 */
+	public static byte[] takeCopyBuffer() {
+		byte[] buffer = copyBuffers.get();
+		if (buffer == null || buffer.length != copyBufferSize) {
+			return new byte[copyBufferSize];
+		}
+		copyBuffers.set(null);
+		return buffer;
+	}
+
+	/**
+	 * Hands a buffer taken with takeCopyBuffer back for the next copy on the current thread.
+	 * 
+	 * @param buffer
+	 */
+	public static void releaseCopyBuffer(byte[] buffer) {
+		if (buffer.length == copyBufferSize) {
+			copyBuffers.set(buffer);
+		}
+	}
+
 	/**
 	 * Gets the contents of the Reader as a byte[], with the given character encoding.
 	 * 
@@ -39,6 +95,35 @@ public class IOUtil {
 		return result.toByteArray();
 	}
 
+	/**
+	 * Returns the contents of the file as a byte[].
+	 * 
+	 * The file is read by its FileChannel straight into an array of the size of the file.
+	 * 
+	 * @param file
+	 * @return the contents of the file as a byte[]
+	 * @throws IOException
+	 */
+	public static byte[] toByteArray(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File too large to read into memory: " + file);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			if (buffer.hasRemaining()) {
+				return Arrays.copyOf(buffer.array(), buffer.position());
+			}
+			return buffer.array();
+		} finally {
+			in.close();
+		}
+	}
+
     /**
      * Reads data from the InputStream, using the specified buffer size.
      *
@@ -90,7 +175,7 @@ public class IOUtil {
 	}
 
     /**
-	 * Copies the contents of the InputStream to the OutputStream.
+	 * Copies the contents of the InputStream to the OutputStream and flushes the OutputStream.
 	 * 
 	 * @param in
 	 * @param out
@@ -99,17 +184,37 @@ public class IOUtil {
 	 */
 	public static int copy(InputStream in, OutputStream out)
 			throws IOException {
-		byte[] buffer = new byte[IO_COPY_BUFFER_SIZE];
-		int readSize = -1;
-		int result = 0;
-		while ((readSize = in.read(buffer)) >= 0) {
-			out.write(buffer, 0, readSize);
-			result = calcNewNrReadSize(readSize, result); 
-		}
+		int result = copyWithoutFlush(in, out);
 		out.flush();
 		return result;
 	}
 
+	/**
+	 * Copies the contents of the InputStream to the OutputStream, without flushing the OutputStream.
+	 * 
+	 * Used for writing zip entries: flushing a ZipOutputStream in a deflated entry adds a sync flush marker to its data.
+	 * 
+	 * @param in
+	 * @param out
+	 * @return the nr of bytes read, or -1 if the amount &gt; Integer.MAX_VALUE
+	 * @throws IOException
+	 */
+	public static int copyWithoutFlush(InputStream in, OutputStream out)
+			throws IOException {
+		byte[] buffer = takeCopyBuffer();
+		try {
+			int readSize = -1;
+			int result = 0;
+			while ((readSize = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, readSize);
+				result = calcNewNrReadSize(readSize, result); 
+			}
+			return result;
+		} finally {
+			releaseCopyBuffer(buffer);
+		}
+	}
+
 	/**
 	 * Copies the contents of the Reader to the Writer.
 	 * 
@@ -119,7 +224,7 @@ public class IOUtil {
 	 * @throws IOException
 	 */
 	public static int copy(Reader in, Writer out) throws IOException {
-		char[] buffer = new char[IO_COPY_BUFFER_SIZE];
+		char[] buffer = new char[copyBufferSize];
 		int readSize = -1;
 		int result = 0;
 		while ((readSize = in.read(buffer)) >= 0) {
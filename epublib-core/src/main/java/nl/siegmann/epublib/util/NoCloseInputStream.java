@@ -0,0 +1,25 @@
+package nl.siegmann.epublib.util;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * InputStream with the close() disabled.
+ * We read multiple entries from a single ZipInputStream.
+ * Code that is handed one of these entries may call a close() after reading it.
+ * We don't want that to close the entire ZipInputStream, so we hand out the entries wrapped in this NoCloseInputStream.
+ *
+ */
+public class NoCloseInputStream extends FilterInputStream {
+
+	public NoCloseInputStream(InputStream inputStream) {
+		super(inputStream);
+	}
+
+	/**
+	 * A close() that does not call it's parent's close()
+	 */
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,30 @@
+package nl.siegmann.epublib.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream with the flush() disabled.
+ * XmlSerializers flush the stream they write to when they are done.
+ * Flushing a ZipOutputStream in a deflated entry adds a sync flush marker to its data, so documents that are serialized
+ * straight into a zip entry are written through this NoFlushOutputStream.
+ */
+public class NoFlushOutputStream extends FilterOutputStream {
+
+	public NoFlushOutputStream(OutputStream outputStream) {
+		super(outputStream);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+	}
+
+	/**
+	 * A flush() that does not call the flush() of the underlying stream
+	 */
+	@Override
+	public void flush() {
+	}
+}
@@ -1,7 +1,6 @@
 package nl.siegmann.epublib.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -35,7 +34,7 @@ public class ResourceUtil {
 			return null;
 		}
 		MediaType mediaType = MediatypeService.determineMediaType(file.getName());
-		byte[] data = IOUtil.toByteArray(new FileInputStream(file));
+		byte[] data = IOUtil.toByteArray(file);
 		Resource result = new Resource(data, mediaType);
 		return result;
 	}
@@ -105,7 +104,7 @@ public class ResourceUtil {
 	 * Reads parses the xml therein and returns the result as a Document
 	 */
 	public static Document getAsDocument(Resource resource) throws UnsupportedEncodingException, SAXException, IOException, ParserConfigurationException {
-		return getAsDocument(resource, EpubProcessorSupport.createDocumentBuilder());
+		return getAsDocument(resource, EpubProcessorSupport.getDocumentBuilder());
 	}
 	
 	
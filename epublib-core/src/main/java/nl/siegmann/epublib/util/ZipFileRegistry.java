@@ -0,0 +1,265 @@
+package nl.siegmann.epublib.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares opened ZipFiles between all the LazyResources of an epub.
+ *
+ * Opening a ZipFile means reading and parsing its entire central directory, which for books with many entries is
+ * far more expensive than reading a single entry.
+ * This registry keeps at most one open ZipFile per epub file, keyed by its canonical path and validated by its last
+ * modified time, and counts the number of users of that ZipFile.
+ *
+ * ZipFiles that are no longer in use are kept open for the idle timeout, so that the next lazy load, for instance of
+ * the next resource in a pass over the whole book, can reuse them. After that they are closed, so the epub file is
+ * not held open (and on Windows not locked against deleting or replacing it) for long once reading is done.
+ * {@link #closeAll()} closes them right away.
+ *
+ * @see nl.siegmann.epublib.domain.LazyResource
+ */
+public class ZipFileRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(ZipFileRegistry.class);
+
+	/**
+	 * The default time in milliseconds an unused ZipFile is kept open.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 2000;
+
+	private static final ZipFileRegistry INSTANCE = new ZipFileRegistry();
+
+	private static class Handle {
+		final String path;
+		final long lastModified;
+		final ZipFile zipFile;
+		int referenceCount = 0;
+		long idleSince = 0;
+		boolean detached = false;
+
+		Handle(String path, long lastModified, ZipFile zipFile) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.zipFile = zipFile;
+		}
+	}
+
+	private final Map<String, Handle> handlesByPath = new HashMap<String, Handle>();
+	private final Map<ZipFile, Handle> handlesByZipFile = new IdentityHashMap<ZipFile, Handle>();
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private Timer evictionTimer;
+	private boolean evictionScheduled = false;
+
+	/**
+	 * The registry shared by all LazyResources.
+	 *
+	 * @return The registry shared by all LazyResources.
+	 */
+	public static ZipFileRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets an opened ZipFile for the given file, opening it if there is no usable ZipFile for it yet.
+	 *
+	 * Every call to acquire must be followed by a call to {@link #release(ZipFile)}.
+	 *
+	 * The ZipFile is opened without holding the lock of the registry, so opening a large epub does not hold up the
+	 * lazy loads of other epubs.
+	 *
+	 * @param filename
+	 * @return an opened ZipFile for the given file.
+	 * @throws IOException
+	 */
+	public ZipFile acquire(String filename) throws IOException {
+		File file = new File(filename);
+		String path = file.getCanonicalPath();
+		long lastModified = file.lastModified();
+		ZipFile result;
+		synchronized (this) {
+			result = acquireOpen(path, lastModified);
+		}
+		if (result != null) {
+			return result;
+		}
+		ZipFile zipFile = new ZipFile(file);
+		synchronized (this) {
+			result = acquireOpen(path, lastModified);
+			if (result == null) {
+				Handle handle = new Handle(path, lastModified, zipFile);
+				handlesByPath.put(path, handle);
+				handlesByZipFile.put(zipFile, handle);
+				handle.referenceCount++;
+				return zipFile;
+			}
+		}
+		// another thread opened the epub in the meantime
+		try {
+			zipFile.close();
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the open ZipFile for the given path, if there is one and its file has not changed since it was opened.
+	 */
+	private ZipFile acquireOpen(String path, long lastModified) {
+		Handle handle = handlesByPath.get(path);
+		if (handle == null) {
+			return null;
+		}
+		if (handle.lastModified != lastModified) {
+			log.debug("Epub file " + path + " has changed, reopening it");
+			detach(handle);
+			return null;
+		}
+		handle.referenceCount++;
+		return handle.zipFile;
+	}
+
+	/**
+	 * Signals that the given ZipFile, as returned by {@link #acquire(String)}, is no longer used by the caller.
+	 *
+	 * ZipFiles that were not acquired from this registry are closed immediately.
+	 *
+	 * @param zipFile
+	 * @throws IOException
+	 */
+	public synchronized void release(ZipFile zipFile) throws IOException {
+		Handle handle = handlesByZipFile.get(zipFile);
+		if (handle == null) {
+			zipFile.close();
+			return;
+		}
+		handle.referenceCount--;
+		if (handle.referenceCount > 0) {
+			return;
+		}
+		if (handle.detached || idleTimeout <= 0) {
+			close(handle);
+			return;
+		}
+		handle.idleSince = System.currentTimeMillis();
+		scheduleEviction();
+	}
+
+	/**
+	 * Closes all ZipFiles that have been unused for longer than the idle timeout.
+	 */
+	public synchronized void evictIdle() {
+		long now = System.currentTimeMillis();
+		for (Handle handle: new ArrayList<Handle>(handlesByPath.values())) {
+			if (handle.referenceCount <= 0 && (now - handle.idleSince) >= idleTimeout) {
+				close(handle);
+			}
+		}
+	}
+
+	/**
+	 * Closes all ZipFiles that are currently not in use.
+	 * ZipFiles that are in use will be closed as soon as they are released.
+	 */
+	public synchronized void closeAll() {
+		for (Handle handle: new ArrayList<Handle>(handlesByPath.values())) {
+			detach(handle);
+		}
+	}
+
+	/**
+	 * The number of ZipFiles currently held open by this registry.
+	 *
+	 * @return The number of ZipFiles currently held open by this registry.
+	 */
+	public synchronized int size() {
+		return handlesByZipFile.size();
+	}
+
+	/**
+	 * The time in milliseconds an unused ZipFile is kept open.
+	 *
+	 * @return The time in milliseconds an unused ZipFile is kept open.
+	 */
+	public synchronized long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds an unused ZipFile is kept open, {@link #DEFAULT_IDLE_TIMEOUT} by default.
+	 * A value of 0 or less closes ZipFiles as soon as they are no longer used.
+	 * While a ZipFile is kept open its file cannot be deleted or replaced on Windows.
+	 *
+	 * @param idleTimeout
+	 */
+	public synchronized void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		if (idleTimeout <= 0) {
+			evictIdle();
+		}
+	}
+
+	private void detach(Handle handle) {
+		handle.detached = true;
+		if (handlesByPath.get(handle.path) == handle) {
+			handlesByPath.remove(handle.path);
+		}
+		if (handle.referenceCount <= 0) {
+			close(handle);
+		}
+	}
+
+	private void close(Handle handle) {
+		if (handlesByPath.get(handle.path) == handle) {
+			handlesByPath.remove(handle.path);
+		}
+		handlesByZipFile.remove(handle.zipFile);
+		try {
+			handle.zipFile.close();
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	private void scheduleEviction() {
+		if (evictionScheduled) {
+			return;
+		}
+		if (evictionTimer == null) {
+			evictionTimer = new Timer("epublib-zipfile-eviction", true);
+		}
+		evictionScheduled = true;
+		evictionTimer.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				synchronized (ZipFileRegistry.this) {
+					evictionScheduled = false;
+					evictIdle();
+					if (! handlesByPath.isEmpty()) {
+						scheduleIdleEviction();
+					}
+				}
+			}
+		}, idleTimeout);
+	}
+
+	private void scheduleIdleEviction() {
+		for (Handle handle: handlesByPath.values()) {
+			if (handle.referenceCount <= 0) {
+				scheduleEviction();
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package net.sf.jazzlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CRC32Test {
+
+	@Test
+	public void testImplementations() throws IOException {
+		byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream("/holmes_scandal_bohemia.html"));
+		for (int off: new int[] {0, 1, 7, 13}) {
+			for (int len: new int[] {0, 1, 7, 8, 9, 63, 1000, data.length - off}) {
+				java.util.zip.CRC32 expected = new java.util.zip.CRC32();
+				expected.update(data, off, len);
+				for (boolean pureJava: new boolean[] {false, true}) {
+					CRC32 crc = new CRC32(pureJava);
+					crc.update(data, off, len);
+					Assert.assertEquals("pure java " + pureJava + " off " + off + " len " + len, expected.getValue(), crc.getValue());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testResetAndSingleBytes() {
+		for (boolean pureJava: new boolean[] {false, true}) {
+			CRC32 crc = new CRC32(pureJava);
+			crc.update(new byte[] {1, 2, 3});
+			crc.reset();
+			Assert.assertEquals(0, crc.getValue());
+			for (byte b: "123456789".getBytes()) {
+				crc.update(b);
+			}
+			Assert.assertEquals(0xcbf43926L, crc.getValue());
+		}
+	}
+
+	@Test
+	public void testVerifyCrc() throws IOException {
+		byte[] data = "Hello, world".getBytes();
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(zip);
+		ZipEntry entry = new ZipEntry("hello.txt");
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		out.write(data);
+		out.close();
+
+		// corrupt the first byte of the stored data, which follows the local header and name
+		byte[] corrupt = zip.toByteArray();
+		corrupt[30 + "hello.txt".length()] ^= 1;
+
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(corrupt));
+		Assert.assertTrue(in.isVerifyCrc());
+		in.getNextEntry();
+		try {
+			IOUtil.toByteArray(in);
+			Assert.fail("corrupt data should not pass the crc check");
+		} catch (ZipException expected) {
+		}
+
+		in = new ZipInputStream(new ByteArrayInputStream(corrupt));
+		in.setVerifyCrc(false);
+		in.getNextEntry();
+		Assert.assertEquals(data.length, IOUtil.toByteArray(in).length);
+		Assert.assertNull(in.getNextEntry());
+	}
+}
@@ -0,0 +1,95 @@
+package net.sf.jazzlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeflaterTest {
+
+	@Test
+	public void testBackends() throws IOException {
+		byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream("/holmes_scandal_bohemia.html"));
+		for (DeflaterBackend.Factory factory: Arrays.asList(DeflaterBackend.JDK, DeflaterBackend.JAZZLIB)) {
+			for (boolean nowrap: new boolean[] {false, true}) {
+				byte[] compressed = deflate(data, new Deflater(Deflater.BEST_COMPRESSION, nowrap, factory));
+				Assert.assertTrue(factory + " did not compress", compressed.length < data.length / 2);
+				byte[] inflated = IOUtil.toByteArray(new InflaterInputStream(new ByteArrayInputStream(compressed), new java.util.zip.Inflater(nowrap)));
+				Assert.assertTrue(factory + " nowrap " + nowrap, Arrays.equals(data, inflated));
+			}
+		}
+	}
+
+	@Test
+	public void testBackendFactory() {
+		DeflaterBackend.Factory backendFactory = Deflater.getBackendFactory();
+		try {
+			Deflater.setBackendFactory(DeflaterBackend.JAZZLIB);
+			Assert.assertEquals(DeflaterBackend.JAZZLIB, Deflater.getBackendFactory());
+		} finally {
+			Deflater.setBackendFactory(backendFactory);
+		}
+	}
+
+	@Test
+	public void testSetLevel() throws IOException {
+		byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream("/holmes_scandal_bohemia.html"));
+		for (DeflaterBackend.Factory factory: Arrays.asList(DeflaterBackend.JDK, DeflaterBackend.JAZZLIB)) {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true, factory);
+			deflater.setLevel(Deflater.NO_COMPRESSION);
+			byte[] compressed = deflate(data, deflater);
+			Assert.assertTrue(factory + " compressed", compressed.length >= data.length);
+			byte[] inflated = IOUtil.toByteArray(new InflaterInputStream(new ByteArrayInputStream(compressed), new java.util.zip.Inflater(true)));
+			Assert.assertTrue(factory.toString(), Arrays.equals(data, inflated));
+		}
+	}
+
+	@Test
+	public void testFlush() throws Exception {
+		byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream("/holmes_scandal_bohemia.html"));
+		int half = data.length / 2;
+		for (DeflaterBackend.Factory factory: Arrays.asList(DeflaterBackend.JDK, DeflaterBackend.JAZZLIB)) {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true, factory);
+			DeflaterOutputStream out = new DeflaterOutputStream(result, deflater, 512);
+			out.write(data, 0, half);
+			out.flush();
+
+			// everything written so far can be inflated from the flushed output
+			java.util.zip.Inflater inflater = new java.util.zip.Inflater(true);
+			inflater.setInput(result.toByteArray());
+			byte[] inflated = new byte[half];
+			int length = 0;
+			while (length < half) {
+				int n = inflater.inflate(inflated, length, half - length);
+				Assert.assertTrue(factory + " flushed too little", n > 0);
+				length += n;
+			}
+			Assert.assertTrue(factory.toString(), Arrays.equals(Arrays.copyOf(data, half), inflated));
+			inflater.end();
+
+			out.write(data, half, data.length - half);
+			out.finish();
+			deflater.end();
+			inflated = IOUtil.toByteArray(new InflaterInputStream(new ByteArrayInputStream(result.toByteArray()), new java.util.zip.Inflater(true)));
+			Assert.assertTrue(factory.toString(), Arrays.equals(data, inflated));
+		}
+	}
+
+	private static byte[] deflate(byte[] data, Deflater deflater) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DeflaterOutputStream out = new DeflaterOutputStream(result, deflater, 1024);
+		out.write(data, 0, data.length);
+		out.finish();
+		Assert.assertEquals(data.length, deflater.getTotalIn());
+		Assert.assertEquals(result.size(), deflater.getTotalOut());
+		deflater.end();
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,59 @@
+package net.sf.jazzlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InflaterTest {
+
+	@Test
+	public void testBackends() throws IOException {
+		byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream("/holmes_scandal_bohemia.html"));
+		for (boolean nowrap: new boolean[] {false, true}) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			DeflaterOutputStream out = new DeflaterOutputStream(compressed, new java.util.zip.Deflater(9, nowrap));
+			out.write(data);
+			out.close();
+			for (InflaterBackend.Factory factory: Arrays.asList(InflaterBackend.JDK, InflaterBackend.JAZZLIB)) {
+				Inflater inflater = new Inflater(nowrap, factory);
+				// one extra byte, as zlib may need it with nowrap
+				InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(Arrays.copyOf(compressed.toByteArray(), compressed.size() + 1)), inflater);
+				Assert.assertTrue(factory + " nowrap " + nowrap, Arrays.equals(data, IOUtil.toByteArray(in)));
+				Assert.assertEquals(data.length, inflater.getTotalOut());
+				Assert.assertEquals(compressed.size(), inflater.getTotalIn());
+				Assert.assertEquals(1, inflater.getRemaining());
+				inflater.end();
+			}
+		}
+	}
+
+	@Test
+	public void testZipInputStream() throws IOException {
+		InflaterBackend.Factory backendFactory = Inflater.getBackendFactory();
+		try {
+			for (InflaterBackend.Factory factory: Arrays.asList(InflaterBackend.JDK, InflaterBackend.JAZZLIB)) {
+				Inflater.setBackendFactory(factory);
+				ZipInputStream zipInputStream = new ZipInputStream(getClass().getResourceAsStream("/testbook1.epub"));
+				int count = 0;
+				for (ZipEntry zipEntry = zipInputStream.getNextEntry(); zipEntry != null; zipEntry = zipInputStream.getNextEntry()) {
+					byte[] data = IOUtil.toByteArray(zipInputStream);
+					if (zipEntry.getSize() >= 0) {
+						Assert.assertEquals(factory + " " + zipEntry.getName(), zipEntry.getSize(), data.length);
+					}
+					count++;
+				}
+				zipInputStream.close();
+				Assert.assertTrue(count > 10);
+			}
+		} finally {
+			Inflater.setBackendFactory(backendFactory);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package net.sf.jazzlib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.zip.CRC32;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZipFileTest {
+
+	private static final byte[] DATA = "Hello, zip".getBytes();
+
+	@Test
+	public void testCommentWithEndSignature() throws IOException {
+		// a complete, but wrong, End Of Central Directory record inside the comment
+		ByteArrayOutputStream comment = new ByteArrayOutputStream();
+		comment.write("before ".getBytes());
+		writeLeInt(comment, ZipConstants.ENDSIG);
+		comment.write(new byte[ZipConstants.ENDHDR - 4]);
+		comment.write(" after".getBytes());
+		assertReadable(createZip(10, false, false, comment.toByteArray()));
+	}
+
+	@Test
+	public void testBytesAfterComment() throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		zip.write(createZip(0, false, false, "comment".getBytes()));
+		zip.write("trailing bytes".getBytes());
+		assertReadable(zip.toByteArray());
+	}
+
+	@Test
+	public void testZip64EndOfCentralDirectory() throws IOException {
+		assertReadable(createZip(10, false, true, new byte[0]));
+		assertReadable(createZip(10, false, true, "comment".getBytes()));
+	}
+
+	@Test
+	public void testZip64ExtraField() throws IOException {
+		assertReadable(createZip(10, true, false, new byte[0]));
+		assertReadable(createZip(10, true, true, new byte[0]));
+	}
+
+	@Test
+	public void testInterruptedRead() throws IOException {
+		File file = File.createTempFile("zipfiletest", ".zip");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			out.write(createZip(0, false, false, new byte[0]));
+			out.close();
+			ZipFile zipFile = new ZipFile(file, ZipFile.AccessMode.FILE_CHANNEL);
+			try {
+				ZipEntry zipEntry = zipFile.getEntry("a.txt");
+				Thread.currentThread().interrupt();
+				try {
+					IOUtil.toByteArray(zipFile.getInputStream(zipEntry));
+					Assert.fail("an interrupted read should fail");
+				} catch (ClosedByInterruptException expected) {
+				} finally {
+					Thread.interrupted();
+				}
+				// the interrupt closed the channel, but not the zip file
+				Assert.assertArrayEquals(DATA, IOUtil.toByteArray(zipFile.getInputStream(zipEntry)));
+			} finally {
+				zipFile.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void assertReadable(byte[] zip) throws IOException {
+		File file = File.createTempFile("zipfiletest", ".zip");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			out.write(zip);
+			out.close();
+			for (ZipFile.AccessMode accessMode: ZipFile.AccessMode.values()) {
+				ZipFile zipFile = new ZipFile(file, accessMode);
+				try {
+					Assert.assertEquals(1, zipFile.size());
+					ZipEntry zipEntry = zipFile.getEntry("a.txt");
+					Assert.assertNotNull(accessMode.toString(), zipEntry);
+					Assert.assertEquals(DATA.length, zipEntry.getSize());
+					Assert.assertEquals(DATA.length, zipEntry.getCompressedSize());
+					Assert.assertArrayEquals(DATA, IOUtil.toByteArray(zipFile.getInputStream(zipEntry)));
+				} finally {
+					zipFile.close();
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Creates a zip file with a single stored entry a.txt, preceded by the given number of bytes of garbage.
+	 *
+	 * @param zip64Extra whether the sizes and offset of the entry are in a ZIP64 extra field of its central directory header
+	 * @param zip64End whether there is a ZIP64 End Of Central Directory record
+	 */
+	private static byte[] createZip(int prefixLength, boolean zip64Extra, boolean zip64End, byte[] comment) throws IOException {
+		byte[] name = "a.txt".getBytes();
+		CRC32 crc = new CRC32();
+		crc.update(DATA);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		result.write(new byte[prefixLength]);
+
+		writeLeInt(result, ZipConstants.LOCSIG);
+		writeLeShort(result, 10);
+		writeLeShort(result, 0);
+		writeLeShort(result, ZipEntry.STORED);
+		writeLeInt(result, 0);
+		writeLeInt(result, (int) crc.getValue());
+		writeLeInt(result, DATA.length);
+		writeLeInt(result, DATA.length);
+		writeLeShort(result, name.length);
+		writeLeShort(result, 0);
+		result.write(name);
+		result.write(DATA);
+
+		int centralOffset = result.size();
+		ByteArrayOutputStream extra = new ByteArrayOutputStream();
+		if (zip64Extra) {
+			// an unrelated field first
+			writeLeShort(extra, 0xcafe);
+			writeLeShort(extra, 2);
+			writeLeShort(extra, 0);
+			writeLeShort(extra, ZipConstants.ZIP64_EXTID);
+			writeLeShort(extra, 24);
+			writeLeLong(extra, DATA.length);
+			writeLeLong(extra, DATA.length);
+			writeLeLong(extra, prefixLength);
+		}
+		writeLeInt(result, ZipConstants.CENSIG);
+		writeLeShort(result, zip64Extra ? 45 : 10);
+		writeLeShort(result, zip64Extra ? 45 : 10);
+		writeLeShort(result, 0);
+		writeLeShort(result, ZipEntry.STORED);
+		writeLeInt(result, 0);
+		writeLeInt(result, (int) crc.getValue());
+		writeLeInt(result, zip64Extra ? -1 : DATA.length);
+		writeLeInt(result, zip64Extra ? -1 : DATA.length);
+		writeLeShort(result, name.length);
+		writeLeShort(result, extra.size());
+		writeLeShort(result, 0);
+		writeLeShort(result, 0);
+		writeLeShort(result, 0);
+		writeLeInt(result, 0);
+		writeLeInt(result, zip64Extra ? -1 : prefixLength);
+		result.write(name);
+		extra.writeTo(result);
+		int centralSize = result.size() - centralOffset;
+
+		if (zip64End) {
+			int zip64EndOffset = result.size();
+			writeLeInt(result, ZipConstants.ZIP64_ENDSIG);
+			writeLeLong(result, ZipConstants.ZIP64_ENDHDR - 12);
+			writeLeShort(result, 45);
+			writeLeShort(result, 45);
+			writeLeInt(result, 0);
+			writeLeInt(result, 0);
+			writeLeLong(result, 1);
+			writeLeLong(result, 1);
+			writeLeLong(result, centralSize);
+			writeLeLong(result, centralOffset);
+
+			writeLeInt(result, ZipConstants.ZIP64_LOCSIG);
+			writeLeInt(result, 0);
+			writeLeLong(result, zip64EndOffset);
+			writeLeInt(result, 1);
+		}
+		writeLeInt(result, ZipConstants.ENDSIG);
+		writeLeShort(result, 0);
+		writeLeShort(result, 0);
+		writeLeShort(result, zip64End ? 0xffff : 1);
+		writeLeShort(result, zip64End ? 0xffff : 1);
+		writeLeInt(result, zip64End ? -1 : centralSize);
+		writeLeInt(result, zip64End ? -1 : centralOffset);
+		writeLeShort(result, comment.length);
+		result.write(comment);
+		return result.toByteArray();
+	}
+
+	private static void writeLeShort(ByteArrayOutputStream out, int value) {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+	}
+
+	private static void writeLeInt(ByteArrayOutputStream out, int value) {
+		writeLeShort(out, value);
+		writeLeShort(out, value >> 16);
+	}
+
+	private static void writeLeLong(ByteArrayOutputStream out, long value) {
+		writeLeInt(out, (int) value);
+		writeLeInt(out, (int) (value >> 32));
+	}
+}
@@ -0,0 +1,235 @@
+package net.sf.jazzlib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZipOutputStreamTest {
+
+	private static final byte[] DATA = "Hello, zip".getBytes();
+
+	@Test
+	public void testUtf8Names() throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(zip);
+		out.putNextEntry(new ZipEntry("OEBPS/chapitre_\u00e9.html"));
+		out.write(DATA);
+		out.putNextEntry(new ZipEntry("OEBPS/ascii.html"));
+		out.write(DATA);
+		out.close();
+		byte[] bytes = zip.toByteArray();
+
+		// the language encoding flag of the first local header
+		Assert.assertEquals(ZipOutputStream.UTF8_FLAG, (bytes[6] & 0xff | (bytes[7] & 0xff) << 8) & ZipOutputStream.UTF8_FLAG);
+
+		File file = writeTempFile(bytes);
+		try {
+			java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(file);
+			try {
+				Assert.assertNotNull(zipFile.getEntry("OEBPS/chapitre_\u00e9.html"));
+				Assert.assertNotNull(zipFile.getEntry("OEBPS/ascii.html"));
+			} finally {
+				zipFile.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRawNames() throws IOException {
+		// an ISO-8859-1 name without the language encoding flag, which is not valid UTF-8
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		java.util.zip.ZipOutputStream jdkOut = new java.util.zip.ZipOutputStream(zip, Charset.forName("ISO-8859-1"));
+		jdkOut.putNextEntry(new java.util.zip.ZipEntry("caf\u00e9.txt"));
+		jdkOut.write(DATA);
+		jdkOut.close();
+		File file = writeTempFile(zip.toByteArray());
+		File copy = File.createTempFile("zipoutputstreamtest", ".zip");
+		try {
+			ZipFile zipFile = new ZipFile(file);
+			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(copy));
+			try {
+				ZipEntry entry = zipFile.getEntry("caf\u00e9.txt");
+				Assert.assertArrayEquals(DATA, IOUtil.toByteArray(zipFile.getInputStream(entry)));
+				out.putNextRawEntry(new ZipEntry(entry));
+				IOUtil.copy(zipFile.getRawInputStream(entry), out);
+			} finally {
+				out.close();
+				zipFile.close();
+			}
+
+			java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(copy, Charset.forName("ISO-8859-1"));
+			try {
+				java.util.zip.ZipEntry entry = jdkZipFile.getEntry("caf\u00e9.txt");
+				Assert.assertArrayEquals(DATA, IOUtil.toByteArray(jdkZipFile.getInputStream(entry)));
+			} finally {
+				jdkZipFile.close();
+			}
+		} finally {
+			file.delete();
+			copy.delete();
+		}
+	}
+
+	@Test
+	public void testTransferRawData() throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream zipOut = new ZipOutputStream(zip);
+		zipOut.putNextEntry(new ZipEntry("deflated.txt"));
+		zipOut.write(DATA);
+		ZipEntry storedEntry = new ZipEntry("stored.txt");
+		storedEntry.setMethod(ZipEntry.STORED);
+		storedEntry.setSize(DATA.length);
+		CRC32 crc = new CRC32();
+		crc.update(DATA);
+		storedEntry.setCrc(crc.getValue());
+		zipOut.putNextEntry(storedEntry);
+		zipOut.write(DATA);
+		zipOut.close();
+		File file = writeTempFile(zip.toByteArray());
+		File copy = File.createTempFile("zipoutputstreamtest", ".zip");
+		try {
+			for (ZipFile.AccessMode accessMode: ZipFile.AccessMode.values()) {
+				ZipFile zipFile = new ZipFile(file, accessMode);
+				FileOutputStream fileOut = new FileOutputStream(copy);
+				// the buffered first entry has to be flushed before the data is transferred behind it
+				ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(fileOut));
+				out.setChannel(fileOut.getChannel());
+				try {
+					out.putNextEntry(new ZipEntry("first.txt"));
+					out.write(DATA);
+					for (Enumeration<?> entries = zipFile.entries(); entries.hasMoreElements();) {
+						ZipEntry entry = (ZipEntry) entries.nextElement();
+						out.putNextRawEntry(new ZipEntry(entry));
+						out.transferRawData(zipFile, entry);
+						out.closeEntry();
+					}
+					out.putNextEntry(new ZipEntry("last.txt"));
+					out.write(DATA);
+				} finally {
+					out.close();
+					zipFile.close();
+				}
+
+				java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(copy);
+				try {
+					Assert.assertEquals(4, jdkZipFile.size());
+					for (String name: new String[] {"first.txt", "deflated.txt", "stored.txt", "last.txt"}) {
+						Assert.assertArrayEquals(accessMode + " " + name, DATA, IOUtil.toByteArray(jdkZipFile.getInputStream(jdkZipFile.getEntry(name))));
+					}
+				} finally {
+					jdkZipFile.close();
+				}
+			}
+		} finally {
+			file.delete();
+			copy.delete();
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void testTransferRawData_no_raw_entry() throws IOException {
+		ZipOutputStream out = new ZipOutputStream(new ByteArrayOutputStream());
+		out.putNextEntry(new ZipEntry("first.txt"));
+		out.transferRawData(null, null);
+	}
+
+	@Test
+	public void testZip64ManyEntries() throws IOException {
+		int count = 0x10000 + 10;
+		File file = File.createTempFile("zipoutputstreamtest", ".zip");
+		try {
+			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+			for (int i = 0; i < count; i++) {
+				ZipEntry entry = new ZipEntry("e" + i);
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(0);
+				entry.setCrc(0);
+				out.putNextEntry(entry);
+			}
+			out.close();
+
+			java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(file);
+			try {
+				Assert.assertEquals(count, jdkZipFile.size());
+			} finally {
+				jdkZipFile.close();
+			}
+			ZipFile zipFile = new ZipFile(file);
+			try {
+				Assert.assertEquals(count, zipFile.size());
+				Assert.assertNotNull(zipFile.getEntry("e" + (count - 1)));
+			} finally {
+				zipFile.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testZip64Offset() throws IOException {
+		// a sparse file, with the entry starting beyond 4GB
+		long start = 0x100000000L + 10;
+		File file = File.createTempFile("zipoutputstreamtest", ".zip");
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				channel.position(start);
+				ZipOutputStream out = new ZipOutputStream(Channels.newOutputStream(channel), start);
+				out.putNextEntry(new ZipEntry("a.txt"));
+				out.write(DATA);
+				out.finish();
+			} finally {
+				raf.close();
+			}
+
+			java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(file);
+			try {
+				Assert.assertArrayEquals(DATA, IOUtil.toByteArray(jdkZipFile.getInputStream(jdkZipFile.getEntry("a.txt"))));
+			} finally {
+				jdkZipFile.close();
+			}
+			for (ZipFile.AccessMode accessMode: new ZipFile.AccessMode[] {ZipFile.AccessMode.RANDOM_ACCESS_FILE, ZipFile.AccessMode.FILE_CHANNEL}) {
+				ZipFile zipFile = new ZipFile(file, accessMode);
+				try {
+					Enumeration<? extends ZipEntry> entries = zipFile.entries();
+					ZipEntry entry = entries.nextElement();
+					Assert.assertFalse(entries.hasMoreElements());
+					Assert.assertEquals(start, entry.offset);
+					Assert.assertArrayEquals(DATA, IOUtil.toByteArray(zipFile.getInputStream(entry)));
+				} finally {
+					zipFile.close();
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static File writeTempFile(byte[] data) throws IOException {
+		File file = File.createTempFile("zipoutputstreamtest", ".zip");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,118 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import nl.siegmann.epublib.epub.EpubReader;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteBufferResourceTest {
+
+	@Test
+	public void testReadAndClose() throws IOException {
+		byte[] data = "Hello, world".getBytes();
+		int openCount = ByteBufferResource.getOpenCount();
+		for (long size: new long[] {data.length, -1, 0, 100}) {
+			ByteBufferResource resource = new ByteBufferResource(new ByteArrayInputStream(data), size, "hello.txt");
+			Assert.assertEquals(openCount + 1, ByteBufferResource.getOpenCount());
+			Assert.assertEquals(data.length, resource.getSize());
+			Assert.assertTrue(resource.getByteBuffer().isReadOnly());
+			Assert.assertEquals(data.length, resource.getByteBuffer().remaining());
+			Assert.assertTrue(Arrays.equals(data, resource.getData()));
+			InputStream in = resource.getInputStream();
+			Assert.assertTrue(Arrays.equals(data, IOUtil.toByteArray(in)));
+
+			resource.close();
+			Assert.assertTrue(resource.isClosed());
+			Assert.assertEquals(0, resource.getSize());
+			Assert.assertEquals(openCount, ByteBufferResource.getOpenCount());
+			try {
+				in.read();
+				Assert.fail("a closed resource can not be read");
+			} catch (IOException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testCloseWithView() throws IOException {
+		byte[] data = "Hello, world".getBytes();
+		ByteBufferResource resource = new ByteBufferResource(new ByteArrayInputStream(data), data.length, "hello.txt");
+		ByteBuffer view = resource.getByteBuffer();
+		InputStream in = resource.getInputStream();
+		resource.close();
+		Assert.assertTrue(resource.isClosed());
+
+		// the view keeps the memory, the stream is closed with the resource
+		byte[] viewData = new byte[view.remaining()];
+		view.get(viewData);
+		Assert.assertTrue(Arrays.equals(data, viewData));
+		try {
+			in.read();
+			Assert.fail("a closed resource can not be read");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testSetData() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(3);
+		buffer.put(new byte[] {1, 2, 3}).flip();
+		ByteBufferResource resource = new ByteBufferResource(null, buffer, "data.bin", null);
+		InputStream in = resource.getInputStream();
+		Assert.assertEquals(1, in.read());
+		ByteBuffer view = resource.getByteBuffer();
+		resource.setData(new byte[] {4, 5});
+		Assert.assertTrue(resource.isDirty());
+		Assert.assertTrue(Arrays.equals(new byte[] {4, 5}, resource.getData()));
+
+		// the old buffer stays readable until it is garbage collected, also after the resource is closed
+		InputStream newIn = resource.getInputStream();
+		resource.close();
+		Assert.assertEquals(2, in.read());
+		Assert.assertEquals(3, view.get(2));
+		try {
+			newIn.read();
+			Assert.fail("a closed resource can not be read");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testDetectLeaks() throws InterruptedException {
+		ByteBufferResource.detectLeaks();
+		createLeak();
+		int leaks = 0;
+		for (int i = 0; i < 50 && leaks == 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+			leaks = ByteBufferResource.detectLeaks();
+		}
+		Assert.assertEquals(1, leaks);
+	}
+
+	private static void createLeak() {
+		new ByteBufferResource(null, ByteBuffer.allocateDirect(10), "leak.bin", null);
+	}
+
+	@Test
+	public void testEpubReader() throws IOException {
+		EpubReader epubReader = new EpubReader();
+		epubReader.setDirectBufferTypes(Arrays.asList(MediatypeService.JPG, MediatypeService.PNG, MediatypeService.GIF));
+		Book book = epubReader.readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+		Resource coverImage = book.getCoverImage();
+		Assert.assertTrue(coverImage instanceof ByteBufferResource);
+		Assert.assertTrue(coverImage.getSize() > 0);
+		Assert.assertFalse(book.getSpine().getResource(0) instanceof ByteBufferResource);
+		for (Resource resource: book.getResources().getAll()) {
+			resource.close();
+		}
+	}
+}
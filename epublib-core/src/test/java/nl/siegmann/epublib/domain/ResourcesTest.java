@@ -1,5 +1,7 @@
 package nl.siegmann.epublib.domain;
 
+import java.util.Arrays;
+
 import nl.siegmann.epublib.service.MediatypeService;
 
 import org.junit.Assert;
@@ -29,4 +31,90 @@ public class ResourcesTest {
 		Assert.assertEquals(3, resources.getResourcesByMediaTypes(new MediaType[] {MediatypeService.XHTML, MediatypeService.PNG}).size());
 		Assert.assertEquals(3, resources.getResourcesByMediaTypes(new MediaType[] {MediatypeService.CSS, MediatypeService.XHTML, MediatypeService.PNG}).size());
 	}
+
+	@Test
+	public void testGetById_setId() {
+		Resources resources = new Resources();
+		Resource resource = resources.add(new Resource("foo".getBytes(), "chapter1.html"));
+		String generatedId = resource.getId();
+		Assert.assertSame(resource, resources.getById(generatedId));
+		resource.setId("intro");
+		Assert.assertNull(resources.getById(generatedId));
+		Assert.assertSame(resource, resources.getById("intro"));
+		Assert.assertTrue(resources.containsId("intro"));
+		resources.remove("chapter1.html");
+		Assert.assertFalse(resources.containsId("intro"));
+		resource.setId("chapter1");
+		Assert.assertNull(resources.getById("chapter1"));
+	}
+
+	@Test
+	public void testGetById_duplicate_ids() {
+		Resources resources = new Resources();
+		Resource resource1 = new Resource("foo".getBytes(), "chapter1.html");
+		resource1.setId("chapter");
+		Resource resource2 = new Resource("bar".getBytes(), "chapter2.html");
+		resource2.setId("chapter");
+		resources.addAll(Arrays.asList(resource1, resource2));
+		Assert.assertSame(resource1, resources.getById("chapter"));
+		resources.remove("chapter1.html");
+		Assert.assertSame(resource2, resources.getById("chapter"));
+	}
+
+	@Test
+	public void testAdd_unique_ids() {
+		Resources resources = new Resources();
+		for (int i = 0; i < 1000; i++) {
+			resources.add(new Resource("foo".getBytes(), MediatypeService.XHTML));
+		}
+		Assert.assertEquals(1000, resources.size());
+		for (int i = 1; i <= 1000; i++) {
+			Assert.assertNotNull(resources.getById("item_" + i));
+		}
+	}
+
+	@Test
+	public void testGetResourcesByMediaType_setMediaType() {
+		Resources resources = new Resources();
+		Resource resource1 = resources.add(new Resource("foo".getBytes(), "chapter1.html"));
+		Resource resource2 = resources.add(new Resource("bar".getBytes(), "chapter2.html"));
+		Resource resource3 = resources.add(new Resource("baz".getBytes(), "toc.xml"));
+		Assert.assertEquals(Arrays.asList(resource1, resource2), resources.getResourcesByMediaType(MediatypeService.XHTML));
+		Assert.assertNull(resources.findFirstResourceByMediaType(MediatypeService.NCX));
+		resource3.setMediaType(MediatypeService.NCX);
+		Assert.assertSame(resource3, resources.findFirstResourceByMediaType(MediatypeService.NCX));
+		resource1.setMediaType(MediatypeService.CSS);
+		Assert.assertEquals(Arrays.asList(resource2), resources.getResourcesByMediaType(MediatypeService.XHTML));
+		Assert.assertSame(resource2, resources.findFirstResourceByMediaType(MediatypeService.XHTML));
+		resources.remove("chapter2.html");
+		Assert.assertNull(resources.findFirstResourceByMediaType(MediatypeService.XHTML));
+		Assert.assertEquals(2, resources.getResourcesByMediaTypes(new MediaType[] {MediatypeService.CSS, MediatypeService.NCX}).size());
+	}
+
+	@Test
+	public void testGetResourceMap_changes() {
+		Resources resources = new Resources();
+		Resource chapter1 = resources.add(new Resource("foo".getBytes(), "chapter1.html"));
+		Resource chapter2 = resources.add(new Resource("bar".getBytes(), "chapter2.html"));
+		Resource image = resources.add(new Resource("baz".getBytes(), "image.png"));
+
+		resources.getAll().remove(chapter1);
+		Assert.assertFalse(resources.containsId(chapter1.getId()));
+		resources.getAllHrefs().remove("image.png");
+		Assert.assertNull(resources.findFirstResourceByMediaType(MediatypeService.PNG));
+
+		Resource chapter3 = new Resource("qux".getBytes(), "chapter3.html");
+		chapter3.setId("chapter3");
+		Assert.assertSame(chapter2, resources.getResourceMap().put("chapter2.html", chapter3));
+		Assert.assertNull(resources.getById(chapter2.getId()));
+		Assert.assertSame(chapter3, resources.getById("chapter3"));
+		Assert.assertEquals(1, resources.size());
+
+		resources.getResourceMap().entrySet().iterator().next().setValue(image);
+		Assert.assertNull(resources.getById("chapter3"));
+		Assert.assertSame(image, resources.findFirstResourceByMediaType(MediatypeService.PNG));
+		resources.getResourceMap().clear();
+		Assert.assertTrue(resources.isEmpty());
+		Assert.assertFalse(resources.containsId(image.getId()));
+	}
 }
@@ -0,0 +1,137 @@
+package nl.siegmann.epublib.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import nl.siegmann.epublib.epub.Epub2Writer;
+import nl.siegmann.epublib.epub.EpubReader;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillingResourceDataStoreTest {
+
+	private SpillingResourceDataStore store;
+
+	@Before
+	public void setUp() {
+		store = new SpillingResourceDataStore(1000, 1500);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		store.close();
+	}
+
+	@Test
+	public void testThresholdAndBudget() throws IOException {
+		byte[] small = createData(800);
+		byte[] large = createData(5000);
+
+		ResourceDataStore.Data smallData = store.store(small);
+		Assert.assertEquals(800, store.getHeapUsed());
+		Assert.assertSame(small, smallData.getBytes());
+
+		ResourceDataStore.Data largeData = store.store(new ByteArrayInputStream(large));
+		Assert.assertEquals(800, store.getHeapUsed());
+		Assert.assertEquals(5000, store.getFileSize());
+		Assert.assertEquals(5000, largeData.getSize());
+		Assert.assertTrue(Arrays.equals(large, largeData.getBytes()));
+		Assert.assertTrue(Arrays.equals(large, IOUtil.toByteArray(largeData.getInputStream())));
+
+		// over budget, so spilled although below the threshold
+		ResourceDataStore.Data spilledData = store.store(new ByteArrayInputStream(small));
+		Assert.assertEquals(800, store.getHeapUsed());
+		Assert.assertEquals(5800, store.getFileSize());
+		Assert.assertTrue(Arrays.equals(small, spilledData.getBytes()));
+
+		smallData.release();
+		Assert.assertEquals(0, store.getHeapUsed());
+	}
+
+	@Test
+	public void testStoredResource() throws IOException {
+		byte[] data = createData(3000);
+		StoredResource resource = new StoredResource(store, null, data, "audio.mp3", MediatypeService.MP3);
+		Assert.assertEquals(3000, resource.getSize());
+		Assert.assertEquals(0, store.getHeapUsed());
+		Assert.assertFalse(resource.isDirty());
+
+		resource.setData(createData(10));
+		Assert.assertTrue(resource.isDirty());
+		Assert.assertEquals(10, resource.getSize());
+		Assert.assertEquals(10, store.getHeapUsed());
+		Assert.assertTrue(Arrays.equals(createData(10), resource.getData()));
+	}
+
+	@Test
+	public void testWriteBook() throws IOException {
+		byte[] data = createData(20000);
+		Book book = new Book();
+		book.getMetadata().addTitle("Spilled");
+		book.addSection("Chapter 1", new StoredResource(store, null, "<html><body>Hello</body></html>".getBytes(), "chapter1.html", MediatypeService.XHTML));
+		book.getResources().add(new StoredResource(store, null, new ByteArrayInputStream(data), "audio.mp3", MediatypeService.MP3));
+		Assert.assertEquals(20000, store.getFileSize());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Epub2Writer().write(book, out);
+		Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertTrue(Arrays.equals(data, readBook.getResources().getByHref("audio.mp3").getData()));
+	}
+
+	@Test
+	public void testWriteBook_larger_than_heap_budget() throws IOException {
+		byte[] data = createData(2 * 1024 * 1024);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final int[] writtenAtEnd = new int[1];
+		Book book = new Book();
+		book.getMetadata().addTitle("Spilled");
+		book.addSection("Chapter 1", new StoredResource(store, null, "<html><body>Hello</body></html>".getBytes(), "chapter1.html", MediatypeService.XHTML));
+		book.getResources().add(new StoredResource(store, null, new ByteArrayInputStream(data), "audio.mp3", MediatypeService.MP3) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public InputStream getInputStream() throws IOException {
+				return new FilterInputStream(super.getInputStream()) {
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int result = super.read(b, off, len);
+						if (result < 0) {
+							writtenAtEnd[0] = out.size();
+						}
+						return result;
+					}
+				};
+			}
+		});
+		Assert.assertTrue(store.getFileSize() > 1500);
+
+		for (int parallelism: new int[] {1, 4}) {
+			out.reset();
+			Epub2Writer epubWriter = new Epub2Writer();
+			epubWriter.setParallelism(parallelism);
+			epubWriter.write(book, out);
+			// the data went out while it was read, it was not compressed into memory first
+			Assert.assertTrue("parallelism " + parallelism, writtenAtEnd[0] > data.length / 2);
+			Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertTrue(Arrays.equals(data, readBook.getResources().getByHref("audio.mp3").getData()));
+		}
+	}
+
+	private static byte[] createData(int size) {
+		byte[] result = new byte[size];
+		new Random(size).nextBytes(result);
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.util.Random;
+
+import net.sf.jazzlib.ZipEntry;
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.CompressionPolicy.Compression;
+import nl.siegmann.epublib.service.MediatypeService;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressionPolicyTest {
+
+	private static final MediaType UNKNOWN = new MediaType("application/x-unknown", ".unknown");
+
+	@Test
+	public void testGetCompression_by_mediatype() throws IOException {
+		CompressionPolicy compressionPolicy = new CompressionPolicy();
+		compressionPolicy.setLevel(3);
+		Compression compression = compressionPolicy.getCompression(new Resource("<html/>".getBytes(), MediatypeService.XHTML));
+		Assert.assertEquals(ZipEntry.DEFLATED, compression.getMethod());
+		Assert.assertEquals(3, compression.getLevel());
+		Assert.assertEquals(ZipEntry.STORED, compressionPolicy.getCompression(new Resource(new byte[100], MediatypeService.PNG)).getMethod());
+	}
+
+	@Test
+	public void testGetCompression_min_size() throws IOException {
+		CompressionPolicy compressionPolicy = new CompressionPolicy();
+		compressionPolicy.setMinDeflateSize(64);
+		Assert.assertEquals(ZipEntry.STORED, compressionPolicy.getCompression(new Resource("<html/>".getBytes(), MediatypeService.XHTML)).getMethod());
+	}
+
+	@Test
+	public void testGetCompression_probe() throws IOException {
+		CompressionPolicy compressionPolicy = new CompressionPolicy();
+		byte[] randomData = new byte[20000];
+		new Random(42).nextBytes(randomData);
+		Assert.assertEquals(ZipEntry.STORED, compressionPolicy.getCompression(new Resource(randomData, UNKNOWN)).getMethod());
+		Assert.assertEquals(ZipEntry.DEFLATED, compressionPolicy.getCompression(new Resource(new byte[20000], UNKNOWN)).getMethod());
+		compressionPolicy.setSampleSize(0);
+		Assert.assertEquals(ZipEntry.DEFLATED, compressionPolicy.getCompression(new Resource(randomData, UNKNOWN)).getMethod());
+	}
+}
@@ -0,0 +1,229 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import net.sf.jazzlib.ZipFile;
+import net.sf.jazzlib.ZipOutputStream;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EpubPatcherTest {
+
+	private File testBookFile;
+
+	@Before
+	public void setUp() throws IOException {
+		testBookFile = File.createTempFile("testbook", ".epub");
+		OutputStream out = new FileOutputStream(testBookFile);
+		IOUtil.copy(EpubPatcherTest.class.getResourceAsStream("/testbook1.epub"), out);
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		testBookFile.delete();
+	}
+
+	@Test
+	public void testPatch_in_place() throws IOException {
+		long originalLength = testBookFile.length();
+		List<String> originalNames = getEntryNames(testBookFile);
+		byte[] chapter1 = readBook().getResources().getByHref("chapter1.html").getData();
+
+		Book book = readBook();
+		book.getMetadata().setTitles(Arrays.asList("Patched title"));
+		new EpubPatcher().patch(book, testBookFile);
+
+		// only the package document was appended, with a new central directory
+		Assert.assertTrue(testBookFile.length() < originalLength + 4096);
+		Assert.assertEquals(originalNames, getEntryNames(testBookFile));
+		java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(testBookFile);
+		try {
+			Assert.assertEquals(originalNames.size(), jdkZipFile.size());
+			Assert.assertEquals("mimetype", jdkZipFile.entries().nextElement().getName());
+		} finally {
+			jdkZipFile.close();
+		}
+		Book patchedBook = readBook();
+		Assert.assertEquals("Patched title", patchedBook.getTitle());
+		Assert.assertTrue(Arrays.equals(chapter1, patchedBook.getResources().getByHref("chapter1.html").getData()));
+	}
+
+	@Test
+	public void testPatch_changed_resource() throws IOException {
+		Book book = readBook();
+		book.getResources().getByHref("chapter1.html").setData("<html/>".getBytes());
+		new EpubPatcher().patch(book, testBookFile);
+
+		Book patchedBook = readBook();
+		Assert.assertEquals("<html/>", new String(patchedBook.getResources().getByHref("chapter1.html").getData()));
+		Assert.assertEquals(book.getResources().size(), patchedBook.getResources().size());
+	}
+
+	@Test
+	public void testPatch_copy() throws IOException {
+		Book book = readBook();
+		book.getMetadata().setTitles(Arrays.asList("Patched title"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new EpubPatcher().patch(book, testBookFile, out);
+		byte[] bookData = out.toByteArray();
+
+		// the JDK ZipInputStream reads the local headers in order and verifies the crc of every entry
+		List<String> names = new ArrayList<String>();
+		ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bookData));
+		for (ZipEntry zipEntry = zipInputStream.getNextEntry(); zipEntry != null; zipEntry = zipInputStream.getNextEntry()) {
+			names.add(zipEntry.getName());
+			IOUtil.toByteArray(zipInputStream);
+		}
+		zipInputStream.close();
+		Assert.assertEquals(getEntryNames(testBookFile), names);
+
+		Book patchedBook = new EpubReader().readEpub(new ByteArrayInputStream(bookData));
+		Assert.assertEquals("Patched title", patchedBook.getTitle());
+		Assert.assertEquals(book.getResources().size(), patchedBook.getResources().size());
+	}
+
+	@Test
+	public void testPatch_copy_to_file() throws IOException {
+		Book book = readBook();
+		book.getMetadata().setTitles(Arrays.asList("Patched title"));
+		File file = File.createTempFile("testbook", ".epub");
+		try {
+			// the unchanged entries are transferred by the channel of the FileOutputStream
+			OutputStream out = new FileOutputStream(file);
+			try {
+				new EpubPatcher().patch(book, testBookFile, out);
+			} finally {
+				out.close();
+			}
+			Assert.assertEquals(getEntryNames(testBookFile), getEntryNames(file));
+			java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(file);
+			try {
+				for (Enumeration<? extends ZipEntry> entries = jdkZipFile.entries(); entries.hasMoreElements();) {
+					// verifies the crc of the entry
+					IOUtil.toByteArray(jdkZipFile.getInputStream(entries.nextElement()));
+				}
+			} finally {
+				jdkZipFile.close();
+			}
+			InputStream in = new FileInputStream(file);
+			Book patchedBook;
+			try {
+				patchedBook = new EpubReader().readEpub(in);
+			} finally {
+				in.close();
+			}
+			Assert.assertEquals("Patched title", patchedBook.getTitle());
+			Assert.assertEquals(book.getResources().size(), patchedBook.getResources().size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testPatch_non_ascii_entry_name() throws IOException {
+		String name = "OEBPS/chapitre_\u00e9.html";
+		addEntry(name, "<html/>".getBytes());
+		List<String> originalNames = getEntryNames(testBookFile);
+		Assert.assertTrue(originalNames.contains(name));
+
+		Book book = readBook();
+		book.getMetadata().setTitles(Arrays.asList("Patched title"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new EpubPatcher().patch(book, testBookFile, out);
+		List<String> names = new ArrayList<String>();
+		ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+		for (ZipEntry zipEntry = zipInputStream.getNextEntry(); zipEntry != null; zipEntry = zipInputStream.getNextEntry()) {
+			names.add(zipEntry.getName());
+			IOUtil.toByteArray(zipInputStream);
+		}
+		zipInputStream.close();
+		Assert.assertEquals(originalNames, names);
+
+		// in place the package document moves to the end
+		new EpubPatcher().patch(book, testBookFile);
+		Assert.assertEquals(new HashSet<String>(originalNames), new HashSet<String>(getEntryNames(testBookFile)));
+		java.util.zip.ZipFile jdkZipFile = new java.util.zip.ZipFile(testBookFile);
+		try {
+			Assert.assertEquals("<html/>", new String(IOUtil.toByteArray(jdkZipFile.getInputStream(jdkZipFile.getEntry(name)))));
+		} finally {
+			jdkZipFile.close();
+		}
+	}
+
+	/**
+	 * Adds an entry that is not part of the book to the test book.
+	 */
+	private void addEntry(String name, byte[] data) throws IOException {
+		File file = File.createTempFile("testbook", ".epub");
+		try {
+			ZipFile zipFile = new ZipFile(testBookFile);
+			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+			try {
+				for (Enumeration<? extends net.sf.jazzlib.ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+					net.sf.jazzlib.ZipEntry zipEntry = entries.nextElement();
+					out.putNextRawEntry(new net.sf.jazzlib.ZipEntry(zipEntry));
+					IOUtil.copy(zipFile.getRawInputStream(zipEntry), out);
+				}
+				out.putNextEntry(new net.sf.jazzlib.ZipEntry(name));
+				out.write(data);
+			} finally {
+				out.close();
+				zipFile.close();
+			}
+			FileInputStream in = new FileInputStream(file);
+			OutputStream bookOut = new FileOutputStream(testBookFile);
+			IOUtil.copy(in, bookOut);
+			bookOut.close();
+			in.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	private Book readBook() throws IOException {
+		ZipFile zipFile = new ZipFile(testBookFile);
+		try {
+			Book book = new EpubReader().readEpub(zipFile);
+			for (String href: book.getResources().getAllHrefs()) {
+				book.getResources().getByHref(href).getData();
+			}
+			return book;
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	private static List<String> getEntryNames(File file) throws IOException {
+		List<String> result = new ArrayList<String>();
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			for (Enumeration<?> entries = zipFile.entries(); entries.hasMoreElements();) {
+				result.add(((net.sf.jazzlib.ZipEntry) entries.nextElement()).getName());
+			}
+		} finally {
+			zipFile.close();
+		}
+		return Collections.unmodifiableList(result);
+	}
+}
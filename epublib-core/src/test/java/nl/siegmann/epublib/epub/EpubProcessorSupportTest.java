@@ -0,0 +1,84 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xmlpull.v1.XmlPullParser;
+
+public class EpubProcessorSupportTest {
+
+	@Test
+	public void testDocumentBuilderPerThread() throws Exception {
+		final DocumentBuilder documentBuilder = EpubProcessorSupport.getDocumentBuilder();
+		long poolHits = EpubProcessorSupport.getPoolHits();
+		Assert.assertSame(documentBuilder, EpubProcessorSupport.getDocumentBuilder());
+		Assert.assertEquals(poolHits + 1, EpubProcessorSupport.getPoolHits());
+
+		for (int i = 0; i < 2; i++) {
+			Document document = EpubProcessorSupport.getDocumentBuilder().parse(new InputSource(new StringReader("<a xmlns=\"urn:test\"><b/></a>")));
+			Assert.assertEquals("urn:test", document.getDocumentElement().getNamespaceURI());
+			Assert.assertEquals(1, document.getElementsByTagNameNS("urn:test", "b").getLength());
+		}
+
+		final DocumentBuilder[] otherDocumentBuilder = new DocumentBuilder[1];
+		Thread thread = new Thread() {
+			public void run() {
+				otherDocumentBuilder[0] = EpubProcessorSupport.getDocumentBuilder();
+			}
+		};
+		thread.start();
+		thread.join();
+		Assert.assertNotNull(otherDocumentBuilder[0]);
+		Assert.assertNotSame(documentBuilder, otherDocumentBuilder[0]);
+	}
+
+	@Test
+	public void testEntityResolver() throws Exception {
+		final String[] doctypes = new String[] {
+				"<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">",
+				"<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">"
+		};
+		final Exception[] failure = new Exception[1];
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final String doctype = doctypes[i % doctypes.length];
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 10; j++) {
+							Document document = EpubProcessorSupport.getDocumentBuilder().parse(new InputSource(new StringReader(
+									doctype + "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Caf&eacute;&nbsp;&euro;</title></head><body/></html>")));
+							Assert.assertEquals("Caf\u00e9\u00a0\u20ac", document.getElementsByTagName("title").item(0).getTextContent());
+						}
+					} catch (Exception e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		Assert.assertSame(EpubProcessorSupport.getEntityResolver(), EpubProcessorSupport.getEntityResolver());
+	}
+
+	@Test
+	public void testXmlPullParser() throws Exception {
+		XmlPullParser parser = EpubProcessorSupport.getXmlPullParser();
+		Assert.assertSame(parser, EpubProcessorSupport.getXmlPullParser());
+		for (int i = 0; i < 2; i++) {
+			parser.setInput(new StringReader("<a xmlns=\"urn:test\"/>"));
+			Assert.assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+			Assert.assertEquals("urn:test", parser.getNamespace());
+		}
+	}
+}
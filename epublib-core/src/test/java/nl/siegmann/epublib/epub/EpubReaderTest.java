@@ -6,11 +6,16 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
+import net.sf.jazzlib.ZipFile;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -75,4 +80,31 @@ public class EpubReaderTest {
 		Assert.assertEquals(MediatypeService.NCX, readBook.getNcxResource()
 				.getMediaType());
 	}
+
+	@Test
+	public void testReadMetadataOnly() throws IOException {
+		File epubFile = File.createTempFile("testbook", ".epub");
+		OutputStream out = new FileOutputStream(epubFile);
+		IOUtil.copy(this.getClass().getResourceAsStream("/testbook1.epub"), out);
+		out.close();
+		try {
+			Book readBook = new EpubReader().readMetadataOnly(epubFile, true);
+			Assert.assertEquals("Epublib test book 1", readBook.getMetadata().getFirstTitle());
+			Assert.assertEquals("OEBPS/content.opf", readBook.getOpfResource().getHref());
+			Assert.assertNotNull(readBook.getCoverImage());
+			Assert.assertEquals("cover.png", readBook.getCoverImage().getHref());
+			Assert.assertEquals(274899, readBook.getCoverImage().getSize());
+			Assert.assertEquals(1, readBook.getResources().size());
+			Assert.assertEquals(0, readBook.getSpine().size());
+
+			ZipFile zipFile = new ZipFile(epubFile);
+			readBook = new EpubReader().readMetadataOnly(zipFile);
+			zipFile.close();
+			Assert.assertEquals("Epublib test book 1", readBook.getMetadata().getFirstTitle());
+			Assert.assertNull(readBook.getCoverImage());
+			Assert.assertEquals(0, readBook.getResources().size());
+		} finally {
+			epubFile.delete();
+		}
+	}
 }
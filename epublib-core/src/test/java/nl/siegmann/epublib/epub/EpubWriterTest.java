@@ -7,21 +7,30 @@ import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import net.sf.jazzlib.ZipFile;
 import nl.siegmann.epublib.domain.CreatorContributor;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.GuideReference;
 import nl.siegmann.epublib.domain.Identifier;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.CollectionUtil;
+import nl.siegmann.epublib.util.IOUtil;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.xmlpull.v1.XmlSerializer;
 
 public class EpubWriterTest {
 
@@ -55,6 +64,194 @@ public class EpubWriterTest {
 			
 	}
 	
+	@Test
+	public void testBook1_parallel() throws IOException {
+		// create test book
+		Book book = createTestBook();
+		
+		// write book to byte[] using multiple threads
+		Epub2Writer epubWriter = new Epub2Writer();
+		epubWriter.setParallelism(4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		epubWriter.write(book, out);
+		byte[] bookData = out.toByteArray();
+		
+		// check the zip structure with the JDK zip implementation, which verifies the crc of every entry
+		ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bookData));
+		ZipEntry zipEntry = zipInputStream.getNextEntry();
+		Assert.assertEquals("mimetype", zipEntry.getName());
+		Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod());
+		int entryCount = 0;
+		for (; zipEntry != null; zipEntry = zipInputStream.getNextEntry()) {
+			if (zipEntry.getName().endsWith(".png")) {
+				Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod());
+			} else if (zipEntry.getName().endsWith(".html")) {
+				Assert.assertEquals(ZipEntry.DEFLATED, zipEntry.getMethod());
+			}
+			IOUtil.toByteArray(zipInputStream);
+			entryCount++;
+		}
+		// the mimetype, container, table of contents and package document are not resources of the book
+		Assert.assertEquals(book.getResources().size() + 4, entryCount);
+		
+		// read book from byte[]
+		Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(bookData));
+		Assert.assertEquals(book.getMetadata().getTitles(), readBook.getMetadata().getTitles());
+		Assert.assertEquals(5, readBook.getSpine().size());
+		Assert.assertEquals(4, readBook.getTableOfContents().size());
+		Assert.assertArrayEquals(book.getCoverImage().getData(), readBook.getCoverImage().getData());
+	}
+	
+	@Test
+	public void testBook1_copy_unchanged_entries() throws IOException {
+		File sourceFile = File.createTempFile("testbook", ".epub");
+		File resultFile = File.createTempFile("testbook", ".epub");
+		try {
+			OutputStream out = new FileOutputStream(sourceFile);
+			IOUtil.copy(this.getClass().getResourceAsStream("/testbook1.epub"), out);
+			out.close();
+			ZipFile sourceZipFile = new ZipFile(sourceFile);
+			Book book = new EpubReader().readEpub(sourceZipFile);
+			book.getMetadata().addTitle("Second title");
+			Resource chapter2 = book.getResources().getByHref("chapter2.html");
+			chapter2.setData("<html><body>changed</body></html>".getBytes());
+			Assert.assertTrue(chapter2.isDirty());
+			Assert.assertFalse(book.getResources().getByHref("chapter1.html").isDirty());
+
+			// store everything that is compressed again, to tell those entries apart from the copied ones
+			Epub2Writer epubWriter = new Epub2Writer();
+			epubWriter.getCompressionPolicy().setMinDeflateSize(Long.MAX_VALUE);
+			out = new FileOutputStream(resultFile);
+			epubWriter.write(book, out);
+			out.close();
+			ZipFile resultZipFile = new ZipFile(resultFile);
+			Assert.assertEquals(net.sf.jazzlib.ZipEntry.STORED, resultZipFile.getEntry("OEBPS/chapter2.html").getMethod());
+
+			// unchanged entries are copied as they were compressed
+			net.sf.jazzlib.ZipEntry sourceEntry = sourceZipFile.getEntry("OEBPS/chapter1.html");
+			net.sf.jazzlib.ZipEntry resultEntry = resultZipFile.getEntry("OEBPS/chapter1.html");
+			Assert.assertEquals(net.sf.jazzlib.ZipEntry.DEFLATED, resultEntry.getMethod());
+			Assert.assertEquals(sourceEntry.getCrc(), resultEntry.getCrc());
+			Assert.assertArrayEquals(IOUtil.toByteArray(sourceZipFile.getRawInputStream(sourceEntry)),
+					IOUtil.toByteArray(resultZipFile.getRawInputStream(resultEntry)));
+
+			Book readBook = new EpubReader().readEpub(resultZipFile);
+			Assert.assertEquals("Second title", readBook.getMetadata().getTitles().get(book.getMetadata().getTitles().size() - 1));
+			Assert.assertEquals("<html><body>changed</body></html>", new String(readBook.getResources().getByHref("chapter2.html").getData()));
+			Assert.assertArrayEquals(book.getCoverImage().getData(), readBook.getCoverImage().getData());
+			sourceZipFile.close();
+			resultZipFile.close();
+		} finally {
+			sourceFile.delete();
+			resultFile.delete();
+		}
+	}
+
+	@Test
+	public void testTOCNotAddedToBook() throws IOException {
+		for (AbstractEpubWriter epubWriter: new AbstractEpubWriter[] {new Epub2Writer(), new Epub3Writer()}) {
+			Book book = createTestBook();
+			int resourceCount = book.getResources().size();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			epubWriter.write(book, out);
+			Assert.assertEquals(resourceCount, book.getResources().size());
+			Assert.assertNull(book.getSpine().getTocResource());
+
+			Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertNotNull(readBook.getSpine().getTocResource());
+			Assert.assertEquals(resourceCount + 1, readBook.getResources().size());
+			Assert.assertEquals(5, readBook.getSpine().size());
+		}
+		
+		// a book that already has a table of contents gets it replaced
+		Book book = new EpubReader().readEpub(this.getClass().getResourceAsStream("/testbook1.epub"));
+		Resource tocResource = book.getSpine().getTocResource();
+		book.addSection("Added", new Resource("<html><body/></html>".getBytes(), "added.html"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Epub2Writer().write(book, out);
+		Assert.assertSame(tocResource, book.getSpine().getTocResource());
+		Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals(book.getTableOfContents().size(), readBook.getTableOfContents().size());
+		Assert.assertEquals("Added", readBook.getTableOfContents().getTocReferences().get(readBook.getTableOfContents().getTocReferences().size() - 1).getTitle());
+	}
+
+	@Test
+	public void testResourceAtTOCHref() throws IOException {
+		for (AbstractEpubWriter epubWriter: new AbstractEpubWriter[] {new Epub2Writer(), new Epub3Writer()}) {
+			Book book = createTestBook();
+			Resource staleToc = new Resource("stale", "<html><body/></html>".getBytes(), epubWriter.getTOCHref(), MediatypeService.XHTML);
+			book.addResource(staleToc);
+			book.getSpine().addResource(staleToc);
+			int resourceCount = book.getResources().size();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			epubWriter.write(book, out);
+			Assert.assertEquals(resourceCount, book.getResources().size());
+
+			int tocEntries = 0;
+			ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+			for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+				if (entry.getName().equals("OEBPS/" + epubWriter.getTOCHref())) {
+					tocEntries++;
+				}
+			}
+			zipInputStream.close();
+			Assert.assertEquals(1, tocEntries);
+
+			Book readBook = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+			String packageDocument = new String(readBook.getOpfResource().getData(), "UTF-8");
+			Assert.assertFalse(packageDocument, packageDocument.contains("\"stale\""));
+			Assert.assertEquals(5, readBook.getSpine().size());
+		}
+	}
+
+	@Test
+	public void testNoSyncFlushMarkers() throws IOException {
+		for (AbstractEpubWriter epubWriter: new AbstractEpubWriter[] {new Epub2Writer(), new Epub3Writer()}) {
+			File file = File.createTempFile("epubwritertest", ".epub");
+			try {
+				OutputStream out = new FileOutputStream(file);
+				epubWriter.write(createTestBook(), out);
+				out.close();
+				ZipFile zipFile = new ZipFile(file);
+				try {
+					for (Enumeration<? extends net.sf.jazzlib.ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+						net.sf.jazzlib.ZipEntry entry = entries.nextElement();
+						if (entry.getMethod() != net.sf.jazzlib.ZipEntry.DEFLATED) {
+							continue;
+						}
+						// the empty stored block that a sync flush adds to the deflated data
+						byte[] data = IOUtil.toByteArray(zipFile.getRawInputStream(entry));
+						for (int i = 0; i + 4 <= data.length; i++) {
+							Assert.assertFalse(entry.getName(), data[i] == 0 && data[i + 1] == 0 && data[i + 2] == (byte) 0xff && data[i + 3] == (byte) 0xff);
+						}
+					}
+				} finally {
+					zipFile.close();
+				}
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testTOCWriteFailure() throws IOException {
+		Epub2Writer epubWriter = new Epub2Writer() {
+
+			@Override
+			protected void writeTOC(XmlSerializer xmlSerializer, Book book) throws IOException {
+				xmlSerializer.startDocument("UTF-8", false);
+				throw new IOException("broken table of contents");
+			}
+		};
+		try {
+			epubWriter.write(createTestBook(), new ByteArrayOutputStream());
+			fail("a failure to write the table of contents should not leave a half-written entry behind");
+		} catch (IOException expected) {
+			assertEquals("broken table of contents", expected.getMessage());
+		}
+	}
+
 	/**
 	 * Test for a very old bug where epublib would throw a NullPointerException when writing a book with a cover that has no id.
 	 * @throws IOException 
@@ -2,12 +2,19 @@ package nl.siegmann.epublib.epub;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
 
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.domain.TableOfContents;
 import nl.siegmann.epublib.service.MediatypeService;
 import nl.siegmann.epublib.util.IOUtil;
 
@@ -67,4 +74,56 @@ public class NCXDocumentTest {
         NCXDocument.read(book, new EpubReader());
         assertEquals("xhtml/chapter1.html", book.getTableOfContents().getTocReferences().get(0).getCompleteHref());
     }
+
+    @Test
+    public void testReadLazily() throws Exception {
+        Book eagerBook = createBook();
+        NCXDocument.read(eagerBook, new EpubReader());
+        Book lazyBook = createBook();
+        NCXDocument.readLazily(lazyBook);
+
+        assertEquals(describe(eagerBook.getTableOfContents().getTocReferences()), describe(lazyBook.getTableOfContents().getTocReferences()));
+        assertEquals(eagerBook.getTableOfContents().size(), lazyBook.getTableOfContents().size());
+        assertEquals(eagerBook.getTableOfContents().calculateDepth(), lazyBook.getTableOfContents().calculateDepth());
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        new ObjectOutputStream(serialized).writeObject(lazyBook.getTableOfContents());
+        TableOfContents deserialized = (TableOfContents) new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray())).readObject();
+        assertEquals(TableOfContents.class, deserialized.getClass());
+        assertEquals(eagerBook.getTableOfContents().size(), deserialized.size());
+    }
+
+    @Test
+    public void testTocLoading() throws IOException {
+        EpubReader epubReader = new EpubReader();
+        epubReader.setTocLoading(EpubReader.TocLoading.SKIP);
+        Book book = epubReader.readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+        assertEquals(0, book.getTableOfContents().size());
+        assertEquals(NCXDocument.NCX_ITEM_ID, book.getNcxResource().getId());
+
+        epubReader.setTocLoading(EpubReader.TocLoading.LAZY);
+        Book lazyBook = epubReader.readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+        Book eagerBook = new EpubReader().readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+        assertEquals(describe(eagerBook.getTableOfContents().getTocReferences()), describe(lazyBook.getTableOfContents().getTocReferences()));
+    }
+
+    private Book createBook() {
+        Book book = new Book();
+        Resource ncxResource = new Resource(ncxData, "xhtml/toc.ncx");
+        addResource(book, "xhtml/chapter1.html");
+        addResource(book, "xhtml/chapter2.html");
+        addResource(book, "xhtml/chapter2_1.html");
+        addResource(book, "xhtml/chapter3.html");
+        book.getSpine().setTocResource(ncxResource);
+        return book;
+    }
+
+    private static String describe(List<TOCReference> tocReferences) {
+        StringBuilder result = new StringBuilder();
+        for (TOCReference tocReference: tocReferences) {
+            result.append(tocReference.getTitle()).append(' ').append(tocReference.getCompleteHref())
+                    .append(" [").append(describe(tocReference.getChildren())).append("] ");
+        }
+        return result.toString();
+    }
 }
@@ -0,0 +1,145 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.CreatorContributor;
+import nl.siegmann.epublib.domain.Date;
+import nl.siegmann.epublib.domain.GuideReference;
+import nl.siegmann.epublib.domain.Identifier;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.domain.SpineReference;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackageDocumentPullReaderTest {
+
+	private static final String PACKAGE_DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"3.0\" unique-identifier=\"BookId\">"
+			+ "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">"
+			+ "<dc:title> Pull &amp; parse </dc:title><dc:title>Subtitle</dc:title>"
+			+ "<dc:identifier id=\"BookId\" opf:scheme=\"URI\">urn:test</dc:identifier><dc:identifier/>"
+			+ "<dc:creator opf:role=\"aut\">Joe Tester</dc:creator><dc:contributor opf:role=\"edt\">Editor</dc:contributor>"
+			+ "<dc:date opf:event=\"publication\">2014-01-01</dc:date><dc:language>nl</dc:language><dc:language>en</dc:language>"
+			+ "<dc:subject>Testing</dc:subject><dc:rights>None</dc:rights><dc:publisher>Me</dc:publisher>"
+			+ "<meta name=\"cover\" content=\"cover-image\"/><meta property=\"rendition:layout\"> pre-<b>paginated</b></meta>"
+			+ "</metadata>"
+			+ "<manifest>"
+			+ "<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>"
+			+ "<item id=\"cover-image\" href=\"images/cover.png\" media-type=\"image/png\"/>"
+			+ "<item id=\"1chapter\" href=\"chapter%201.html\" media-type=\"application/xhtml+xml\"/>"
+			+ "<item id=\"chapter2\" href=\"chapter2.html\" media-type=\"application/xhtml+xml\"/>"
+			+ "<item id=\"missing\" href=\"missing.html\" media-type=\"application/xhtml+xml\"/>"
+			+ "</manifest>"
+			+ "<spine toc=\"ncx\"><itemref idref=\"1chapter\"/><itemref idref=\"chapter2\" linear=\"no\"/><itemref idref=\"missing\"/></spine>"
+			+ "<guide><reference type=\"toc\" title=\"Contents\" href=\"chapter2.html#toc\"/><reference type=\"cover\" href=\"chapter%201.html\"/></guide>"
+			+ "</package>";
+
+	@Test
+	public void testSameAsDOM() throws Exception {
+		Assert.assertEquals(describe(readWithDOM(PACKAGE_DOCUMENT)), describe(readWithPullParser(PACKAGE_DOCUMENT)));
+		for (String packageDocument: new String[] {"/opf/test1.opf", "/opf/test2.opf", "/opf/test_language.opf"}) {
+			byte[] data = IOUtil.toByteArray(getClass().getResourceAsStream(packageDocument));
+			String packageDocumentString = new String(data, "UTF-8");
+			Assert.assertEquals(packageDocument, describe(readWithDOM(packageDocumentString)), describe(readWithPullParser(packageDocumentString)));
+		}
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		Book book = readWithPullParser(PACKAGE_DOCUMENT);
+		Assert.assertEquals("Pull & parse", book.getTitle());
+		Assert.assertEquals("nl", book.getMetadata().getLanguage());
+		Assert.assertEquals(" pre-paginated", book.getMetadata().getOtherProperties().values().iterator().next());
+		Assert.assertEquals("chapter 1.html", book.getSpine().getResource(0).getHref());
+		Assert.assertFalse(book.getSpine().getSpineReferences().get(1).isLinear());
+		Assert.assertEquals(2, book.getSpine().size());
+		Assert.assertEquals("images/cover.png", book.getCoverImage().getHref());
+		Assert.assertEquals("ncx", book.getSpine().getTocResource().getId());
+		Assert.assertEquals("toc", book.getGuide().getReferences().get(0).getFragmentId());
+	}
+
+	@Test
+	public void testEpubReader() throws IOException {
+		EpubReader epubReader = new EpubReader();
+		epubReader.setPullParsing(true);
+		Book pullParsed = epubReader.readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+		Book domParsed = new EpubReader().readEpub(getClass().getResourceAsStream("/testbook1.epub"));
+		Assert.assertEquals(describe(domParsed), describe(pullParsed));
+		Assert.assertEquals(domParsed.getTableOfContents().size(), pullParsed.getTableOfContents().size());
+	}
+
+	private static Book readWithDOM(String packageDocument) throws Exception {
+		Book result = new Book();
+		PackageDocumentReader.read(new Resource(packageDocument.getBytes("UTF-8"), "OEBPS/content.opf"), new EpubReader(), result, createResources());
+		return result;
+	}
+
+	private static Book readWithPullParser(String packageDocument) throws Exception {
+		Book result = new Book();
+		PackageDocumentPullReader.read(new Resource(packageDocument.getBytes("UTF-8"), "OEBPS/content.opf"), new EpubReader(), result, createResources());
+		return result;
+	}
+
+	private static Resources createResources() {
+		Resources result = new Resources();
+		for (String href: new String[] {"toc.ncx", "images/cover.png", "chapter 1.html", "chapter2.html", "cover.html", "chapter1.html"}) {
+			result.add(new Resource(new byte[0], "OEBPS/" + href));
+		}
+		return result;
+	}
+
+	/**
+	 * Everything the package document readers put in the book, as a list of strings that can be compared.
+	 */
+	private static List<String> describe(Book book) {
+		List<String> result = new ArrayList<String>();
+		Metadata metadata = book.getMetadata();
+		result.add("titles " + metadata.getTitles());
+		result.add("publishers " + metadata.getPublishers());
+		result.add("descriptions " + metadata.getDescriptions());
+		result.add("rights " + metadata.getRights());
+		result.add("types " + metadata.getTypes());
+		result.add("subjects " + metadata.getSubjects());
+		result.add("language " + metadata.getLanguage());
+		for (Identifier identifier: metadata.getIdentifiers()) {
+			result.add("identifier " + identifier.getScheme() + " " + identifier.getValue() + " " + identifier.isBookId());
+		}
+		for (CreatorContributor creator: metadata.getCreators()) {
+			result.add("creator " + creator + " " + creator.getRelators());
+		}
+		for (CreatorContributor contributor: metadata.getContributors()) {
+			result.add("contributor " + contributor + " " + contributor.getRelators());
+		}
+		for (Date date: metadata.getDates()) {
+			result.add("date " + date.getValue() + " " + date.getEvent());
+		}
+		result.add("otherProperties " + metadata.getOtherProperties());
+		for (String metaName: new String[] {"cover", "generator", ""}) {
+			result.add("meta " + metaName + " " + metadata.getMetaAttribute(metaName));
+		}
+		for (Resource resource: book.getResources().getAll()) {
+			result.add("resource " + resource.getId() + " " + resource.getHref() + " " + resource.getMediaType());
+		}
+		for (SpineReference spineReference: book.getSpine().getSpineReferences()) {
+			result.add("spine " + spineReference.getResourceId() + " " + spineReference.isLinear());
+		}
+		result.add("toc " + describe(book.getSpine().getTocResource()));
+		for (GuideReference guideReference: book.getGuide().getReferences()) {
+			result.add("guide " + guideReference.getType() + " " + guideReference.getTitle() + " " + guideReference.getCompleteHref());
+		}
+		result.add("coverPage " + describe(book.getCoverPage()));
+		result.add("coverImage " + describe(book.getCoverImage()));
+		return result;
+	}
+
+	private static String describe(Resource resource) {
+		return resource == null ? null : resource.getId() + " " + resource.getHref();
+	}
+}
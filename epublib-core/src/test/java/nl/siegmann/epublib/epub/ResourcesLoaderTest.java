@@ -14,6 +14,7 @@ import java.util.List;
 
 import net.sf.jazzlib.ZipFile;
 import net.sf.jazzlib.ZipInputStream;
+import nl.siegmann.epublib.domain.ByteBufferResource;
 import nl.siegmann.epublib.domain.LazyResource;
 import nl.siegmann.epublib.domain.Resource;
 import nl.siegmann.epublib.domain.Resources;
@@ -99,6 +100,79 @@ public class ResourcesLoaderTest {
 		verifyResources(resources);
 	}
 
+	/**
+	 * Loads the Resources from a ZipFile that is read through a FileChannel
+	 * 
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	@Test
+	public void testLoadResources_ZipFile_file_channel() throws FileNotFoundException, IOException {
+		// given
+		ZipFile zipFile = new ZipFile(testBookFilename, ZipFile.AccessMode.FILE_CHANNEL);
+		
+		// when
+		Resources resources = ResourcesLoader.loadResources(zipFile, encoding);
+		
+		// then
+		verifyResources(resources);
+		zipFile.close();
+	}
+
+	/**
+	 * Loads the Resources from a memory mapped ZipFile
+	 * 
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	@Test
+	public void testLoadResources_ZipFile_memory_mapped() throws FileNotFoundException, IOException {
+		// given
+		ZipFile zipFile = new ZipFile(new File(testBookFilename), ZipFile.AccessMode.MEMORY_MAPPED);
+		
+		// when
+		Resources resources = ResourcesLoader.loadResources(zipFile, encoding);
+		
+		// then
+		verifyResources(resources);
+		zipFile.close();
+	}
+
+	/**
+	 * Loads the Resources from a ZipFile on multiple threads
+	 * 
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	@Test
+	public void testLoadResources_ZipFile_parallel() throws FileNotFoundException, IOException {
+		// given
+		ZipFile zipFile = new ZipFile(testBookFilename, ZipFile.AccessMode.FILE_CHANNEL);
+		
+		// when
+		Resources resources = ResourcesLoader.loadResources(zipFile, encoding, Arrays.asList(MediatypeService.CSS), 4);
+		
+		// then
+		verifyResources(resources);
+		Assert.assertEquals(LazyResource.class, resources.getById("book1").getClass());
+		Assert.assertEquals(Resource.class, resources.getById("chapter1").getClass());
+		Resources sequentialResources = ResourcesLoader.loadResources(zipFile, encoding, Arrays.asList(MediatypeService.CSS));
+		Assert.assertEquals(sequentialResources.getAllHrefs(), resources.getAllHrefs());
+		for (Resource resource: sequentialResources.getAll()) {
+			Assert.assertEquals(resource.getId(), resources.getByHref(resource.getHref()).getId());
+		}
+
+		Resources directResources = ResourcesLoader.loadResources(zipFile, encoding, Arrays.asList(MediatypeService.CSS),
+				Arrays.asList(MediatypeService.XHTML), 4);
+		Assert.assertEquals(LazyResource.class, directResources.getById("book1").getClass());
+		Assert.assertEquals(ByteBufferResource.class, directResources.getById("chapter1").getClass());
+		Assert.assertTrue(Arrays.equals(sequentialResources.getById("chapter1").getData(), directResources.getById("chapter1").getData()));
+		for (Resource resource: directResources.getAll()) {
+			resource.close();
+		}
+		zipFile.close();
+	}
+
 	/**
 	 * Loads all Resources lazily from a ZipFile
 	 * 
@@ -0,0 +1,118 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import nl.siegmann.epublib.domain.MediaType;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingEpubReaderTest {
+
+	private static class RecordingHandler implements StreamingEpubReader.Handler {
+		final List<String> events = new ArrayList<String>();
+		final Map<String, MediaType> mediaTypes = new HashMap<String, MediaType>();
+		final Map<String, byte[]> data = new HashMap<String, byte[]>();
+		Metadata metadata;
+
+		@Override
+		public void onContainer(String packageResourceHref) {
+			events.add("container:" + packageResourceHref);
+		}
+
+		@Override
+		public void onPackageDocument(Resource packageResource, Metadata metadata) {
+			events.add("package:" + packageResource.getHref());
+			this.metadata = metadata;
+		}
+
+		@Override
+		public void onResource(String href, MediaType mediaType, InputStream in) throws IOException {
+			events.add(href);
+			mediaTypes.put(href, mediaType);
+			data.put(href, IOUtil.toByteArray(in));
+			in.close();
+		}
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		// given
+		RecordingHandler handler = new RecordingHandler();
+
+		// when
+		new StreamingEpubReader().read(getClass().getResourceAsStream("/testbook1.epub"), handler);
+
+		// then
+		Assert.assertEquals(11, handler.events.size());
+		Assert.assertEquals("container:OEBPS/content.opf", handler.events.get(0));
+		Assert.assertEquals("package:OEBPS/content.opf", handler.events.get(10));
+		Assert.assertEquals("Epublib test book 1", handler.metadata.getFirstTitle());
+		Assert.assertEquals(MediatypeService.CSS, handler.mediaTypes.get("OEBPS/book1.css"));
+		Assert.assertEquals(MediatypeService.NCX, handler.mediaTypes.get("OEBPS/toc.ncx"));
+		byte[] expectedData = IOUtil.toByteArray(getClass().getResourceAsStream("/book1/chapter1.html"));
+		Assert.assertTrue(Arrays.equals(expectedData, handler.data.get("OEBPS/chapter1.html")));
+	}
+
+	@Test(timeout = 10000)
+	public void testRead_truncated() throws IOException {
+		byte[] epub = IOUtil.toByteArray(getClass().getResourceAsStream("/testbook1.epub"));
+		try {
+			new StreamingEpubReader().read(new ByteArrayInputStream(Arrays.copyOf(epub, 20)), new StreamingEpubReader.HandlerAdapter());
+			Assert.fail("a truncated epub can not be read");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testRead_package_document_before_container() throws IOException {
+		// given
+		byte[] epubData = reorder(IOUtil.toByteArray(getClass().getResourceAsStream("/testbook1.epub")),
+				"mimetype", "OEBPS/content.opf", "OEBPS/book1.css", "META-INF/container.xml", "OEBPS/chapter1.html");
+		RecordingHandler handler = new RecordingHandler();
+
+		// when
+		new StreamingEpubReader().read(new ByteArrayInputStream(epubData), handler);
+
+		// then
+		Assert.assertEquals(Arrays.asList("OEBPS/book1.css", "container:OEBPS/content.opf",
+				"package:OEBPS/content.opf", "OEBPS/chapter1.html"), handler.events);
+		Assert.assertEquals("Epublib test book 1", handler.metadata.getFirstTitle());
+		Assert.assertEquals(MediatypeService.XHTML, handler.mediaTypes.get("OEBPS/chapter1.html"));
+	}
+
+	/**
+	 * Creates a new zip containing the given entries of the given zip, in the given order.
+	 */
+	private static byte[] reorder(byte[] zipData, String... hrefs) throws IOException {
+		Map<String, byte[]> entries = new HashMap<String, byte[]>();
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zipData));
+		for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+			entries.put(entry.getName(), IOUtil.toByteArray(in));
+		}
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(result);
+		for (String href: hrefs) {
+			out.putNextEntry(new ZipEntry(href));
+			out.write(entries.get(href));
+			out.closeEntry();
+		}
+		out.close();
+		return result.toByteArray();
+	}
+}
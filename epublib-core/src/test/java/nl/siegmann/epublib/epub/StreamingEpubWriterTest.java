@@ -0,0 +1,81 @@
+package nl.siegmann.epublib.epub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Metadata;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.TOCReference;
+import nl.siegmann.epublib.service.MediatypeService;
+import nl.siegmann.epublib.util.IOUtil;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingEpubWriterTest {
+
+	@Test
+	public void testWrite() throws IOException {
+		byte[] coverData = IOUtil.toByteArray(getClass().getResourceAsStream("/book1/cover.png"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamingEpubWriter writer = new StreamingEpubWriter(out);
+		Metadata metadata = new Metadata();
+		metadata.addTitle("Streamed");
+		writer.begin(metadata);
+		Resource cover = writer.addResource("cover.png", null, new ByteArrayInputStream(coverData));
+		writer.setCoverImage(cover);
+		Resource chapter1 = writer.addResource("chapter1.html", MediatypeService.XHTML, new ByteArrayInputStream(createChapter("Chapter 1")));
+		writer.addSpineItem(chapter1);
+		TOCReference section1 = writer.addTocEntry("Chapter 1", chapter1);
+		Resource chapter2 = writer.addResource("chapter2.html", MediatypeService.XHTML, new ByteArrayInputStream(createChapter("Chapter 2")));
+		writer.addSpineItem(chapter2);
+		writer.addTocEntry(section1, "Chapter 2", chapter2, null);
+		writer.finish();
+
+		Book book = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals("Streamed", book.getTitle());
+		Assert.assertEquals(2, book.getSpine().size());
+		Assert.assertEquals("chapter2.html", book.getSpine().getResource(1).getHref());
+		Assert.assertEquals(1, book.getTableOfContents().getTocReferences().size());
+		Assert.assertEquals("Chapter 2", book.getTableOfContents().getTocReferences().get(0).getChildren().get(0).getTitle());
+		Assert.assertTrue(Arrays.equals(coverData, book.getCoverImage().getData()));
+		Assert.assertTrue(Arrays.equals(createChapter("Chapter 1"), book.getSpine().getResource(0).getData()));
+	}
+
+	@Test
+	public void testWriteEpub3() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamingEpubWriter writer = new StreamingEpubWriter(out, new Epub3Writer());
+		writer.begin(null);
+		writer.getMetadata().addTitle("Streamed 3");
+		Resource chapter1 = writer.addResource("chapter1.html", MediatypeService.XHTML,
+				new ByteArrayInputStream("<html><head><SCRIPT src=\"a.js\"/></head><body/></html>".getBytes()));
+		writer.addSpineItem(chapter1);
+		writer.addTocEntry("Chapter 1", chapter1);
+		writer.finish();
+
+		Book book = new EpubReader().readEpub(new ByteArrayInputStream(out.toByteArray()));
+		String packageDocument = new String(book.getOpfResource().getData(), "UTF-8");
+		Assert.assertTrue(packageDocument, packageDocument.contains("scripted"));
+		Assert.assertEquals(1, book.getSpine().size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotBegun() throws IOException {
+		new StreamingEpubWriter(new ByteArrayOutputStream()).addResource("chapter1.html", null, new ByteArrayInputStream(new byte[0]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTOCHrefReserved() throws IOException {
+		StreamingEpubWriter writer = new StreamingEpubWriter(new ByteArrayOutputStream(), new Epub3Writer());
+		writer.begin(null);
+		writer.addResource("toc.xhtml", null, new ByteArrayInputStream(createChapter("Contents")));
+	}
+
+	private static byte[] createChapter(String title) {
+		return ("<html><head><title>" + title + "</title></head><body><h1>" + title + "</h1></body></html>").getBytes();
+	}
+}
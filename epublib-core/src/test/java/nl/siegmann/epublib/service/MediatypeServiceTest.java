@@ -0,0 +1,57 @@
+package nl.siegmann.epublib.service;
+
+import java.util.Map;
+
+import nl.siegmann.epublib.domain.MediaType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MediatypeServiceTest {
+
+	@Test
+	public void testDetermineMediaType() {
+		Assert.assertEquals(MediatypeService.XHTML, MediatypeService.determineMediaType("chapter1.html"));
+		Assert.assertEquals(MediatypeService.XHTML, MediatypeService.determineMediaType("OEBPS/chapter1.HTM"));
+		Assert.assertEquals(MediatypeService.JPG, MediatypeService.determineMediaType("images/cover.Jpeg"));
+		Assert.assertEquals(MediatypeService.WEBP, MediatypeService.determineMediaType("images/cover.webp"));
+		Assert.assertEquals(MediatypeService.WOFF2, MediatypeService.determineMediaType("fonts/serif.woff2"));
+		Assert.assertEquals(MediatypeService.MP4, MediatypeService.determineMediaType("audio/chapter1.mp4"));
+		Assert.assertEquals(MediatypeService.MP4_VIDEO, MediatypeService.determineMediaType("video/chapter1.m4v"));
+		for (MediaType mediaType: MediatypeService.mediatypes) {
+			Assert.assertEquals(mediaType, MediatypeService.determineMediaType("file" + mediaType.getDefaultExtension()));
+		}
+		Assert.assertNull(MediatypeService.determineMediaType("mimetype"));
+		Assert.assertNull(MediatypeService.determineMediaType("chapter1.html.orig"));
+		Assert.assertNull(MediatypeService.determineMediaType("OEBPS.dir/chapter1"));
+		Assert.assertNull(MediatypeService.determineMediaType(null));
+	}
+
+	@Test
+	public void testIsBitmapImage() {
+		Assert.assertTrue(MediatypeService.isBitmapImage(MediatypeService.PNG));
+		Assert.assertTrue(MediatypeService.isBitmapImage(MediatypeService.AVIF));
+		Assert.assertFalse(MediatypeService.isBitmapImage(MediatypeService.SVG));
+	}
+
+	@Test
+	public void testRegisterMediaType() {
+		MediaType[] mediatypes = MediatypeService.mediatypes;
+		Map<String, MediaType> mediaTypesByName = MediatypeService.mediaTypesByName;
+		Map<String, MediaType> mediaTypesByExtension = MediatypeService.mediaTypesByExtension;
+		try {
+			MediaType markdown = new MediaType("text/markdown", ".md", new String[] {".md", ".markdown"});
+			Assert.assertNull(MediatypeService.determineMediaType("README.md"));
+			MediatypeService.registerMediaType(markdown);
+			Assert.assertSame(markdown, MediatypeService.determineMediaType("README.MD"));
+			Assert.assertSame(markdown, MediatypeService.determineMediaType("notes.markdown"));
+			Assert.assertSame(markdown, MediatypeService.getMediaTypeByName("text/markdown"));
+			Assert.assertSame(markdown, MediatypeService.mediatypes[MediatypeService.mediatypes.length - 1]);
+		} finally {
+			// the registry is global, leave it as the other tests expect it
+			MediatypeService.mediatypes = mediatypes;
+			MediatypeService.mediaTypesByName = mediaTypesByName;
+			MediatypeService.mediaTypesByExtension = mediaTypesByExtension;
+		}
+	}
+}
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
@@ -58,6 +60,42 @@ public class IOUtilTest {
 		}
 	}
 	
+	@Test
+	public void testCopyInputStream_copyBufferSize() throws IOException {
+		byte[] testArray = new byte[10000];
+		new Random().nextBytes(testArray);
+		int copyBufferSize = IOUtil.getCopyBufferSize();
+		IOUtil.setCopyBufferSize(1000);
+		try {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			assertEquals(testArray.length, IOUtil.copy(new ByteArrayInputStream(testArray), result));
+			assertTrue(Arrays.equals(testArray, result.toByteArray()));
+			byte[] buffer = IOUtil.takeCopyBuffer();
+			assertEquals(1000, buffer.length);
+			// the buffer of this thread is handed out once at a time
+			assertTrue(buffer != IOUtil.takeCopyBuffer());
+			IOUtil.releaseCopyBuffer(buffer);
+			assertTrue(buffer == IOUtil.takeCopyBuffer());
+		} finally {
+			IOUtil.setCopyBufferSize(copyBufferSize);
+		}
+	}
+
+	@Test
+	public void testToByteArray_File() throws IOException {
+		byte[] testArray = new byte[(IOUtil.getCopyBufferSize() * 2) + 10];
+		new Random().nextBytes(testArray);
+		File file = File.createTempFile("ioutil", ".bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(testArray);
+			out.close();
+			assertTrue(Arrays.equals(testArray, IOUtil.toByteArray(file)));
+		} finally {
+			file.delete();
+		}
+	}
+
 	@Test
 	public void testCalcNrRead() {
 		Integer[] testData = new Integer[] {
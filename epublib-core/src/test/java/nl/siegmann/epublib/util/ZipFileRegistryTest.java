@@ -0,0 +1,82 @@
+package nl.siegmann.epublib.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipFileRegistryTest {
+
+	private File testBook;
+	private ZipFileRegistry zipFileRegistry;
+
+	@Before
+	public void setUp() throws IOException {
+		testBook = File.createTempFile("testbook", ".epub");
+		OutputStream out = new FileOutputStream(testBook);
+		IOUtil.copy(ZipFileRegistryTest.class.getResourceAsStream("/testbook1.epub"), out);
+		out.close();
+		zipFileRegistry = new ZipFileRegistry();
+	}
+
+	@After
+	public void tearDown() {
+		zipFileRegistry.closeAll();
+		testBook.delete();
+	}
+
+	@Test
+	public void testAcquire_shared() throws IOException {
+		zipFileRegistry.setIdleTimeout(30 * 1000);
+		ZipFile zipFile1 = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		ZipFile zipFile2 = zipFileRegistry.acquire(testBook.getPath());
+		Assert.assertSame(zipFile1, zipFile2);
+		Assert.assertEquals(1, zipFileRegistry.size());
+		zipFileRegistry.release(zipFile1);
+		zipFileRegistry.release(zipFile2);
+		Assert.assertEquals(1, zipFileRegistry.size());
+		Assert.assertSame(zipFile1, zipFileRegistry.acquire(testBook.getAbsolutePath()));
+	}
+
+	@Test
+	public void testRelease_idle_timeout() throws IOException {
+		Assert.assertEquals(ZipFileRegistry.DEFAULT_IDLE_TIMEOUT, zipFileRegistry.getIdleTimeout());
+		ZipFile zipFile = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		zipFileRegistry.release(zipFile);
+		// kept for the next lazy load
+		Assert.assertEquals(1, zipFileRegistry.size());
+		Assert.assertSame(zipFile, zipFileRegistry.acquire(testBook.getAbsolutePath()));
+		zipFileRegistry.release(zipFile);
+		zipFileRegistry.setIdleTimeout(0);
+		Assert.assertEquals(0, zipFileRegistry.size());
+	}
+
+	@Test
+	public void testRelease_no_idle_timeout() throws IOException {
+		zipFileRegistry.setIdleTimeout(0);
+		ZipFile zipFile1 = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		ZipFile zipFile2 = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		zipFileRegistry.release(zipFile1);
+		Assert.assertEquals(1, zipFileRegistry.size());
+		zipFileRegistry.release(zipFile2);
+		Assert.assertEquals(0, zipFileRegistry.size());
+	}
+
+	@Test
+	public void testAcquire_file_modified() throws IOException {
+		ZipFile zipFile1 = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		testBook.setLastModified(testBook.lastModified() - 10000);
+		ZipFile zipFile2 = zipFileRegistry.acquire(testBook.getAbsolutePath());
+		Assert.assertNotSame(zipFile1, zipFile2);
+		Assert.assertEquals(2, zipFileRegistry.size());
+		zipFileRegistry.release(zipFile1);
+		Assert.assertEquals(1, zipFileRegistry.size());
+		zipFileRegistry.release(zipFile2);
+	}
+}
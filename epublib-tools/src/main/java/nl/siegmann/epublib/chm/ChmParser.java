@@ -10,7 +10,9 @@ import javax.xml.xpath.XPathExpressionException;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.ResourceDataStore;
 import nl.siegmann.epublib.domain.Resources;
+import nl.siegmann.epublib.domain.StoredResource;
 import nl.siegmann.epublib.domain.TOCReference;
 import nl.siegmann.epublib.domain.TableOfContents;
 import nl.siegmann.epublib.service.MediatypeService;
@@ -40,6 +42,20 @@ public class ChmParser {
 	public static Book parseChm(FileObject chmRootDir, String inputHtmlEncoding)
 			throws IOException, ParserConfigurationException,
 			XPathExpressionException {
+		return parseChm(chmRootDir, inputHtmlEncoding, null);
+	}
+
+	/**
+	 * Creates a Book out of the extracted chm files, keeping the data of the files in the given store.
+	 * 
+	 * @param chmRootDir
+	 * @param inputHtmlEncoding
+	 * @param resourceDataStore the store to keep the data of the files in, null to keep it on the heap
+	 * @return the Book
+	 */
+	public static Book parseChm(FileObject chmRootDir, String inputHtmlEncoding, ResourceDataStore resourceDataStore)
+			throws IOException, ParserConfigurationException,
+			XPathExpressionException {
 		Book result = new Book();
 		result.getMetadata().addTitle(findTitle(chmRootDir));
 		FileObject hhcFileObject = findHhcFileObject(chmRootDir);
@@ -49,7 +65,7 @@ public class ChmParser {
 		if(inputHtmlEncoding == null) {
 			inputHtmlEncoding = DEFAULT_CHM_HTML_INPUT_ENCODING;
 		}
-		Resources resources = findResources(chmRootDir, inputHtmlEncoding);
+		Resources resources = findResources(chmRootDir, inputHtmlEncoding, resourceDataStore);
 		List<TOCReference> tocReferences = HHCParser.parseHhc(hhcFileObject.getContent().getInputStream(), resources);
 		result.setTableOfContents(new TableOfContents(tocReferences));
 		result.setResources(resources);
@@ -103,7 +119,7 @@ public class ChmParser {
 	}
 	
 	
-	private static Resources findResources(FileObject rootDir, String inputEncoding) throws IOException {
+	private static Resources findResources(FileObject rootDir, String inputEncoding, ResourceDataStore resourceDataStore) throws IOException {
 		Resources result = new Resources();
 		FileObject[] allFiles = rootDir.findFiles(new AllFileSelector());
 		for(int i = 0; i < allFiles.length; i++) {
@@ -120,7 +136,12 @@ public class ChmParser {
 			if(mediaType == MediatypeService.XHTML && ! nl.siegmann.epublib.Constants.CHARACTER_ENCODING.equalsIgnoreCase(inputEncoding)) {
 				resourceData = ResourceUtil.recode(inputEncoding, nl.siegmann.epublib.Constants.CHARACTER_ENCODING, resourceData);
 			}
-			Resource fileResource = new Resource(null, resourceData, href, mediaType);
+			Resource fileResource;
+			if(resourceDataStore == null) {
+				fileResource = new Resource(null, resourceData, href, mediaType);
+			} else {
+				fileResource = new StoredResource(resourceDataStore, null, resourceData, href, mediaType);
+			}
 			result.add(fileResource);
 		}
 		return result;
@@ -12,6 +12,7 @@ import nl.siegmann.epublib.Constants;
 import nl.siegmann.epublib.bookprocessor.DefaultBookProcessorPipeline;
 import nl.siegmann.epublib.domain.Book;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.ResourceDataStore;
 import nl.siegmann.epublib.domain.Resources;
 import nl.siegmann.epublib.domain.Spine;
 import nl.siegmann.epublib.domain.TOCReference;
@@ -65,10 +66,23 @@ public class FilesetBookCreator {
 	 * @throws IOException
 	 */
 	public static Book createBookFromDirectory(FileObject rootDirectory, String encoding) throws IOException {
+		return createBookFromDirectory(rootDirectory, encoding, null);
+	}
+
+	/**
+	 * Recursively adds all files that are allowed to be part of an epub to the Book, keeping their data in the given store.
+	 * 
+	 * @param rootDirectory
+	 * @param encoding
+	 * @param resourceDataStore the store to keep the data of the files in, null to keep it on the heap
+	 * @return the newly created Book
+	 * @throws IOException
+	 */
+	public static Book createBookFromDirectory(FileObject rootDirectory, String encoding, ResourceDataStore resourceDataStore) throws IOException {
 		Book result = new Book();
 		List<TOCReference> sections = new ArrayList<TOCReference>();
 		Resources resources = new Resources();
-		processDirectory(rootDirectory, rootDirectory, sections, resources, encoding);
+		processDirectory(rootDirectory, rootDirectory, sections, resources, encoding, resourceDataStore);
 		result.setResources(resources);
 		TableOfContents tableOfContents = new TableOfContents(sections);
 		result.setTableOfContents(tableOfContents);
@@ -79,17 +93,17 @@ public class FilesetBookCreator {
 		return result;
 	}
 
-	private static void processDirectory(FileObject rootDir, FileObject directory, List<TOCReference> sections, Resources resources, String inputEncoding) throws IOException {
+	private static void processDirectory(FileObject rootDir, FileObject directory, List<TOCReference> sections, Resources resources, String inputEncoding, ResourceDataStore resourceDataStore) throws IOException {
 		FileObject[] files = directory.getChildren();
 		Arrays.sort(files, fileComparator);
 		for(int i = 0; i < files.length; i++) {
 			FileObject file = files[i];
 			if(file.getType() == FileType.FOLDER) {
-				processSubdirectory(rootDir, file, sections, resources, inputEncoding);
+				processSubdirectory(rootDir, file, sections, resources, inputEncoding, resourceDataStore);
 			} else if (MediatypeService.determineMediaType(file.getName().getBaseName()) == null) {
 				continue;
 			} else {
-				Resource resource = VFSUtil.createResource(rootDir, file, inputEncoding);
+				Resource resource = VFSUtil.createResource(rootDir, file, inputEncoding, resourceDataStore);
 				if(resource == null) {
 					continue;
 				}
@@ -103,10 +117,10 @@ public class FilesetBookCreator {
 	}
 
 	private static void processSubdirectory(FileObject rootDir, FileObject file,
-			List<TOCReference> sections, Resources resources, String inputEncoding)
+			List<TOCReference> sections, Resources resources, String inputEncoding, ResourceDataStore resourceDataStore)
 			throws IOException {
 		List<TOCReference> childTOCReferences = new ArrayList<TOCReference>();
-		processDirectory(rootDir, file, childTOCReferences, resources, inputEncoding);
+		processDirectory(rootDir, file, childTOCReferences, resources, inputEncoding, resourceDataStore);
 		if(! childTOCReferences.isEmpty()) {
 			String sectionName = file.getName().getBaseName();
 			Resource sectionResource = ResourceUtil.createResource(sectionName, VFSUtil.calculateHref(rootDir,file));
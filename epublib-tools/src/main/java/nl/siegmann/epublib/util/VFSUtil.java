@@ -8,6 +8,8 @@ import java.io.InputStream;
 
 import nl.siegmann.epublib.domain.MediaType;
 import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.domain.ResourceDataStore;
+import nl.siegmann.epublib.domain.StoredResource;
 import nl.siegmann.epublib.service.MediatypeService;
 
 import org.apache.commons.io.IOUtils;
@@ -27,12 +29,36 @@ public class VFSUtil {
 	private static final Logger log = LoggerFactory.getLogger(VFSUtil.class);
 
 	public static Resource createResource(FileObject rootDir, FileObject file, String inputEncoding) throws IOException {
+		return createResource(rootDir, file, inputEncoding, null);
+	}
+
+	/**
+	 * Creates a Resource for the file, keeping its data in the given store.
+	 * 
+	 * @param rootDir
+	 * @param file
+	 * @param inputEncoding
+	 * @param resourceDataStore the store to keep the data in, null to keep it on the heap
+	 * @return the Resource for the file, null if the file has no known MediaType
+	 * @throws IOException
+	 */
+	public static Resource createResource(FileObject rootDir, FileObject file, String inputEncoding, ResourceDataStore resourceDataStore) throws IOException {
 		MediaType mediaType = MediatypeService.determineMediaType(file.getName().getBaseName());
 		if(mediaType == null) {
 			return null;
 		}
 		String href = calculateHref(rootDir, file);
-		Resource result = new Resource(null, IOUtils.toByteArray(file.getContent().getInputStream()), href, mediaType);
+		Resource result;
+		if(resourceDataStore == null) {
+			result = new Resource(null, IOUtils.toByteArray(file.getContent().getInputStream()), href, mediaType);
+		} else {
+			InputStream in = file.getContent().getInputStream();
+			try {
+				result = new StoredResource(resourceDataStore, null, in, href, mediaType);
+			} finally {
+				in.close();
+			}
+		}
 		result.setInputEncoding(inputEncoding);
 		return result;
 	}